@@ -16,10 +16,14 @@ package com.cloudant.sync.sqlite.android;
 
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.cloudant.android.ContentValues;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.sqlite.StatementCache;
+import com.cloudant.sync.sqlite.sqlite4java.DBUtils;
+import com.cloudant.sync.sqlite.sqlite4java.QueryBuilder;
 import com.cloudant.sync.util.Misc;
 
 import java.sql.SQLException;
@@ -31,6 +35,17 @@ public class AndroidSQLite extends SQLDatabase {
 
     android.database.sqlite.SQLiteDatabase database = null;
 
+    /**
+     * Compiled INSERT, UPDATE and DELETE statements. Queries made through
+     * {@link #rawQuery(String, String[])} use the Android database's own statement cache.
+     */
+    private final StatementCache<SQLiteStatement> statementCache = new
+            StatementCache<SQLiteStatement>(StatementCache.DEFAULT_CAPACITY) {
+        @Override
+        protected void dispose(SQLiteStatement statement) {
+            statement.close();
+        }
+    };
 
     public static AndroidSQLite createAndroidSQLite(String path) {
         SQLiteDatabase db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.CREATE_IF_NECESSARY);
@@ -39,7 +54,16 @@ public class AndroidSQLite extends SQLDatabase {
 
     public AndroidSQLite(final android.database.sqlite.SQLiteDatabase database) {
         this.database = database;
+        this.database.setMaxSqlCacheSize(SQLiteDatabase.MAX_SQL_CACHE_SIZE);
+    }
 
+    /**
+     * Returns the cache of compiled statements used for writes to this database.
+     *
+     * @return the statement cache
+     */
+    public StatementCache<SQLiteStatement> getStatementCache() {
+        return statementCache;
     }
 
     @Override
@@ -54,6 +78,7 @@ public class AndroidSQLite extends SQLDatabase {
 
     @Override
     public void close() {
+        this.statementCache.clear();
         this.database.close();
     }
 
@@ -89,7 +114,12 @@ public class AndroidSQLite extends SQLDatabase {
     @Override
     public void execSQL(String sql, Object[] bindArgs) throws SQLException {
         Misc.checkNotNullOrEmpty(sql.trim(), "Input SQL");
-        this.database.execSQL(sql, bindArgs);
+        SQLiteStatement stmt = acquireStatement(sql, bindArgs);
+        try {
+            stmt.execute();
+        } finally {
+            releaseStatement(sql, stmt);
+        }
     }
 
     @Override
@@ -99,7 +129,17 @@ public class AndroidSQLite extends SQLDatabase {
 
     @Override
     public int update(String table, ContentValues args, String whereClause, String[] whereArgs) {
-        return this.database.update("\""+table+"\"", this.createAndroidContentValues(args), whereClause, whereArgs);
+        if (args == null || args.size() == 0) {
+            throw new IllegalArgumentException("Empty values");
+        }
+        String sql = QueryBuilder.buildUpdateQuery(table, args, whereClause, whereArgs);
+        SQLiteStatement stmt = acquireStatement(sql, QueryBuilder.buildBindArguments(args,
+                whereArgs));
+        try {
+            return stmt.executeUpdateDelete();
+        } finally {
+            releaseStatement(sql, stmt);
+        }
     }
 
     @Override
@@ -109,7 +149,13 @@ public class AndroidSQLite extends SQLDatabase {
 
     @Override
     public int delete(String table, String whereClause, String[] whereArgs) {
-        return this.database.delete("\""+table+"\"", whereClause, whereArgs);
+        String sql = QueryBuilder.buildDeleteQuery(table, whereClause);
+        SQLiteStatement stmt = acquireStatement(sql, whereArgs);
+        try {
+            return stmt.executeUpdateDelete();
+        } finally {
+            releaseStatement(sql, stmt);
+        }
     }
 
     @Override
@@ -119,45 +165,76 @@ public class AndroidSQLite extends SQLDatabase {
 
     @Override
     public long insertWithOnConflict(String table, ContentValues initialValues, int conflictAlgorithm) {
+        if (initialValues == null || initialValues.size() == 0) {
+            throw new IllegalArgumentException("SQLite does not support to insert an all null row");
+        }
+        String sql = QueryBuilder.buildInsertQuery(table, initialValues, conflictAlgorithm);
+        SQLiteStatement stmt = acquireStatement(sql, QueryBuilder.buildBindArguments
+                (initialValues, null));
         //android DB will thrown an exception rather than return a -1 row id if there is a failure
         // so we catch constraintException and return -1
         try {
-        return this.database.insertWithOnConflict("\""+table+"\"", null,
-                createAndroidContentValues(initialValues), conflictAlgorithm);
+            return stmt.executeInsert();
         } catch (SQLiteConstraintException sqlce){
             return -1;
+        } finally {
+            releaseStatement(sql, stmt);
         }
     }
 
-    private android.content.ContentValues createAndroidContentValues(ContentValues values) {
-        android.content.ContentValues newValues = new android.content.ContentValues(values.size());
-        for(String key : values.keySet()) {
-            Object value = values.get(key);
-            if(value instanceof Boolean) {
-                newValues.put(key, (Boolean)value);
-            } else if(value instanceof Byte) {
-                newValues.put(key, (Byte)value);
-            } else if(value instanceof byte[]) {
-                newValues.put(key, (byte[])value);
-            } else if(value instanceof Double) {
-                newValues.put(key, (Double)value);
-            } else if(value instanceof Float) {
-                newValues.put(key, (Float)value);
-            } else if(value instanceof Integer) {
-                newValues.put(key, (Integer)value);
-            } else if(value instanceof Long) {
-                newValues.put(key, (Long)value);
-            } else if(value instanceof Short) {
-                newValues.put(key, (Short)value);
-            } else if(value instanceof String) {
-                newValues.put(key, (String)value);
-            } else if( value == null) {
-                newValues.putNull(key);
-            } else {
-                throw new IllegalArgumentException("Unsupported data type: " + value.getClass());
+    /**
+     * Gets a compiled statement for the SQL, from the statement cache if possible, and binds the
+     * arguments to it. The statement must be handed back using
+     * {@link #releaseStatement(String, SQLiteStatement)}.
+     */
+    private SQLiteStatement acquireStatement(String sql, Object[] bindArgs) {
+        SQLiteStatement stmt = statementCache.acquire(sql);
+        if (stmt == null) {
+            stmt = this.database.compileStatement(sql);
+        }
+        try {
+            bindArguments(stmt, bindArgs);
+        } catch (RuntimeException e) {
+            releaseStatement(sql, stmt);
+            throw e;
+        }
+        return stmt;
+    }
+
+    private void releaseStatement(String sql, SQLiteStatement stmt) {
+        stmt.clearBindings();
+        statementCache.release(sql, stmt);
+    }
+
+    private static void bindArguments(SQLiteStatement stmt, Object[] bindArgs) {
+        if (bindArgs == null) {
+            return;
+        }
+        for (int i = 0; i < bindArgs.length; i++) {
+            final Object arg = bindArgs[i];
+            switch (DBUtils.getTypeOfObject(arg)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    stmt.bindNull(i + 1);
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    stmt.bindLong(i + 1, ((Number) arg).longValue());
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    stmt.bindDouble(i + 1, ((Number) arg).doubleValue());
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    stmt.bindBlob(i + 1, (byte[]) arg);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                default:
+                    if (arg instanceof Boolean) {
+                        stmt.bindLong(i + 1, ((Boolean) arg) ? 1 : 0);
+                    } else {
+                        stmt.bindString(i + 1, arg.toString());
+                    }
+                    break;
             }
-       }
-       return newValues;
+        }
     }
 
     @Override
@@ -0,0 +1,327 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.datastore.callables.BulkDocumentCallable;
+import com.cloudant.sync.datastore.callables.ChangesCallable;
+import com.cloudant.sync.datastore.callables.DeleteDocumentCallable;
+import com.cloudant.sync.datastore.callables.GetDocumentCallable;
+import com.cloudant.sync.datastore.callables.UpdateDocumentFromRevisionCallable;
+import com.cloudant.sync.notifications.DocumentCreated;
+import com.cloudant.sync.notifications.DocumentDeleted;
+import com.cloudant.sync.notifications.DocumentUpdated;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.sqlite.SQLQueueFuture;
+import com.cloudant.sync.util.Misc;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <p>A non-blocking view of a {@link Datastore}.</p>
+ *
+ * <p>Each method submits its operation to the datastore's database queue and returns
+ * straight away. The returned {@link DatastoreFuture} is completed by the database thread
+ * once the operation has run and, for writes, has been committed. Callers can block on the
+ * future, or register a {@link DatastoreCallback} so that no thread is tied up waiting for
+ * each operation.</p>
+ *
+ * <p>Writes are run in the order they are submitted, interleaved with those made through
+ * the {@code Datastore} itself. Notifications for document writes are posted to the
+ * datastore's {@link Datastore#getEventBus() EventBus} from the database thread, before the
+ * future completes, so subscribers must not call the blocking methods of {@code Datastore}.
+ * </p>
+ *
+ * <p>Queries can be run asynchronously using {@code IndexManager.findAsync}.</p>
+ *
+ * @api_public
+ */
+public class AsyncDatastore {
+
+    private final DatastoreImpl datastore;
+
+    /**
+     * Creates a non-blocking view of {@code datastore}.
+     * @param datastore A datastore opened by a {@link DatastoreManager}
+     */
+    public AsyncDatastore(Datastore datastore) {
+        Misc.checkNotNull(datastore, "Datastore");
+        Misc.checkArgument(datastore instanceof DatastoreImpl, "Datastore must be opened by a " +
+                "DatastoreManager");
+        this.datastore = (DatastoreImpl) datastore;
+    }
+
+    /**
+     * @return the datastore operations are run against
+     */
+    public Datastore getDatastore() {
+        return datastore;
+    }
+
+    /**
+     * <p>Retrieves the current winning revision of a document.</p>
+     *
+     * @param id ID of document to retrieve.
+     * @return a future which completes with the current winning revision of the document, or
+     * fails with a {@link DocumentNotFoundException}
+     * @see Datastore#getDocument(String)
+     */
+    public DatastoreFuture<DocumentRevision> getDocument(String id) {
+        return getDocument(id, null);
+    }
+
+    /**
+     * <p>Retrieves a given revision of a document.</p>
+     *
+     * @param id ID of the document
+     * @param rev Revision of the document, or null for the current winning revision
+     * @return a future which completes with the revision of the document, or fails with a
+     * {@link DocumentNotFoundException}
+     * @see Datastore#getDocument(String, String)
+     */
+    public DatastoreFuture<DocumentRevision> getDocument(final String id, final String rev) {
+        Misc.checkState(datastore.isOpen(), "Database is closed");
+        Misc.checkNotNullOrEmpty(id, "Document id");
+
+        final DocumentRevisionCache cache = datastore.getDocumentCache();
+        DocumentRevision cached = cache.get(id, rev);
+        if (cached != null) {
+            return completed(cached);
+        }
+        final long cacheVersion = cache.version();
+        return whenComplete(datastore.getQueue().submitReadOnly(new GetDocumentCallable(id, rev,
+                        datastore.getAttachmentsDir(), datastore.getAttachmentStreamFactory())),
+                new Completion<DocumentRevision, DocumentRevision>() {
+                    @Override
+                    DocumentRevision success(DocumentRevision revision) {
+                        cache.put(revision, cacheVersion);
+                        return revision;
+                    }
+
+                    @Override
+                    Exception failure(Throwable cause) {
+                        return new DocumentNotFoundException(id, rev, cause);
+                    }
+                });
+    }
+
+    /**
+     * <p>Adds a new document with body and attachments from {@code rev}.</p>
+     *
+     * <p>New attachments are prepared on the calling thread before the operation is
+     * submitted.</p>
+     *
+     * @param rev the {@code DocumentRevision} to be created
+     * @return a future which completes with the new revision, or fails with a
+     * {@link DocumentException}
+     * @see Datastore#createDocumentFromRevision(DocumentRevision)
+     */
+    public DatastoreFuture<DocumentRevision> createDocumentFromRevision(DocumentRevision rev) {
+        Misc.checkNotNull(rev, "DocumentRevision");
+        Misc.checkState(datastore.isOpen(), "Datastore is closed");
+        Misc.checkArgument(rev.getRevision() == null, "Revision ID must be null for new " +
+                "DocumentRevisions");
+        Misc.checkArgument(rev.isFullRevision(), "Projected revisions cannot be used to " +
+                "create documents");
+
+        SQLCallable<DocumentRevision> create;
+        try {
+            create = datastore.createDocumentCallable(rev);
+        } catch (AttachmentException e) {
+            return failed(e);
+        }
+        return whenComplete(datastore.getQueue().submitTransaction(create),
+                new DocumentCompletion() {
+                    @Override
+                    DocumentRevision success(DocumentRevision created) {
+                        datastore.getEventBus().post(new DocumentCreated(created));
+                        return created;
+                    }
+                });
+    }
+
+    /**
+     * <p>Updates a document that exists in the datastore with body and attachments from
+     * {@code rev}.</p>
+     *
+     * <p>New attachments are prepared on the calling thread before the operation is
+     * submitted.</p>
+     *
+     * @param rev the {@code DocumentRevision} to be updated
+     * @return a future which completes with the updated revision, or fails with a
+     * {@link DocumentException}, such as a {@link ConflictException} if {@code rev} isn't the
+     * current revision
+     * @see Datastore#updateDocumentFromRevision(DocumentRevision)
+     */
+    public DatastoreFuture<DocumentRevision> updateDocumentFromRevision(
+            final DocumentRevision rev) {
+        Misc.checkNotNull(rev, "DocumentRevision");
+        Misc.checkState(datastore.isOpen(), "Datastore is closed");
+        Misc.checkArgument(rev.isFullRevision(), "Projected revisions cannot be used to " +
+                "create documents");
+
+        final UpdateDocumentFromRevisionCallable update;
+        try {
+            update = datastore.updateDocumentCallable(rev);
+        } catch (AttachmentException e) {
+            return failed(e);
+        }
+        // the revision being replaced, read in the same transaction for the notification
+        final DocumentRevision[] previous = new DocumentRevision[1];
+        return whenComplete(datastore.getQueue().submitTransaction(
+                new SQLCallable<DocumentRevision>() {
+                    @Override
+                    public DocumentRevision call(SQLDatabase db) throws Exception {
+                        DocumentRevision updated = update.call(db);
+                        previous[0] = new GetDocumentCallable(rev.getId(), rev.getRevision(),
+                                datastore.getAttachmentsDir(),
+                                datastore.getAttachmentStreamFactory()).call(db);
+                        return updated;
+                    }
+                }), new DocumentCompletion() {
+            @Override
+            DocumentRevision success(DocumentRevision updated) {
+                datastore.getEventBus().post(new DocumentUpdated(previous[0], updated));
+                return updated;
+            }
+        });
+    }
+
+    /**
+     * <p>Deletes a document from the datastore.</p>
+     *
+     * @param rev the {@code DocumentRevision} to be deleted
+     * @return a future which completes with the deleted revision, or fails with a
+     * {@link DocumentException}, such as a {@link ConflictException} if {@code rev} isn't a
+     * leaf revision
+     * @see Datastore#deleteDocumentFromRevision(DocumentRevision)
+     */
+    public DatastoreFuture<DocumentRevision> deleteDocumentFromRevision(
+            final DocumentRevision rev) {
+        Misc.checkNotNull(rev, "DocumentRevision");
+        Misc.checkState(datastore.isOpen(), "Datastore is closed");
+
+        return whenComplete(datastore.getQueue().submitTransaction(
+                new DeleteDocumentCallable(rev.getId(), rev.getRevision(),
+                        datastore.getDocumentCache(), datastore.getBodyStore())),
+                new DocumentCompletion() {
+                    @Override
+                    DocumentRevision success(DocumentRevision deleted) {
+                        if (deleted != null) {
+                            datastore.getEventBus().post(new DocumentDeleted(rev, deleted));
+                        }
+                        return deleted;
+                    }
+                });
+    }
+
+    /**
+     * <p>Returns a list of changed documents, from {@code since} to the most recent change.</p>
+     *
+     * @param since the lower bound (exclusive) of the sequence number range
+     * @param limit the maximum number of changed documents to return
+     * @return a future which completes with the changes
+     * @see Datastore#changes(long, int)
+     */
+    public DatastoreFuture<Changes> changes(long since, int limit) {
+        Misc.checkState(datastore.isOpen(), "Database is closed");
+        Misc.checkArgument(limit > 0, "Limit must be positive number");
+        long verifiedSince = since >= 0 ? since : 0;
+
+        return whenComplete(datastore.getQueue().submitReadOnly(new ChangesCallable(
+                verifiedSince, limit, datastore.getAttachmentsDir(),
+                datastore.getAttachmentStreamFactory())), new Completion<Changes, Changes>());
+    }
+
+    /**
+     * Returns a future which is completed from {@code source} by {@code completion}, as soon as
+     * {@code source} completes.
+     */
+    private static <S, T> DatastoreFuture<T> whenComplete(final SQLQueueFuture<S> source,
+                                                          final Completion<S, T> completion) {
+        DatastoreFuture<T> future = new DatastoreFuture<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                S result;
+                try {
+                    // source has completed, so this doesn't block
+                    result = source.get();
+                } catch (ExecutionException e) {
+                    throw completion.failure(e.getCause());
+                }
+                return completion.success(result);
+            }
+        }, source);
+        source.addListener(future);
+        return future;
+    }
+
+    private static DatastoreFuture<DocumentRevision> completed(final DocumentRevision rev) {
+        DatastoreFuture<DocumentRevision> future = new DatastoreFuture<DocumentRevision>(
+                new Callable<DocumentRevision>() {
+                    @Override
+                    public DocumentRevision call() throws Exception {
+                        return rev;
+                    }
+                });
+        future.run();
+        return future;
+    }
+
+    private static DatastoreFuture<DocumentRevision> failed(final DocumentException e) {
+        DatastoreFuture<DocumentRevision> future = new DatastoreFuture<DocumentRevision>(
+                new Callable<DocumentRevision>() {
+                    @Override
+                    public DocumentRevision call() throws Exception {
+                        throw e;
+                    }
+                });
+        future.run();
+        return future;
+    }
+
+    /**
+     * Converts the outcome of a database task into the outcome of an operation. By default the
+     * result and exception are passed on unchanged.
+     */
+    private static class Completion<S, T> {
+
+        @SuppressWarnings("unchecked")
+        T success(S result) {
+            return (T) result;
+        }
+
+        Exception failure(Throwable cause) {
+            if (cause instanceof Exception) {
+                return (Exception) cause;
+            }
+            return new ExecutionException(cause);
+        }
+    }
+
+    /**
+     * Completion for document writes, which fail with a {@link DocumentException}.
+     */
+    private static class DocumentCompletion extends Completion<DocumentRevision,
+            DocumentRevision> {
+
+        @Override
+        Exception failure(Throwable cause) {
+            return BulkDocumentCallable.asDocumentException(cause);
+        }
+    }
+
+}
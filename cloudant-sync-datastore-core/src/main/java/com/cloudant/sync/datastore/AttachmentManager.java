@@ -17,6 +17,7 @@ package com.cloudant.sync.datastore;
 import com.cloudant.android.ContentValues;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.sqlite.TempKeySet;
 import com.cloudant.sync.util.CouchUtils;
 import com.cloudant.sync.util.DatabaseUtils;
 
@@ -31,11 +32,11 @@ import java.nio.charset.Charset;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -76,9 +77,6 @@ public class AttachmentManager {
             "FROM attachments " +
             "WHERE sequence = ?";
 
-    private static final String SQL_ATTACHMENTS_SELECT_ALL_KEYS = "SELECT key " +
-            "FROM attachments";
-
     /**
      * Name of database mapping key to filename.
      */
@@ -89,10 +87,12 @@ public class AttachmentManager {
     private static final String SQL_FILENAME_LOOKUP_QUERY = String.format(
             "SELECT filename FROM %1$s WHERE key=?", ATTACHMENTS_KEY_FILENAME);
     /**
-     * SQL statement to return all key,filename mappings.
+     * SQL statement to return the key,filename mappings which are no longer referenced by any
+     * attachment. Keys in the mapping table are lower case hex encodings of the attachment key.
      */
-    private static final String SQL_ATTACHMENTS_SELECT_KEYS_FILENAMES = String.format(
-            "SELECT key,filename FROM %1$s", ATTACHMENTS_KEY_FILENAME);
+    private static final String SQL_ATTACHMENTS_SELECT_UNREFERENCED_KEYS_FILENAMES = String.format(
+            "SELECT key,filename FROM %1$s WHERE key NOT IN " +
+                    "(SELECT DISTINCT lower(hex(key)) FROM attachments)", ATTACHMENTS_KEY_FILENAME);
     /**
      * Random number generator used to generate filenames.
      */
@@ -347,6 +347,68 @@ public class AttachmentManager {
         }
     }
 
+    /**
+     * Reads the attachments of many revisions with one query, joining each attachment to the
+     * name of its file rather than looking the file up separately.
+     *
+     * @param db database to read from
+     * @param attachmentsDir location of attachments
+     * @param attachmentStreamFactory factory to manage access to attachment streams
+     * @param sequences sequence numbers of the revisions
+     * @return map of sequence number to the attachments of that revision, with no entry for
+     * revisions without attachments
+     * @throws AttachmentException if the attachments could not be read
+     */
+    protected static Map<Long, List<SavedAttachment>> attachmentsForRevisions(SQLDatabase db,
+            String attachmentsDir, AttachmentStreamFactory attachmentStreamFactory,
+            Collection<Long> sequences) throws AttachmentException {
+        Map<Long, List<SavedAttachment>> atts = new HashMap<Long, List<SavedAttachment>>();
+        if (sequences.isEmpty()) {
+            return atts;
+        }
+        TempKeySet keys = null;
+        Cursor c = null;
+        try {
+            keys = TempKeySet.create(db, sequences);
+            // keys in the mapping table are lower case hex encodings of the attachment key
+            c = db.rawQuery(String.format("SELECT a.sequence, a.filename, a.key, a.type, " +
+                    "a.encoding, a.length, a.encoded_length, a.revpos, m.filename " +
+                    "FROM attachments a LEFT OUTER JOIN %1$s m ON m.key = lower(hex(a.key)) " +
+                    "WHERE a.sequence IN (%2$s)", ATTACHMENTS_KEY_FILENAME, keys.select()),
+                    new String[0]);
+            while (c.moveToNext()) {
+                long sequence = c.getLong(0);
+                String filename = c.getString(1);
+                byte[] key = c.getBlob(2);
+                String type = c.getString(3);
+                int encoding = c.getInt(4);
+                long length = c.getInt(5);
+                long encodedLength = c.getInt(6);
+                int revpos = c.getInt(7);
+                String file = c.getString(8);
+                if (file == null) {
+                    throw new AttachmentException("Couldn't retrieve filename for attachment");
+                }
+
+                List<SavedAttachment> revAtts = atts.get(sequence);
+                if (revAtts == null) {
+                    revAtts = new ArrayList<SavedAttachment>();
+                    atts.put(sequence, revAtts);
+                }
+                revAtts.add(new SavedAttachment(sequence, filename, key, type, Attachment.Encoding
+                        .values()[encoding], length, encodedLength, revpos,
+                        new File(attachmentsDir, file), attachmentStreamFactory));
+            }
+            return atts;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to get attachments", e);
+            throw new AttachmentException(e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(c);
+            TempKeySet.closeQuietly(keys);
+        }
+    }
+
     private static void copyCursorValuesToNewSequence(SQLDatabase db, Cursor c, long newSequence) {
         while (c.moveToNext()) {
             String filename = c.getString(1);
@@ -411,62 +473,67 @@ public class AttachmentManager {
      * @param db database to purge attachments from
      */
     public static void purgeAttachments(SQLDatabase db, String attachmentsDir) {
-        // it's easier to deal with Strings since java doesn't know how to compare byte[]s
-        Set<String> currentKeys = new HashSet<String>();
+        purgeAttachments(db, attachmentsDir, -1);
+    }
+
+    /**
+     * Called on the execution queue to purge the attachments of revs which have been purged,
+     * removing at most {@code limit} files from the blob store so that a large purge can be
+     * done a little at a time.
+     *
+     * @param db database to purge attachments from
+     * @param attachmentsDir Root directory for attachment blobs
+     * @param limit maximum number of files to remove, or a negative number for no limit
+     * @return the number of files removed, fewer than {@code limit} once there are none left
+     * to remove or if a file could not be removed
+     */
+    public static int purgeAttachments(SQLDatabase db, String attachmentsDir, int limit) {
+        // the SELECT only returns keys which are no longer referenced, so this holds just the
+        // files to be removed rather than every key in the database
+        Map<String, String> unreferencedFilenames = new HashMap<String, String>();
         Cursor c = null;
         try {
             // delete attachment table entries for revs which have been purged
-            db.delete("attachments", "sequence IN " +
-                    "(SELECT sequence from revs WHERE json IS null)", null);
+            db.delete("attachments", "NOT EXISTS (SELECT 1 FROM bodies WHERE " +
+                    "bodies.sequence = attachments.sequence)", null);
 
-            // get all keys from attachments table
-            c = db.rawQuery(SQL_ATTACHMENTS_SELECT_ALL_KEYS, null);
+            // find the entries in attachments_key_filename which no attachment uses any more
+            c = db.rawQueryStreaming(SQL_ATTACHMENTS_SELECT_UNREFERENCED_KEYS_FILENAMES +
+                    " LIMIT " + limit, null);
             while (c.moveToNext()) {
-                byte[] key = c.getBlob(0);
-                currentKeys.add(keyToString(key));
+                unreferencedFilenames.put(c.getString(0), c.getString(1));
             }
 
         } catch (SQLException e) {
             logger.log(Level.SEVERE,
                     "SQL exception in purgeAttachments when updating attachments table", e);
-            return;  // not safe to continue
+            return 0;  // not safe to continue
         } finally {
             DatabaseUtils.closeCursorQuietly(c);
         }
 
-        try {
-
-            // Now iterate through the attachments_key_filename, deleting items we need to
-            // (both db row and file on disk).
-            File attachments = new File(attachmentsDir);
-            c = db.rawQuery(SQL_ATTACHMENTS_SELECT_KEYS_FILENAMES, null);
-            while (c.moveToNext()) {
-                String keyForFile = c.getString(0);
-
-                if (!currentKeys.contains(keyForFile)) {
-                    File f = new File(attachments, c.getString(1));
-                    try {
-                        boolean deleted = f.delete();
-                        if (deleted) {
-                            db.delete(ATTACHMENTS_KEY_FILENAME, "key = ?", new String[]{keyForFile});
-                        } else {
-                            logger.warning("Could not delete file from BLOB store: " +
-                                    f.getAbsolutePath());
-                        }
-                    } catch (SecurityException e) {
-                        String msg = String.format("SecurityException deleting %s from blob store",
-                                f.getAbsolutePath());
-                        logger.log(Level.WARNING, msg, e);
-                    }
+        // Now delete the unreferenced items (both db row and file on disk).
+        int removed = 0;
+        File attachments = new File(attachmentsDir);
+        for (Map.Entry<String, String> entry : unreferencedFilenames.entrySet()) {
+            String keyForFile = entry.getKey();
+            File f = new File(attachments, entry.getValue());
+            try {
+                boolean deleted = f.delete();
+                if (deleted) {
+                    db.delete(ATTACHMENTS_KEY_FILENAME, "key = ?", new String[]{keyForFile});
+                    removed++;
+                } else {
+                    logger.warning("Could not delete file from BLOB store: " +
+                            f.getAbsolutePath());
                 }
+            } catch (SecurityException e) {
+                String msg = String.format("SecurityException deleting %s from blob store",
+                        f.getAbsolutePath());
+                logger.log(Level.WARNING, msg, e);
             }
-
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE,
-                    "SQL exception in purgeAttachments when removing redundant attachments", e);
-        } finally {
-            DatabaseUtils.closeCursorQuietly(c);
         }
+        return removed;
     }
 
     private static String keyToString(byte[] key) {
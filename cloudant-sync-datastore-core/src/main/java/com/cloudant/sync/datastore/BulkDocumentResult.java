@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+/**
+ * <p>{@code BulkDocumentResult} objects describe the outcome for one document of a bulk
+ * operation such as {@link Datastore#createDocumentsFromRevisions(java.util.List)}.</p>
+ *
+ * <p>Either the operation succeeded, and {@link #getRevision()} returns the resulting
+ * revision, or it failed and {@link #getException()} returns the reason. A failure for one
+ * document doesn't affect the other documents in the bulk operation.</p>
+ *
+ * @api_public
+ */
+public class BulkDocumentResult {
+
+    private final DocumentRevision revision;
+
+    private final DocumentException exception;
+
+    /**
+     * <p>Construct the result for one document of a bulk operation.</p>
+     *
+     * <p>Note that this constructor is for internal use.</p>
+     *
+     * @param revision the resulting revision, or null if the operation failed
+     * @param exception the reason the operation failed, or null if it succeeded
+     *
+     * @api_private
+     */
+    public BulkDocumentResult(DocumentRevision revision, DocumentException exception) {
+        this.revision = revision;
+        this.exception = exception;
+    }
+
+    /**
+     * @return true if the operation succeeded for this document
+     */
+    public boolean isSuccessful() {
+        return exception == null;
+    }
+
+    /**
+     * @return true if the operation failed because the revision passed in wasn't a leaf
+     * revision, or because the document already exists when creating a document
+     */
+    public boolean isConflict() {
+        return exception instanceof ConflictException;
+    }
+
+    /**
+     * <p>Returns the revision resulting from the operation: the new revision for a create or
+     * update, or the tombstone revision for a delete.</p>
+     *
+     * @return the resulting revision, or null if the operation failed
+     */
+    public DocumentRevision getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return the reason the operation failed, or null if it succeeded
+     */
+    public DocumentException getException() {
+        return exception;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Iterates over the documents changed in a datastore after a sequence number, in the order
+ * of their latest changes.</p>
+ *
+ * <p>Changes are read from the database a batch at a time, each batch starting after the last
+ * sequence of the one before. While one batch is being iterated over, the next is read in the
+ * background, so at most two batches are held in memory however many changes there are.</p>
+ *
+ * <p>Each document is returned once, as its winning revision when its batch was read. A
+ * document changed again while the iterator is in use may be returned again, later.</p>
+ *
+ * <p>If the iterator was created to return metadata only, each revision is a
+ * {@link ProjectedDocumentRevision} with an empty body and no attachments, and
+ * {@link DocumentRevision#toFullRevision()} reads the whole revision.</p>
+ *
+ * @see Datastore#changesIterator(long, int, boolean)
+ *
+ * @api_public
+ */
+public class ChangesIterator implements Iterator<DocumentRevision> {
+
+    /**
+     * Reads a batch of changes from the datastore.
+     */
+    interface BatchReader {
+        Future<Changes> read(long since, int limit);
+    }
+
+    private final BatchReader reader;
+    private final int batchSize;
+
+    private List<DocumentRevision> batch;
+    private int position;
+    // last sequence of the batch being iterated over, and of the one before it
+    private long batchLastSequence;
+    private long previousLastSequence;
+    private Future<Changes> next;
+
+    ChangesIterator(BatchReader reader, long since, int batchSize) {
+        this.reader = reader;
+        this.batchSize = batchSize;
+        this.batchLastSequence = since;
+        this.previousLastSequence = since;
+        this.next = reader.read(since, batchSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (batch == null || position == batch.size()) {
+            if (next == null) {
+                return false;
+            }
+            Changes changes;
+            try {
+                changes = DatastoreImpl.get(next);
+            } catch (ExecutionException e) {
+                next = null;
+                throw new IllegalStateException("Failed to get changes", e);
+            }
+            batch = changes.getResults();
+            position = 0;
+            previousLastSequence = batchLastSequence;
+            batchLastSequence = changes.getLastSequence();
+            // a short batch is the last, otherwise read the next while this one is used
+            next = batch.size() < batchSize ? null : reader.read(batchLastSequence, batchSize);
+        }
+        return true;
+    }
+
+    @Override
+    public DocumentRevision next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, changes can't be removed
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Changes can't be removed");
+    }
+
+    /**
+     * <p>Returns a sequence number which iterating over changes again could start from without
+     * missing any change not yet returned by {@link #next()}.</p>
+     *
+     * <p>Once every revision of a batch has been returned, this is the last sequence of the
+     * batch, so callers which process changes in groups of the batch size can store it as a
+     * checkpoint after each group. Before then it's the last sequence of the batch before.</p>
+     *
+     * @return sequence number to continue iterating over changes from
+     */
+    public long getLastSequence() {
+        if (batch != null && position == batch.size()) {
+            return batchLastSequence;
+        }
+        return previousLastSequence;
+    }
+
+}
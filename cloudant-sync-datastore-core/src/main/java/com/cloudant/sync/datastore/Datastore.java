@@ -18,6 +18,7 @@
 package com.cloudant.sync.datastore;
 
 import com.cloudant.sync.event.EventBus;
+import com.cloudant.sync.sqlite.SQLQueueMetrics;
 
 import java.util.Iterator;
 import java.util.List;
@@ -136,6 +137,11 @@ public interface Datastore {
      * returns up to {@code limit} document revisions, stopping either
      * at {@code limit} or when the list of document is exhausted.</p>
      *
+     * <p>The skipped documents are still read from the database, so paging
+     * through many documents this way gets slower with each page. Use
+     * {@link #iterateAllDocuments(DocumentOrder, boolean, int, boolean)}
+     * instead.</p>
+     *
      * @param offset start position
      * @param limit maximum number of documents to return
      * @param descending whether the documents are read in ascending or
@@ -152,6 +158,67 @@ public interface Datastore {
      */
     List<String> getAllDocumentIds();
 
+    /**
+     * <p>Returns an iterator over the current winning revisions of all
+     * non-deleted documents in the datastore.</p>
+     *
+     * <p>Documents are read from the database {@code batchSize} at a time as
+     * the iterator is used, each batch continuing from the last document of
+     * the one before, so any number of documents can be iterated over
+     * without holding them all in memory.</p>
+     *
+     * @param order the order of the documents
+     * @param descending whether the documents are returned in descending
+     *                   order
+     * @param batchSize the number of documents read from the database at a
+     *                  time
+     * @param metadataOnly if true, return revisions without reading their
+     *                     bodies or attachments
+     * @return iterator over the documents
+     * @see DocumentIterator
+     */
+    DocumentIterator iterateAllDocuments(DocumentOrder order, boolean descending, int batchSize,
+                                         boolean metadataOnly);
+
+    /**
+     * <p>Returns an iterator over the IDs of all non-deleted documents in
+     * the datastore.</p>
+     *
+     * <p>IDs are read from the database {@code batchSize} at a time as the
+     * iterator is used, so any number of IDs can be iterated over without
+     * holding them all in memory.</p>
+     *
+     * @param order the order of the IDs
+     * @param batchSize the number of IDs read from the database at a time
+     * @return iterator over the document IDs
+     */
+    Iterator<String> iterateAllDocumentIds(DocumentOrder order, int batchSize);
+
+    /**
+     * <p>Returns an iterator over the current winning revisions of the
+     * non-deleted documents whose IDs are between {@code startKey} and
+     * {@code endKey} inclusive, in document ID order.</p>
+     *
+     * <p>IDs are compared by their UTF-8 bytes, so the documents whose IDs
+     * start with a prefix are those between the prefix and the prefix
+     * followed by {@code "\uffff"}. The documents are found with the index
+     * on document IDs and read a batch at a time as the iterator is used, so
+     * IDs with a common prefix, such as a time period, can be used to read
+     * related documents without a query index.</p>
+     *
+     * @param startKey the lowest document ID to return, or null to start
+     *                 at the first document
+     * @param endKey the highest document ID to return, or null to end at
+     *               the last document
+     * @param limit maximum number of documents to return
+     * @param descending whether the documents are returned in descending
+     *                   order of ID. The range is the same either way.
+     * @return iterator over the documents in the range
+     * @see DocumentIterator
+     */
+    DocumentIterator getDocumentsInIdRange(String startKey, String endKey, int limit,
+                                           boolean descending);
+
     /**
      * <p>Returns the current winning revisions for a set of documents.</p>
      *
@@ -166,6 +233,28 @@ public interface Datastore {
      */
     List<DocumentRevision> getDocumentsWithIds(List<String> documentIds) throws DocumentException;
 
+    /**
+     * <p>Returns the metadata of the current winning revisions for a set of
+     * documents, without reading their bodies or attachments.</p>
+     *
+     * <p>Each revision is a {@link ProjectedDocumentRevision} with its
+     * document ID, revision ID, sequence number and whether it is deleted,
+     * and an empty body. {@link DocumentRevision#toFullRevision()} reads the
+     * whole revision.</p>
+     *
+     * <p>As for {@link #getDocumentsWithIds(List)}, document IDs not present
+     * in the datastore are skipped, and the revisions are in the order of
+     * {@code documentIds}.</p>
+     *
+     * @param documentIds list of document id
+     * @return list of metadata-only {@code DocumentRevision} objects.
+     * @throws com.cloudant.sync.datastore.DocumentException if there was an error retrieving the
+     * documents.
+     * @see #changesIterator(long, int, boolean)
+     */
+    List<DocumentRevision> getDocumentMetadata(List<String> documentIds) throws
+            DocumentException;
+
     /**
      * <p>Retrieves the datastore's current sequence number.</p>
      *
@@ -191,18 +280,40 @@ public interface Datastore {
     int getDocumentCount();
 
     /**
-     * <p>Returns a list of changed documents, from {@code since} to
-     * {@code since + limit}, inclusive.</p>
+     * <p>Returns a list of up to {@code limit} documents changed after
+     * {@code since}, in the order of their latest changes.</p>
+     *
+     * <p>Each document is listed once, at the sequence number of its latest
+     * change, so the last sequence number of the change set can be passed as
+     * {@code since} to get the next change set.</p>
      *
      * @param since the lower bound (exclusive) of the change set
      *              sequence number
-     * @param limit {@code since + limit} is the upper bound (inclusive) of the
-     *              change set sequence number
+     * @param limit the maximum number of changed documents to return
      * @return list of the documents and last sequence number of the change set
      *      (checkpoint)
      */
     Changes changes(long since, int limit);
 
+    /**
+     * <p>Returns an iterator over the documents changed after {@code since},
+     * in the order of their latest changes.</p>
+     *
+     * <p>Changes are read from the database {@code batchSize} at a time as
+     * the iterator is used, so any number of changes can be iterated over
+     * without holding them all in memory.</p>
+     *
+     * @param since the lower bound (exclusive) of the sequence numbers of the
+     *              changes
+     * @param batchSize the number of changed documents read from the
+     *                  database at a time
+     * @param metadataOnly if true, return revisions without reading their
+     *                     bodies or attachments
+     * @return iterator over the changed documents
+     * @see ChangesIterator
+     */
+    ChangesIterator changesIterator(long since, int batchSize, boolean metadataOnly);
+
     /**
      * <p>Returns the EventBus which this Datastore posts
      * {@link com.cloudant.sync.notifications.DocumentModified Document Notification Events} to.</p>
@@ -319,6 +430,72 @@ public interface Datastore {
      */
     DocumentRevision deleteDocumentFromRevision(DocumentRevision rev) throws ConflictException;
 
+    /**
+     * <p>Adds new documents with bodies and attachments from {@code revs}.</p>
+     *
+     * <p>This is equivalent to calling {@link #createDocumentFromRevision(DocumentRevision)}
+     * for each revision, but writes many documents in each database transaction, which is much
+     * faster when creating a large number of documents.</p>
+     *
+     * <p>Each document succeeds or fails on its own; a failure, for example because a document
+     * with the same ID already exists, doesn't prevent the other documents being created. The
+     * outcome for each document is returned in the same order as {@code revs}.</p>
+     *
+     * <p>A {@link com.cloudant.sync.notifications.DocumentCreated DocumentCreated}
+     * event is posted on the event bus for each document created, once the transaction it was
+     * written in has been committed.</p>
+     *
+     * @param revs the {@code DocumentRevision}s to be created
+     * @return the result for each revision in {@code revs}
+     * @see #createDocumentFromRevision(DocumentRevision)
+     * @see Datastore#getEventBus()
+     */
+    List<BulkDocumentResult> createDocumentsFromRevisions(List<DocumentRevision> revs);
+
+    /**
+     * <p>Updates documents with bodies and attachments from {@code revs}.</p>
+     *
+     * <p>This is equivalent to calling {@link #updateDocumentFromRevision(DocumentRevision)}
+     * for each revision, but writes many documents in each database transaction.</p>
+     *
+     * <p>Each document succeeds or fails on its own; if a revision isn't the current revision
+     * of its document the result for that revision is a conflict, see
+     * {@link BulkDocumentResult#isConflict()}. The outcome for each document is returned in the
+     * same order as {@code revs}.</p>
+     *
+     * <p>A {@link com.cloudant.sync.notifications.DocumentUpdated DocumentUpdated}
+     * event is posted on the event bus for each document updated, once the transaction it was
+     * written in has been committed.</p>
+     *
+     * @param revs the {@code DocumentRevision}s to be updated
+     * @return the result for each revision in {@code revs}
+     * @see #updateDocumentFromRevision(DocumentRevision)
+     * @see Datastore#getEventBus()
+     */
+    List<BulkDocumentResult> updateDocumentsFromRevisions(List<DocumentRevision> revs);
+
+    /**
+     * <p>Deletes documents from the datastore.</p>
+     *
+     * <p>This is equivalent to calling {@link #deleteDocumentFromRevision(DocumentRevision)}
+     * for each revision, but writes many documents in each database transaction.</p>
+     *
+     * <p>Each document succeeds or fails on its own; if a revision isn't a leaf revision of its
+     * document the result for that revision is a conflict, see
+     * {@link BulkDocumentResult#isConflict()}. The outcome for each document is returned in the
+     * same order as {@code revs}.</p>
+     *
+     * <p>A {@link com.cloudant.sync.notifications.DocumentDeleted DocumentDeleted}
+     * event is posted on the event bus for each document deleted, once the transaction it was
+     * written in has been committed.</p>
+     *
+     * @param revs the {@code DocumentRevision}s to be deleted
+     * @return the result for each revision in {@code revs}
+     * @see #deleteDocumentFromRevision(DocumentRevision)
+     * @see Datastore#getEventBus()
+     */
+    List<BulkDocumentResult> deleteDocumentsFromRevisions(List<DocumentRevision> revs);
+
     /**
      * <p>Delete all leaf revisions for the document</p>
      *
@@ -336,8 +513,49 @@ public interface Datastore {
 
     /**
      * Compacts the sqlDatabase storage by removing the bodies and attachments of obsolete revisions.
+     * The database file is then rewritten with a full vacuum, which switches databases created
+     * by older versions of this library to the auto_vacuum mode needed by
+     * {@link #compactIncrementally(int, long)}.
      */
     void compact();
 
+    /**
+     * <p>Starts compacting the sqlDatabase storage a step at a time, in the
+     * background.</p>
+     *
+     * <p>Each step processes at most {@code itemsPerStep} revisions, stored
+     * bodies, attachments or database pages, and stops early after
+     * {@code millisPerStep}, so other reads and writes wait for at most one
+     * step. Unlike {@link #compact()}, the database file is shrunk with
+     * SQLite's incremental vacuum rather than being rewritten.</p>
+     *
+     * @param itemsPerStep maximum number of items each step processes
+     * @param millisPerStep time after which each step stops early
+     * @return the compaction, which can be paused, resumed and cancelled
+     * @see IncrementalCompaction
+     */
+    IncrementalCompaction compactIncrementally(int itemsPerStep, long millisPerStep);
+
+    /**
+     * <p>Returns a snapshot of how long operations on this datastore have spent waiting for
+     * the database, executing and committing, grouped by the kind of operation.</p>
+     *
+     * <p>A high wait time relative to execution time shows that operations are queueing
+     * behind each other, for example behind a replication.</p>
+     *
+     * @return the metrics recorded since the datastore was opened
+     * @see DatastoreOptions#queueMetricsListener(com.cloudant.sync.sqlite.SQLQueueMetricsListener)
+     */
+    SQLQueueMetrics getQueueMetrics();
+
+    /**
+     * <p>Returns the statistics of the cache of current document revisions used by
+     * {@link #getDocument(String)}.</p>
+     *
+     * @return the cache's statistics, or null if the cache isn't enabled
+     * @see DatastoreOptions#documentCache(int, long)
+     */
+    DocumentCacheStats getDocumentCacheStats();
+
 }
 
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+/**
+ * <p>Receives the outcome of an asynchronous datastore operation, see
+ * {@link DatastoreFuture#addCallback(DatastoreCallback)}.</p>
+ *
+ * <p>Exactly one of the methods is called, once.</p>
+ *
+ * @param <T> The type of the operation's result
+ *
+ * @api_public
+ */
+public interface DatastoreCallback<T> {
+
+    /**
+     * Called when the operation completes successfully.
+     * @param result The result of the operation
+     */
+    void onSuccess(T result);
+
+    /**
+     * Called when the operation fails or is cancelled.
+     * @param t The reason the operation failed, for example a {@link DocumentNotFoundException}
+     *          or a {@link ConflictException}, or a
+     *          {@link java.util.concurrent.CancellationException} if the operation was cancelled
+     */
+    void onFailure(Throwable t);
+
+}
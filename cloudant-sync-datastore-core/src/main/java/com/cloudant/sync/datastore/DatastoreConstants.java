@@ -167,4 +167,61 @@ class DatastoreConstants {
         };
     }
 
+    public static String[] getSchemaVersion300() {
+        return new String[]{
+                // add a leaf flag to revs, so that leaf revisions can be found without
+                // searching the parents of every revision in the database; it is cleared on a
+                // revision's parent when the revision is inserted
+                "    ALTER TABLE revs ADD COLUMN leaf BOOLEAN DEFAULT 1; ",
+                "    UPDATE revs SET leaf = 0 WHERE sequence IN " +
+                "        (SELECT DISTINCT parent FROM revs WHERE parent NOT NULL); ",
+                "    CREATE INDEX revs_leaf ON revs(doc_id, leaf, deleted); "
+        };
+    }
+
+    public static String[] getSchemaVersion301() {
+        return new String[]{
+                // add the generation of each revision, so that possible ancestors can be found
+                // without parsing every revision ID of a document; casting a revision ID to an
+                // integer takes the generation before its "-"
+                "    ALTER TABLE revs ADD COLUMN generation INTEGER; ",
+                "    UPDATE revs SET generation = CAST(revid AS INTEGER); ",
+                "    CREATE INDEX revs_generation ON revs(doc_id, generation); "
+        };
+    }
+
+    public static String[] getSchemaVersion400() {
+        return new String[]{
+                // move the JSON bodies of revisions into their own table, keyed by the sequence
+                // of the revision, so that scans of the revision tree only read narrow rows;
+                // revs.json is left in place, as SQLite can't drop columns, but is always null
+                "    CREATE TABLE bodies ( " +
+                "        sequence INTEGER PRIMARY KEY REFERENCES revs(sequence) ON DELETE CASCADE, " +
+                "        json BLOB NOT NULL); ",
+                "    INSERT INTO bodies (sequence, json) " +
+                "        SELECT sequence, json FROM revs WHERE json NOT NULL; ",
+                "    UPDATE revs SET json = NULL WHERE json NOT NULL; "
+        };
+    }
+
+    public static String[] getSchemaVersion401() {
+        return new String[]{
+                // bodies may instead be stored once in shared_bodies, keyed by their SHA-1
+                // digest and counting the rows of bodies which refer to them; rebuild bodies so
+                // that a row can hold either the json or the digest of a shared body
+                "    CREATE TABLE shared_bodies ( " +
+                "        digest BLOB PRIMARY KEY, " +
+                "        json BLOB NOT NULL, " +
+                "        refs INTEGER NOT NULL DEFAULT 0); ",
+                "    CREATE TABLE new_bodies ( " +
+                "        sequence INTEGER PRIMARY KEY REFERENCES revs(sequence) ON DELETE CASCADE, " +
+                "        json BLOB, " +
+                "        digest BLOB, " +
+                "        CHECK (json NOT NULL OR digest NOT NULL)); ",
+                "    INSERT INTO new_bodies (sequence, json) SELECT sequence, json FROM bodies; ",
+                "    DROP TABLE bodies; ",
+                "    ALTER TABLE new_bodies RENAME TO bodies; "
+        };
+    }
+
 }
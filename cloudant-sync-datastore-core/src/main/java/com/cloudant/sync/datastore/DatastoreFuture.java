@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.sqlite.SQLQueueFuture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * <p>The pending result of an asynchronous datastore operation, such as those of
+ * {@link AsyncDatastore}.</p>
+ *
+ * <p>As well as blocking on {@link #get()}, callers can register a {@link DatastoreCallback}
+ * to be notified when the operation completes, without tying up a thread while it runs.</p>
+ *
+ * @param <T> The type of the operation's result
+ *
+ * @api_public
+ */
+public class DatastoreFuture<T> extends SQLQueueFuture<T> {
+
+    /**
+     * The task this future's result is derived from, or null.
+     */
+    private final Future<?> source;
+
+    /**
+     * Creates a future which, when run, completes with the result of {@code callable}.
+     * @param callable The operation to run
+     */
+    public DatastoreFuture(Callable<T> callable) {
+        this(callable, null);
+    }
+
+    /**
+     * @param callable The operation to run
+     * @param source A task which is cancelled if this future is cancelled, or null
+     */
+    DatastoreFuture(Callable<T> callable, Future<?> source) {
+        super(callable);
+        this.source = source;
+    }
+
+    /**
+     * <p>Registers a callback which is called when the operation completes.</p>
+     *
+     * <p>The callback is called on the thread which completes the operation. For
+     * {@link AsyncDatastore} this is the datastore's database thread, so the callback should be
+     * quick and must not call the blocking methods of {@link Datastore}: the database thread
+     * can't run them until the callback returns. Use
+     * {@link #addCallback(DatastoreCallback, Executor)} for callbacks which do more work. If the
+     * operation has already completed the callback is called immediately on the calling
+     * thread.</p>
+     *
+     * @param callback The callback to notify
+     */
+    public void addCallback(final DatastoreCallback<? super T> callback) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                notifyCallback(callback);
+            }
+        });
+    }
+
+    /**
+     * Registers a callback which is called using {@code executor} when the operation completes.
+     *
+     * @param callback The callback to notify
+     * @param executor The executor used to call the callback
+     */
+    public void addCallback(final DatastoreCallback<? super T> callback, final Executor executor) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        notifyCallback(callback);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * <p>Attempts to cancel the operation.</p>
+     *
+     * <p>An operation can only be cancelled before it has started running on the database
+     * thread. Once started it runs to completion, though this future will still report that it
+     * was cancelled if this method returns true.</p>
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && source != null) {
+            source.cancel(false);
+        }
+        return cancelled;
+    }
+
+    private void notifyCallback(DatastoreCallback<? super T> callback) {
+        T result;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            callback.onFailure(e.getCause());
+            return;
+        } catch (CancellationException e) {
+            callback.onFailure(e);
+            return;
+        } catch (InterruptedException e) {
+            // not expected, the operation has already completed
+            Thread.currentThread().interrupt();
+            callback.onFailure(e);
+            return;
+        }
+        callback.onSuccess(result);
+    }
+
+}
@@ -20,7 +20,7 @@
 package com.cloudant.sync.datastore;
 
 import com.cloudant.common.ChangeNotifyingMap;
-import com.cloudant.common.ValueListMap;
+import com.cloudant.sync.datastore.callables.BulkDocumentCallable;
 import com.cloudant.sync.datastore.callables.ChangesCallable;
 import com.cloudant.sync.datastore.callables.CompactCallable;
 import com.cloudant.sync.datastore.callables.DeleteAllRevisionsCallable;
@@ -33,10 +33,13 @@ import com.cloudant.sync.datastore.callables.GetAllRevisionsOfDocumentCallable;
 import com.cloudant.sync.datastore.callables.GetConflictedDocumentIdsCallable;
 import com.cloudant.sync.datastore.callables.GetDocumentCallable;
 import com.cloudant.sync.datastore.callables.GetDocumentCountCallable;
+import com.cloudant.sync.datastore.callables.GetDocumentsPageCallable;
 import com.cloudant.sync.datastore.callables.GetDocumentsWithIdsCallable;
 import com.cloudant.sync.datastore.callables.GetDocumentsWithInternalIdsCallable;
 import com.cloudant.sync.datastore.callables.GetLastSequenceCallable;
+import com.cloudant.sync.datastore.callables.GetMetadataWithIdsCallable;
 import com.cloudant.sync.datastore.callables.GetLocalDocumentCallable;
+import com.cloudant.sync.datastore.callables.GetPossibleAncestorRevisionIdsBatchCallable;
 import com.cloudant.sync.datastore.callables.GetPossibleAncestorRevisionIdsCallable;
 import com.cloudant.sync.datastore.callables.GetSequenceCallable;
 import com.cloudant.sync.datastore.callables.InsertDocumentIDCallable;
@@ -61,7 +64,7 @@ import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.sqlite.SQLDatabaseQueue;
-import com.cloudant.sync.util.CollectionUtils;
+import com.cloudant.sync.sqlite.SQLQueueMetrics;
 import com.cloudant.sync.util.CouchUtils;
 import com.cloudant.sync.util.DatabaseUtils;
 import com.cloudant.sync.util.JSONUtils;
@@ -79,8 +82,11 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -95,7 +101,12 @@ public class DatastoreImpl implements Datastore {
     public static final String METADATA_COLS = "docs.docid, docs.doc_id, revid, sequence, " +
             "current, deleted, parent";
 
-    public static final String FULL_DOCUMENT_COLS = METADATA_COLS + ", json";
+    // bodies are looked up by sequence only for the rows a query returns; a body stored in
+    // shared_bodies has a null json and is found by its digest
+    public static final String FULL_DOCUMENT_COLS = METADATA_COLS + ", (SELECT " +
+            "COALESCE(bodies.json, shared_bodies.json) FROM bodies LEFT OUTER JOIN " +
+            "shared_bodies ON shared_bodies.digest = bodies.digest " +
+            "WHERE bodies.sequence = revs.sequence) AS json";
 
     public static final String CURRENT_REVISION_CLAUSES =
             "FROM revs, docs WHERE docs.docid=? AND revs.doc_id=docs.doc_id AND current=1 ORDER " +
@@ -123,8 +134,13 @@ public class DatastoreImpl implements Datastore {
 
     public static final String GET_DOC_NUMERIC_ID = "SELECT doc_id from docs WHERE docid=?";
 
-    public static final String SQL_CHANGE_IDS_SINCE_LIMIT = "SELECT doc_id, max(sequence) FROM " +
-            "revs WHERE sequence > ? AND sequence <= ? GROUP BY doc_id ";
+    // Each document changed after a sequence, at the sequence of its latest revision. Pages are
+    // read by keyset on sequence, so each reads up to limit changes however sparse the
+    // sequences are, and older revisions of documents changed again later are skipped.
+    public static final String SQL_CHANGE_IDS_SINCE_LIMIT = "SELECT revs.doc_id, sequence, " +
+            "docid FROM revs, docs WHERE sequence > ? AND docs.doc_id = revs.doc_id AND " +
+            "NOT EXISTS (SELECT 1 FROM revs AS later WHERE later.doc_id = revs.doc_id AND " +
+            "later.sequence > revs.sequence) ORDER BY sequence LIMIT ?";
 
     // † N.B. whilst there should only ever be a single result bugs have resulted in duplicate
     // revision IDs in the tree. Whilst it appears that the lowest sequence number is always
@@ -136,6 +152,22 @@ public class DatastoreImpl implements Datastore {
     // http://www.sqlite.org/limits.html
     public static final int SQLITE_QUERY_PLACEHOLDERS_LIMIT = 500;
 
+    /**
+     * Number of documents written in each transaction by the bulk create, update and delete
+     * methods.
+     */
+    static final int BULK_CHUNK_SIZE = 500;
+
+    /**
+     * Maximum number of documents read at a time by the iterator over a range of document IDs.
+     */
+    private static final int ID_RANGE_BATCH_SIZE = 100;
+
+    /**
+     * Number of document IDs whose numeric IDs are cached.
+     */
+    private static final int DOC_ID_CACHE_SIZE = 8192;
+
     private final String datastoreName;
     private final EventBus eventBus;
 
@@ -167,6 +199,29 @@ public class DatastoreImpl implements Datastore {
      */
     private final AttachmentStreamFactory attachmentStreamFactory;
 
+    /**
+     * Current revisions of recently read documents, disabled unless configured in the
+     * {@link DatastoreOptions}.
+     */
+    private final DocumentRevisionCache documentCache;
+
+    /**
+     * Numeric IDs of recently used documents, owned by the writer thread.
+     */
+    private final DocumentIdCache docIdCache = new DocumentIdCache(DOC_ID_CACHE_SIZE);
+
+    /**
+     * Writes the bodies of new revisions, deduplicating and encoding them as configured in the
+     * {@link DatastoreOptions}.
+     */
+    private final RevisionBodyStore bodyStore;
+
+    /**
+     * Incremental compactions which haven't finished, cancelled when the datastore is closed.
+     */
+    private final Set<IncrementalCompaction> compactions = Collections.newSetFromMap(
+            new ConcurrentHashMap<IncrementalCompaction, Boolean>());
+
     public DatastoreImpl(String dir, String name) throws SQLException, IOException,
             DatastoreException {
         this(dir, name, new NullKeyProvider());
@@ -182,21 +237,62 @@ public class DatastoreImpl implements Datastore {
      */
     public DatastoreImpl(String dir, String name, KeyProvider provider) throws SQLException,
             IOException, DatastoreException {
+        this(dir, name, provider, new DatastoreOptions());
+    }
+
+    /**
+     * Constructor for SQLCipher-based datastore with tuning options.
+     * @param dir The directory where the datastore will be created
+     * @param name The user-defined name of the datastore
+     * @param provider The key provider object that contains the user-defined SQLCipher key
+     * @param options Tuning options for the datastore
+     * @throws SQLException
+     * @throws IOException
+     */
+    public DatastoreImpl(String dir, String name, KeyProvider provider, DatastoreOptions options)
+            throws SQLException, IOException, DatastoreException {
         Misc.checkNotNull(dir, "Directory");
         Misc.checkNotNull(name, "Datastore name");
         Misc.checkNotNull(provider, "Key provider");
+        Misc.checkNotNull(options, "Datastore options");
 
         this.keyProvider = provider;
         this.datastoreDir = dir;
         this.datastoreName = name;
         this.extensionsDir = FilenameUtils.concat(this.datastoreDir,"extensions");
         final String dbFilename = FilenameUtils.concat(this.datastoreDir, DB_FILE_NAME);
-        queue = new SQLDatabaseQueue(dbFilename, provider);
+        queue = new SQLDatabaseQueue(dbFilename, provider, options.getReaderConnections(),
+                new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                // lets incremental vacuum return pages freed by compaction to the file system;
+                // this only takes effect when the database is created, or on the next VACUUM,
+                // and must be set before the journal mode is
+                db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+                return null;
+            }
+        });
+        if (options.getGroupCommitMaxTransactions() > 1) {
+            queue.enableGroupCommit(options.getGroupCommitMaxTransactions(),
+                    options.getGroupCommitMaxDelayMillis(), TimeUnit.MILLISECONDS);
+        }
+        queue.setMetricsListener(options.getQueueMetricsListener());
+        documentCache = new DocumentRevisionCache(options.getDocumentCacheMaxDocuments(),
+                options.getDocumentCacheMaxBodyBytes());
+        bodyStore = new RevisionBodyStore(options.isDeduplicateBodies(),
+                options.getBodyEncoding());
+        queue.setAfterTaskListener(new Runnable() {
+            @Override
+            public void run() {
+                docIdCache.writeFinished();
+                documentCache.writeFinished();
+            }
+        });
 
         int dbVersion = queue.getVersion();
         // Increment the hundreds position if a schema change means that older
         // versions of the code will not be able to read the migrated database.
-        int highestSupportedVersionExclusive = 300;
+        int highestSupportedVersionExclusive = 500;
         if (dbVersion >= highestSupportedVersionExclusive) {
             throw new DatastoreException(String.format("Database version is higher than the " +
                     "version supported by this library, current version %d , highest supported " +
@@ -209,6 +305,16 @@ public class DatastoreImpl implements Datastore {
         queue.updateSchema(new MigrateDatabase6To100(), 100);
         queue.updateSchema(new MigrateDatabase100To200(DatastoreConstants.getSchemaVersion200()),
                 200);
+        // older versions of the code don't maintain revs.leaf, so mustn't write to the database
+        queue.updateSchema(new SchemaOnlyMigration(DatastoreConstants.getSchemaVersion300()),
+                300);
+        queue.updateSchema(new SchemaOnlyMigration(DatastoreConstants.getSchemaVersion301()),
+                301);
+        // older versions of the code read bodies from revs.json, so mustn't read the database
+        queue.updateSchema(new SchemaOnlyMigration(DatastoreConstants.getSchemaVersion400()),
+                400);
+        queue.updateSchema(new SchemaOnlyMigration(DatastoreConstants.getSchemaVersion401()),
+                401);
         this.eventBus = new EventBus();
 
         this.attachmentsDir = this.extensionDataFolder(ATTACHMENTS_EXTENSION_NAME);
@@ -230,7 +336,7 @@ public class DatastoreImpl implements Datastore {
         Misc.checkState(this.isOpen(), "Database is closed");
 
         try {
-            return queue.submit(new GetLastSequenceCallable()).get();
+            return queue.submitReadOnly(new GetLastSequenceCallable()).get();
         } catch (InterruptedException e) {
             logger.log(Level.SEVERE, "Failed to get last Sequence", e);
             throw new RuntimeException(e);
@@ -250,7 +356,7 @@ public class DatastoreImpl implements Datastore {
     public int getDocumentCount() {
         Misc.checkState(this.isOpen(), "Database is closed");
         try {
-            return get(queue.submit(new GetDocumentCountCallable()));
+            return get(queue.submitReadOnly(new GetDocumentCountCallable()));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get document count", e);
         }
@@ -261,23 +367,22 @@ public class DatastoreImpl implements Datastore {
     @Override
     public boolean containsDocument(String docId, String revId) {
         Misc.checkState(this.isOpen(), "Database is closed");
+        Misc.checkNotNullOrEmpty(docId, "Document id");
+        if (documentCache.get(docId, revId) != null) {
+            return true;
+        }
         try {
-            // TODO this can be made quicker than getting the whole document
-            return getDocument(docId, revId) != null;
-        } catch (DocumentNotFoundException e) {
+            // only the revision's metadata is read, not its body or attachments
+            return get(queue.submitReadOnly(new GetSequenceCallable(docId, revId))) >= 0;
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Failed to check for document", e);
             return false;
         }
     }
 
     @Override
     public boolean containsDocument(String docId) {
-        Misc.checkState(this.isOpen(), "Database is closed");
-        try {
-            // TODO this can be made quicker than getting the whole document
-            return getDocument(docId) != null;
-        } catch (DocumentNotFoundException e) {
-            return false;
-        }
+        return containsDocument(docId, null);
     }
 
     @Override
@@ -292,8 +397,16 @@ public class DatastoreImpl implements Datastore {
         Misc.checkState(this.isOpen(), "Database is closed");
         Misc.checkNotNullOrEmpty(id, "Document id");
 
+        DocumentRevision cached = documentCache.get(id, rev);
+        if (cached != null) {
+            return cached;
+        }
         try {
-            return get(queue.submit(new GetDocumentCallable(id, rev, this.attachmentsDir, this.attachmentStreamFactory)));
+            long cacheVersion = documentCache.version();
+            DocumentRevision revision = get(queue.submitReadOnly(new GetDocumentCallable(id, rev,
+                    this.attachmentsDir, this.attachmentStreamFactory)));
+            documentCache.put(revision, cacheVersion);
+            return revision;
         } catch (ExecutionException e) {
             throw new DocumentNotFoundException(id, rev, e.getCause());
         }
@@ -311,7 +424,7 @@ public class DatastoreImpl implements Datastore {
     public DocumentRevisionTree getAllRevisionsOfDocument(final String docId) {
 
         try {
-            return get(queue.submit(new GetAllRevisionsOfDocumentCallable(docId, this.attachmentsDir, this.attachmentStreamFactory)));
+            return get(queue.submitReadOnly(new GetAllRevisionsOfDocumentCallable(docId, this.attachmentsDir, this.attachmentStreamFactory)));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get all revisions of document", e);
         }
@@ -320,12 +433,45 @@ public class DatastoreImpl implements Datastore {
 
     @Override
     public Changes changes(long since, final int limit) {
+        return changes(since, limit, SQLDatabaseQueue.Priority.NORMAL);
+    }
+
+    /**
+     * <p>Returns a list of changed documents, reading them from the database with the given
+     * priority.</p>
+     *
+     * @param since the lower bound (exclusive) of the sequence number range
+     * @param limit the maximum number of changed documents to return
+     * @param priority the priority of the database read, for example
+     *                 {@link SQLDatabaseQueue.Priority#BACKGROUND} when reading changes to
+     *                 replicate or index
+     * @return list of the changed documents
+     * @see #changes(long, int)
+     */
+    public Changes changes(long since, final int limit, SQLDatabaseQueue.Priority priority) {
+        return changes(since, limit, false, priority);
+    }
+
+    /**
+     * <p>Returns a list of changed documents, reading them from the database with the given
+     * priority, optionally without their bodies or attachments.</p>
+     *
+     * @param since the lower bound (exclusive) of the sequence number range
+     * @param limit the maximum number of changed documents to return
+     * @param metadataOnly if true, return revisions without reading their bodies or attachments
+     * @param priority the priority of the database read
+     * @return list of the changed documents
+     * @see #changes(long, int)
+     */
+    public Changes changes(long since, final int limit, boolean metadataOnly,
+                           SQLDatabaseQueue.Priority priority) {
         Misc.checkState(this.isOpen(), "Database is closed");
         Misc.checkArgument(limit > 0, "Limit must be positive number");
         final long verifiedSince = since >= 0 ? since : 0;
 
         try {
-            return get(queue.submit(new ChangesCallable(verifiedSince, limit, attachmentsDir, attachmentStreamFactory)));
+            return get(queue.submitReadOnly(new ChangesCallable(verifiedSince, limit,
+                    metadataOnly, this, attachmentsDir, attachmentStreamFactory), priority));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get changes", e);
             if (e.getCause() instanceof IllegalStateException) {
@@ -338,6 +484,37 @@ public class DatastoreImpl implements Datastore {
 
     }
 
+    @Override
+    public ChangesIterator changesIterator(long since, int batchSize, boolean metadataOnly) {
+        return changesIterator(since, batchSize, metadataOnly, SQLDatabaseQueue.Priority.NORMAL);
+    }
+
+    /**
+     * <p>Returns an iterator over changed documents, reading them from the database with the
+     * given priority.</p>
+     *
+     * @param since the lower bound (exclusive) of the sequence numbers of the changes
+     * @param batchSize the number of changed documents read from the database at a time
+     * @param metadataOnly if true, return revisions without reading their bodies or attachments
+     * @param priority the priority of the database reads
+     * @return iterator over the changed documents
+     * @see #changesIterator(long, int, boolean)
+     */
+    public ChangesIterator changesIterator(long since, int batchSize,
+                                           final boolean metadataOnly,
+                                           final SQLDatabaseQueue.Priority priority) {
+        Misc.checkState(this.isOpen(), "Database is closed");
+        Misc.checkArgument(batchSize > 0, "Batch size must be positive number");
+        final DatastoreImpl datastore = this;
+        return new ChangesIterator(new ChangesIterator.BatchReader() {
+            @Override
+            public Future<Changes> read(long since, int limit) {
+                return queue.submitReadOnly(new ChangesCallable(since, limit, metadataOnly,
+                        datastore, attachmentsDir, attachmentStreamFactory), priority);
+            }
+        }, since >= 0 ? since : 0, batchSize);
+    }
+
     /**
      * Get list of documents for given list of numeric ids. The result list is ordered by
      * sequence number,
@@ -350,7 +527,7 @@ public class DatastoreImpl implements Datastore {
         Misc.checkNotNull(docIds, "Input document internal id list");
 
         try {
-            return get(queue.submit(new GetDocumentsWithInternalIdsCallable(docIds, this.attachmentsDir, this.attachmentStreamFactory)));
+            return get(queue.submitReadOnly(new GetDocumentsWithInternalIdsCallable(docIds, this.attachmentsDir, this.attachmentStreamFactory)));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get documents using internal ids", e);
         }
@@ -368,7 +545,7 @@ public class DatastoreImpl implements Datastore {
             throw new IllegalArgumentException("limit must be >= 0");
         }
         try {
-            return get(queue.submit(new GetAllDocumentsCallable(offset, limit, descending, this.attachmentsDir, this.attachmentStreamFactory)));
+            return get(queue.submitReadOnly(new GetAllDocumentsCallable(offset, limit, descending, this.attachmentsDir, this.attachmentStreamFactory)));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get all documents", e);
         }
@@ -380,31 +557,124 @@ public class DatastoreImpl implements Datastore {
     public List<String> getAllDocumentIds() {
         Misc.checkState(this.isOpen(), "Database is closed");
         try {
-            return get(queue.submit(new GetAllDocumentIdsCallable()));
+            return get(queue.submitReadOnly(new GetAllDocumentIdsCallable()));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get all document ids", e);
         }
         return null;
     }
 
+    @Override
+    public DocumentIterator iterateAllDocuments(final DocumentOrder order,
+                                                final boolean descending,
+                                                int batchSize,
+                                                final boolean metadataOnly) {
+        Misc.checkState(this.isOpen(), "Database is closed");
+        Misc.checkNotNull(order, "Document order");
+        Misc.checkArgument(batchSize > 0, "Batch size must be positive number");
+        final DatastoreImpl datastore = this;
+        return new DocumentIterator(new DocumentIterator.BatchReader() {
+            @Override
+            public Future<List<DocumentRevision>> read(DocumentRevision after, int limit) {
+                return queue.submitReadOnly(new GetDocumentsPageCallable(order, descending,
+                        after, limit, metadataOnly, datastore, attachmentsDir,
+                        attachmentStreamFactory));
+            }
+        }, batchSize);
+    }
+
+    @Override
+    public DocumentIterator getDocumentsInIdRange(final String startKey, final String endKey,
+                                                  int limit, final boolean descending) {
+        Misc.checkState(this.isOpen(), "Database is closed");
+        Misc.checkArgument(limit > 0, "Limit must be positive number");
+        final DatastoreImpl datastore = this;
+        return new DocumentIterator(new DocumentIterator.BatchReader() {
+            @Override
+            public Future<List<DocumentRevision>> read(DocumentRevision after, int limit) {
+                return queue.submitReadOnly(new GetDocumentsPageCallable(
+                        DocumentOrder.DocumentId, descending, startKey, endKey, after, limit,
+                        false, datastore, attachmentsDir, attachmentStreamFactory));
+            }
+        }, Math.min(limit, ID_RANGE_BATCH_SIZE), limit);
+    }
+
+    @Override
+    public Iterator<String> iterateAllDocumentIds(DocumentOrder order, int batchSize) {
+        final DocumentIterator documents = iterateAllDocuments(order, false, batchSize, true);
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return documents.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return documents.next().getId();
+            }
+
+            @Override
+            public void remove() {
+                documents.remove();
+            }
+        };
+    }
+
     @Override
     public List<DocumentRevision> getDocumentsWithIds(final List<String> docIds) throws
             DocumentException {
         Misc.checkState(this.isOpen(), "Database is closed");
         Misc.checkNotNull(docIds, "Input document id list");
         try {
-            return get (queue.submit(new GetDocumentsWithIdsCallable(docIds, attachmentsDir, attachmentStreamFactory)));
+            return get (queue.submitReadOnly(new GetDocumentsWithIdsCallable(docIds, attachmentsDir, attachmentStreamFactory)));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get documents with ids", e);
             throw new DocumentException("Failed to get documents with ids", e);
         }
     }
 
+    @Override
+    public List<DocumentRevision> getDocumentMetadata(final List<String> docIds) throws
+            DocumentException {
+        Misc.checkState(this.isOpen(), "Database is closed");
+        Misc.checkNotNull(docIds, "Input document id list");
+        try {
+            return get(queue.submitReadOnly(new GetMetadataWithIdsCallable(docIds, this)));
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Failed to get document metadata with ids", e);
+            throw new DocumentException("Failed to get document metadata with ids", e);
+        }
+    }
+
     public List<String> getPossibleAncestorRevisionIDs(final String docId,
                                                        final String revId,
                                                        final int limit) {
         try {
-            return get(queue.submit(new GetPossibleAncestorRevisionIdsCallable(docId, revId, limit)));
+            return get(queue.submitReadOnly(new GetPossibleAncestorRevisionIdsCallable(docId, revId, limit,
+                    docIdCache),
+                    SQLDatabaseQueue.Priority.BACKGROUND));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * <p>Returns the possible ancestors of many revisions of many documents, reading all the
+     * documents with one query. For each revision, up to {@code limit} revision IDs of the
+     * same document with a lower generation are returned, as for
+     * {@link #getPossibleAncestorRevisionIDs(String, String, int)}.</p>
+     *
+     * @param revisions map of document ID to the revision IDs to find possible ancestors of
+     * @param limit maximum number of revision IDs to return for each revision
+     * @return map of document ID to the possible ancestors of all its given revisions, with no
+     * entry for documents which have none
+     */
+    public Map<String, List<String>> getPossibleAncestorRevisionIDs(
+            final Map<String, ? extends Collection<String>> revisions, final int limit) {
+        Misc.checkNotNull(revisions, "Input revisions");
+        try {
+            return get(queue.submitReadOnly(new GetPossibleAncestorRevisionIdsBatchCallable(
+                    revisions, limit), SQLDatabaseQueue.Priority.BACKGROUND));
         } catch (ExecutionException e) {
             throw new RuntimeException(e);
         }
@@ -445,7 +715,7 @@ public class DatastoreImpl implements Datastore {
     public LocalDocument getLocalDocument(final String docId) throws DocumentNotFoundException {
         Misc.checkState(this.isOpen(), "Database is closed");
         try {
-            return get(queue.submit(new GetLocalDocumentCallable(docId)));
+            return get(queue.submitReadOnly(new GetLocalDocumentCallable(docId)));
         } catch (ExecutionException e) {
             throw new DocumentNotFoundException(e);
         }
@@ -468,6 +738,7 @@ public class DatastoreImpl implements Datastore {
         // if it does not exist:
         // * normal insert logic for a new document
 
+        documentCache.invalidate(docId);
         InsertRevisionCallable callable = new InsertRevisionCallable();
         DocumentRevision potentialParent = null;
 
@@ -492,15 +763,16 @@ public class DatastoreImpl implements Datastore {
             callable.parentSequence = potentialParent.getSequence();
         } else {
             // otherwise we are doing a normal create document
-            long docNumericId = new InsertDocumentIDCallable(docId).call(db);
+            long docNumericId = new InsertDocumentIDCallable(docId, docIdCache).call(db);
             callable.revId = CouchUtils.getFirstRevisionId();
             callable.docNumericId = docNumericId;
             callable.parentSequence = -1l;
         }
         callable.deleted = false;
         callable.current = true;
-        callable.data = body.asBytes();
+        callable.data = DocumentBodyImpl.sharedBytes(body);
         callable.available = true;
+        callable.bodyStore = bodyStore;
         callable.call(db);
 
         try {
@@ -516,7 +788,7 @@ public class DatastoreImpl implements Datastore {
     }
 
     public static void validateDBBody(DocumentBody body) {
-        for (String name : body.asMap().keySet()) {
+        for (String name : DocumentBodyImpl.readOnlyMap(body).keySet()) {
             if (name.startsWith("_")) {
                 throw new InvalidDocumentException("Field name start with '_' is not allowed. ");
             }
@@ -567,7 +839,7 @@ public class DatastoreImpl implements Datastore {
     }
 
     public static InsertRevisionCallable insertStubRevisionAdaptor(long docNumericId, String revId, long
-            parentSequence) {
+            parentSequence, RevisionBodyStore bodyStore) {
         // don't copy attachments
         InsertRevisionCallable callable = new InsertRevisionCallable();
         callable.docNumericId = docNumericId;
@@ -577,6 +849,7 @@ public class DatastoreImpl implements Datastore {
         callable.current = false;
         callable.data = JSONUtils.emptyJSONObjectAsBytes();
         callable.available = false;
+        callable.bodyStore = bodyStore;
         return callable;
     }
 
@@ -585,15 +858,46 @@ public class DatastoreImpl implements Datastore {
             throws DocumentException,
             DatastoreException {
         List<DocumentRevision> result = new ArrayList<DocumentRevision>();
+        List<Long> sequences = new ArrayList<Long>();
         Cursor cursor = null;
         try {
-            cursor = db.rawQuery(sql, args);
+            cursor = db.rawQueryStreaming(sql, args);
             while (cursor.moveToNext()) {
-                long sequence = cursor.getLong(3);
-                List<? extends Attachment> atts = AttachmentManager.attachmentsForRevision(db, attachmentsDir, attachmentStreamFactory
-                        , sequence);
-                DocumentRevision row = getFullRevisionFromCurrentCursor(cursor, atts);
+                // attachments are added below, once they have been read for every row
+                DocumentRevision row = getFullRevisionFromCurrentCursor(cursor, null);
                 result.add(row);
+                sequences.add(row.getSequence());
+            }
+        } catch (SQLException e) {
+            throw new DatastoreException(e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+        Map<Long, List<SavedAttachment>> atts = AttachmentManager.attachmentsForRevisions(db,
+                attachmentsDir, attachmentStreamFactory, sequences);
+        for (DocumentRevision row : result) {
+            row.setAttachmentsInternal(atts.get(row.getSequence()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the revisions selected by a query for the {@link #METADATA_COLS}, without reading
+     * their bodies or attachments.
+     *
+     * @see #getMetadataRevisionFromCurrentCursor(Cursor, Datastore)
+     */
+    public static List<DocumentRevision> getMetadataRevisionsFromRawQuery(SQLDatabase db,
+                                                                          String sql,
+                                                                          String[] args,
+                                                                          Datastore datastore)
+            throws DatastoreException {
+        List<DocumentRevision> result = new ArrayList<DocumentRevision>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQueryStreaming(sql, args);
+            while (cursor.moveToNext()) {
+                result.add(getMetadataRevisionFromCurrentCursor(cursor, datastore));
             }
         } catch (SQLException e) {
             throw new DatastoreException(e);
@@ -616,7 +920,7 @@ public class DatastoreImpl implements Datastore {
     public String getPublicIdentifier() throws DatastoreException {
         Misc.checkState(this.isOpen(), "Database is closed");
         try {
-            return get(queue.submit(new SQLCallable<String>() {
+            return get(queue.submitReadOnly(new SQLCallable<String>() {
                 @Override
                 public String call(SQLDatabase db) throws Exception {
                     Cursor cursor = null;
@@ -736,7 +1040,10 @@ public class DatastoreImpl implements Datastore {
 
         try {
             // for raising events after completing database transaction
-            List<DocumentModified> events = queue.submitTransaction(new ForceInsertCallable(items, attachmentsDir, attachmentStreamFactory)).get();
+            // replication inserts shouldn't hold up other users of the datastore
+            List<DocumentModified> events = queue.submitTransaction(new ForceInsertCallable(items,
+                    attachmentsDir, attachmentStreamFactory, documentCache, docIdCache, bodyStore),
+                    SQLDatabaseQueue.Priority.BACKGROUND).get();
 
             // if we got here, everything got written to the database successfully
             // now raise any events we stored up
@@ -797,15 +1104,39 @@ public class DatastoreImpl implements Datastore {
     @Override
     public void compact() {
         try {
-            get(queue.submit(new CompactCallable(this.attachmentsDir)));
+            get(queue.submit(new CompactCallable(this.attachmentsDir, documentCache, bodyStore),
+                    SQLDatabaseQueue.Priority.BACKGROUND));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to compact database", e);
         }
 
     }
 
+    @Override
+    public IncrementalCompaction compactIncrementally(int itemsPerStep, long millisPerStep) {
+        Misc.checkState(this.isOpen(), "Database is closed");
+        Misc.checkArgument(itemsPerStep > 0, "Items per step must be positive number");
+        Misc.checkArgument(millisPerStep > 0, "Time per step must be positive number");
+        final IncrementalCompaction compaction = new IncrementalCompaction(datastoreName, queue,
+                eventBus, attachmentsDir, documentCache, bodyStore, itemsPerStep, millisPerStep);
+        compactions.add(compaction);
+        compaction.getCompletion().addListener(new Runnable() {
+            @Override
+            public void run() {
+                compactions.remove(compaction);
+            }
+        });
+        compaction.start();
+        return compaction;
+    }
+
     @Override
     public void close() {
+        // stop compactions before their steps are rejected, and wake any which are paused so
+        // their threads don't wait forever
+        for (IncrementalCompaction compaction : compactions) {
+            compaction.cancel();
+        }
         queue.shutdown();
         eventBus.post(new DatabaseClosed(datastoreName));
 
@@ -843,31 +1174,9 @@ public class DatastoreImpl implements Datastore {
         Misc.checkState(this.isOpen(), "Database is closed");
         Misc.checkNotNull(revisions, "Input revisions");
 
-        // TODO hoist down queue.submit to just surround the call to RevsDiffBatchCallable
         try {
-            return get(queue.submit(new SQLCallable<Map<String, List<String>>>() {
-                @Override
-                public Map<String, List<String>> call(SQLDatabase db) throws Exception {
-
-                    ValueListMap<String, String> missingRevs = new ValueListMap<String, String>();
-
-                    // Break down by docId first to avoid potential rev ID clashes between doc IDs
-                    for (Map.Entry<String, List<String>> entry : revisions.entrySet()) {
-                        String docId = entry.getKey();
-                        List<String> revs = entry.getValue();
-                        // Partition into batches to avoid exceeding placeholder limit
-                        // The doc ID will use one placeholder, so use limit - 1 for the number of
-                        // revs for the remaining placeholders.
-                        List<List<String>> batches = CollectionUtils.partition(revs,
-                                SQLITE_QUERY_PLACEHOLDERS_LIMIT - 1);
-
-                        for (List<String> revsBatch : batches) {
-                            missingRevs.addValuesToKey(docId, new RevsDiffBatchCallable(docId, revsBatch).call(db));
-                        }
-                    }
-                    return missingRevs;
-                }
-            }));
+            return get(queue.submitReadOnly(new RevsDiffBatchCallable(revisions),
+                    SQLDatabaseQueue.Priority.BACKGROUND));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to do revsdiff", e);
         }
@@ -885,7 +1194,7 @@ public class DatastoreImpl implements Datastore {
     public Iterator<String> getConflictedDocumentIds() {
 
         try {
-            return get(queue.submit(new GetConflictedDocumentIdsCallable())).iterator();
+            return get(queue.submitReadOnly(new GetConflictedDocumentIdsCallable())).iterator();
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get conflicted document Ids", e);
         }
@@ -902,7 +1211,7 @@ public class DatastoreImpl implements Datastore {
 
             // before starting the tx, get the 'new winner' and see if we need to prepare its
             // attachments
-            final DocumentRevisionTree docTree = get(queue.submit(new GetAllRevisionsOfDocumentCallable(docId, attachmentsDir, attachmentStreamFactory)));
+            final DocumentRevisionTree docTree = get(queue.submitReadOnly(new GetAllRevisionsOfDocumentCallable(docId, attachmentsDir, attachmentStreamFactory)));
             if (!docTree.hasConflicts()) {
                 return;
             }
@@ -929,7 +1238,8 @@ public class DatastoreImpl implements Datastore {
                         @Override
                         public Void call(SQLDatabase db) throws Exception {
 
-                            new ResolveConflictsForDocumentCallable(docTree, revIdKeep).call(db);
+                            new ResolveConflictsForDocumentCallable(docTree, revIdKeep,
+                                    documentCache, bodyStore).call(db);
 
                             // if this is a new or modified revision: graft the new revision on
                             if (newWinnerTx.isBodyModified() || (newWinnerTx.getAttachments() != null && ((ChangeNotifyingMap<String, Attachment>) newWinnerTx
@@ -949,7 +1259,8 @@ public class DatastoreImpl implements Datastore {
 
                                 new UpdateDocumentFromRevisionCallable(newWinnerTx,
                                         preparedNewAttachments,
-                                        existingAttachments, attachmentsDir, attachmentStreamFactory).call(db);
+                                        existingAttachments, attachmentsDir, attachmentStreamFactory,
+                                        documentCache, bodyStore).call(db);
                             }
                             return null;
                         }
@@ -966,7 +1277,8 @@ public class DatastoreImpl implements Datastore {
     }
 
     public static InsertRevisionCallable insertNewWinnerRevisionAdaptor(DocumentBody newWinner,
-                                           DocumentRevision oldWinner)
+                                           DocumentRevision oldWinner,
+                                           RevisionBodyStore bodyStore)
             throws AttachmentException, DatastoreException {
         String newRevisionId = CouchUtils.generateNextRevisionId(oldWinner.getRevision());
 
@@ -976,19 +1288,40 @@ public class DatastoreImpl implements Datastore {
         callable.parentSequence = oldWinner.getSequence();
         callable.deleted = false;
         callable.current = true;
-        callable.data = newWinner.asBytes();
+        callable.data = DocumentBodyImpl.sharedBytes(newWinner);
         callable.available = true;
+        callable.bodyStore = bodyStore;
         return callable;
     }
 
     public static DocumentRevision getFullRevisionFromCurrentCursor(Cursor cursor,
                                                                      List<? extends Attachment>
                                                                              attachments) {
+        byte[] json = cursor.getBlob(cursor.getColumnIndex("json"));
+        return getMetadataFromCurrentCursor(cursor)
+                .setBody(DocumentBodyImpl.bodyWithStored(json))
+                .setAttachments(attachments)
+                .build();
+    }
+
+    /**
+     * Returns the revision at the cursor's current row, which has the {@link #METADATA_COLS}
+     * but no body. The revision has an empty body and no attachments, and
+     * {@link DocumentRevision#toFullRevision()} reads the whole revision from the datastore.
+     */
+    public static DocumentRevision getMetadataRevisionFromCurrentCursor(Cursor cursor,
+                                                                         Datastore datastore) {
+        return getMetadataFromCurrentCursor(cursor)
+                .setBody(DocumentBodyFactory.EMPTY)
+                .setDatastore(datastore)
+                .buildMetadataOnly();
+    }
+
+    private static DocumentRevisionBuilder getMetadataFromCurrentCursor(Cursor cursor) {
         String docId = cursor.getString(cursor.getColumnIndex("docid"));
         long internalId = cursor.getLong(cursor.getColumnIndex("doc_id"));
         String revId = cursor.getString(cursor.getColumnIndex("revid"));
         long sequence = cursor.getLong(cursor.getColumnIndex("sequence"));
-        byte[] json = cursor.getBlob(cursor.getColumnIndex("json"));
         boolean current = cursor.getInt(cursor.getColumnIndex("current")) > 0;
         boolean deleted = cursor.getInt(cursor.getColumnIndex("deleted")) > 0;
 
@@ -1001,18 +1334,14 @@ public class DatastoreImpl implements Datastore {
                     .getColumnIndex("parent")));
         }
 
-        DocumentRevisionBuilder builder = new DocumentRevisionBuilder()
+        return new DocumentRevisionBuilder()
                 .setDocId(docId)
                 .setRevId(revId)
-                .setBody(DocumentBodyImpl.bodyWith(json))
                 .setDeleted(deleted)
                 .setSequence(sequence)
                 .setInternalId(internalId)
                 .setCurrent(current)
-                .setParent(parent)
-                .setAttachments(attachments);
-
-        return builder.build();
+                .setParent(parent);
     }
 
     /**
@@ -1052,7 +1381,7 @@ public class DatastoreImpl implements Datastore {
     public Attachment getAttachment(final String id, final String rev, final String
             attachmentName) {
         try {
-            return get(queue.submit(new SQLCallable<Attachment>() {
+            return get(queue.submitReadOnly(new SQLCallable<Attachment>() {
                 @Override
                 public Attachment call(SQLDatabase db) throws Exception {
                     long sequence = new GetSequenceCallable(id, rev).call(db);
@@ -1080,7 +1409,7 @@ public class DatastoreImpl implements Datastore {
     public List<? extends Attachment> attachmentsForRevision(final DocumentRevision rev) throws
             AttachmentException {
         try {
-            return get(queue.submit(new SQLCallable<List<? extends Attachment>>() {
+            return get(queue.submitReadOnly(new SQLCallable<List<? extends Attachment>>() {
 
                 @Override
                 public List<? extends Attachment> call(SQLDatabase db) throws Exception {
@@ -1102,6 +1431,16 @@ public class DatastoreImpl implements Datastore {
         return eventBus;
     }
 
+    @Override
+    public SQLQueueMetrics getQueueMetrics() {
+        return queue.getMetrics();
+    }
+
+    @Override
+    public DocumentCacheStats getDocumentCacheStats() {
+        return documentCache.isEnabled() ? documentCache.getStats() : null;
+    }
+
     @Override
     public DocumentRevision createDocumentFromRevision(final DocumentRevision rev)
             throws DocumentException {
@@ -1111,6 +1450,27 @@ public class DatastoreImpl implements Datastore {
                 "DocumentRevisions");
         Misc.checkArgument(rev.isFullRevision(), "Projected revisions cannot be used to " +
                 "create documents");
+
+        DocumentRevision created = null;
+        try {
+            created = get(queue.submitTransaction(createDocumentCallable(rev)));
+            return created;
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Failed to create document", e);
+            throw new DocumentException(e);
+        } finally {
+            if (created != null) {
+                eventBus.post(new DocumentCreated(created));
+            }
+        }
+    }
+
+    /**
+     * Prepares any new attachments for {@code rev} and returns a callable which saves it as a
+     * new document.
+     */
+    SQLCallable<DocumentRevision> createDocumentCallable(final DocumentRevision rev)
+            throws AttachmentException {
         final String docId;
         // create docid if docid is null
         if (rev.getId() == null) {
@@ -1131,34 +1491,23 @@ public class DatastoreImpl implements Datastore {
         final List<SavedAttachment> existingAttachments =
                 AttachmentManager.findExistingAttachments(attachments);
 
-        DocumentRevision created = null;
-        try {
-            created = get(queue.submitTransaction(new SQLCallable<DocumentRevision>() {
-                @Override
-                public DocumentRevision call(SQLDatabase db) throws Exception {
-
-                    // Save document with new JSON body, add new attachments and copy over
-                    // existing attachments
-                    DocumentRevision saved = createDocumentBody(db, docId, rev.getBody());
-                    AttachmentManager.addAttachmentsToRevision(db, attachmentsDir, saved,
-                            preparedNewAttachments);
-                    AttachmentManager.copyAttachmentsToRevision(db, existingAttachments, saved);
-
-                    // now re-fetch the revision with updated attachments
-                    DocumentRevision updatedWithAttachments = new GetDocumentCallable(
-                            saved.getId(), saved.getRevision(), attachmentsDir, attachmentStreamFactory).call(db);
-                    return updatedWithAttachments;
-                }
-            }));
-            return created;
-        } catch (ExecutionException e) {
-            logger.log(Level.SEVERE, "Failed to create document", e);
-            throw new DocumentException(e);
-        } finally {
-            if (created != null) {
-                eventBus.post(new DocumentCreated(created));
+        return new SQLCallable<DocumentRevision>() {
+            @Override
+            public DocumentRevision call(SQLDatabase db) throws Exception {
+
+                // Save document with new JSON body, add new attachments and copy over
+                // existing attachments
+                DocumentRevision saved = createDocumentBody(db, docId, rev.getBody());
+                AttachmentManager.addAttachmentsToRevision(db, attachmentsDir, saved,
+                        preparedNewAttachments);
+                AttachmentManager.copyAttachmentsToRevision(db, existingAttachments, saved);
+
+                // now re-fetch the revision with updated attachments
+                DocumentRevision updatedWithAttachments = new GetDocumentCallable(
+                        saved.getId(), saved.getRevision(), attachmentsDir, attachmentStreamFactory).call(db);
+                return updatedWithAttachments;
             }
-        }
+        };
     }
 
     @Override
@@ -1170,21 +1519,8 @@ public class DatastoreImpl implements Datastore {
         Misc.checkArgument(rev.isFullRevision(), "Projected revisions cannot be used to " +
                 "create documents");
 
-        // We need to work out which of the attachments for the revision are ones
-        // we can copy over because they exist in the attachment store already and
-        // which are new, that we need to prepare for insertion.
-        Collection<Attachment> attachments = rev.getAttachments() != null ? rev.getAttachments()
-                .values() : new ArrayList<Attachment>();
-        final List<PreparedAttachment> preparedNewAttachments =
-                AttachmentManager.prepareAttachments(attachmentsDir,
-                        attachmentStreamFactory,
-                        AttachmentManager.findNewAttachments(attachments));
-        final List<SavedAttachment> existingAttachments =
-                AttachmentManager.findExistingAttachments(attachments);
-
         try {
-            DocumentRevision revision = get(queue.submitTransaction(new UpdateDocumentFromRevisionCallable(
-                            rev, preparedNewAttachments, existingAttachments, this.attachmentsDir, this.attachmentStreamFactory)));
+            DocumentRevision revision = get(queue.submitTransaction(updateDocumentCallable(rev)));
 
             if (revision != null) {
                 eventBus.post(new DocumentUpdated(getDocument(rev.getId(), rev.getRevision()),
@@ -1199,6 +1535,29 @@ public class DatastoreImpl implements Datastore {
 
     }
 
+    /**
+     * Prepares any new attachments for {@code rev} and returns a callable which saves it as a
+     * new revision of its document.
+     */
+    UpdateDocumentFromRevisionCallable updateDocumentCallable(DocumentRevision rev)
+            throws AttachmentException {
+        // We need to work out which of the attachments for the revision are ones
+        // we can copy over because they exist in the attachment store already and
+        // which are new, that we need to prepare for insertion.
+        Collection<Attachment> attachments = rev.getAttachments() != null ? rev.getAttachments()
+                .values() : new ArrayList<Attachment>();
+        final List<PreparedAttachment> preparedNewAttachments =
+                AttachmentManager.prepareAttachments(attachmentsDir,
+                        attachmentStreamFactory,
+                        AttachmentManager.findNewAttachments(attachments));
+        final List<SavedAttachment> existingAttachments =
+                AttachmentManager.findExistingAttachments(attachments);
+
+        return new UpdateDocumentFromRevisionCallable(rev, preparedNewAttachments,
+                existingAttachments, this.attachmentsDir, this.attachmentStreamFactory,
+                this.documentCache, this.bodyStore);
+    }
+
     @Override
     public DocumentRevision deleteDocumentFromRevision(final DocumentRevision rev) throws
             ConflictException {
@@ -1206,7 +1565,8 @@ public class DatastoreImpl implements Datastore {
         Misc.checkState(isOpen(), "Datastore is closed");
 
         try {
-            DocumentRevision deletedRevision = get(queue.submit(new DeleteDocumentCallable(rev.getId(), rev.getRevision())));
+            DocumentRevision deletedRevision = get(queue.submitTransaction(new DeleteDocumentCallable(rev.getId(), rev
+                    .getRevision(), documentCache, bodyStore)));
 
             if (deletedRevision != null) {
                 eventBus.post(new DocumentDeleted(rev, deletedRevision));
@@ -1225,13 +1585,166 @@ public class DatastoreImpl implements Datastore {
         return null;
     }
 
+    @Override
+    public List<BulkDocumentResult> createDocumentsFromRevisions(List<DocumentRevision> revs) {
+        Misc.checkNotNull(revs, "DocumentRevisions");
+        Misc.checkState(isOpen(), "Datastore is closed");
+        for (DocumentRevision rev : revs) {
+            Misc.checkNotNull(rev, "DocumentRevision");
+            Misc.checkArgument(rev.getRevision() == null, "Revision ID must be null for new " +
+                    "DocumentRevisions");
+            Misc.checkArgument(rev.isFullRevision(), "Projected revisions cannot be used to " +
+                    "create documents");
+        }
+
+        List<BulkDocumentResult> results = new ArrayList<BulkDocumentResult>(revs.size());
+        for (int start = 0; start < revs.size(); start += BULK_CHUNK_SIZE) {
+            List<DocumentRevision> chunk = revs.subList(start,
+                    Math.min(start + BULK_CHUNK_SIZE, revs.size()));
+            List<SQLCallable<DocumentRevision>> callables =
+                    new ArrayList<SQLCallable<DocumentRevision>>(chunk.size());
+            for (DocumentRevision rev : chunk) {
+                try {
+                    callables.add(createDocumentCallable(rev));
+                } catch (AttachmentException e) {
+                    callables.add(failedCallable(e));
+                }
+            }
+            List<BulkDocumentResult> chunkResults = runBulkChunk(callables);
+            for (BulkDocumentResult result : chunkResults) {
+                if (result.isSuccessful()) {
+                    eventBus.post(new DocumentCreated(result.getRevision()));
+                }
+            }
+            results.addAll(chunkResults);
+        }
+        return results;
+    }
+
+    @Override
+    public List<BulkDocumentResult> updateDocumentsFromRevisions(List<DocumentRevision> revs) {
+        Misc.checkNotNull(revs, "DocumentRevisions");
+        Misc.checkState(isOpen(), "Datastore is closed");
+        for (DocumentRevision rev : revs) {
+            Misc.checkNotNull(rev, "DocumentRevision");
+            Misc.checkArgument(rev.isFullRevision(), "Projected revisions cannot be used to " +
+                    "create documents");
+        }
+
+        List<BulkDocumentResult> results = new ArrayList<BulkDocumentResult>(revs.size());
+        for (int start = 0; start < revs.size(); start += BULK_CHUNK_SIZE) {
+            List<DocumentRevision> chunk = revs.subList(start,
+                    Math.min(start + BULK_CHUNK_SIZE, revs.size()));
+            // the revisions being replaced, read in the same transaction for the events
+            final DocumentRevision[] previous = new DocumentRevision[chunk.size()];
+            List<SQLCallable<DocumentRevision>> callables =
+                    new ArrayList<SQLCallable<DocumentRevision>>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                final DocumentRevision rev = chunk.get(i);
+                final int index = i;
+                try {
+                    final UpdateDocumentFromRevisionCallable update = updateDocumentCallable(rev);
+                    callables.add(new SQLCallable<DocumentRevision>() {
+                        @Override
+                        public DocumentRevision call(SQLDatabase db) throws Exception {
+                            DocumentRevision updated = update.call(db);
+                            previous[index] = new GetDocumentCallable(rev.getId(),
+                                    rev.getRevision(), attachmentsDir, attachmentStreamFactory)
+                                    .call(db);
+                            return updated;
+                        }
+                    });
+                } catch (AttachmentException e) {
+                    callables.add(failedCallable(e));
+                }
+            }
+            List<BulkDocumentResult> chunkResults = runBulkChunk(callables);
+            for (int i = 0; i < chunkResults.size(); i++) {
+                BulkDocumentResult result = chunkResults.get(i);
+                if (result.isSuccessful()) {
+                    eventBus.post(new DocumentUpdated(previous[i], result.getRevision()));
+                }
+            }
+            results.addAll(chunkResults);
+        }
+        return results;
+    }
+
+    @Override
+    public List<BulkDocumentResult> deleteDocumentsFromRevisions(List<DocumentRevision> revs) {
+        Misc.checkNotNull(revs, "DocumentRevisions");
+        Misc.checkState(isOpen(), "Datastore is closed");
+        for (DocumentRevision rev : revs) {
+            Misc.checkNotNull(rev, "DocumentRevision");
+        }
+
+        List<BulkDocumentResult> results = new ArrayList<BulkDocumentResult>(revs.size());
+        for (int start = 0; start < revs.size(); start += BULK_CHUNK_SIZE) {
+            List<DocumentRevision> chunk = revs.subList(start,
+                    Math.min(start + BULK_CHUNK_SIZE, revs.size()));
+            List<SQLCallable<DocumentRevision>> callables =
+                    new ArrayList<SQLCallable<DocumentRevision>>(chunk.size());
+            for (DocumentRevision rev : chunk) {
+                callables.add(new DeleteDocumentCallable(rev.getId(), rev.getRevision(),
+                        documentCache, bodyStore));
+            }
+            List<BulkDocumentResult> chunkResults = runBulkChunk(callables);
+            for (int i = 0; i < chunkResults.size(); i++) {
+                BulkDocumentResult result = chunkResults.get(i);
+                if (result.isSuccessful() && result.getRevision() != null) {
+                    eventBus.post(new DocumentDeleted(chunk.get(i), result.getRevision()));
+                }
+            }
+            results.addAll(chunkResults);
+        }
+        return results;
+    }
+
+    /**
+     * Runs the callables for one chunk of a bulk operation in a single transaction. If the
+     * transaction fails as a whole, each callable is run again in its own transaction so that it
+     * gets its own result.
+     */
+    private List<BulkDocumentResult> runBulkChunk(List<SQLCallable<DocumentRevision>> callables) {
+        try {
+            return get(queue.submitTransaction(new BulkDocumentCallable(callables)));
+        } catch (ExecutionException e) {
+            logger.log(Level.FINE, "Bulk transaction failed, retrying documents individually", e);
+            List<BulkDocumentResult> results =
+                    new ArrayList<BulkDocumentResult>(callables.size());
+            for (SQLCallable<DocumentRevision> callable : callables) {
+                try {
+                    results.add(new BulkDocumentResult(get(queue.submitTransaction(callable)),
+                            null));
+                } catch (ExecutionException itemException) {
+                    results.add(new BulkDocumentResult(null,
+                            BulkDocumentCallable.asDocumentException(itemException.getCause())));
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * @return a callable which reports the failure to prepare a document for a bulk operation
+     */
+    private static SQLCallable<DocumentRevision> failedCallable(final DocumentException e) {
+        return new SQLCallable<DocumentRevision>() {
+            @Override
+            public DocumentRevision call(SQLDatabase db) throws Exception {
+                throw e;
+            }
+        };
+    }
+
     // delete all leaf nodes
     @Override
     public List<DocumentRevision> deleteDocument(final String id)
             throws DocumentException {
         Misc.checkNotNull(id, "ID");
         try {
-            return get(queue.submitTransaction(new DeleteAllRevisionsCallable(id)));
+            return get(queue.submitTransaction(new DeleteAllRevisionsCallable(id, documentCache,
+                    bodyStore)));
         } catch (ExecutionException e) {
             throw new DocumentException("Failed to delete document", e);
         }
@@ -1241,6 +1754,26 @@ public class DatastoreImpl implements Datastore {
         return queue.submit(callable);
     }
 
+    DocumentRevisionCache getDocumentCache() {
+        return documentCache;
+    }
+
+    RevisionBodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    SQLDatabaseQueue getQueue() {
+        return queue;
+    }
+
+    String getAttachmentsDir() {
+        return attachmentsDir;
+    }
+
+    AttachmentStreamFactory getAttachmentStreamFactory() {
+        return attachmentStreamFactory;
+    }
+
     // helper to avoid having to catch ExecutionExceptions
     public static <T> T get(Future<T> future) throws ExecutionException {
         try {
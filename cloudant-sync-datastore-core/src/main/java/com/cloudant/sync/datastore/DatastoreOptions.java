@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.sqlite.SQLQueueMetricsListener;
+import com.cloudant.sync.util.Misc;
+
+/**
+ * <p>Optional tuning settings used when opening a {@link Datastore}.</p>
+ *
+ * <p>All settings default to the behaviour of a datastore opened without options. Setters
+ * return this object so that calls can be chained:</p>
+ *
+ * <pre>
+ * DatastoreOptions options = new DatastoreOptions().readerConnections(2);
+ * Datastore ds = manager.openDatastore("mydb", new NullKeyProvider(), options);
+ * </pre>
+ *
+ * @see DatastoreManager#openDatastore(String, com.cloudant.sync.datastore.encryption.KeyProvider,
+ * DatastoreOptions)
+ *
+ * @api_public
+ */
+public class DatastoreOptions {
+
+    private int readerConnections = 0;
+
+    private int groupCommitMaxTransactions = 1;
+
+    private long groupCommitMaxDelayMillis = 0;
+
+    private SQLQueueMetricsListener queueMetricsListener = null;
+
+    private int documentCacheMaxDocuments = 0;
+
+    private long documentCacheMaxBodyBytes = 0;
+
+    private boolean deduplicateBodies = false;
+
+    private DocumentBodyEncoding bodyEncoding = DocumentBodyEncoding.Plain;
+
+    /**
+     * <p>Sets the number of read-only connections used to service read requests.</p>
+     *
+     * <p>When greater than zero the database is switched to SQLite's write-ahead log (WAL)
+     * journal mode and document reads run on a pool of this many connections. Writes remain
+     * serialized on a single connection, so long-running writes such as pull replication
+     * batches no longer block reads. The default of zero services reads and writes on the single
+     * writer connection.</p>
+     *
+     * <p>Note that once a database has been opened in WAL mode it remains in that mode on
+     * disk.</p>
+     *
+     * @param readerConnections number of reader connections, or zero to disable the pool
+     * @return this {@code DatastoreOptions} object
+     */
+    public DatastoreOptions readerConnections(int readerConnections) {
+        Misc.checkArgument(readerConnections >= 0, "Reader connections must not be negative");
+        this.readerConnections = readerConnections;
+        return this;
+    }
+
+    /**
+     * @return the number of reader connections
+     * @see #readerConnections(int)
+     */
+    public int getReaderConnections() {
+        return readerConnections;
+    }
+
+    /**
+     * <p>Enables group commit, where consecutive document writes waiting to run are committed
+     * in a single SQLite transaction.</p>
+     *
+     * <p>Committing a transaction waits for the data to reach disk, which limits the rate at
+     * which individual writes such as {@link Datastore#createDocumentFromRevision} can be
+     * made when many threads are writing. With group commit, up to {@code maxTransactions}
+     * queued writes share one commit. Each write keeps its own outcome: if one fails, only its
+     * changes are rolled back. Writes return once the shared transaction has committed.</p>
+     *
+     * <p>If {@code maxDelayMillis} is greater than zero the transaction is held open for up to
+     * that long waiting for further writes to arrive. This increases the throughput of many
+     * concurrent writers at the cost of the latency of each write. The default of zero only
+     * groups writes which are already waiting.</p>
+     *
+     * <p>Group commit is disabled by default. It is currently only available on Java SE, on
+     * Android writes are committed individually.</p>
+     *
+     * @param maxTransactions maximum number of writes to commit together, 1 disables group
+     *                        commit
+     * @param maxDelayMillis maximum time in milliseconds to wait for further writes
+     * @return this {@code DatastoreOptions} object
+     */
+    public DatastoreOptions groupCommit(int maxTransactions, long maxDelayMillis) {
+        Misc.checkArgument(maxTransactions >= 1, "Group commit size must be at least 1");
+        Misc.checkArgument(maxDelayMillis >= 0, "Group commit delay must not be negative");
+        this.groupCommitMaxTransactions = maxTransactions;
+        this.groupCommitMaxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of writes committed together
+     * @see #groupCommit(int, long)
+     */
+    public int getGroupCommitMaxTransactions() {
+        return groupCommitMaxTransactions;
+    }
+
+    /**
+     * @return the maximum time in milliseconds to wait for further writes to commit together
+     * @see #groupCommit(int, long)
+     */
+    public long getGroupCommitMaxDelayMillis() {
+        return groupCommitMaxDelayMillis;
+    }
+
+    /**
+     * <p>Sets a listener to be told how long each database operation waited, executed and
+     * took to commit, for example to feed an application's own monitoring.</p>
+     *
+     * <p>The listener is called on the datastore's database threads as each operation
+     * completes, so it must return quickly. The same timings are aggregated and available
+     * from {@link Datastore#getQueueMetrics()} whether or not a listener is set.</p>
+     *
+     * @param listener the listener, or null for no listener
+     * @return this {@code DatastoreOptions} object
+     */
+    public DatastoreOptions queueMetricsListener(SQLQueueMetricsListener listener) {
+        this.queueMetricsListener = listener;
+        return this;
+    }
+
+    /**
+     * @return the listener for database operation timings, or null if none is set
+     * @see #queueMetricsListener(SQLQueueMetricsListener)
+     */
+    public SQLQueueMetricsListener getQueueMetricsListener() {
+        return queueMetricsListener;
+    }
+
+    /**
+     * <p>Enables a cache of the current revisions of recently read documents.</p>
+     *
+     * <p>Reading a document normally runs two queries on the database queue. With the cache
+     * enabled, repeated reads of the current revision of a document with
+     * {@link Datastore#getDocument(String)} are answered from memory until the document is
+     * next written. The least recently read documents are evicted when the cache holds more
+     * than {@code maxDocuments} documents, or their JSON bodies total more than
+     * {@code maxBodyBytes}. Hit and miss counts are available from
+     * {@link Datastore#getDocumentCacheStats()}.</p>
+     *
+     * <p>The cache is disabled by default.</p>
+     *
+     * @param maxDocuments maximum number of documents to cache, zero disables the cache
+     * @param maxBodyBytes maximum total size in bytes of the JSON bodies of cached documents
+     * @return this {@code DatastoreOptions} object
+     */
+    public DatastoreOptions documentCache(int maxDocuments, long maxBodyBytes) {
+        Misc.checkArgument(maxDocuments >= 0, "Document cache size must not be negative");
+        Misc.checkArgument(maxBodyBytes >= 0, "Document cache bytes must not be negative");
+        this.documentCacheMaxDocuments = maxDocuments;
+        this.documentCacheMaxBodyBytes = maxBodyBytes;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of documents to cache
+     * @see #documentCache(int, long)
+     */
+    public int getDocumentCacheMaxDocuments() {
+        return documentCacheMaxDocuments;
+    }
+
+    /**
+     * @return the maximum total size in bytes of the JSON bodies of cached documents
+     * @see #documentCache(int, long)
+     */
+    public long getDocumentCacheMaxBodyBytes() {
+        return documentCacheMaxBodyBytes;
+    }
+
+    /**
+     * <p>Enables storing identical document bodies once.</p>
+     *
+     * <p>Many revisions share the same body, such as the empty bodies of deleted revisions and
+     * of the ancestors of replicated revisions, or bodies restored by conflict edits. With
+     * deduplication enabled, the body of each new revision is stored keyed by the SHA-1 digest
+     * of its content, with a count of the revisions using it, so a body already in the
+     * database isn't written again. Compaction deletes bodies no longer used by any
+     * revision. This costs a digest calculation per revision written, and a further lookup
+     * per revision read.</p>
+     *
+     * <p>Deduplication is disabled by default. The setting only affects revisions written
+     * while the datastore is open, a datastore can be opened with or without it regardless of
+     * how its existing revisions were stored.</p>
+     *
+     * @param deduplicateBodies true to store identical bodies once
+     * @return this {@code DatastoreOptions} object
+     */
+    public DatastoreOptions deduplicateBodies(boolean deduplicateBodies) {
+        this.deduplicateBodies = deduplicateBodies;
+        return this;
+    }
+
+    /**
+     * @return whether identical document bodies are stored once
+     * @see #deduplicateBodies(boolean)
+     */
+    public boolean isDeduplicateBodies() {
+        return deduplicateBodies;
+    }
+
+    /**
+     * <p>Sets the encoding used to store document bodies.</p>
+     *
+     * <p>JSON bodies usually make up most of a datastore's size on disk. With
+     * {@link DocumentBodyEncoding#Deflate} each body written is compressed, and only
+     * decompressed when the body of a document read from the datastore is first used. This
+     * reduces the size of the database and the amount read from disk, at the cost of the time
+     * taken to compress and decompress bodies.</p>
+     *
+     * <p>Each stored body records its encoding, so a datastore can always be opened with any
+     * encoding. Bodies already stored in another encoding are rewritten in this encoding by
+     * {@link Datastore#compact()}.</p>
+     *
+     * <p>The default is {@link DocumentBodyEncoding#Plain}, which stores bodies as JSON.</p>
+     *
+     * @param encoding the encoding for new bodies
+     * @return this {@code DatastoreOptions} object
+     */
+    public DatastoreOptions bodyEncoding(DocumentBodyEncoding encoding) {
+        Misc.checkNotNull(encoding, "Body encoding");
+        this.bodyEncoding = encoding;
+        return this;
+    }
+
+    /**
+     * @return the encoding used to store document bodies
+     * @see #bodyEncoding(DocumentBodyEncoding)
+     */
+    public DocumentBodyEncoding getBodyEncoding() {
+        return bodyEncoding;
+    }
+
+}
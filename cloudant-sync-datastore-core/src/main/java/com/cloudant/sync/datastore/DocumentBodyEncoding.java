@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+/**
+ * <p>Encodings for storing the JSON bodies of document revisions in the database.</p>
+ *
+ * <p>Every stored body records its own encoding, so bodies stored with any of these encodings
+ * can be read whichever encoding the datastore is opened with.</p>
+ *
+ * @see DatastoreOptions#bodyEncoding(DocumentBodyEncoding)
+ *
+ * @api_public
+ */
+public enum DocumentBodyEncoding {
+
+    /**
+     * Plain encoding: bodies are stored as JSON text.
+     */
+    Plain(0),
+
+    /**
+     * Deflate encoding: bodies are compressed with deflate, using a preset dictionary of
+     * strings common in JSON documents so that small bodies compress too. Bodies which don't
+     * get smaller are stored as plain JSON, marked so that they aren't compressed again.
+     */
+    Deflate(1);
+
+    /**
+     * Identifies the encoding of a stored body, so must never change.
+     */
+    final int id;
+
+    DocumentBodyEncoding(int id) {
+        this.id = id;
+    }
+
+}
@@ -21,29 +21,56 @@ import com.cloudant.sync.util.JSONUtils;
 import com.cloudant.sync.util.Misc;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * <p>A document body which holds its JSON as bytes, as a map, or both.</p>
+ *
+ * <p>Bodies created from bytes or a map supplied by the caller are validated when they're
+ * created. Bodies read from the database were validated before they were written, so
+ * {@link #bodyWithStored(byte[])} trusts their bytes and doesn't parse them until a map is
+ * first asked for. Either way the JSON is parsed at most once, and the bytes and map are never
+ * modified once set: callers get copies from {@link #asBytes()} and {@link #asMap()}, or a view
+ * from {@link #asReadOnlyMap()}.</p>
+ *
+ * <p>Internal callers which only read a body use the static methods of this class, which
+ * avoid copying bodies of this class and fall back to the {@link DocumentBody} methods for
+ * other implementations.</p>
+ *
  * @api_private
  */
-final class DocumentBodyImpl implements DocumentBody {
+public final class DocumentBodyImpl implements DocumentBody {
 
-    private byte[] bytes;
-    private Map<String, Object> map;
+    // Each of these is set at most once, to a value which is then never modified. Racing
+    // threads may both compute the same value, which is harmless.
+    private volatile byte[] bytes;
+    private volatile Map<String, Object> map;
+    private volatile Map<String, Object> readOnlyMap;
+    // body as stored in the database, decoded into bytes when first read
+    private volatile byte[] encoded;
+
+    private DocumentBodyImpl() {
+    }
 
+    @SuppressWarnings("unchecked")
     protected DocumentBodyImpl(byte[] bytes) {
         // compacted revisions have their bodies set to null, so return an empty body
         if (bytes == null) {
             bytes = JSONUtils.emptyJSONObjectAsBytes();
         }
-        if(JSONUtils.isValidJSON(bytes)) {
-            this.bytes = bytes;
-        } else {
-            throw new IllegalArgumentException("Input bytes is not valid json data.");
+        // validating the bytes parses them, so keep the result rather than parse them again
+        try {
+            this.map = JSONUtils.deserialize(bytes, Map.class);
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("Input bytes is not valid json data.", e);
         }
+        this.bytes = bytes;
     }
 
+    @SuppressWarnings("unchecked")
     protected DocumentBodyImpl(Map map) {
         // Note uses checkArgument not checkNotNull to keep IllegalArgumentException not NPE
         Misc.checkArgument(map != null, "Document body map must not be null.");
@@ -62,20 +89,105 @@ final class DocumentBodyImpl implements DocumentBody {
         return new DocumentBodyImpl(map);
     }
 
+    /**
+     * Returns a body read from the database. The bytes aren't validated, and if encoded aren't
+     * decoded until the body is read.
+     */
+    public static DocumentBody bodyWithStored(byte[] stored) {
+        DocumentBodyImpl body = new DocumentBodyImpl();
+        if (stored == null) {
+            // compacted revisions have no body, so return an empty body
+            body.bytes = JSONUtils.emptyJSONObjectAsBytes();
+        } else if (RevisionBodyStore.isEncoded(stored)) {
+            body.encoded = stored;
+        } else {
+            body.bytes = stored;
+        }
+        return body;
+    }
+
+    /**
+     * Returns the JSON of a body without copying it, for callers which only read the bytes,
+     * such as those writing the body to the database.
+     */
+    static byte[] sharedBytes(DocumentBody body) {
+        if (body instanceof DocumentBodyImpl) {
+            return ((DocumentBodyImpl) body).getJsonBytes();
+        }
+        return body.asBytes();
+    }
+
+    /**
+     * Returns a read-only view of a body's data without copying it, for callers which only
+     * read fields of the body. Maps and lists nested within it must not be modified.
+     */
+    public static Map<String, Object> readOnlyMap(DocumentBody body) {
+        if (body instanceof DocumentBodyImpl) {
+            return ((DocumentBodyImpl) body).asReadOnlyMap();
+        }
+        return Collections.unmodifiableMap(body.asMap());
+    }
+
+    /**
+     * Returns the values of some fields of a body. Each field is named by a path of field names
+     * separated by {@code .}, for example {@code address.city}. Unless the body has already
+     * been read as a map, only the requested fields of a body of this class are deserialized.
+     *
+     * @param body body to read
+     * @param fieldPaths paths of the fields to return
+     * @return new map from each path found in the body to its value. Paths which aren't in the
+     *         body are not in the map.
+     */
+    public static Map<String, Object> extractFields(DocumentBody body,
+                                                    Collection<String> fieldPaths) {
+        if (body instanceof DocumentBodyImpl) {
+            return ((DocumentBodyImpl) body).extractFields(fieldPaths);
+        }
+        return JSONUtils.extractFields(body.asMap(), fieldPaths);
+    }
+
     @Override
     public byte[] asBytes() {
-        byte[] jsonCopy = getJsonBytes();
-        return Arrays.copyOf(jsonCopy, jsonCopy.length);
+        byte[] json = getJsonBytes();
+        return Arrays.copyOf(json, json.length);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Map<String, Object> asMap() {
-        return (Map<String,Object>) getMapObject();
+        // Return a shallow copy
+        return new HashMap<String, Object>(getMapObject());
+    }
+
+    /**
+     * @return read-only view of the data as a {@code Map}, which isn't copied. Maps and lists
+     * nested within it must not be modified.
+     */
+    public Map<String, Object> asReadOnlyMap() {
+        Map<String, Object> view = readOnlyMap;
+        if (view == null) {
+            view = Collections.unmodifiableMap(getMapObject());
+            readOnlyMap = view;
+        }
+        return view;
+    }
+
+    /**
+     * @param fieldPaths paths of the fields to return
+     * @return new map from each path found in the data to its value
+     * @see #extractFields(DocumentBody, Collection)
+     */
+    public Map<String, Object> extractFields(Collection<String> fieldPaths) {
+        Map<String, Object> m = map;
+        if (m != null) {
+            return JSONUtils.extractFields(m, fieldPaths);
+        }
+        // the body hasn't been parsed, so only parse the fields asked for
+        return JSONUtils.extractFields(getJsonBytes(), fieldPaths);
     }
 
     @Override
     public String toString() {
+        decode();
         if(bytes != null) {
             return JSONUtils.bytesToString(bytes);
         } else if(map != null) {
@@ -86,20 +198,31 @@ final class DocumentBodyImpl implements DocumentBody {
     }
 
     private byte[] getJsonBytes() {
-        if(bytes == null) {
+        decode();
+        byte[] json = bytes;
+        if(json == null) {
             assert map != null;
-            bytes = JSONUtils.serializeAsBytes(map);
+            json = JSONUtils.serializeAsBytes(map);
+            bytes = json;
         }
-        return bytes.clone();
+        return json;
     }
 
-    private Map getMapObject() {
-        if(map == null) {
-            assert bytes != null;
-            map = JSONUtils.deserialize(bytes);
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getMapObject() {
+        Map<String, Object> m = map;
+        if(m == null) {
+            m = JSONUtils.deserialize(getJsonBytes(), Map.class);
+            map = m;
         }
+        return m;
+    }
 
-        // Return a shallow copy
-        return new HashMap(map);
+    private void decode() {
+        byte[] stored = encoded;
+        if(stored != null) {
+            bytes = RevisionBodyStore.decode(stored);
+            encoded = null;
+        }
     }
 }
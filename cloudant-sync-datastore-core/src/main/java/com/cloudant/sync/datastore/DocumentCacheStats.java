@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+/**
+ * <p>A snapshot of the statistics of a datastore's document cache.</p>
+ *
+ * @see DatastoreOptions#documentCache(int, long)
+ *
+ * @api_public
+ */
+public class DocumentCacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int documentCount;
+    private final long bodyBytes;
+
+    DocumentCacheStats(long hitCount, long missCount, long evictionCount, int documentCount,
+                       long bodyBytes) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.documentCount = documentCount;
+        this.bodyBytes = bodyBytes;
+    }
+
+    /**
+     * @return the number of document reads served from the cache
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of document reads which had to read from the database
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of documents evicted to keep the cache within its limits
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of documents in the cache
+     */
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * @return the total size in bytes of the JSON bodies of the documents in the cache
+     */
+    public long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hitCount + " misses=" + missCount + " evictions=" + evictionCount +
+                " documents=" + documentCount + " bodyBytes=" + bodyBytes;
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.util.Misc;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>A fixed size cache mapping document IDs to the numeric IDs of their rows in the
+ * {@code docs} table, so that callables can query the {@code revs} table by numeric ID
+ * without first looking up the document ID.</p>
+ *
+ * <p>The cache is direct-mapped: each document ID has one slot, and adding a document
+ * replaces whichever document was in its slot. Rows in the {@code docs} table are never
+ * deleted or renumbered once committed, so a cached mapping stays correct for the life of the
+ * database. A row inserted by a transaction which is later rolled back may be given to
+ * another document though, so rows inserted by the current writer task, see
+ * {@link #inserted(String)}, aren't cached until {@link #writeFinished()} has been
+ * called.</p>
+ *
+ * <p>The cache is owned by the writer thread: only the writer thread may call
+ * {@link #put(String, long)}, {@link #inserted(String)} and {@link #writeFinished()}.
+ * {@link #get(String)} may be called from any thread; a reader thread may not see the most
+ * recently added mappings, which only causes a miss.</p>
+ *
+ * @api_private
+ */
+public class DocumentIdCache {
+
+    private static final class Entry {
+        final String docId;
+        final long numericId;
+
+        Entry(String docId, long numericId) {
+            this.docId = docId;
+            this.numericId = numericId;
+        }
+    }
+
+    /**
+     * Slots for cached mappings. Written only by the writer thread; other threads may read a
+     * stale slot, but as entries are immutable they can never see a partly written one.
+     */
+    private final Entry[] entries;
+
+    private final int mask;
+
+    /**
+     * Documents inserted by the current writer task, which may yet be rolled back.
+     */
+    private final Set<String> uncommitted = new HashSet<String>();
+
+    /**
+     * @param capacity The number of slots, rounded up to a power of two
+     */
+    public DocumentIdCache(int capacity) {
+        Misc.checkArgument(capacity > 0, "Capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @param docId The document ID
+     * @return the numeric ID of the document, or -1 if it isn't cached
+     */
+    public long get(String docId) {
+        Entry entry = entries[slot(docId)];
+        if (entry != null && entry.docId.equals(docId)) {
+            return entry.numericId;
+        }
+        return -1L;
+    }
+
+    /**
+     * Caches the numeric ID of a document read from the {@code docs} table. Called on the
+     * writer thread.
+     * @param docId The document ID
+     * @param numericId The numeric ID of the document
+     */
+    public void put(String docId, long numericId) {
+        if (!uncommitted.contains(docId)) {
+            entries[slot(docId)] = new Entry(docId, numericId);
+        }
+    }
+
+    /**
+     * Records that a row has been inserted into the {@code docs} table by the current writer
+     * task. Called on the writer thread.
+     * @param docId The document ID inserted
+     */
+    public void inserted(String docId) {
+        uncommitted.add(docId);
+    }
+
+    /**
+     * Called on the writer thread after each task, once any transaction it ran in has ended.
+     */
+    public void writeFinished() {
+        if (!uncommitted.isEmpty()) {
+            uncommitted.clear();
+        }
+    }
+
+    private int slot(String docId) {
+        int h = docId.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Iterates over the winning revisions of the documents in a datastore, in a
+ * {@link DocumentOrder}.</p>
+ *
+ * <p>Documents are read from the database a batch at a time, each batch continuing after the
+ * last document of the one before, so reading a batch costs the same however far through the
+ * documents it is. While one batch is being iterated over, the next is read in the background,
+ * so at most two batches are held in memory.</p>
+ *
+ * <p>Each batch is read as the documents were when it was read: documents written while the
+ * iterator is in use are returned if they come after the batches already read.</p>
+ *
+ * <p>If the iterator was created to return metadata only, each revision is a
+ * {@link ProjectedDocumentRevision} with an empty body and no attachments, and
+ * {@link DocumentRevision#toFullRevision()} reads the whole revision.</p>
+ *
+ * @see Datastore#iterateAllDocuments(DocumentOrder, boolean, int, boolean)
+ * @see Datastore#getDocumentsInIdRange(String, String, int, boolean)
+ *
+ * @api_public
+ */
+public class DocumentIterator implements Iterator<DocumentRevision> {
+
+    /**
+     * Reads a batch of documents from the datastore.
+     */
+    interface BatchReader {
+        /**
+         * @param after last revision of the previous batch, or null for the first batch
+         * @param limit maximum number of revisions to read
+         */
+        Future<List<DocumentRevision>> read(DocumentRevision after, int limit);
+    }
+
+    private final BatchReader reader;
+    private final int batchSize;
+
+    private List<DocumentRevision> batch;
+    private int position;
+    private Future<List<DocumentRevision>> next;
+    // size of the batch being read, and the number of documents left to read after it
+    private int nextSize;
+    private int remaining;
+
+    DocumentIterator(BatchReader reader, int batchSize) {
+        this(reader, batchSize, Integer.MAX_VALUE);
+    }
+
+    DocumentIterator(BatchReader reader, int batchSize, int limit) {
+        this.reader = reader;
+        this.batchSize = batchSize;
+        this.remaining = limit;
+        readNext(null);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (batch == null || position == batch.size()) {
+            if (next == null) {
+                return false;
+            }
+            try {
+                batch = DatastoreImpl.get(next);
+            } catch (ExecutionException e) {
+                next = null;
+                throw new IllegalStateException("Failed to get documents", e);
+            }
+            position = 0;
+            // a short batch is the last, otherwise read the next while this one is used
+            if (batch.size() < nextSize || remaining == 0) {
+                next = null;
+            } else {
+                readNext(batch.get(batch.size() - 1));
+            }
+        }
+        return true;
+    }
+
+    private void readNext(DocumentRevision after) {
+        nextSize = Math.min(batchSize, remaining);
+        remaining -= nextSize;
+        next = reader.read(after, nextSize);
+    }
+
+    @Override
+    public DocumentRevision next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, use
+     * {@link Datastore#deleteDocumentFromRevision(DocumentRevision)} to delete documents
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Documents can't be removed through an iterator");
+    }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+/**
+ * <p>Orders in which a {@link DocumentIterator} returns documents.</p>
+ *
+ * @api_public
+ */
+public enum DocumentOrder {
+
+    /**
+     * Documents are ordered by their document IDs, compared as UTF-8 bytes.
+     */
+    DocumentId,
+
+    /**
+     * Documents are ordered by the sequence number of their winning revisions, which is the
+     * order in which those revisions were written to the datastore.
+     */
+    Sequence
+
+}
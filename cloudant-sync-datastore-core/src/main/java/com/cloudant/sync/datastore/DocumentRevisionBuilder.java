@@ -180,5 +180,22 @@ public class DocumentRevisionBuilder {
         return new ProjectedDocumentRevision(docId, revId, deleted, attachments, body, datastore);
     }
 
+    /**
+     * Builds and returns a {@link com.cloudant.sync.datastore.ProjectedDocumentRevision} which
+     * keeps all of this builder's metadata, such as the sequence, for revisions read from the
+     * database without their bodies.
+     * @return {@link com.cloudant.sync.datastore.ProjectedDocumentRevision} for this builder.
+     */
+    public ProjectedDocumentRevision buildMetadataOnly() {
+        DocumentRevision.DocumentRevisionOptions options = new DocumentRevision.DocumentRevisionOptions();
+        options.sequence = sequence;
+        options.docInternalId = docInternalId;
+        options.deleted = deleted;
+        options.current = current;
+        options.parent = parent;
+        options.attachments = attachments;
+        return new ProjectedDocumentRevision(docId, revId, body, options, datastore);
+    }
+
 
 }
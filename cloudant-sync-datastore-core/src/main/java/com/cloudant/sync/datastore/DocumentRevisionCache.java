@@ -0,0 +1,259 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.util.Misc;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A cache of the current revisions of documents, keyed by document ID and bounded by both
+ * the number of documents and the total size of their JSON bodies. The least recently used
+ * documents are evicted first.</p>
+ *
+ * <p>Write callables call {@link #invalidate(String)} on the writer thread, inside the
+ * transaction which changes the document. A reader connection can still see the previous
+ * revision until that transaction has been committed, so the document can't be added back to
+ * the cache until {@link #writeFinished()} is called after the transaction has ended. Readers
+ * call {@link #version()} before reading a document from the database and pass the result to
+ * {@link #put(DocumentRevision, long)}, which ignores revisions read before an
+ * invalidation.</p>
+ *
+ * <p>Cached revisions are copied on the way out, so callers can modify the revisions they are
+ * given.</p>
+ *
+ * @api_private
+ */
+public class DocumentRevisionCache {
+
+    /**
+     * The parts of a revision needed to build a copy of it.
+     */
+    private static class Entry {
+        final String revId;
+        final byte[] json;
+        final boolean deleted;
+        final long sequence;
+        final long internalId;
+        final boolean current;
+        final long parent;
+        final List<Attachment> attachments;
+
+        Entry(DocumentRevision rev, byte[] json) {
+            this.revId = rev.getRevision();
+            this.json = json;
+            this.deleted = rev.isDeleted();
+            this.sequence = rev.getSequence();
+            this.internalId = rev.getInternalNumericId();
+            this.current = rev.isCurrent();
+            this.parent = rev.getParent();
+            Map<String, Attachment> atts = rev.getAttachments();
+            this.attachments = atts == null ? null : new ArrayList<Attachment>(atts.values());
+        }
+
+        DocumentRevision toRevision(String docId) {
+            return new DocumentRevisionBuilder()
+                    .setDocId(docId)
+                    .setRevId(revId)
+                    .setBody(DocumentBodyImpl.bodyWithStored(json))
+                    .setDeleted(deleted)
+                    .setSequence(sequence)
+                    .setInternalId(internalId)
+                    .setCurrent(current)
+                    .setParent(parent)
+                    .setAttachments(attachments)
+                    .build();
+        }
+    }
+
+    private final int maxDocuments;
+    private final long maxBodyBytes;
+
+    // all fields below are guarded by this
+
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * Documents invalidated by transactions which may not have been committed yet.
+     */
+    private final Set<String> uncommitted = new HashSet<String>();
+
+    /**
+     * Whether every document has been invalidated by a transaction which may not have been
+     * committed yet.
+     */
+    private boolean allUncommitted = false;
+
+    /**
+     * Incremented by every invalidation, so that readers can tell if their read may be stale.
+     */
+    private long version = 0;
+
+    private long bodyBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxDocuments The maximum number of documents to cache, zero disables the cache
+     * @param maxBodyBytes The maximum total size of the JSON bodies of cached documents
+     */
+    public DocumentRevisionCache(int maxDocuments, long maxBodyBytes) {
+        Misc.checkArgument(maxDocuments >= 0, "Maximum documents must not be negative");
+        Misc.checkArgument(maxBodyBytes >= 0, "Maximum body bytes must not be negative");
+        this.maxDocuments = maxDocuments;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * @return whether documents are cached
+     */
+    public boolean isEnabled() {
+        return maxDocuments > 0 && maxBodyBytes > 0;
+    }
+
+    /**
+     * Returns a copy of the cached current revision of a document.
+     * @param docId The ID of the document
+     * @param revId The revision ID required, or null for whichever revision is current
+     * @return a copy of the cached revision, or null if the document isn't cached or the
+     * cached revision isn't {@code revId}
+     */
+    public DocumentRevision get(String docId, String revId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(docId);
+            if (entry == null || (revId != null && !revId.equals(entry.revId))) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return entry.toRevision(docId);
+    }
+
+    /**
+     * @return the current version of the cache, to be passed to
+     * {@link #put(DocumentRevision, long)} after reading from the database
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Caches a revision read from the database, if it is the current revision of its document
+     * and the document hasn't been invalidated since {@code version} was obtained.
+     * @param rev The revision read from the database
+     * @param version The result of {@link #version()} before the revision was read
+     */
+    public void put(DocumentRevision rev, long version) {
+        if (!isEnabled() || !rev.isCurrent() || !rev.isFullRevision()) {
+            return;
+        }
+        byte[] json = DocumentBodyImpl.sharedBytes(rev.getBody());
+        if (json.length > maxBodyBytes) {
+            return;
+        }
+        Entry entry = new Entry(rev, json);
+        String docId = rev.getId();
+        synchronized (this) {
+            if (version != this.version || allUncommitted || uncommitted.contains(docId)) {
+                return;
+            }
+            remove(entries.put(docId, entry));
+            bodyBytes += json.length;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxDocuments || bodyBytes > maxBodyBytes) {
+                remove(eldest.next());
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Removes a document from the cache. Called on the writer thread by each write to the
+     * document, inside the transaction making the write.
+     * @param docId The ID of the document being written
+     */
+    public void invalidate(String docId) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            remove(entries.remove(docId));
+            uncommitted.add(docId);
+            version++;
+        }
+    }
+
+    /**
+     * Removes every document from the cache. Called on the writer thread by writes which
+     * affect many documents.
+     */
+    public void invalidateAll() {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            entries.clear();
+            bodyBytes = 0;
+            allUncommitted = true;
+            version++;
+        }
+    }
+
+    /**
+     * Allows invalidated documents to be cached again. Called on the writer thread after each
+     * task, once any transaction it ran in has ended.
+     */
+    public void writeFinished() {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            if (allUncommitted || !uncommitted.isEmpty()) {
+                uncommitted.clear();
+                allUncommitted = false;
+                // a reader may have read the document before the transaction committed
+                version++;
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of the cache's statistics
+     */
+    public synchronized DocumentCacheStats getStats() {
+        return new DocumentCacheStats(hits, misses, evictions, entries.size(), bodyBytes);
+    }
+
+    private void remove(Entry entry) {
+        if (entry != null) {
+            bodyBytes -= entry.json.length;
+        }
+    }
+
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.event.EventBus;
+import com.cloudant.sync.notifications.CompactionCompleted;
+import com.cloudant.sync.notifications.CompactionProgress;
+import com.cloudant.sync.sqlite.Cursor;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.sqlite.SQLDatabaseQueue;
+import com.cloudant.sync.util.DatabaseUtils;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>A compaction of a datastore which runs a step at a time, so that other work on the
+ * datastore isn't held up while a large database is compacted.</p>
+ *
+ * <p>Like {@link Datastore#compact()}, compaction deletes the bodies and attachments of
+ * revisions which are no longer leaves of their document's tree, and encodes bodies stored
+ * before the datastore's body encoding was chosen. Each step is a task on the datastore's
+ * database queue, at background priority, which processes at most a given number of items
+ * and stops early once a given time has passed. Steps are submitted one at a time by a thread
+ * belonging to the compaction, so work submitted by other callers runs between them. Steps are
+ * transactions, apart from those deleting attachments: attachment files can't be restored by
+ * rolling back, so as in {@link Datastore#compact()} each file's row is deleted as soon as the
+ * file is.</p>
+ *
+ * <p>Rather than a full {@code VACUUM}, which rewrites the whole database file, the pages
+ * freed by compaction are returned to the file system with SQLite's incremental vacuum. This
+ * needs the database's {@code auto_vacuum} mode to be {@code INCREMENTAL}, which is the case
+ * for databases created by this version of the library. Older databases are switched to it
+ * by the next {@link Datastore#compact()}; until then their freed pages are only reused for
+ * new data.</p>
+ *
+ * <p>A {@link CompactionProgress} event is posted to the datastore's event bus after each
+ * step, and a {@link CompactionCompleted} event when the compaction stops.</p>
+ *
+ * @see Datastore#compactIncrementally(int, long)
+ *
+ * @api_public
+ */
+public class IncrementalCompaction {
+
+    /**
+     * The phases of a compaction, in the order they run.
+     */
+    public enum Phase {
+
+        /**
+         * Deleting the bodies of non-leaf revisions. Items are revisions.
+         */
+        Bodies,
+
+        /**
+         * Encoding stored bodies with the datastore's body encoding. Items are the rows of
+         * stored bodies read.
+         */
+        Encoding,
+
+        /**
+         * Deleting attachments no longer used by any revision. Items are attachment files.
+         */
+        Attachments,
+
+        /**
+         * Returning free pages of the database file to the file system. Items are pages.
+         */
+        Vacuum
+    }
+
+    private static final Logger logger = Logger.getLogger(DatastoreImpl.class.getCanonicalName());
+
+    // maximum number of items processed by each query or statement of a step
+    private static final int CHUNK_SIZE = 100;
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private final String datastoreName;
+    private final SQLDatabaseQueue queue;
+    private final EventBus eventBus;
+    private final String attachmentsDir;
+    private final DocumentRevisionCache cache;
+    private final RevisionBodyStore bodyStore;
+    private final int itemsPerStep;
+    private final long nanosPerStep;
+
+    private final DatastoreFuture<Boolean> completion;
+
+    // only used by steps, which run one at a time
+    private Phase phase = Phase.Bodies;
+    private int phaseProcessed;
+    // last sequence or rowid processed in the current phase
+    private long position;
+    private boolean encodingSharedBodies;
+
+    // guarded by this
+    private boolean paused;
+    private boolean cancelled;
+
+    IncrementalCompaction(String datastoreName, SQLDatabaseQueue queue, EventBus eventBus,
+                          String attachmentsDir, DocumentRevisionCache cache,
+                          RevisionBodyStore bodyStore, int itemsPerStep, long millisPerStep) {
+        this.datastoreName = datastoreName;
+        this.queue = queue;
+        this.eventBus = eventBus;
+        this.attachmentsDir = attachmentsDir;
+        this.cache = cache;
+        this.bodyStore = bodyStore;
+        this.itemsPerStep = itemsPerStep;
+        this.nanosPerStep = TimeUnit.MILLISECONDS.toNanos(millisPerStep);
+        this.completion = new DatastoreFuture<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return runSteps();
+            }
+        });
+    }
+
+    void start() {
+        new Thread(completion, "IncrementalCompaction - " + datastoreName).start();
+    }
+
+    /**
+     * Pauses the compaction once the step in progress, if any, has finished.
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Resumes a paused compaction.
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Stops the compaction once the step in progress, if any, has finished. The work done by
+     * the steps which have run is kept. Compactions are cancelled when their datastore is
+     * closed.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    /**
+     * @return whether the compaction is paused
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return whether the compaction has been cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return a future completed with true once the compaction has finished, false if it
+     * was cancelled first, or with the error which stopped it
+     */
+    public DatastoreFuture<Boolean> getCompletion() {
+        return completion;
+    }
+
+    private Boolean runSteps() throws Exception {
+        SQLCallable<Integer> step = new SQLCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase db) throws Exception {
+                return step(db);
+            }
+        };
+        Throwable error = null;
+        try {
+            while (phase != null) {
+                synchronized (this) {
+                    while (paused && !cancelled) {
+                        wait();
+                    }
+                    if (cancelled) {
+                        break;
+                    }
+                }
+                Phase stepPhase = phase;
+                Future<Integer> result = stepPhase == Phase.Attachments ?
+                        queue.submit(step, SQLDatabaseQueue.Priority.BACKGROUND) :
+                        queue.submitTransaction(step, SQLDatabaseQueue.Priority.BACKGROUND);
+                int processed = DatastoreImpl.get(result);
+                eventBus.post(new CompactionProgress(datastoreName, stepPhase, processed));
+            }
+        } catch (ExecutionException e) {
+            error = e.getCause();
+        } catch (RejectedExecutionException e) {
+            // the datastore was closed, which is only an error if it didn't cancel us first
+            if (!isCancelled()) {
+                error = e;
+            }
+        } catch (InterruptedException e) {
+            error = e;
+        }
+        boolean finished = phase == null;
+        if (error != null) {
+            logger.log(Level.SEVERE, "Failed to compact database", error);
+        }
+        eventBus.post(new CompactionCompleted(datastoreName, !finished && error == null, error));
+        if (error instanceof Exception) {
+            throw (Exception) error;
+        } else if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return finished;
+    }
+
+    // runs on the database queue, returning the number of items processed so far in the
+    // step's phase
+    private int step(SQLDatabase db) throws SQLException {
+        long deadline = System.nanoTime() + nanosPerStep;
+        int processed = 0;
+        Phase stepPhase = phase;
+        // work in chunks until either of the step's budgets is used or its phase is done
+        while (phase == stepPhase && processed < itemsPerStep && System.nanoTime() < deadline) {
+            processed += runChunk(db, Math.min(CHUNK_SIZE, itemsPerStep - processed));
+        }
+        int phaseTotal = phaseProcessed + processed;
+        phaseProcessed = phase == stepPhase ? phaseTotal : 0;
+        return phaseTotal;
+    }
+
+    private int runChunk(SQLDatabase db, int limit) throws SQLException {
+        switch (phase) {
+            case Bodies: {
+                List<Long> compacted = RevisionBodyStore.compact(db, position, limit);
+                if (compacted.size() < limit) {
+                    nextPhase(Phase.Encoding);
+                } else {
+                    position = compacted.get(compacted.size() - 1);
+                }
+                return compacted.size();
+            }
+            case Encoding: {
+                List<Long> read = bodyStore.encodeExisting(db, encodingSharedBodies, position,
+                        limit);
+                if (read.size() == limit) {
+                    position = read.get(read.size() - 1);
+                } else if (!encodingSharedBodies) {
+                    encodingSharedBodies = true;
+                    position = 0;
+                } else {
+                    nextPhase(Phase.Attachments);
+                }
+                return read.size();
+            }
+            case Attachments: {
+                int removed = AttachmentManager.purgeAttachments(db, attachmentsDir, limit);
+                if (removed < limit) {
+                    nextPhase(Phase.Vacuum);
+                }
+                return removed;
+            }
+            default: {
+                return incrementalVacuum(db, limit);
+            }
+        }
+    }
+
+    private void nextPhase(Phase next) {
+        phase = next;
+        position = 0;
+        if (next == Phase.Attachments) {
+            // only non-leaf revisions are changed, but purging attachments touches many
+            // documents
+            cache.invalidateAll();
+        }
+    }
+
+    // frees up to pages pages, returning the number freed
+    private int incrementalVacuum(SQLDatabase db, int pages) throws SQLException {
+        if (pragma(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            logger.fine("Skipping incremental vacuum, as the database's auto_vacuum mode " +
+                    "isn't INCREMENTAL");
+            nextPhase(null);
+            return 0;
+        }
+        long free = pragma(db, "freelist_count");
+        if (free > 0) {
+            // some SQLite bindings only step the pragma once, which frees a single page, so
+            // the pages freed are counted rather than assumed
+            db.execSQL("PRAGMA incremental_vacuum(" + pages + ");");
+        }
+        long left = free > 0 ? pragma(db, "freelist_count") : 0;
+        if (left == 0 || left == free) {
+            nextPhase(null);
+        }
+        return (int) (free - left);
+    }
+
+    private static long pragma(SQLDatabase db, String name) throws SQLException {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("PRAGMA " + name + ";", null);
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+
+}
@@ -44,6 +44,16 @@ public class ProjectedDocumentRevision extends DocumentRevision {
         this.fullRevision = false;
     }
 
+    ProjectedDocumentRevision(String docId,
+                              String revId,
+                              DocumentBody body,
+                              DocumentRevisionOptions options,
+                              Datastore datastore) {
+        super(docId, revId, body, options);
+        this.datastore = datastore;
+        this.fullRevision = false;
+    }
+
     @Override
     public DocumentRevision toFullRevision() throws DocumentNotFoundException {
         return this.datastore.getDocument(this.id,this.revision);
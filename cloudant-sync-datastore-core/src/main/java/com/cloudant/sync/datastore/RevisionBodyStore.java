@@ -0,0 +1,396 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.android.ContentValues;
+import com.cloudant.sync.sqlite.Cursor;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.util.Misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>Writes the JSON bodies of revisions to the {@code bodies} table.</p>
+ *
+ * <p>By default each body is stored inline in its row of {@code bodies}. When deduplication is
+ * enabled, bodies are instead stored once in the {@code shared_bodies} table keyed by the SHA-1
+ * digest of their content, in the same way as {@link AttachmentManager} stores attachment
+ * blobs, and the row in {@code bodies} only holds the digest. Each shared body counts the
+ * {@code bodies} rows referring to it, and {@link #compact(SQLDatabase)} deletes shared bodies
+ * which are no longer referenced.</p>
+ *
+ * <p>Bodies may also be compressed with a {@link DocumentBodyEncoding}. An encoded body starts
+ * with a zero byte followed by the ID of its encoding; JSON text can't start with a zero byte,
+ * so bodies written as plain JSON, including those written before encodings were added, are
+ * told apart from encoded ones. A body which an encoding didn't make smaller is stored as JSON
+ * with a header naming the {@link DocumentBodyEncoding#Plain} encoding, so that it isn't
+ * encoded again by {@link #encodeExisting(SQLDatabase)}. The digest of an encoded body is that
+ * of its JSON.</p>
+ *
+ * <p>Reads don't depend on these settings, so a database may contain all kinds of row.</p>
+ *
+ * @api_private
+ */
+public class RevisionBodyStore {
+
+    // bodies of revisions which compaction discards
+    private static final String NON_LEAF_BODIES = "SELECT bodies.sequence FROM bodies, revs " +
+            "WHERE revs.sequence = bodies.sequence AND revs.leaf = 0";
+
+    // number of bodies read at a time when encoding existing bodies
+    private static final int ENCODE_BATCH_SIZE = 100;
+
+    private static final byte ENCODED_MARKER = 0;
+
+    private static final int HEADER_LENGTH = 2;
+
+    // Preset dictionary for the Deflate encoding, ending with the most common strings. Bodies
+    // are decoded with this dictionary, so it must never change: a different dictionary
+    // needs a new encoding.
+    private static final byte[] DEFLATE_DICTIONARY = ("\"description\":\"updated\":" +
+            "\"created\":\"timestamp\":\"status\":\"title\":\"value\":\"email\":\"date\":" +
+            "\"tags\":[\"\"name\":\"type\":\"id\":\"_attachments\":{\"_deleted\":true," +
+            "\"_rev\":\"\"_id\":\":false,\":null,\":true,\":\"\",\"\":{\"")
+            .getBytes(Charset.forName("UTF-8"));
+
+    private final boolean deduplicate;
+
+    private final DocumentBodyEncoding encoding;
+
+    /**
+     * @param deduplicate whether to store identical bodies once, keyed by their digest
+     * @param encoding encoding to store new bodies with
+     */
+    public RevisionBodyStore(boolean deduplicate, DocumentBodyEncoding encoding) {
+        Misc.checkNotNull(encoding, "Body encoding");
+        this.deduplicate = deduplicate;
+        this.encoding = encoding;
+    }
+
+    /**
+     * @return whether identical bodies are stored once, keyed by their digest
+     */
+    public boolean isDeduplicating() {
+        return deduplicate;
+    }
+
+    /**
+     * @return the encoding new bodies are stored with
+     */
+    public DocumentBodyEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Stores the body of the revision with the given sequence.
+     *
+     * @param db database to write to
+     * @param sequence sequence of the revision in the {@code revs} table
+     * @param json JSON body of the revision
+     */
+    public void insert(SQLDatabase db, long sequence, byte[] json) {
+        ContentValues body = new ContentValues();
+        body.put("sequence", sequence);
+        byte[] digest = deduplicate ? Misc.getSha1(new ByteArrayInputStream(json)) : null;
+        if (digest == null) {
+            body.put("json", encode(json));
+        } else {
+            // the content is only written if no revision has stored the same body already
+            ContentValues shared = new ContentValues();
+            shared.put("digest", digest);
+            shared.put("json", encode(json));
+            shared.put("refs", 0);
+            if (db.insertWithOnConflict("shared_bodies", shared, SQLDatabase.CONFLICT_IGNORE)
+                    < 0) {
+                throw new IllegalStateException("Unknown error inserting shared body of new " +
+                        "revision, please check log");
+            }
+            db.execSQL("UPDATE shared_bodies SET refs = refs + 1 WHERE digest = ?",
+                    new Object[]{digest});
+            body.put("digest", digest);
+        }
+        if (db.insert("bodies", body) < 0) {
+            throw new IllegalStateException("Unknown error inserting body of new revision, " +
+                    "please check log");
+        }
+    }
+
+    /**
+     * Rewrites the stored bodies which have never been encoded, for example those written
+     * before the encoding was chosen. Bodies are read a batch at a time.
+     *
+     * @param db database to write to
+     * @return the number of bodies rewritten
+     */
+    public int encodeExisting(SQLDatabase db) {
+        if (encoding == DocumentBodyEncoding.Plain) {
+            // encoded bodies are read whichever encoding is chosen, so needn't be rewritten
+            return 0;
+        }
+        return encodeExisting(db, "bodies") + encodeExisting(db, "shared_bodies");
+    }
+
+    /**
+     * Rewrites the stored bodies in one batch of rows which have never been encoded, so that
+     * existing bodies can be encoded a little at a time.
+     *
+     * @param db database to write to
+     * @param sharedBodies true to rewrite rows of {@code shared_bodies}, false for rows of
+     *                     {@code bodies}
+     * @param afterRowId rowid to continue after, 0 for the first batch
+     * @param limit maximum number of rows to read
+     * @return the rowids of the rows read, in order; fewer than {@code limit} when there are no
+     * more rows to read
+     */
+    public List<Long> encodeExisting(SQLDatabase db, boolean sharedBodies, long afterRowId,
+                                     int limit) {
+        if (encoding == DocumentBodyEncoding.Plain) {
+            return new ArrayList<Long>();
+        }
+        List<Long> read = new ArrayList<Long>();
+        encodeBatch(db, sharedBodies ? "shared_bodies" : "bodies", afterRowId, limit, read);
+        return read;
+    }
+
+    private int encodeExisting(SQLDatabase db, String table) {
+        int rewritten = 0;
+        long lastRowId = 0;
+        List<Long> read = new ArrayList<Long>();
+        while (true) {
+            read.clear();
+            rewritten += encodeBatch(db, table, lastRowId, ENCODE_BATCH_SIZE, read);
+            if (read.size() < ENCODE_BATCH_SIZE) {
+                return rewritten;
+            }
+            lastRowId = read.get(read.size() - 1);
+        }
+    }
+
+    // rewrites the bodies of up to limit rows after afterRowId, adding the rowids read to read
+    private int encodeBatch(SQLDatabase db, String table, long afterRowId, int limit,
+                            List<Long> read) {
+        int rewritten = 0;
+        List<Long> rowIds = new ArrayList<Long>();
+        List<byte[]> rewrites = new ArrayList<byte[]>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT rowid, json FROM " + table + " WHERE rowid > ? " +
+                    "AND json NOT NULL ORDER BY rowid LIMIT " + limit,
+                    new String[]{Long.toString(afterRowId)});
+            while (cursor.moveToNext()) {
+                long rowId = cursor.getLong(0);
+                read.add(rowId);
+                byte[] stored = cursor.getBlob(1);
+                // a body with a header has been encoded already, or was tried and stored
+                // plain because encoding didn't make it smaller
+                if (!isEncoded(stored)) {
+                    rowIds.add(rowId);
+                    rewrites.add(encode(stored));
+                }
+            }
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+        for (int i = 0; i < rowIds.size(); i++) {
+            ContentValues values = new ContentValues();
+            values.put("json", rewrites.get(i));
+            rewritten += db.update(table, values, "rowid = ?",
+                    new String[]{Long.toString(rowIds.get(i))});
+        }
+        return rewritten;
+    }
+
+    /**
+     * Deletes the bodies of non-leaf revisions, and any shared bodies no longer referenced by
+     * a revision. This is done whether or not this store deduplicates bodies, as the database
+     * may have been written by a store which did.
+     *
+     * @param db database to compact
+     * @return the number of revisions whose bodies were deleted
+     */
+    public static int compact(SQLDatabase db) {
+        // count the references each shared body is about to lose; digests are compared by
+        // content, so are wrapped to be used as keys
+        Map<ByteBuffer, Integer> released = new LinkedHashMap<ByteBuffer, Integer>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT digest, COUNT(*) FROM bodies WHERE digest NOT NULL " +
+                    "AND sequence IN (" + NON_LEAF_BODIES + ") GROUP BY digest", null);
+            while (cursor.moveToNext()) {
+                released.put(ByteBuffer.wrap(cursor.getBlob(0)), cursor.getInt(1));
+            }
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+        for (Map.Entry<ByteBuffer, Integer> entry : released.entrySet()) {
+            db.execSQL("UPDATE shared_bodies SET refs = refs - ? WHERE digest = ?",
+                    new Object[]{entry.getValue(), entry.getKey().array()});
+        }
+
+        int compacted = db.delete("bodies", "sequence IN (" + NON_LEAF_BODIES + ")", null);
+        db.delete("shared_bodies", "refs <= 0", null);
+        return compacted;
+    }
+
+    /**
+     * Deletes the bodies of one batch of non-leaf revisions, in order of sequence, and any
+     * shared bodies they were the last to reference, so that a database can be compacted a
+     * little at a time.
+     *
+     * @param db database to compact
+     * @param afterSequence sequence to continue after, 0 for the first batch
+     * @param limit maximum number of bodies to delete
+     * @return the sequences of the revisions whose bodies were deleted, in order; fewer than
+     * {@code limit} when there are no more to delete
+     */
+    public static List<Long> compact(SQLDatabase db, long afterSequence, int limit) {
+        List<Long> sequences = new ArrayList<Long>();
+        // digests are compared by content, so are wrapped to be used as keys
+        Map<ByteBuffer, Integer> released = new LinkedHashMap<ByteBuffer, Integer>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT bodies.sequence, bodies.digest FROM bodies, revs " +
+                    "WHERE bodies.sequence > ? AND revs.sequence = bodies.sequence AND " +
+                    "revs.leaf = 0 ORDER BY bodies.sequence LIMIT " + limit,
+                    new String[]{Long.toString(afterSequence)});
+            while (cursor.moveToNext()) {
+                sequences.add(cursor.getLong(0));
+                byte[] digest = cursor.getBlob(1);
+                if (digest != null) {
+                    ByteBuffer key = ByteBuffer.wrap(digest);
+                    Integer count = released.get(key);
+                    released.put(key, count == null ? 1 : count + 1);
+                }
+            }
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+        if (sequences.isEmpty()) {
+            return sequences;
+        }
+
+        // the same rows as were selected, found by their sequence range
+        db.delete("bodies", "sequence > ? AND sequence <= ? AND EXISTS (SELECT 1 FROM revs " +
+                "WHERE revs.sequence = bodies.sequence AND revs.leaf = 0)",
+                new String[]{Long.toString(afterSequence),
+                        Long.toString(sequences.get(sequences.size() - 1))});
+        for (Map.Entry<ByteBuffer, Integer> entry : released.entrySet()) {
+            byte[] digest = entry.getKey().array();
+            db.execSQL("UPDATE shared_bodies SET refs = refs - ? WHERE digest = ?",
+                    new Object[]{entry.getValue(), digest});
+            db.execSQL("DELETE FROM shared_bodies WHERE digest = ? AND refs <= 0",
+                    new Object[]{digest});
+        }
+        return sequences;
+    }
+
+    /**
+     * @param stored a body as stored in the database
+     * @return true if the body is encoded, so must be decoded before being read as JSON
+     */
+    public static boolean isEncoded(byte[] stored) {
+        return stored != null && stored.length >= HEADER_LENGTH && stored[0] == ENCODED_MARKER;
+    }
+
+    /**
+     * @param stored a body as stored in the database
+     * @return the JSON of the body
+     * @throws IllegalStateException if the body is in an unknown encoding or is corrupt
+     */
+    public static byte[] decode(byte[] stored) {
+        if (!isEncoded(stored)) {
+            return stored;
+        }
+        int id = encodingId(stored);
+        if (id == DocumentBodyEncoding.Plain.id) {
+            return Arrays.copyOfRange(stored, HEADER_LENGTH, stored.length);
+        } else if (id != DocumentBodyEncoding.Deflate.id) {
+            throw new IllegalStateException(String.format("Document body is stored with " +
+                    "unknown encoding %d, it may have been written by a newer version of this " +
+                    "library", id));
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, HEADER_LENGTH, stored.length - HEADER_LENGTH);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DEFLATE_DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("Stored document body is truncated");
+                    }
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Stored document body is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // package-private so tests can count the bodies encoded
+    byte[] encode(byte[] json) {
+        if (encoding == DocumentBodyEncoding.Plain) {
+            return json;
+        }
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setDictionary(DEFLATE_DICTIONARY);
+            deflater.setInput(json);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 2 + 16);
+            out.write(ENCODED_MARKER);
+            out.write(encoding.id);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if (out.size() < json.length) {
+                return out.toByteArray();
+            }
+            // don't make readers inflate a body which compression didn't shrink, but record
+            // that it was tried so that compaction doesn't try again
+            byte[] plain = new byte[HEADER_LENGTH + json.length];
+            plain[0] = ENCODED_MARKER;
+            plain[1] = (byte) DocumentBodyEncoding.Plain.id;
+            System.arraycopy(json, 0, plain, HEADER_LENGTH, json.length);
+            return plain;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int encodingId(byte[] stored) {
+        return isEncoded(stored) ? stored[1] & 0xff : DocumentBodyEncoding.Plain.id;
+    }
+
+}
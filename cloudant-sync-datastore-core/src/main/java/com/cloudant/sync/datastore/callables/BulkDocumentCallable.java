@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore.callables;
+
+import com.cloudant.sync.datastore.BulkDocumentResult;
+import com.cloudant.sync.datastore.DocumentException;
+import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Run a list of single document callables, such as {@link UpdateDocumentFromRevisionCallable},
+ * in the current transaction and return a result for each of them.
+ *
+ * If the database supports savepoints each callable runs in its own savepoint, so a callable
+ * which fails only rolls back its own changes and its exception is returned in its result.
+ * Otherwise the first failure is thrown, and the caller must roll back the transaction and run
+ * the callables individually.
+ *
+ * @api_private
+ */
+public class BulkDocumentCallable implements SQLCallable<List<BulkDocumentResult>> {
+
+    private static final String SAVEPOINT = "bulk_document";
+
+    private final List<? extends SQLCallable<DocumentRevision>> callables;
+
+    /**
+     * @param callables the callables to run, one per document
+     */
+    public BulkDocumentCallable(List<? extends SQLCallable<DocumentRevision>> callables) {
+        this.callables = callables;
+    }
+
+    @Override
+    public List<BulkDocumentResult> call(SQLDatabase db) throws Exception {
+        List<BulkDocumentResult> results = new ArrayList<BulkDocumentResult>(callables.size());
+        boolean savepoints = db.supportsSavepoints();
+        for (SQLCallable<DocumentRevision> callable : callables) {
+            if (!savepoints) {
+                results.add(new BulkDocumentResult(callable.call(db), null));
+                continue;
+            }
+            db.setSavepoint(SAVEPOINT);
+            try {
+                DocumentRevision revision = callable.call(db);
+                db.releaseSavepoint(SAVEPOINT);
+                results.add(new BulkDocumentResult(revision, null));
+            } catch (Exception e) {
+                db.rollbackToSavepoint(SAVEPOINT);
+                results.add(new BulkDocumentResult(null, asDocumentException(e)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param t the exception thrown by a single document callable
+     * @return {@code t} if it is a {@link DocumentException}, otherwise a
+     * {@code DocumentException} wrapping it
+     */
+    public static DocumentException asDocumentException(Throwable t) {
+        if (t instanceof DocumentException) {
+            return (DocumentException) t;
+        }
+        return new DocumentException(t);
+    }
+
+}
@@ -16,6 +16,7 @@ package com.cloudant.sync.datastore.callables;
 
 import com.cloudant.sync.datastore.AttachmentStreamFactory;
 import com.cloudant.sync.datastore.Changes;
+import com.cloudant.sync.datastore.Datastore;
 import com.cloudant.sync.datastore.DatastoreImpl;
 import com.cloudant.sync.datastore.DocumentRevision;
 import com.cloudant.sync.sqlite.Cursor;
@@ -25,12 +26,15 @@ import com.cloudant.sync.util.DatabaseUtils;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Return the list of changes to the datastore, starting at a given `since` sequence value, limited
- * to a maximum number of `limit` changes
+ * to a maximum number of `limit` changes. Each changed document is listed once, at the sequence
+ * of its latest revision, and the changes are in sequence order.
  *
  * @api_private
  */
@@ -38,7 +42,9 @@ public class ChangesCallable implements SQLCallable<Changes> {
 
     private long since;
     private int limit;
+    private boolean metadataOnly;
 
+    private Datastore datastore;
     private String attachmentsDir;
     private AttachmentStreamFactory attachmentStreamFactory;
 
@@ -50,8 +56,26 @@ public class ChangesCallable implements SQLCallable<Changes> {
      */
     public ChangesCallable(long since, int limit, String attachmentsDir, AttachmentStreamFactory
             attachmentStreamFactory) {
+        this(since, limit, false, null, attachmentsDir, attachmentStreamFactory);
+    }
+
+    /**
+     * @param since Starting sequence number to retrieve changes from
+     * @param limit Maximum number of changes to retrieve
+     * @param metadataOnly            If true, return revisions without their bodies or
+     *                                attachments
+     * @param datastore               Datastore which full revisions of metadata-only revisions
+     *                                are read from
+     * @param attachmentsDir          Location of attachments
+     * @param attachmentStreamFactory Factory to manage access to attachment streams
+     */
+    public ChangesCallable(long since, int limit, boolean metadataOnly, Datastore datastore,
+                           String attachmentsDir, AttachmentStreamFactory
+                                   attachmentStreamFactory) {
         this.since = since;
         this.limit = limit;
+        this.metadataOnly = metadataOnly;
+        this.datastore = datastore;
         this.attachmentsDir = attachmentsDir;
         this.attachmentStreamFactory = attachmentStreamFactory;
     }
@@ -59,18 +83,22 @@ public class ChangesCallable implements SQLCallable<Changes> {
     @Override
     public Changes call(SQLDatabase db) throws Exception {
 
-        String[] args = {Long.toString(since), Long.toString(since +
-                limit)};
+        String[] args = {Long.toString(since), Integer.toString(limit)};
         Cursor cursor = null;
         try {
             Long lastSequence = since;
             List<Long> ids = new ArrayList<Long>();
-            cursor = db.rawQuery(DatastoreImpl.SQL_CHANGE_IDS_SINCE_LIMIT, args);
+            List<String> docIds = new ArrayList<String>();
+            cursor = db.rawQueryStreaming(DatastoreImpl.SQL_CHANGE_IDS_SINCE_LIMIT, args);
             while (cursor.moveToNext()) {
                 ids.add(cursor.getLong(0));
                 lastSequence = Math.max(lastSequence, cursor.getLong(1));
+                docIds.add(cursor.getString(2));
             }
-            List<DocumentRevision> results = new GetDocumentsWithInternalIdsCallable(ids, attachmentsDir, attachmentStreamFactory).call(db);
+            List<DocumentRevision> results = metadataOnly ?
+                    new GetMetadataWithInternalIdsCallable(ids, datastore).call(db) :
+                    new GetDocumentsWithInternalIdsCallable(ids, attachmentsDir,
+                            attachmentStreamFactory).call(db);
             if (results.size() != ids.size()) {
                 throw new IllegalStateException(String.format(Locale.ENGLISH,
                         "The number of documents does not match number of ids, " +
@@ -81,7 +109,18 @@ public class ChangesCallable implements SQLCallable<Changes> {
                 ));
             }
 
-            return new Changes(lastSequence, results);
+            // the revisions are sorted by their own sequence, which for a document whose
+            // conflicts have been updated may not be the sequence of its latest change
+            Map<String, DocumentRevision> byId = new HashMap<String, DocumentRevision>();
+            for (DocumentRevision rev : results) {
+                byId.put(rev.getId(), rev);
+            }
+            List<DocumentRevision> ordered = new ArrayList<DocumentRevision>(docIds.size());
+            for (String docId : docIds) {
+                ordered.add(byId.get(docId));
+            }
+
+            return new Changes(lastSequence, ordered);
         } catch (SQLException e) {
             throw new IllegalStateException("Error querying all changes since: " +
                     since + ", limit: " + limit, e);
@@ -14,9 +14,10 @@
 
 package com.cloudant.sync.datastore.callables;
 
-import com.cloudant.android.ContentValues;
 import com.cloudant.sync.datastore.AttachmentManager;
 import com.cloudant.sync.datastore.DatastoreImpl;
+import com.cloudant.sync.datastore.DocumentRevisionCache;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 
@@ -31,28 +32,42 @@ public class CompactCallable implements SQLCallable<Void> {
     private static final Logger logger = Logger.getLogger(DatastoreImpl.class.getCanonicalName());
 
     private String attachmentsDir;
+    private DocumentRevisionCache cache;
+    private RevisionBodyStore bodyStore;
 
-    public CompactCallable(String attachmentsDir) {
+    public CompactCallable(String attachmentsDir, DocumentRevisionCache cache,
+                           RevisionBodyStore bodyStore) {
         this.attachmentsDir = attachmentsDir;
+        this.cache = cache;
+        this.bodyStore = bodyStore;
     }
 
     @Override
     public Void call(SQLDatabase db) throws Exception {
+        // only non-leaf revisions are changed, but purging attachments touches many documents
+        cache.invalidateAll();
+
         logger.finer("Deleting JSON of old revisions...");
 
-        // set json = null for non-leaf nodes
-        ContentValues args = new ContentValues();
-        args.put("json", (String) null);
-        int revsCompacted = db.update("revs", args, "sequence IN (SELECT parent FROM revs)", null);
+        // delete the bodies of non-leaf nodes, and shared bodies they no longer reference
+        int revsCompacted = RevisionBodyStore.compact(db);
         logger.finer(String.format("Compacted %d revisions", revsCompacted));
 
+        // bodies written before the datastore's encoding was chosen are rewritten here, so
+        // that compaction both shrinks and migrates existing databases
+        logger.finer("Encoding bodies of current revisions...");
+        int bodiesEncoded = bodyStore.encodeExisting(db);
+        logger.finer(String.format("Encoded %d bodies", bodiesEncoded));
+
         logger.finer("Deleting old attachments...");
 
         // delete attachments not referenced by leaf nodes
         AttachmentManager.purgeAttachments(db, attachmentsDir);
 
-        // issue SQL vacuum
+        // issue SQL vacuum, which also switches databases created before incremental vacuum
+        // was used to the incremental auto_vacuum mode
         logger.finer("Vacuuming SQLite database...");
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
         db.compactDatabase();
         return null;
 
@@ -18,6 +18,8 @@ import com.cloudant.sync.datastore.ConflictException;
 import com.cloudant.sync.datastore.DatastoreException;
 import com.cloudant.sync.datastore.DocumentNotFoundException;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.DocumentRevisionCache;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
@@ -35,9 +37,14 @@ import java.util.List;
 public class DeleteAllRevisionsCallable implements SQLCallable<List<DocumentRevision>> {
 
     private String id;
+    private DocumentRevisionCache cache;
+    private RevisionBodyStore bodyStore;
 
-    public DeleteAllRevisionsCallable(String id) {
+    public DeleteAllRevisionsCallable(String id, DocumentRevisionCache cache,
+                                      RevisionBodyStore bodyStore) {
         this.id = id;
+        this.cache = cache;
+        this.bodyStore = bodyStore;
     }
 
     @Override
@@ -52,13 +59,12 @@ public class DeleteAllRevisionsCallable implements SQLCallable<List<DocumentRevi
             final String sql = "SELECT revs.revid FROM docs,revs " +
                     "WHERE revs.doc_id = docs.doc_id " +
                     "AND docs.docid = ? " +
-                    "AND deleted = 0 AND revs.sequence NOT IN " +
-                    "(SELECT DISTINCT parent FROM revs WHERE parent NOT NULL) ";
+                    "AND revs.leaf = 1 AND deleted = 0 ";
 
             cursor = db.rawQuery(sql, new String[]{id});
             while (cursor.moveToNext()) {
                 String revId = cursor.getString(0);
-                deleted.add(new DeleteDocumentCallable(id, revId).call(db));
+                deleted.add(new DeleteDocumentCallable(id, revId, cache, bodyStore).call(db));
             }
             return deleted;
         } catch (SQLException sqe) {
@@ -21,6 +21,8 @@ import com.cloudant.sync.datastore.DocumentBodyFactory;
 import com.cloudant.sync.datastore.DocumentNotFoundException;
 import com.cloudant.sync.datastore.DocumentRevision;
 import com.cloudant.sync.datastore.DocumentRevisionBuilder;
+import com.cloudant.sync.datastore.DocumentRevisionCache;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
@@ -43,14 +45,21 @@ public class DeleteDocumentCallable implements SQLCallable<DocumentRevision> {
 
     String docId;
     String prevRevId;
+    DocumentRevisionCache cache;
+    RevisionBodyStore bodyStore;
 
     /**
      * @param docId     The Document ID of the Revision to be deleted
      * @param prevRevId The Revision ID of the Revision to be deleted
+     * @param cache     The cache of current revisions to invalidate
+     * @param bodyStore The store to write the body of the deleted revision to
      */
-    public DeleteDocumentCallable(String docId, String prevRevId) {
+    public DeleteDocumentCallable(String docId, String prevRevId, DocumentRevisionCache cache,
+                                  RevisionBodyStore bodyStore) {
         this.docId = docId;
         this.prevRevId = prevRevId;
+        this.cache = cache;
+        this.bodyStore = bodyStore;
     }
 
     public DocumentRevision call(SQLDatabase db) throws ConflictException,
@@ -77,8 +86,7 @@ public class DeleteDocumentCallable implements SQLCallable<DocumentRevision> {
             }
             // now check it's a leaf revision
             String leafQuery = "SELECT " + DatastoreImpl.METADATA_COLS + " FROM revs, docs WHERE " +
-                    "docs.docid=? AND revs.doc_id=docs.doc_id AND revid=? AND revs.sequence NOT " +
-                    "IN (SELECT DISTINCT parent FROM revs WHERE parent NOT NULL) ";
+                    "docs.docid=? AND revs.doc_id=docs.doc_id AND revid=? AND revs.leaf = 1 ";
             c = db.rawQuery(leafQuery, new String[]{docId, prevRevId});
             boolean isLeaf = c.moveToFirst();
             if (!isLeaf) {
@@ -98,6 +106,7 @@ public class DeleteDocumentCallable implements SQLCallable<DocumentRevision> {
             DatabaseUtils.closeCursorQuietly(c);
         }
 
+        cache.invalidate(docId);
         new SetCurrentCallable(sequence, false).call(db);
         String newRevisionId = CouchUtils.generateNextRevisionId(prevRevId);
         // Previous revision to be deleted could be winner revision ("current" == true),
@@ -114,6 +123,7 @@ public class DeleteDocumentCallable implements SQLCallable<DocumentRevision> {
         callable.current = current;
         callable.data = JSONUtils.emptyJSONObjectAsBytes();
         callable.available = false;
+        callable.bodyStore = bodyStore;
         long newSequence = callable.call(db);
 
         // build up the document to return to the caller - it's quicker than re-querying the
@@ -20,6 +20,7 @@ import com.cloudant.sync.datastore.DatastoreException;
 import com.cloudant.sync.datastore.DatastoreImpl;
 import com.cloudant.sync.datastore.DocumentNotFoundException;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.util.Misc;
@@ -45,6 +46,7 @@ public class DoForceInsertExistingDocumentWithHistoryCallable implements SQLCall
 
     private String attachmentsDir;
     private AttachmentStreamFactory attachmentStreamFactory;
+    private RevisionBodyStore bodyStore;
 
     /**
      *
@@ -52,16 +54,19 @@ public class DoForceInsertExistingDocumentWithHistoryCallable implements SQLCall
      * @param revisions   revision history to insert, it includes all revisions (include the
      *                    revision of the DocumentRevision
      *                    as well) sorted in ascending order.
+     * @param bodyStore   store to write the bodies of the new revisions to
      */
     public DoForceInsertExistingDocumentWithHistoryCallable(DocumentRevision newRevision, long
             docNumericId, List<String> revisions, Map<String, Object> attachments, String
-            attachmentsDir, AttachmentStreamFactory attachmentStreamFactory) {
+            attachmentsDir, AttachmentStreamFactory attachmentStreamFactory, RevisionBodyStore
+            bodyStore) {
         this.newRevision = newRevision;
         this.docNumericId = docNumericId;
         this.revisions = revisions;
         this.attachments = attachments;
         this.attachmentsDir = attachmentsDir;
         this.attachmentStreamFactory = attachmentStreamFactory;
+        this.bodyStore = bodyStore;
     }
 
     @Override
@@ -83,10 +88,11 @@ public class DoForceInsertExistingDocumentWithHistoryCallable implements SQLCall
         long sequence;
 
         if (ancestorSequence == -1) {
-            sequence = new InsertDocumentHistoryToNewTreeCallable(newRevision, revisions, docNumericId).call(db);
+            sequence = new InsertDocumentHistoryToNewTreeCallable(newRevision, revisions, docNumericId,
+                    bodyStore).call(db);
         } else {
             sequence = new InsertDocumentHistoryIntoExistingTreeCallable(newRevision, revisions,
-                    docNumericId, attachments).call(db);
+                    docNumericId, attachments, bodyStore).call(db);
         }
         return sequence;
     }
@@ -17,7 +17,9 @@ package com.cloudant.sync.datastore.callables;
 import com.cloudant.sync.datastore.AttachmentException;
 import com.cloudant.sync.datastore.DatastoreException;
 import com.cloudant.sync.datastore.DatastoreImpl;
+import com.cloudant.sync.datastore.DocumentIdCache;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 
@@ -37,17 +39,23 @@ public class DoForceInsertNewDocumentWithHistoryCallable implements SQLCallable<
 
     private DocumentRevision rev;
     private List<String> revHistory;
+    private DocumentIdCache idCache;
+    private RevisionBodyStore bodyStore;
 
     /**
      * @param rev        DocumentRevision to insert
      * @param revHistory revision history to insert, it includes all revisions (include the
      *                   revision of the DocumentRevision
      *                   as well) sorted in ascending order.
+     * @param idCache    cache of document numeric IDs to record the new document in
+     * @param bodyStore  store to write the bodies of the new revisions to
      */
     public DoForceInsertNewDocumentWithHistoryCallable(DocumentRevision rev, List<String>
-            revHistory) {
+            revHistory, DocumentIdCache idCache, RevisionBodyStore bodyStore) {
         this.rev = rev;
         this.revHistory = revHistory;
+        this.idCache = idCache;
+        this.bodyStore = bodyStore;
     }
 
     @Override
@@ -56,12 +64,12 @@ public class DoForceInsertNewDocumentWithHistoryCallable implements SQLCallable<
                 "doForceInsertNewDocumentWithHistory()",
                 new Object[]{rev, revHistory});
 
-        long docNumericID = new InsertDocumentIDCallable(rev.getId()).call(db);
+        long docNumericID = new InsertDocumentIDCallable(rev.getId(), idCache).call(db);
         long parentSequence = 0L;
         for (int i = 0; i < revHistory.size() - 1; i++) {
             // Insert stub node
             parentSequence = DatastoreImpl.insertStubRevisionAdaptor(docNumericID, revHistory.get(i),
-                    parentSequence).call(db);
+                    parentSequence, bodyStore).call(db);
         }
         // Insert the leaf node (don't copy attachments)
         InsertRevisionCallable callable = new InsertRevisionCallable();
@@ -72,6 +80,7 @@ public class DoForceInsertNewDocumentWithHistoryCallable implements SQLCallable<
         callable.current = true;
         callable.data = rev.getBody().asBytes();
         callable.available = true;
+        callable.bodyStore = bodyStore;
         long sequence = callable.call(db);
         return sequence;
     }
@@ -19,10 +19,13 @@ import com.cloudant.sync.datastore.AttachmentManager;
 import com.cloudant.sync.datastore.AttachmentStreamFactory;
 import com.cloudant.sync.datastore.DatastoreException;
 import com.cloudant.sync.datastore.DatastoreImpl;
+import com.cloudant.sync.datastore.DocumentIdCache;
 import com.cloudant.sync.datastore.DocumentNotFoundException;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.DocumentRevisionCache;
 import com.cloudant.sync.datastore.ForceInsertItem;
 import com.cloudant.sync.datastore.PreparedAttachment;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.datastore.UnsavedStreamAttachment;
 import com.cloudant.sync.notifications.DocumentCreated;
 import com.cloudant.sync.notifications.DocumentModified;
@@ -52,11 +55,20 @@ public class ForceInsertCallable implements SQLCallable<List<DocumentModified>>
     private String attachmentsDir;
     private AttachmentStreamFactory attachmentStreamFactory;
 
+    private DocumentRevisionCache cache;
+    private DocumentIdCache idCache;
+    private RevisionBodyStore bodyStore;
+
     public ForceInsertCallable(List<ForceInsertItem> items, String attachmentsDir,
-                               AttachmentStreamFactory attachmentStreamFactory) {
+                               AttachmentStreamFactory attachmentStreamFactory,
+                               DocumentRevisionCache cache, DocumentIdCache idCache,
+                               RevisionBodyStore bodyStore) {
         this.items = items;
         this.attachmentsDir = attachmentsDir;
         this.attachmentStreamFactory = attachmentStreamFactory;
+        this.cache = cache;
+        this.idCache = idCache;
+        this.bodyStore = bodyStore;
     }
 
     @Override
@@ -67,25 +79,27 @@ public class ForceInsertCallable implements SQLCallable<List<DocumentModified>>
         for (ForceInsertItem item : items) {
 
             logger.finer("forceInsert(): " + item.rev.toString());
+            cache.invalidate(item.rev.getId());
 
             DocumentCreated documentCreated = null;
             DocumentUpdated documentUpdated = null;
 
             boolean ok = true;
 
-            long docNumericId = new GetNumericIdCallable(item.rev.getId()).call(db);
+            long docNumericId = new GetNumericIdCallable(item.rev.getId(), idCache).call(db);
             long seq = 0;
 
             if (docNumericId != -1) {
                 seq = new DoForceInsertExistingDocumentWithHistoryCallable(item.rev,
                         docNumericId, item.revisionHistory,
-                        item.attachments, attachmentsDir, attachmentStreamFactory).call(db);
+                        item.attachments, attachmentsDir, attachmentStreamFactory, bodyStore)
+                        .call(db);
                 item.rev.initialiseSequence(seq);
                 // TODO fetch the parent doc?
                 documentUpdated = new DocumentUpdated(null, item.rev);
             } else {
                 seq = new DoForceInsertNewDocumentWithHistoryCallable(item.rev, item
-                        .revisionHistory).call(db);
+                        .revisionHistory, idCache, bodyStore).call(db);
                 item.rev.initialiseSequence(seq);
                 documentCreated = new DocumentCreated(item.rev);
             }
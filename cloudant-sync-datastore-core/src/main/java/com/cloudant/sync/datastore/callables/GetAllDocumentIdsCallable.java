@@ -37,7 +37,7 @@ public class GetAllDocumentIdsCallable implements SQLCallable<List<String>> {
                 "WHERE deleted = 0 AND current = 1 AND docs.doc_id = revs.doc_id";
         Cursor cursor = null;
         try {
-            cursor = db.rawQuery(sql, new String[]{});
+            cursor = db.rawQueryStreaming(sql, new String[]{});
             while (cursor.moveToNext()) {
                 docIds.add(cursor.getString(0));
             }
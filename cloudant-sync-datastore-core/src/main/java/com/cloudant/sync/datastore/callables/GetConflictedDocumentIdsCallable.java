@@ -39,21 +39,18 @@ public class GetConflictedDocumentIdsCallable implements SQLCallable<List<String
 
     @Override
     public List<String> call(SQLDatabase db) throws Exception {
-        // the "SELECT DISTINCT ..." subquery selects all the parent
-        // sequence, and so the outer "SELECT ..." practically selects
-        // all the leaf nodes. The "GROUP BY" and "HAVING COUNT(*) > 1"
-        // make sure only those document with more than one leafs are
-        // returned.
+        // selects all the non-deleted leaf nodes. The "GROUP BY" and
+        // "HAVING COUNT(*) > 1" make sure only those document with more
+        // than one leafs are returned.
         final String sql = "SELECT docs.docid, COUNT(*) FROM docs,revs " +
                 "WHERE revs.doc_id = docs.doc_id " +
-                "AND deleted = 0 AND revs.sequence NOT IN " +
-                "(SELECT DISTINCT parent FROM revs WHERE parent NOT NULL) " +
+                "AND revs.leaf = 1 AND deleted = 0 " +
                 "GROUP BY docs.docid HAVING COUNT(*) > 1";
 
         List<String> conflicts = new ArrayList<String>();
         Cursor cursor = null;
         try {
-            cursor = db.rawQuery(sql, new String[]{});
+            cursor = db.rawQueryStreaming(sql, new String[]{});
             while (cursor.moveToNext()) {
                 String docId = cursor.getString(0);
                 conflicts.add(docId);
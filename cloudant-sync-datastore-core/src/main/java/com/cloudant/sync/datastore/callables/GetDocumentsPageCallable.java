@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore.callables;
+
+import com.cloudant.sync.datastore.AttachmentStreamFactory;
+import com.cloudant.sync.datastore.Datastore;
+import com.cloudant.sync.datastore.DatastoreImpl;
+import com.cloudant.sync.datastore.DocumentOrder;
+import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Get a page of non-deleted winning Revisions of Documents in a given order, continuing after
+ * the last Revision of the previous page. Pages are found with an index on the sort key rather
+ * than by skipping an offset, so each page costs the same however far into the documents it is.
+ * Pages in document ID order may be restricted to a range of IDs.
+ *
+ * @api_private
+ */
+public class GetDocumentsPageCallable implements SQLCallable<List<DocumentRevision>> {
+
+    private DocumentOrder order;
+    private boolean descending;
+    private DocumentRevision after;
+    private int limit;
+    private boolean metadataOnly;
+    private String startKey;
+    private String endKey;
+
+    private Datastore datastore;
+    private String attachmentsDir;
+    private AttachmentStreamFactory attachmentStreamFactory;
+
+    /**
+     * @param order                   Order of the documents
+     * @param descending              Whether the documents are in descending order
+     * @param after                   Last Revision of the previous page, or null for the first
+     *                                page
+     * @param limit                   Maximum number of Revisions to return
+     * @param metadataOnly            If true, return revisions without their bodies or
+     *                                attachments
+     * @param datastore               Datastore which full revisions of metadata-only revisions
+     *                                are read from
+     * @param attachmentsDir          Location of attachments
+     * @param attachmentStreamFactory Factory to manage access to attachment streams
+     */
+    public GetDocumentsPageCallable(DocumentOrder order, boolean descending,
+                                    DocumentRevision after, int limit, boolean metadataOnly,
+                                    Datastore datastore, String attachmentsDir,
+                                    AttachmentStreamFactory attachmentStreamFactory) {
+        this(order, descending, null, null, after, limit, metadataOnly, datastore,
+                attachmentsDir, attachmentStreamFactory);
+    }
+
+    /**
+     * @param order                   Order of the documents
+     * @param descending              Whether the documents are in descending order
+     * @param startKey                Lowest document ID to return, or null for no lower bound.
+     *                                Only used in {@link DocumentOrder#DocumentId} order
+     * @param endKey                  Highest document ID to return, or null for no upper bound.
+     *                                Only used in {@link DocumentOrder#DocumentId} order
+     * @param after                   Last Revision of the previous page, or null for the first
+     *                                page
+     * @param limit                   Maximum number of Revisions to return
+     * @param metadataOnly            If true, return revisions without their bodies or
+     *                                attachments
+     * @param datastore               Datastore which full revisions of metadata-only revisions
+     *                                are read from
+     * @param attachmentsDir          Location of attachments
+     * @param attachmentStreamFactory Factory to manage access to attachment streams
+     */
+    public GetDocumentsPageCallable(DocumentOrder order, boolean descending, String startKey,
+                                    String endKey, DocumentRevision after, int limit,
+                                    boolean metadataOnly, Datastore datastore,
+                                    String attachmentsDir,
+                                    AttachmentStreamFactory attachmentStreamFactory) {
+        this.order = order;
+        this.startKey = startKey;
+        this.endKey = endKey;
+        this.descending = descending;
+        this.after = after;
+        this.limit = limit;
+        this.metadataOnly = metadataOnly;
+        this.datastore = datastore;
+        this.attachmentsDir = attachmentsDir;
+        this.attachmentStreamFactory = attachmentStreamFactory;
+    }
+
+    @Override
+    public List<DocumentRevision> call(SQLDatabase db) throws Exception {
+        String column = order == DocumentOrder.DocumentId ? "docs.docid" : "revs.sequence";
+        List<String> args = new ArrayList<String>();
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(metadataOnly ? DatastoreImpl.METADATA_COLS :
+                        DatastoreImpl.FULL_DOCUMENT_COLS)
+                .append(" FROM revs, docs WHERE deleted = 0 AND current = 1 AND ")
+                .append("docs.doc_id = revs.doc_id");
+        if (order == DocumentOrder.DocumentId) {
+            if (startKey != null) {
+                sql.append(" AND docs.docid >= ?");
+                args.add(startKey);
+            }
+            if (endKey != null) {
+                sql.append(" AND docs.docid <= ?");
+                args.add(endKey);
+            }
+        }
+        if (after != null) {
+            sql.append(" AND ").append(column).append(descending ? " < ?" : " > ?");
+            args.add(order == DocumentOrder.DocumentId ? after.getId() :
+                    Long.toString(after.getSequence()));
+        }
+        sql.append(" ORDER BY ").append(column).append(descending ? " DESC" : " ASC")
+                .append(" LIMIT ?");
+        args.add(Integer.toString(limit));
+
+        String[] argsArray = args.toArray(new String[args.size()]);
+        if (metadataOnly) {
+            return DatastoreImpl.getMetadataRevisionsFromRawQuery(db, sql.toString(), argsArray,
+                    datastore);
+        }
+        return DatastoreImpl.getRevisionsFromRawQuery(db, sql.toString(), argsArray,
+                attachmentsDir, attachmentStreamFactory);
+    }
+}
@@ -19,7 +19,7 @@ import com.cloudant.sync.datastore.DatastoreImpl;
 import com.cloudant.sync.datastore.DocumentRevision;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
-import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.sqlite.TempKeySet;
 
 import java.util.List;
 
@@ -44,12 +44,17 @@ public class GetDocumentsWithIdsCallable implements SQLCallable<List<DocumentRev
 
     @Override
     public List<DocumentRevision> call(SQLDatabase db) throws Exception {
-        String sql = String.format("SELECT " + DatastoreImpl.FULL_DOCUMENT_COLS + " FROM revs, docs" +
-                " WHERE docid IN ( %1$s ) AND current = 1 AND docs.doc_id = revs.doc_id " +
-                " ORDER BY docs.doc_id ", DatabaseUtils.makePlaceholders(docIds.size
-                ()));
-        String[] args = docIds.toArray(new String[docIds.size()]);
-        List<DocumentRevision> docs = DatastoreImpl.getRevisionsFromRawQuery(db, sql, args, attachmentsDir, attachmentStreamFactory);
+        List<DocumentRevision> docs;
+        TempKeySet keys = TempKeySet.create(db, docIds);
+        try {
+            String sql = "SELECT " + DatastoreImpl.FULL_DOCUMENT_COLS + " FROM revs, docs" +
+                    " WHERE docid IN ( " + keys.select() + " ) AND current = 1 AND docs.doc_id" +
+                    " = revs.doc_id ORDER BY docs.doc_id ";
+            docs = DatastoreImpl.getRevisionsFromRawQuery(db, sql, new String[0], attachmentsDir,
+                    attachmentStreamFactory);
+        } finally {
+            TempKeySet.closeQuietly(keys);
+        }
         // Sort in memory since seems not able to sort them using SQL
         return DatastoreImpl.sortDocumentsAccordingToIdList(docIds, docs);
     }
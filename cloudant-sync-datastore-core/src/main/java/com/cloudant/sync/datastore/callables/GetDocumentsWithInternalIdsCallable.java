@@ -21,12 +21,10 @@ import com.cloudant.sync.datastore.DocumentException;
 import com.cloudant.sync.datastore.DocumentRevision;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
-import com.cloudant.sync.util.CollectionUtils;
-import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.sqlite.TempKeySet;
 
-import java.util.ArrayList;
+import java.sql.SQLException;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -59,44 +57,22 @@ public class GetDocumentsWithInternalIdsCallable implements SQLCallable<List<Doc
             return Collections.emptyList();
         }
 
-        final String GET_DOCUMENTS_BY_INTERNAL_IDS = "SELECT " + DatastoreImpl.FULL_DOCUMENT_COLS
-                + " FROM revs, docs WHERE revs.doc_id IN ( %s ) AND current = 1 AND docs.doc_id =" +
-                " revs.doc_id";
-
-        // Split into batches because SQLite has a limit on the number
-        // of placeholders we can use in a single query. 999 is the default
-        // value, but it can be lower. It's hard to find this out from Java,
-        // so we use a value much lower.
-        List<DocumentRevision> result = new ArrayList<DocumentRevision>(docIds.size());
-
-        List<List<Long>> batches = CollectionUtils.partition(docIds,
-                DatastoreImpl.SQLITE_QUERY_PLACEHOLDERS_LIMIT);
-        for (List<Long> batch : batches) {
-            String sql = String.format(
-                    GET_DOCUMENTS_BY_INTERNAL_IDS,
-                    DatabaseUtils.makePlaceholders(batch.size())
-            );
-            String[] args = new String[batch.size()];
-            for (int i = 0; i < batch.size(); i++) {
-                args[i] = Long.toString(batch.get(i));
-            }
-            result.addAll(DatastoreImpl.getRevisionsFromRawQuery(db, sql, args, attachmentsDir,
-                    attachmentStreamFactory));
+        // Bind the IDs through a temporary table because SQLite has a limit
+        // on the number of placeholders we can use in a single query.
+        TempKeySet keys = null;
+        try {
+            keys = TempKeySet.create(db, docIds);
+            // Contract is to sort by sequence number
+            String sql = "SELECT " + DatastoreImpl.FULL_DOCUMENT_COLS + " FROM revs, docs " +
+                    "WHERE revs.doc_id IN ( " + keys.select() + " ) AND current = 1 AND " +
+                    "docs.doc_id = revs.doc_id ORDER BY revs.sequence";
+            return DatastoreImpl.getRevisionsFromRawQuery(db, sql, new String[0], attachmentsDir,
+                    attachmentStreamFactory);
+        } catch (SQLException e) {
+            throw new DatastoreException(e);
+        } finally {
+            TempKeySet.closeQuietly(keys);
         }
-
-        // Contract is to sort by sequence number, which we need to do
-        // outside the sqlDb as we're batching requests.
-        Collections.sort(result, new Comparator<DocumentRevision>() {
-            @Override
-            public int compare(DocumentRevision documentRevision, DocumentRevision
-                    documentRevision2) {
-                long a = documentRevision.getSequence();
-                long b = documentRevision2.getSequence();
-                return (int) (a - b);
-            }
-        });
-
-        return result;
     }
 
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore.callables;
+
+import com.cloudant.sync.datastore.Datastore;
+import com.cloudant.sync.datastore.DatastoreImpl;
+import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.sqlite.TempKeySet;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Get a list of the metadata of the winning (current) Revisions matching a list of Document
+ * IDs, without reading their bodies or attachments
+ *
+ * @api_private
+ */
+public class GetMetadataWithIdsCallable implements SQLCallable<List<DocumentRevision>> {
+
+    private List<String> docIds;
+    private Datastore datastore;
+
+    /**
+     * @param docIds    List of Document IDs
+     * @param datastore Datastore which full revisions are read from
+     */
+    public GetMetadataWithIdsCallable(List<String> docIds, Datastore datastore) {
+        this.docIds = docIds;
+        this.datastore = datastore;
+    }
+
+    @Override
+    public List<DocumentRevision> call(SQLDatabase db) throws Exception {
+        if (docIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<DocumentRevision> docs;
+        TempKeySet keys = TempKeySet.create(db, docIds);
+        try {
+            String sql = "SELECT " + DatastoreImpl.METADATA_COLS + " FROM revs, docs" +
+                    " WHERE docid IN ( " + keys.select() + " ) AND current = 1 AND docs.doc_id" +
+                    " = revs.doc_id";
+            docs = DatastoreImpl.getMetadataRevisionsFromRawQuery(db, sql, new String[0],
+                    datastore);
+        } finally {
+            TempKeySet.closeQuietly(keys);
+        }
+        return DatastoreImpl.sortDocumentsAccordingToIdList(docIds, docs);
+    }
+}
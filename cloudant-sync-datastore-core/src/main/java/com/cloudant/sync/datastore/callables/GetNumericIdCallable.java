@@ -16,6 +16,7 @@ package com.cloudant.sync.datastore.callables;
 
 import com.cloudant.sync.datastore.DatastoreException;
 import com.cloudant.sync.datastore.DatastoreImpl;
+import com.cloudant.sync.datastore.DocumentIdCache;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
@@ -26,30 +27,39 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Get the internal numeric ID for a given Document ID
+ * Get the internal numeric ID for a given Document ID. Must be called on the writer thread, as
+ * the ID found is added to the {@link DocumentIdCache}.
  *
  * @api_private
  */
 public class GetNumericIdCallable implements SQLCallable<Long> {
 
     private String id;
+    private DocumentIdCache idCache;
 
     private static final Logger logger = Logger.getLogger(DatastoreImpl.class.getCanonicalName());
 
     /**
      * @param id Document ID to fetch the internal numeric ID for
+     * @param idCache Cache of numeric IDs to check first
      */
-    public GetNumericIdCallable(String id) {
+    public GetNumericIdCallable(String id, DocumentIdCache idCache) {
         this.id = id;
+        this.idCache = idCache;
     }
 
     public Long call(SQLDatabase db) throws DatastoreException {
+        long cached = idCache.get(id);
+        if (cached != -1) {
+            return cached;
+        }
         Cursor cursor = null;
         try {
             String sql = DatastoreImpl.GET_DOC_NUMERIC_ID;
             cursor = db.rawQuery(sql, new String[]{id});
             if (cursor.moveToFirst()) {
                 long sequence = cursor.getLong(0);
+                idCache.put(id, sequence);
                 return sequence;
             } else {
                 return -1L;
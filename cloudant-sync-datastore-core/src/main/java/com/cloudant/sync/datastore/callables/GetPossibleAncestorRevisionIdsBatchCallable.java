@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore.callables;
+
+import com.cloudant.sync.datastore.DatastoreException;
+import com.cloudant.sync.sqlite.Cursor;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.sqlite.TempKeySet;
+import com.cloudant.sync.util.CouchUtils;
+import com.cloudant.sync.util.DatabaseUtils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * For a batch of documents, retrieve the revision IDs that are possible ancestors of each of the
+ * given revisions of each document: those with a lower generation, up to a limit for each given
+ * revision. All the documents are read with one query, instead of one query for each revision
+ * as {@link GetPossibleAncestorRevisionIdsCallable} does.
+ *
+ * @api_private
+ */
+public class GetPossibleAncestorRevisionIdsBatchCallable implements
+        SQLCallable<Map<String, List<String>>> {
+
+    private final Map<String, ? extends Collection<String>> revisions;
+    private final int limit;
+
+    /**
+     * @param revisions Map of document ID to the revision IDs to find possible ancestors of.
+     * @param limit     Maximum IDs to retrieve for each revision.
+     */
+    public GetPossibleAncestorRevisionIdsBatchCallable(Map<String, ? extends Collection<String>>
+                                                               revisions, int limit) {
+        this.revisions = revisions;
+        this.limit = limit;
+    }
+
+    /**
+     * @return map of document ID to the possible ancestors of its revisions, with no entry for
+     * documents which have none
+     */
+    @Override
+    public Map<String, List<String>> call(SQLDatabase db) throws Exception {
+        // the generations we're finding ancestors for and how many each still needs, by doc ID
+        Map<String, int[][]> wanted = new HashMap<String, int[][]>();
+        int maxGeneration = 0;
+        for (Map.Entry<String, ? extends Collection<String>> entry : revisions.entrySet()) {
+            List<int[]> generations = new ArrayList<int[]>();
+            for (String revId : entry.getValue()) {
+                int generation = CouchUtils.generationFromRevId(revId);
+                if (generation > 1) {
+                    generations.add(new int[]{generation, limit});
+                    maxGeneration = Math.max(maxGeneration, generation);
+                }
+            }
+            if (!generations.isEmpty()) {
+                wanted.put(entry.getKey(), generations.toArray(new int[generations.size()][]));
+            }
+        }
+
+        Map<String, List<String>> ancestors = new HashMap<String, List<String>>();
+        if (wanted.isEmpty()) {
+            return ancestors;
+        }
+
+        Map<String, Set<String>> found = new HashMap<String, Set<String>>();
+        TempKeySet keys = null;
+        Cursor cursor = null;
+        try {
+            keys = TempKeySet.create(db, wanted.keySet());
+            String sql = "SELECT docs.docid, revs.revid, revs.generation FROM revs, docs " +
+                    "WHERE docs.docid IN (" + keys.select() + ") AND revs.doc_id = docs.doc_id " +
+                    "AND revs.generation < ? AND revs.deleted = 0 AND EXISTS (SELECT 1 " +
+                    "FROM bodies WHERE bodies.sequence = revs.sequence) " +
+                    "ORDER BY revs.doc_id, revs.sequence DESC";
+            cursor = db.rawQuery(sql, new String[]{Integer.toString(maxGeneration)});
+            while (cursor.moveToNext()) {
+                String docId = cursor.getString(0);
+                String revId = cursor.getString(1);
+                int generation = cursor.getInt(2);
+                for (int[] want : wanted.get(docId)) {
+                    if (generation < want[0] && want[1] > 0) {
+                        want[1]--;
+                        Set<String> docAncestors = found.get(docId);
+                        if (docAncestors == null) {
+                            docAncestors = new LinkedHashSet<String>();
+                            found.put(docId, docAncestors);
+                        }
+                        docAncestors.add(revId);
+                    }
+                }
+            }
+        } catch (SQLException sqe) {
+            throw new DatastoreException(sqe);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+            TempKeySet.closeQuietly(keys);
+        }
+
+        for (Map.Entry<String, Set<String>> entry : found.entrySet()) {
+            ancestors.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+        }
+        return ancestors;
+    }
+}
@@ -15,6 +15,7 @@
 package com.cloudant.sync.datastore.callables;
 
 import com.cloudant.sync.datastore.DatastoreException;
+import com.cloudant.sync.datastore.DocumentIdCache;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
@@ -37,17 +38,21 @@ public class GetPossibleAncestorRevisionIdsCallable implements SQLCallable<List<
     private final String docId;
     private final String revId;
     private final int limit;
+    private final DocumentIdCache idCache;
 
     /**
      * Creates a GetPossibleAncestorRevisionIdsCallable object to retrieve revision IDs.
      * @param docId Document to retrieve IDs.
      * @param revId IDs retrieved will have lower generation numbers than this.
      * @param limit Maximum IDs to retrieve.
+     * @param idCache Cache of numeric doc IDs, used to avoid joining the docs table.
      */
-    public GetPossibleAncestorRevisionIdsCallable(String docId, String revId, int limit) {
+    public GetPossibleAncestorRevisionIdsCallable(String docId, String revId, int limit,
+                                                  DocumentIdCache idCache) {
         this.docId = docId;
         this.revId = revId;
         this.limit = limit;
+        this.idCache = idCache;
     }
 
     @Override
@@ -63,20 +68,28 @@ public class GetPossibleAncestorRevisionIdsCallable implements SQLCallable<List<
             return null;
         }
 
-        String sql = "SELECT revid FROM revs, docs WHERE docs.docid=?" +
-                " and revs.deleted=0 and revs.json not null and revs.doc_id = docs.doc_id" +
-                " ORDER BY revs.sequence DESC";
+        long docNumericId = idCache.get(docId);
+        String sql;
+        String arg;
+        if (docNumericId != -1) {
+            sql = "SELECT revid FROM revs WHERE doc_id=? and generation<? and deleted=0" +
+                    " and EXISTS (SELECT 1 FROM bodies WHERE bodies.sequence = revs.sequence)" +
+                    " ORDER BY sequence DESC LIMIT ?";
+            arg = Long.toString(docNumericId);
+        } else {
+            sql = "SELECT revid FROM revs, docs WHERE docs.docid=? and revs.generation<?" +
+                    " and revs.deleted=0 and revs.doc_id = docs.doc_id and EXISTS (SELECT 1" +
+                    " FROM bodies WHERE bodies.sequence = revs.sequence)" +
+                    " ORDER BY revs.sequence DESC LIMIT ?";
+            arg = docId;
+        }
         ArrayList<String> ids = new ArrayList<String>();
         Cursor c = null;
         try {
-            c = db.rawQuery(sql, new String[]{docId});
-            while (c.moveToNext() && limit > 0) {
-                String ancestorRevId = c.getString(0);
-                int ancestorGeneration = CouchUtils.generationFromRevId(ancestorRevId);
-                if (ancestorGeneration < generation) {
-                    ids.add(ancestorRevId);
-                    limit--;
-                }
+            c = db.rawQuery(sql, new String[]{arg, Integer.toString(generation), Integer
+                    .toString(limit)});
+            while (c.moveToNext()) {
+                ids.add(c.getString(0));
             }
         } catch (SQLException sqe) {
             throw new DatastoreException(sqe);
@@ -18,6 +18,7 @@ import com.cloudant.sync.datastore.AttachmentManager;
 import com.cloudant.sync.datastore.DatastoreException;
 import com.cloudant.sync.datastore.DatastoreImpl;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.util.Misc;
@@ -43,15 +44,17 @@ public class InsertDocumentHistoryIntoExistingTreeCallable implements SQLCallabl
     private List<String> revisions;
     private Long docNumericID;
     private Map<String, Object> attachments;
+    private RevisionBodyStore bodyStore;
 
     public InsertDocumentHistoryIntoExistingTreeCallable(DocumentRevision newRevision,
                                                          List<String> revisions, Long
                                                                  docNumericID, Map<String,
-            Object> attachments) {
+            Object> attachments, RevisionBodyStore bodyStore) {
         this.newRevision = newRevision;
         this.revisions = revisions;
         this.docNumericID = docNumericID;
         this.attachments = attachments;
+        this.bodyStore = bodyStore;
     }
 
     @Override
@@ -68,7 +71,8 @@ public class InsertDocumentHistoryIntoExistingTreeCallable implements SQLCallabl
             String revId = revisions.get(i);
             long seq = new GetSequenceCallable(newRevision.getId(), revId).call(db);
             if (seq == -1) {
-                seq = DatastoreImpl.insertStubRevisionAdaptor(docNumericID, revId, parentSeq).call(db);
+                seq = DatastoreImpl.insertStubRevisionAdaptor(docNumericID, revId, parentSeq,
+                        bodyStore).call(db);
                 new SetCurrentCallable(parentSeq, false).call(db);
             }
             parentSeq = seq;
@@ -87,6 +91,7 @@ public class InsertDocumentHistoryIntoExistingTreeCallable implements SQLCallabl
         callable.current = false; // we'll call pickWinnerOfConflicts to set this if it needs it
         callable.data = newRevision.asBytes();
         callable.available = true;
+        callable.bodyStore = bodyStore;
         long newLeafSeq = callable.call(db);
 
         new PickWinningRevisionCallable(docNumericID).call(db);
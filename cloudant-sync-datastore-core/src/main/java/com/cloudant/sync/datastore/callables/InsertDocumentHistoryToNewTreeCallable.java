@@ -17,6 +17,7 @@ package com.cloudant.sync.datastore.callables;
 import com.cloudant.sync.datastore.DatastoreException;
 import com.cloudant.sync.datastore.DatastoreImpl;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.util.Misc;
@@ -43,12 +44,14 @@ public class InsertDocumentHistoryToNewTreeCallable implements SQLCallable<Long>
     private DocumentRevision newRevision;
     private List<String> revisions;
     private Long docNumericID;
+    private RevisionBodyStore bodyStore;
 
     public InsertDocumentHistoryToNewTreeCallable(DocumentRevision newRevision, List<String>
-            revisions, Long docNumericID) {
+            revisions, Long docNumericID, RevisionBodyStore bodyStore) {
         this.newRevision = newRevision;
         this.revisions = revisions;
         this.docNumericID = docNumericID;
+        this.bodyStore = bodyStore;
     }
 
     @Override
@@ -61,7 +64,7 @@ public class InsertDocumentHistoryToNewTreeCallable implements SQLCallable<Long>
         long parentSequence = 0L;
         for (int i = 0; i < revisions.size() - 1; i++) {
             //we copy attachments here so allow the exception to propagate
-            parentSequence = DatastoreImpl.insertStubRevisionAdaptor(docNumericID, revisions.get(i), parentSequence).call(db);
+            parentSequence = DatastoreImpl.insertStubRevisionAdaptor(docNumericID, revisions.get(i), parentSequence, bodyStore).call(db);
         }
         // don't copy attachments
         String newLeafRev = newRevision.getRevision();
@@ -73,6 +76,7 @@ public class InsertDocumentHistoryToNewTreeCallable implements SQLCallable<Long>
         callable.current = false; // we'll call pickWinnerOfConflicts to set this if it needs it
         callable.data = newRevision.asBytes();
         callable.available = !newRevision.isDeleted();
+        callable.bodyStore = bodyStore;
         long newLeafSeq = callable.call(db);
 
         new PickWinningRevisionCallable(docNumericID).call(db);
@@ -16,6 +16,7 @@ package com.cloudant.sync.datastore.callables;
 
 import com.cloudant.android.ContentValues;
 import com.cloudant.sync.datastore.DatastoreException;
+import com.cloudant.sync.datastore.DocumentIdCache;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 
@@ -27,9 +28,11 @@ import com.cloudant.sync.sqlite.SQLDatabase;
 public class InsertDocumentIDCallable implements SQLCallable<Long> {
 
     private String docId;
+    private DocumentIdCache idCache;
 
-    public InsertDocumentIDCallable(String docId) {
+    public InsertDocumentIDCallable(String docId, DocumentIdCache idCache) {
         this.docId = docId;
+        this.idCache = idCache;
     }
 
     @Override
@@ -40,6 +43,8 @@ public class InsertDocumentIDCallable implements SQLCallable<Long> {
         if (result == -1) {
             throw new DatastoreException("Failed to insert docid "+docId+" into docs table, check log for details");
         }
+        // the row can't be cached until we know the transaction hasn't been rolled back
+        idCache.inserted(docId);
         return result;
     }
 }
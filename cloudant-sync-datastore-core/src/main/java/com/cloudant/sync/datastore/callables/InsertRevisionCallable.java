@@ -15,8 +15,10 @@
 package com.cloudant.sync.datastore.callables;
 
 import com.cloudant.android.ContentValues;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.util.CouchUtils;
 
 import java.util.concurrent.Callable;
 import java.util.logging.Logger;
@@ -39,6 +41,8 @@ public class InsertRevisionCallable implements SQLCallable<Long> {
     public boolean current;
     public byte[] data;
     public boolean available;
+    // writes the body to the bodies table
+    public RevisionBodyStore bodyStore;
 
     @Override
     public String toString() {
@@ -58,6 +62,7 @@ public class InsertRevisionCallable implements SQLCallable<Long> {
         ContentValues args = new ContentValues();
         args.put("doc_id", this.docNumericId);
         args.put("revid", this.revId);
+        args.put("generation", CouchUtils.generationFromRevId(this.revId));
         // parent field is a foreign key
         if (this.parentSequence > 0) {
             args.put("parent", this.parentSequence);
@@ -65,12 +70,21 @@ public class InsertRevisionCallable implements SQLCallable<Long> {
         args.put("current", this.current);
         args.put("deleted", this.deleted);
         args.put("available", this.available);
-        args.put("json", this.data);
         logger.fine("New revision inserted: " + this.docNumericId + ", " + this.revId);
         newSequence = db.insert("revs", args);
         if (newSequence < 0) {
             throw new IllegalStateException("Unknown error inserting new revision, please check log");
         }
+        if (this.data != null) {
+            this.bodyStore.insert(db, newSequence, this.data);
+        }
+        if (this.parentSequence > 0) {
+            // the parent is no longer a leaf
+            ContentValues notLeaf = new ContentValues();
+            notLeaf.put("leaf", false);
+            db.update("revs", notLeaf, "sequence=?", new String[]{Long.toString(this
+                    .parentSequence)});
+        }
         return newSequence;
     }
 }
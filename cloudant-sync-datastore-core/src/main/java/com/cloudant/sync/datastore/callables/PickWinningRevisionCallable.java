@@ -36,19 +36,30 @@ import java.util.TreeMap;
 public class PickWinningRevisionCallable implements SQLCallable<Void> {
 
     // get all non-deleted leaf rev ids for a given doc id
-    // gets all revs whose sequence is not a parent of another rev and the rev isn't deleted
+    // gets all revs which aren't the parent of another rev and aren't deleted
     public static final String GET_NON_DELETED_LEAFS = "SELECT revs.revid, revs.sequence FROM " +
-            "revs WHERE revs.doc_id = ? AND revs.deleted = 0 AND revs.sequence NOT IN " +
-            "(SELECT DISTINCT parent FROM revs WHERE parent NOT NULL) ";
+            "revs WHERE revs.doc_id = ? AND revs.leaf = 1 AND revs.deleted = 0 ";
 
     // get all leaf rev ids for a given doc id
-    // gets all revs whose sequence is not a parent of another rev
+    // gets all revs which aren't the parent of another rev
     public static final String GET_ALL_LEAFS = "SELECT revs.revid, revs.sequence FROM revs " +
-            "WHERE revs.doc_id = ? AND revs.sequence NOT IN " +
+            "WHERE revs.doc_id = ? AND revs.leaf = 1 ";
+
+    // as above, for databases from before schema version 300 which have no leaf column
+    // gets all revs whose sequence is not a parent of another rev
+    private static final String NOT_PARENT = "revs.sequence NOT IN " +
             "(SELECT DISTINCT parent FROM revs WHERE parent NOT NULL) ";
 
+    private static final String GET_NON_DELETED_LEAFS_BY_PARENT = "SELECT revs.revid, " +
+            "revs.sequence FROM revs WHERE revs.doc_id = ? AND revs.deleted = 0 AND " + NOT_PARENT;
+
+    private static final String GET_ALL_LEAFS_BY_PARENT = "SELECT revs.revid, revs.sequence " +
+            "FROM revs WHERE revs.doc_id = ? AND " + NOT_PARENT;
+
     private final long docNumericId;
 
+    private final boolean leafColumn;
+
     /**
      * Identify and set the winning revision for the document specified by the supplied internal
      * document ID.
@@ -56,7 +67,20 @@ public class PickWinningRevisionCallable implements SQLCallable<Void> {
      * @param docNumericId the numeric (internal) ID of the document to set the winning revision for
      */
     public PickWinningRevisionCallable(long docNumericId) {
+        this(docNumericId, true);
+    }
+
+    /**
+     * Identify and set the winning revision for the document specified by the supplied internal
+     * document ID.
+     *
+     * @param docNumericId the numeric (internal) ID of the document to set the winning revision for
+     * @param leafColumn whether the {@code revs} table has the {@code leaf} column added in schema
+     *                   version 300; migrations from older versions pass false
+     */
+    public PickWinningRevisionCallable(long docNumericId, boolean leafColumn) {
         this.docNumericId = docNumericId;
+        this.leafColumn = leafColumn;
     }
 
     /**
@@ -100,7 +124,8 @@ public class PickWinningRevisionCallable implements SQLCallable<Void> {
 
         Cursor cursor = null;
         try {
-            cursor = db.rawQuery(GET_NON_DELETED_LEAFS, new String[]{Long.toString(docNumericId)});
+            cursor = db.rawQuery(leafColumn ? GET_NON_DELETED_LEAFS :
+                    GET_NON_DELETED_LEAFS_BY_PARENT, new String[]{Long.toString(docNumericId)});
             while (cursor.moveToNext()) {
                 leafs.put(cursor.getString(0), cursor.getLong(1));
             }
@@ -115,7 +140,8 @@ public class PickWinningRevisionCallable implements SQLCallable<Void> {
         // re-get with the same query but without the revs.delete clause
         if (leafs.size() == 0) {
             try {
-                cursor = db.rawQuery(GET_ALL_LEAFS, new String[]{Long.toString(docNumericId)});
+                cursor = db.rawQuery(leafColumn ? GET_ALL_LEAFS : GET_ALL_LEAFS_BY_PARENT,
+                        new String[]{Long.toString(docNumericId)});
                 while (cursor.moveToNext()) {
                     leafs.put(cursor.getString(0), cursor.getLong(1));
                 }
@@ -138,8 +164,7 @@ public class PickWinningRevisionCallable implements SQLCallable<Void> {
         ContentValues currentFalse = new ContentValues();
         currentFalse.put("current", 0);
         db.update("revs", currentFalse,
-                "sequence!=? AND doc_id=? AND sequence NOT IN " +
-                        "(SELECT DISTINCT parent FROM revs WHERE parent NOT NULL)",
+                "sequence!=? AND doc_id=? AND " + (leafColumn ? "revs.leaf = 1" : NOT_PARENT),
                 new String[]{Long.toString(newWinnerSeq), Long.toString(docNumericId)});
         return null;
     }
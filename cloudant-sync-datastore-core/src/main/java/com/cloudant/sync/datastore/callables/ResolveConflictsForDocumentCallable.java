@@ -15,7 +15,9 @@
 package com.cloudant.sync.datastore.callables;
 
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.DocumentRevisionCache;
 import com.cloudant.sync.datastore.DocumentRevisionTree;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 
@@ -29,16 +31,24 @@ public class ResolveConflictsForDocumentCallable implements SQLCallable<Void> {
 
     private DocumentRevisionTree docTree;
     private String revIdKeep;
+    private DocumentRevisionCache cache;
+    private RevisionBodyStore bodyStore;
 
 
-    public ResolveConflictsForDocumentCallable(DocumentRevisionTree docTree, String revIdKeep) {
+    public ResolveConflictsForDocumentCallable(DocumentRevisionTree docTree, String revIdKeep,
+                                               DocumentRevisionCache cache,
+                                               RevisionBodyStore bodyStore) {
         this.docTree = docTree;
         this.revIdKeep = revIdKeep;
+        this.cache = cache;
+        this.bodyStore = bodyStore;
     }
 
     @Override
     public Void call(SQLDatabase db) throws Exception {
 
+        cache.invalidate(docTree.getDocId());
+
         for (DocumentRevision revision : docTree.leafRevisions()) {
             if (revision.getRevision().equals(revIdKeep)) {
                 // this is the one we want to keep, set it to current
@@ -50,7 +60,7 @@ public class ResolveConflictsForDocumentCallable implements SQLCallable<Void> {
                 } else {
                     // if it's not deleted, deleted and make it non-current
                     DocumentRevision deleted = new DeleteDocumentCallable(
-                            revision.getId(), revision.getRevision()).call(db);
+                            revision.getId(), revision.getRevision(), cache, bodyStore).call(db);
                     new SetCurrentCallable(deleted.getSequence(), false).call(db);
                 }
             }
@@ -14,68 +14,99 @@
 
 package com.cloudant.sync.datastore.callables;
 
+import com.cloudant.common.ValueListMap;
 import com.cloudant.sync.datastore.DatastoreException;
+import com.cloudant.sync.datastore.DatastoreImpl;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.util.DatabaseUtils;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Checks the supplied collection of revisions for the given document ID and returns a
- * collection containing only those entries that are missing from the database.
+ * <p>Checks the supplied revisions of many documents and returns those that are missing from
+ * the database.</p>
+ *
+ * <p>The (document ID, revision ID) pairs are bound as the rows of a {@code UNION ALL} subquery,
+ * which is joined to the {@code docs} and {@code revs} tables using their unique indexes, so each
+ * query checks as many pairs as fit within the SQLite placeholder limit. Each document ID is bound
+ * once per query using numbered placeholders.</p>
  *
  * @api_private
  */
 
-public class RevsDiffBatchCallable implements SQLCallable<Collection<String>> {
+public class RevsDiffBatchCallable implements SQLCallable<Map<String, List<String>>> {
 
-    private String docId;
-    private Set<String> missingRevs;
+    private final Map<String, ? extends Collection<String>> revisions;
 
     /**
-     * @param docId the doc ID to check
-     * @param revs  the rev IDs to check
+     * @param revisions map of document ID to the revision IDs to check
      */
-    public RevsDiffBatchCallable(String docId, Collection<String> revs) {
-        this.docId = docId;
-        // Consider all missing to start
-        this.missingRevs = new HashSet<String>(revs);
+    public RevsDiffBatchCallable(Map<String, ? extends Collection<String>> revisions) {
+        this.revisions = revisions;
     }
 
     /**
-     * @return collection of rev IDs not present in the database
+     * @return map of document ID to the revision IDs not present in the database, with no entry
+     * for documents which have none missing
      */
     @Override
-    public Collection<String> call(SQLDatabase db) throws Exception {
-
-        final String sql = String.format(
-                "SELECT revs.revid FROM docs, revs " +
-                        "WHERE docs.doc_id = revs.doc_id AND docs.docid = ? AND revs.revid IN " +
-                        "(%s) ", DatabaseUtils.makePlaceholders(missingRevs.size()));
+    public Map<String, List<String>> call(SQLDatabase db) throws Exception {
+        ValueListMap<String, String> missingRevs = new ValueListMap<String, String>();
 
-        String[] args = new String[1 + missingRevs.size()];
-        args[0] = docId;
-        // Copy the revisions into the end of the args array
-        System.arraycopy(missingRevs.toArray(new String[missingRevs.size()]), 0, args, 1,
-                missingRevs.size());
+        StringBuilder wanted = new StringBuilder();
+        List<String> args = new ArrayList<String>();
+        for (Map.Entry<String, ? extends Collection<String>> entry : revisions.entrySet()) {
+            // the placeholder number of the document ID in the current query, 0 if not bound yet
+            int docPlaceholder = 0;
+            // remove duplicate revision IDs, which would otherwise be returned twice if missing
+            for (String revId : new LinkedHashSet<String>(entry.getValue())) {
+                int needed = docPlaceholder == 0 ? 2 : 1;
+                if (args.size() + needed > DatastoreImpl.SQLITE_QUERY_PLACEHOLDERS_LIMIT) {
+                    findMissing(db, wanted, args, missingRevs);
+                    wanted.setLength(0);
+                    args.clear();
+                    docPlaceholder = 0;
+                }
+                if (docPlaceholder == 0) {
+                    args.add(entry.getKey());
+                    docPlaceholder = args.size();
+                }
+                args.add(revId);
+                wanted.append(wanted.length() == 0 ? "SELECT " : " UNION ALL SELECT ");
+                wanted.append('?').append(docPlaceholder).append(" AS docid, ?")
+                        .append(args.size()).append(" AS revid");
+            }
+        }
+        if (!args.isEmpty()) {
+            findMissing(db, wanted, args, missingRevs);
+        }
+        return missingRevs;
+    }
 
+    private static void findMissing(SQLDatabase db, CharSequence wanted, List<String> args,
+                                    ValueListMap<String, String> missingRevs)
+            throws DatastoreException {
+        String sql = "SELECT wanted.docid, wanted.revid FROM (" + wanted + ") AS wanted " +
+                "LEFT JOIN docs ON docs.docid = wanted.docid " +
+                "LEFT JOIN revs ON revs.doc_id = docs.doc_id AND revs.revid = wanted.revid " +
+                "WHERE revs.sequence IS NULL";
         Cursor cursor = null;
         try {
-            cursor = db.rawQuery(sql, args);
+            cursor = db.rawQuery(sql, args.toArray(new String[args.size()]));
             while (cursor.moveToNext()) {
-                String revId = cursor.getString(cursor.getColumnIndex("revid"));
-                missingRevs.remove(revId);
+                missingRevs.addValueToKey(cursor.getString(0), cursor.getString(1));
             }
         } catch (SQLException e) {
             throw new DatastoreException(e);
         } finally {
             DatabaseUtils.closeCursorQuietly(cursor);
         }
-        return missingRevs;
     }
 }
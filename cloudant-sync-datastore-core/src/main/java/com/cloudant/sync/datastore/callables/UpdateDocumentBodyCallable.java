@@ -19,6 +19,7 @@ import com.cloudant.sync.datastore.ConflictException;
 import com.cloudant.sync.datastore.DatastoreImpl;
 import com.cloudant.sync.datastore.DocumentBody;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.util.CouchUtils;
@@ -39,13 +40,17 @@ public class UpdateDocumentBodyCallable implements SQLCallable<DocumentRevision>
     private String attachmentsDir;
     private AttachmentStreamFactory attachmentStreamFactory;
 
+    private RevisionBodyStore bodyStore;
+
     public UpdateDocumentBodyCallable(String docId, String prevRevId, DocumentBody body, String
-            attachmentsDir, AttachmentStreamFactory attachmentStreamFactory) {
+            attachmentsDir, AttachmentStreamFactory attachmentStreamFactory, RevisionBodyStore
+            bodyStore) {
         this.docId = docId;
         this.prevRevId = prevRevId;
         this.body = body;
         this.attachmentsDir = attachmentsDir;
         this.attachmentStreamFactory = attachmentStreamFactory;
+        this.bodyStore = bodyStore;
     }
 
     @Override
@@ -65,7 +70,8 @@ public class UpdateDocumentBodyCallable implements SQLCallable<DocumentRevision>
         }
 
         new SetCurrentCallable(preRevision.getSequence(), false).call(db);
-        InsertRevisionCallable insertRevisionCallable = DatastoreImpl.insertNewWinnerRevisionAdaptor(body, preRevision);
+        InsertRevisionCallable insertRevisionCallable = DatastoreImpl.insertNewWinnerRevisionAdaptor(body, preRevision,
+                bodyStore);
         String newRevisionId = insertRevisionCallable.revId;
         insertRevisionCallable.call(db);
         // TODO build the new DocumentRevision instead of retrieving the whole document again
@@ -17,7 +17,9 @@ package com.cloudant.sync.datastore.callables;
 import com.cloudant.sync.datastore.AttachmentManager;
 import com.cloudant.sync.datastore.AttachmentStreamFactory;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.datastore.DocumentRevisionCache;
 import com.cloudant.sync.datastore.PreparedAttachment;
+import com.cloudant.sync.datastore.RevisionBodyStore;
 import com.cloudant.sync.datastore.SavedAttachment;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
@@ -42,22 +44,30 @@ public class UpdateDocumentFromRevisionCallable implements SQLCallable<DocumentR
     private String attachmentsDir;
     private AttachmentStreamFactory attachmentStreamFactory;
 
+    private DocumentRevisionCache cache;
+
+    private RevisionBodyStore bodyStore;
+
     public UpdateDocumentFromRevisionCallable(DocumentRevision rev, List<PreparedAttachment>
             preparedNewAttachments, List<SavedAttachment> existingAttachments, String
-            attachmentsDir, AttachmentStreamFactory attachmentStreamFactory) {
+            attachmentsDir, AttachmentStreamFactory attachmentStreamFactory,
+            DocumentRevisionCache cache, RevisionBodyStore bodyStore) {
         this.rev = rev;
         this.preparedNewAttachments = preparedNewAttachments;
         this.existingAttachments = existingAttachments;
         this.attachmentsDir = attachmentsDir;
         this.attachmentStreamFactory = attachmentStreamFactory;
+        this.cache = cache;
+        this.bodyStore = bodyStore;
     }
 
     @Override
     public DocumentRevision call(SQLDatabase db) throws Exception {
         Misc.checkNotNull(rev, "DocumentRevision");
+        cache.invalidate(rev.getId());
 
         DocumentRevision updated = new UpdateDocumentBodyCallable(rev.getId(), rev.getRevision(), rev
-                .getBody(), attachmentsDir, attachmentStreamFactory).call(db);
+                .getBody(), attachmentsDir, attachmentStreamFactory, bodyStore).call(db);
         AttachmentManager.addAttachmentsToRevision(db, attachmentsDir, updated,
                 preparedNewAttachments);
 
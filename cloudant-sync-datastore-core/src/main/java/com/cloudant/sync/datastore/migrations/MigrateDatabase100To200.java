@@ -169,8 +169,9 @@ public class MigrateDatabase100To200 implements Migration {
                             deletedAttachmentCount, lowest.doc_id, lowest.sequence));
                 }
 
-                // Finally resolve the winner for the document based on all the merged branches
-                new PickWinningRevisionCallable(lowest.doc_id).call(db);
+                // Finally resolve the winner for the document based on all the merged branches;
+                // revs has no leaf column until schema version 300
+                new PickWinningRevisionCallable(lowest.doc_id, false).call(db);
             }
 
             // now we have fixed any duplicates we can migrate the schemas
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.cloudant.sync.notifications;
+
+import com.cloudant.sync.datastore.IncrementalCompaction;
+
+/**
+ * <p>Event posted when an {@link IncrementalCompaction} of a datastore stops, because it
+ * finished, was cancelled or failed.</p>
+ *
+ * @api_public
+ */
+public class CompactionCompleted {
+
+    /**
+     * @param dbName The name of the Datastore which was compacted
+     * @param cancelled Whether the compaction was cancelled before it finished
+     * @param error The error which stopped the compaction, or null
+     */
+    public CompactionCompleted(String dbName, boolean cancelled, Throwable error) {
+        this.dbName = dbName;
+        this.cancelled = cancelled;
+        this.error = error;
+    }
+
+    /**
+     * The name of the Datastore which was compacted
+     */
+    public final String dbName;
+
+    /**
+     * Whether the compaction was cancelled before it finished
+     */
+    public final boolean cancelled;
+
+    /**
+     * The error which stopped the compaction, or null if it finished or was cancelled
+     */
+    public final Throwable error;
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.cloudant.sync.notifications;
+
+import com.cloudant.sync.datastore.IncrementalCompaction;
+
+/**
+ * <p>Event posted after each step of an {@link IncrementalCompaction} of a datastore.</p>
+ *
+ * @api_public
+ */
+public class CompactionProgress {
+
+    /**
+     * @param dbName The name of the Datastore being compacted
+     * @param phase The phase the step worked on
+     * @param processed The number of items processed so far in {@code phase}
+     */
+    public CompactionProgress(String dbName, IncrementalCompaction.Phase phase, int processed) {
+        this.dbName = dbName;
+        this.phase = phase;
+        this.processed = processed;
+    }
+
+    /**
+     * The name of the Datastore being compacted
+     */
+    public final String dbName;
+
+    /**
+     * The phase the step worked on
+     */
+    public final IncrementalCompaction.Phase phase;
+
+    /**
+     * The number of items processed so far in {@link #phase}, see
+     * {@link IncrementalCompaction.Phase} for what each phase counts
+     */
+    public final int processed;
+
+}
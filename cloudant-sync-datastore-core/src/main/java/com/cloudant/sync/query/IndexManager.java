@@ -37,6 +37,7 @@
 package com.cloudant.sync.query;
 
 import com.cloudant.sync.datastore.Datastore;
+import com.cloudant.sync.datastore.DatastoreFuture;
 import com.cloudant.sync.datastore.DatastoreImpl;
 import com.cloudant.sync.datastore.encryption.KeyProvider;
 import com.cloudant.sync.datastore.migrations.SchemaOnlyMigration;
@@ -52,7 +53,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -347,6 +350,35 @@ public class IndexManager {
         return queryExecutor.find(query, indexes, skip, limit, fields, sortDocument);
     }
 
+    /**
+     *  Runs {@link #find(Map, long, long, List, List)} without blocking the calling thread.
+     *
+     *  A query updates the indexes and then queries them, waiting on both the datastore's
+     *  and the index database's queues in turn, so it can't be completed by either queue's
+     *  thread. Instead it runs on {@code executor}, which can be shared between queries.
+     *
+     *  @param executor executor on which to run the query
+     *  @return a future which completes with the query result, or null if the query
+     *          failed
+     *  @see #find(Map, long, long, List, List)
+     */
+    public DatastoreFuture<QueryResult> findAsync(final Map<String, Object> query,
+                                                  final long skip,
+                                                  final long limit,
+                                                  final List<String> fields,
+                                                  final List<Map<String, String>> sortDocument,
+                                                  Executor executor) {
+        DatastoreFuture<QueryResult> future = new DatastoreFuture<QueryResult>(
+                new Callable<QueryResult>() {
+                    @Override
+                    public QueryResult call() throws Exception {
+                        return find(query, skip, limit, fields, sortDocument);
+                    }
+                });
+        executor.execute(future);
+        return future;
+    }
+
     protected static String tableNameForIndex(String indexName) {
         return INDEX_TABLE_PREFIX.concat(indexName);
     }
@@ -13,8 +13,10 @@
 package com.cloudant.sync.query;
 
 import com.cloudant.android.ContentValues;
-import com.cloudant.sync.datastore.Changes;
+import com.cloudant.sync.datastore.ChangesIterator;
 import com.cloudant.sync.datastore.Datastore;
+import com.cloudant.sync.datastore.DatastoreImpl;
+import com.cloudant.sync.datastore.DocumentBodyImpl;
 import com.cloudant.sync.datastore.DocumentRevision;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLCallable;
@@ -43,6 +45,9 @@ class IndexUpdater {
 
     private static final Logger logger = Logger.getLogger(IndexUpdater.class.getName());
 
+    // changed documents read and indexed at a time
+    private static final int CHANGES_BATCH_SIZE = 1000;
+
     /**
      *  Constructs a new CDTQQueryExecutor using the indexes in 'database' to index documents from
      *  'datastore'.
@@ -107,15 +112,21 @@ class IndexUpdater {
     }
 
     private boolean updateIndex(String indexName, List<String> fieldNames) {
-        boolean success;
-        Changes changes;
+        boolean success = true;
         long lastSequence = sequenceNumberForIndex(indexName);
 
-        do {
-            changes = datastore.changes(lastSequence, 10000);
-            success = updateIndex(indexName, fieldNames, changes, lastSequence);
-            lastSequence = changes.getLastSequence();
-        } while (success && changes.size() > 0);
+        // The next batch of changes is read while each batch is indexed. Batches are indexed
+        // whole, so the iterator's last sequence is that of the batch just indexed.
+        ChangesIterator changes = ((DatastoreImpl) datastore).changesIterator(lastSequence,
+                CHANGES_BATCH_SIZE, false, SQLDatabaseQueue.Priority.BACKGROUND);
+        List<DocumentRevision> batch = new ArrayList<DocumentRevision>(CHANGES_BATCH_SIZE);
+        while (success && changes.hasNext()) {
+            batch.add(changes.next());
+            if (batch.size() == CHANGES_BATCH_SIZE || !changes.hasNext()) {
+                success = updateIndex(indexName, fieldNames, batch, changes.getLastSequence());
+                batch.clear();
+            }
+        }
 
         // raise error
         if (!success) {
@@ -127,7 +138,7 @@ class IndexUpdater {
 
     private boolean updateIndex(final String indexName,
                                 final List<String> fieldNames,
-                                final Changes changes,
+                                final List<DocumentRevision> changes,
                                 long lastSequence) {
         if (indexName == null || indexName.isEmpty()) {
             return false;
@@ -136,7 +147,7 @@ class IndexUpdater {
         Future<Boolean> result = queue.submitTransaction(new SQLCallable<Boolean>() {
             @Override
             public Boolean call(SQLDatabase database) {
-                for (DocumentRevision rev: changes.getResults()) {
+                for (DocumentRevision rev: changes) {
                     // Delete existing values
                     String tableName = IndexManager.tableNameForIndex(indexName);
                     database.delete(tableName, " _id = ? ", new String[]{rev.getId()});
@@ -167,7 +178,7 @@ class IndexUpdater {
 
                 return true;
             }
-        });
+        }, SQLDatabaseQueue.Priority.BACKGROUND);
 
         boolean success;
         try {
@@ -211,10 +222,15 @@ class IndexUpdater {
             return null;
         }
 
+        // read all the indexed fields in one pass over the body, rather than deserializing
+        // the whole body or reading it once per field
+        Map<String, Object> fieldValues = DocumentBodyImpl.extractFields(rev.getBody(),
+                fieldNames);
+
         int arrayCount = 0;
         String arrayFieldName = null; // only record the last, as error if more than one
         for (String fieldName: fieldNames) {
-            Object value = ValueExtractor.extractValueForFieldName(fieldName, rev.getBody());
+            Object value = fieldValues.get(fieldName);
             if (value != null && value instanceof List) {
                 arrayCount = arrayCount + 1;
                 arrayFieldName = fieldName;
@@ -233,8 +249,7 @@ class IndexUpdater {
         List<DBParameter> parameters = new ArrayList<DBParameter>();
         List<Object> arrayFieldValues = null;
         if (arrayCount == 1) {
-            arrayFieldValues = (List) ValueExtractor.extractValueForFieldName(arrayFieldName,
-                    rev.getBody());
+            arrayFieldValues = (List) fieldValues.get(arrayFieldName);
         }
 
         if (arrayFieldValues != null && arrayFieldValues.size() > 0) {
@@ -251,7 +266,7 @@ class IndexUpdater {
                                                             initialIncludedFields,
                                                             initialArgs,
                                                             indexName,
-                                                            rev);
+                                                            fieldValues);
                 if (parameter == null) {
                     return null;
                 }
@@ -268,7 +283,7 @@ class IndexUpdater {
                                                         initialIncludedFields,
                                                         initialArgs,
                                                         indexName,
-                                                        rev);
+                                                        fieldValues);
             if (parameter == null) {
                 return null;
             }
@@ -282,7 +297,7 @@ class IndexUpdater {
                                             List<String> initialIncludedFields,
                                             List<Object> initialArgs,
                                             String indexName,
-                                            DocumentRevision rev) {
+                                            Map<String, Object> fieldValues) {
         List<String> includeFieldNames = new ArrayList<String>();
         includeFieldNames.addAll(initialIncludedFields);
         List<Object> args = new ArrayList<Object>();
@@ -295,7 +310,7 @@ class IndexUpdater {
                 continue;
             }
 
-            Object value = ValueExtractor.extractValueForFieldName(fieldName, rev.getBody());
+            Object value = fieldValues.get(fieldName);
             if (value != null && !(value instanceof List && ((List) value).size() == 0)) {
                 // Only include a field with a value or a field with a populated list
                 includeFieldNames.add(fieldName);
@@ -358,7 +373,7 @@ class IndexUpdater {
                 }
                 return result;
             }
-        });
+        }, SQLDatabaseQueue.Priority.BACKGROUND);
 
         long lastSequenceNumber = 0;
         try {
@@ -388,7 +403,7 @@ class IndexUpdater {
                 }
                 return updateSuccess;
             }
-        });
+        }, SQLDatabaseQueue.Priority.BACKGROUND);
 
         boolean success;
         try {
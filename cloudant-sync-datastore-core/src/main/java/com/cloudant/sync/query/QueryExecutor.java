@@ -17,6 +17,7 @@ import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLCallable;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.sqlite.SQLDatabaseQueue;
+import com.cloudant.sync.sqlite.TempKeySet;
 import com.cloudant.sync.util.DatabaseUtils;
 import com.cloudant.sync.util.Misc;
 
@@ -258,7 +259,7 @@ class QueryExecutor {
                 SqlParts sqlParts = sqlNode.sql;
                 Cursor cursor = null;
                 try {
-                    cursor = db.rawQuery(sqlParts.sqlWithPlaceHolders, sqlParts.placeHolderValues);
+                    cursor = db.rawQueryStreaming(sqlParts.sqlWithPlaceHolders, sqlParts.placeHolderValues);
                     while (cursor.moveToNext()) {
                         String docId = cursor.getString(0);
                         docIds.add(docId);
@@ -297,40 +298,33 @@ class QueryExecutor {
                                  Map<String, Object> indexes,
                                  SQLDatabase db) {
         boolean smallResultSet = (docIdSet.size() < SMALL_RESULT_SET_SIZE_THRESHOLD);
-        SqlParts orderBy = sqlToSortIds(docIdSet, sortDocument, indexes);
         List<String> sortedIds = null;
-        if (orderBy != null) {
-            // The query will iterate through a sorted list of docIds.
-            // This means that if we create a new array and add entries
-            // to that array as we iterate through the result set which
-            // are part of the query's results, we'll end up with an
-            // ordered set of results.
-            Cursor cursor = null;
-            try {
-                cursor = db.rawQuery(orderBy.sqlWithPlaceHolders, orderBy.placeHolderValues);
-                while (cursor.moveToNext()) {
-                    if (sortedIds == null) {
-                        sortedIds = new ArrayList<String>();
-                    }
-
-                    String candidateId = cursor.getString(0);
-
-                    if (smallResultSet) {
-                        sortedIds.add(candidateId);
-                    } else {
-                        if (docIdSet.contains(candidateId)) {
-                            sortedIds.add(candidateId);
-                        }
-                    }
+        // Large result sets are bound into a temporary table rather than placeholders, so
+        // that SQLite only has to sort the results instead of the whole index.
+        TempKeySet keys = null;
+        Cursor cursor = null;
+        try {
+            if (!smallResultSet) {
+                keys = TempKeySet.create(db, docIdSet);
+            }
+            SqlParts orderBy = sqlToSortIds(docIdSet, sortDocument, indexes,
+                    keys == null ? null : keys.select());
+            if (orderBy == null) {
+                return null;  // error doing the ordering
+            }
+            cursor = db.rawQueryStreaming(orderBy.sqlWithPlaceHolders, orderBy.placeHolderValues);
+            while (cursor.moveToNext()) {
+                if (sortedIds == null) {
+                    sortedIds = new ArrayList<String>();
                 }
-            } catch (SQLException e) {
-                logger.log(Level.SEVERE, "Failed to sort doc ids.", e);
-                return null;
-            } finally {
-                DatabaseUtils.closeCursorQuietly(cursor);
+                sortedIds.add(cursor.getString(0));
             }
-        } else {
-            sortedIds = null;  // error doing the ordering
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to sort doc ids.", e);
+            return null;
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+            TempKeySet.closeQuietly(keys);
         }
 
         return sortedIds;
@@ -350,6 +344,26 @@ class QueryExecutor {
     protected static SqlParts sqlToSortIds(Set<String> docIdSet,
                                   List<Map<String, String>> sortDocument,
                                   Map<String, Object> indexes) {
+        return sqlToSortIds(docIdSet, sortDocument, indexes, null);
+    }
+
+    /**
+     *  Return SQL to get ordered list of docIds.
+     *
+     *  Method assumes `sortDocument` is valid.
+     *
+     *  @param docIdSet The original set of document ids
+     *  @param sortDocument Array of ordering definitions
+     *                      [ { "fieldName" : "asc" }, { "fieldName2", "desc" } ]
+     *  @param indexes dictionary of indexes
+     *  @param docIdSelect subquery selecting the document ids of a large result set, see
+     *                     {@link TempKeySet#select()}, or null
+     *  @return the SQL containing the order by clause
+     */
+    protected static SqlParts sqlToSortIds(Set<String> docIdSet,
+                                  List<Map<String, String>> sortDocument,
+                                  Map<String, Object> indexes,
+                                  String docIdSelect) {
         String chosenIndex = chooseIndexForSort(sortDocument, indexes);
         if (chosenIndex == null) {
             String msg = String.format("No single index can satisfy order %s", sortDocument);
@@ -362,6 +376,9 @@ class QueryExecutor {
         // for small result sets:
         // SELECT _id FROM idx WHERE _id IN (?, ?) ORDER BY fieldName ASC, fieldName2 DESC
         // for large result sets:
+        // SELECT _id FROM idx WHERE _id IN (SELECT key FROM temp.keyset WHERE set_id = 1)
+        //     ORDER BY fieldName ASC, fieldName2 DESC
+        // or without a subquery:
         // SELECT _id FROM idx ORDER BY fieldName ASC, fieldName2 DESC
 
         List<String> orderClauses = new ArrayList<String>();
@@ -386,6 +403,8 @@ class QueryExecutor {
             }
 
             whereClause = String.format("WHERE _id IN (%s)", Misc.join(", ", placeholders));
+        } else if (docIdSelect != null) {
+            whereClause = String.format("WHERE _id IN (%s)", docIdSelect);
         }
 
         String orderBy = Misc.join(", ", orderClauses);
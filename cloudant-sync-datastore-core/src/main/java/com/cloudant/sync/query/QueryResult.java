@@ -15,6 +15,7 @@ package com.cloudant.sync.query;
 import com.cloudant.sync.datastore.Attachment;
 import com.cloudant.sync.datastore.Datastore;
 import com.cloudant.sync.datastore.DocumentBodyFactory;
+import com.cloudant.sync.datastore.DocumentBodyImpl;
 import com.cloudant.sync.datastore.DocumentException;
 import com.cloudant.sync.datastore.DocumentRevision;
 import com.cloudant.sync.datastore.DocumentRevisionBuilder;
@@ -202,7 +203,7 @@ public class QueryResult implements Iterable<DocumentRevision> {
                                            DocumentRevision rev,
                                            Datastore datastore) {
         // grab the map filter fields and rebuild object
-        Map<String, Object> originalBody = rev.getBody().asMap();
+        Map<String, Object> originalBody = DocumentBodyImpl.readOnlyMap(rev.getBody());
         Map<String, Object> body = new HashMap<String, Object>();
         for (Map.Entry<String, Object> entry : originalBody.entrySet()) {
             if (fields.contains(entry.getKey())) {
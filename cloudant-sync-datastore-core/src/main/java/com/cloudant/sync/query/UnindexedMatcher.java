@@ -19,8 +19,10 @@ import static com.cloudant.sync.query.QueryConstants.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -85,6 +87,9 @@ class UnindexedMatcher {
 
     private ChildrenQueryNode root;
 
+    // every field the selector tests, so they can be read from a document in one pass
+    private Set<String> fieldNames;
+
     private static final Logger logger = Logger.getLogger(UnindexedMatcher.class.getName());
 
     /**
@@ -102,6 +107,8 @@ class UnindexedMatcher {
 
         UnindexedMatcher matcher = new UnindexedMatcher();
         matcher.root = root;
+        matcher.fieldNames = new HashSet<String>();
+        collectFieldNames(root, matcher.fieldNames);
 
         return matcher;
     }
@@ -180,6 +187,17 @@ class UnindexedMatcher {
         return root;
     }
 
+    private static void collectFieldNames(QueryNode node, Set<String> fieldNames) {
+        if (node instanceof ChildrenQueryNode) {
+            for (QueryNode child: ((ChildrenQueryNode) node).children) {
+                collectFieldNames(child, fieldNames);
+            }
+        } else if (node instanceof OperatorExpressionNode) {
+            Map<String, Object> expression = ((OperatorExpressionNode) node).expression;
+            fieldNames.add((String) expression.keySet().toArray()[0]);
+        }
+    }
+
     /**
      * Returns true is a document matches this matcher's selector.
      *
@@ -187,18 +205,21 @@ class UnindexedMatcher {
      * @return document and matcher's selector matching status.
      */
     public boolean matches(DocumentRevision rev) {
-        return executeSelectorTree(root, rev);
+        // only the fields in the selector are read from the document's body
+        Map<String, Object> fieldValues =
+                ValueExtractor.extractValuesForFieldNames(fieldNames, rev);
+        return executeSelectorTree(root, fieldValues);
     }
 
     @SuppressWarnings("unchecked")
-    private boolean executeSelectorTree(QueryNode node, DocumentRevision rev) {
+    private boolean executeSelectorTree(QueryNode node, Map<String, Object> fieldValues) {
         if (node instanceof AndQueryNode) {
             boolean passed = true;
 
             AndQueryNode andNode = (AndQueryNode) node;
 
             for (QueryNode child: andNode.children) {
-                passed = passed && executeSelectorTree(child, rev);
+                passed = passed && executeSelectorTree(child, fieldValues);
             }
 
             return passed;
@@ -209,7 +230,7 @@ class UnindexedMatcher {
             OrQueryNode orNode = (OrQueryNode) node;
 
             for (QueryNode child: orNode.children) {
-                passed = passed || executeSelectorTree(child, rev);
+                passed = passed || executeSelectorTree(child, fieldValues);
             }
 
             return passed;
@@ -236,7 +257,7 @@ class UnindexedMatcher {
             }
 
             Object expected = operatorExpression.get(operator);
-            Object actual = ValueExtractor.extractValueForFieldName(fieldName, rev);
+            Object actual = fieldValues.get(fieldName);
 
             boolean passed = false;
             List<String> specialCaseOperators = Arrays.asList(MOD, SIZE);
@@ -13,10 +13,13 @@
 package com.cloudant.sync.query;
 
 import com.cloudant.sync.datastore.DocumentBody;
+import com.cloudant.sync.datastore.DocumentBodyImpl;
 import com.cloudant.sync.datastore.DocumentRevision;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -39,35 +42,41 @@ class ValueExtractor {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public static Object extractValueForFieldName(String possiblyDottedField, DocumentBody body) {
-        // The algorithm here is to split the fields into a "path" and a "lastSegment".
-        // The path leads us to the final sub-document. We know that if we have either
-        // nil or a non-dictionary object while traversing path that the body doesn't
-        // have the right fields for this field selector -- it allows us to make sure
-        // that each level of the `path` results in a document rather than a value,
-        // because if it's a value, we can't continue the selection process.
-        String[] fields = possiblyDottedField.contains(".") ?
-                          possiblyDottedField.split("\\.") :
-                          new String[]{possiblyDottedField};
-
-        List<String> path = new ArrayList<String>(Arrays.asList(fields));
-        String lastSegment = path.remove(path.size() - 1);
+        Map<String, Object> values = DocumentBodyImpl.extractFields(body,
+                Collections.singletonList(possiblyDottedField));
+        if (!values.containsKey(possiblyDottedField)) {
+            String msg = String.format("Could not extract field %s from document.",
+                                       possiblyDottedField);
+            logger.log(Level.FINE, msg);
+            return null;
+        }
+        return values.get(possiblyDottedField);
+    }
 
-        Map<String, Object> currentLevel = body.asMap();
-        for (String field: path) {
-            Object map = currentLevel.get(field);
-            if (map != null && map instanceof Map) {
-                currentLevel = (Map<String, Object>) map;
-            } else {
-                String msg = String.format("Could not extract field %s from document.",
-                                           possiblyDottedField);
-                logger.log(Level.FINE, msg);
-                return null;
+    /**
+     * Returns the values of several fields of a revision, reading its body once. Fields
+     * which the revision doesn't have are not in the returned map.
+     */
+    public static Map<String, Object> extractValuesForFieldNames(
+            Collection<String> possiblyDottedFields, DocumentRevision rev) {
+        List<String> bodyFields = new ArrayList<String>(possiblyDottedFields.size());
+        for (String field : possiblyDottedFields) {
+            if (!field.equals("_id") && !field.equals("_rev")) {
+                bodyFields.add(field);
             }
         }
-
-        return currentLevel.get(lastSegment);
+        Map<String, Object> values = bodyFields.isEmpty() ? new HashMap<String, Object>() :
+                DocumentBodyImpl.extractFields(rev.getBody(), bodyFields);
+        // _id and _rev are special fields which come from attributes
+        // of the revision and not its body.
+        if (possiblyDottedFields.contains("_id")) {
+            values.put("_id", rev.getId());
+        }
+        if (possiblyDottedFields.contains("_rev")) {
+            values.put("_rev", rev.getRevision());
+        }
+        return values;
     }
 
 }
@@ -40,7 +40,7 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -451,29 +451,29 @@ class PullStrategy implements ReplicationStrategy {
 
         List<BulkGetRequest> requests = new ArrayList<BulkGetRequest>();
 
+        Map<String, List<String>> batchRevisions = new LinkedHashMap<String, List<String>>();
         for (String id : ids) {
             //skip any document with an empty id
             if (id.isEmpty()) {
                 logger.info("Found document with empty ID in change feed, skipping");
                 continue;
             }
-            // get list for atts_since (these are possible ancestors we have, it's ok to be eager
-
-            // and get all revision IDs higher up in the tree even if they're not our
-            // ancestors and
-            // belong to a different subtree)
-            HashSet<String> possibleAncestors = new HashSet<String>();
-            for (String revId : revisions.get(id)) {
-                List<String> thesePossibleAncestors = targetDb.getDbCore()
-                        .getPossibleAncestorRevisionIDs(id, revId, 50);
-                if (thesePossibleAncestors != null) {
-                    possibleAncestors.addAll(thesePossibleAncestors);
-                }
-            }
+            batchRevisions.put(id, revisions.get(id));
+        }
+
+        // get list for atts_since (these are possible ancestors we have, it's ok to be eager
+        // and get all revision IDs higher up in the tree even if they're not our
+        // ancestors and belong to a different subtree)
+        Map<String, List<String>> possibleAncestors = targetDb.getDbCore()
+                .getPossibleAncestorRevisionIDs(batchRevisions, 50);
+
+        for (String id : batchRevisions.keySet()) {
+            List<String> thesePossibleAncestors = possibleAncestors.get(id);
             requests.add(new BulkGetRequest(
                     id,
                     new ArrayList<String>(revisions.get(id)),
-                    new ArrayList<String>(possibleAncestors)));
+                    thesePossibleAncestors == null ? new ArrayList<String>() :
+                            thesePossibleAncestors));
         }
 
         if (useBulkGet) {
@@ -29,6 +29,7 @@ import com.cloudant.sync.datastore.DocumentRevisionTree;
 import com.cloudant.sync.datastore.MultipartAttachmentWriter;
 import com.cloudant.sync.datastore.RevisionHistoryHelper;
 import com.cloudant.sync.event.EventBus;
+import com.cloudant.sync.sqlite.SQLDatabaseQueue;
 import com.cloudant.sync.util.CollectionUtils;
 import com.cloudant.sync.util.JSONUtils;
 import com.cloudant.sync.util.Misc;
@@ -297,7 +298,10 @@ class PushStrategy implements ReplicationStrategy {
     private Changes getNextBatch() throws ExecutionException, InterruptedException, DatastoreException {
         long lastPushSequence = getLastCheckpointSequence();
         logger.fine("Last push sequence from remote database: " + lastPushSequence);
-        return this.sourceDb.getDbCore().changes(lastPushSequence, this.changeLimitPerBatch);
+        // the revisions to push are read from the document trees, so the changes' bodies are
+        // only needed by a filter
+        return this.sourceDb.getDbCore().changes(lastPushSequence, this.changeLimitPerBatch,
+                this.filter == null, SQLDatabaseQueue.Priority.BACKGROUND);
     }
 
     private static class FilteredChanges extends Changes {
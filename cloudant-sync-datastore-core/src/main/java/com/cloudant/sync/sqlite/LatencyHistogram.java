@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import com.cloudant.sync.util.Misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A histogram of durations in nanoseconds.</p>
+ *
+ * <p>Durations are counted in logarithmic buckets, four per power of two, so recording a
+ * duration is a handful of atomic increments and percentiles are accurate to within 25%.
+ * Histograms can be recorded into from several threads at once.</p>
+ *
+ * @api_public
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of each duration after the highest set bit used to pick its bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 2;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong total;
+    private final AtomicLong max;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        this(new AtomicLongArray(BUCKETS), 0, 0, 0);
+    }
+
+    private LatencyHistogram(AtomicLongArray buckets, long count, long total, long max) {
+        this.buckets = buckets;
+        this.count = new AtomicLong(count);
+        this.total = new AtomicLong(total);
+        this.max = new AtomicLong(max);
+    }
+
+    /**
+     * Records a duration.
+     * @param nanos The duration in nanoseconds, negative durations are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketFor(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of the durations recorded, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    /**
+     * @return the longest duration recorded, in nanoseconds, or zero if none have been
+     * recorded
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean duration recorded, in nanoseconds, or zero if none have been recorded
+     */
+    public long getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile of the durations recorded.
+     * @param percentile The percentile, between 0 and 100
+     * @return a duration in nanoseconds which at least {@code percentile} percent of the
+     * durations recorded are less than or equal to, or zero if none have been recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        Misc.checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 " +
+                "and 100");
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += buckets.get(i);
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return a copy of this histogram, which isn't affected by durations recorded afterwards
+     */
+    public LatencyHistogram copy() {
+        AtomicLongArray copied = new AtomicLongArray(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            copied.set(i, buckets.get(i));
+        }
+        return new LatencyHistogram(copied, count.get(), total.get(), max.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%dns p50=%dns p99=%dns max=%dns", getCount(),
+                getMeanNanos(), getPercentileNanos(50), getPercentileNanos(99), getMaxNanos());
+    }
+
+    private static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        int shift = highestBit - SUB_BUCKET_BITS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+        long upper = lowerBound + (1L << shift) - 1;
+        // the top bucket's bound overflows
+        return upper < lowerBound ? Long.MAX_VALUE : upper;
+    }
+
+}
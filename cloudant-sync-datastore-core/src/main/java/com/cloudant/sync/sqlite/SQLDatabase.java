@@ -176,6 +176,59 @@ public abstract class SQLDatabase {
      */
      public abstract void setTransactionSuccessful();
 
+    /**
+     * @return true if this database supports {@link #setSavepoint(String)},
+     * {@link #releaseSavepoint(String)} and {@link #rollbackToSavepoint(String)}
+     */
+    public boolean supportsSavepoints() {
+        return false;
+    }
+
+    /**
+     * <p>Sets a named savepoint inside the current transaction.</p>
+     *
+     * <p>Work done after the savepoint can be undone with {@link #rollbackToSavepoint(String)}
+     * without affecting the rest of the transaction. Rolling back to a savepoint also discards
+     * the failure of any nested transactions ended since it was set, so the enclosing
+     * transaction can still be committed.</p>
+     *
+     * @param name the name of the savepoint, which must be a valid SQL identifier
+     * @throws SQLException if the savepoint could not be set
+     * @throws UnsupportedOperationException if {@link #supportsSavepoints()} is false
+     */
+    public void setSavepoint(String name) throws SQLException {
+        throw new UnsupportedOperationException("Savepoints are not supported");
+    }
+
+    /**
+     * Releases the named savepoint, keeping the work done since it was set as part of the
+     * enclosing transaction.
+     *
+     * <p>If a nested transaction was ended without being marked as successful since the
+     * savepoint was set, the savepoint is not released and an {@code SQLException} is thrown,
+     * so the caller can roll back to it rather than the whole transaction being rolled back
+     * when it ends.</p>
+     *
+     * @param name the name of the savepoint
+     * @throws SQLException if the savepoint could not be released, or a nested transaction
+     * failed after it was set
+     * @throws UnsupportedOperationException if {@link #supportsSavepoints()} is false
+     */
+    public void releaseSavepoint(String name) throws SQLException {
+        throw new UnsupportedOperationException("Savepoints are not supported");
+    }
+
+    /**
+     * Undoes the work done since the named savepoint was set and releases it.
+     *
+     * @param name the name of the savepoint
+     * @throws SQLException if the database could not be rolled back to the savepoint
+     * @throws UnsupportedOperationException if {@link #supportsSavepoints()} is false
+     */
+    public void rollbackToSavepoint(String name) throws SQLException {
+        throw new UnsupportedOperationException("Savepoints are not supported");
+    }
+
     /**
      * Convenience method for updating rows in the database.
      *
@@ -201,6 +254,32 @@ public abstract class SQLDatabase {
      */
     public abstract Cursor rawQuery(String sql, String[] selectionArgs) throws SQLException;
 
+    /**
+     * <p>Runs the provided SQL and returns a forward-only
+     * {@link com.cloudant.sync.sqlite.Cursor} which reads rows from the database as it is
+     * advanced, rather than loading the whole result set up front. Use this for scans which may
+     * return a large number of rows.</p>
+     *
+     * <p>The returned cursor only supports {@link Cursor#moveToNext()}, and
+     * {@link Cursor#moveToFirst()} before the cursor has moved past the first row.
+     * {@link Cursor#getCount()} may not be supported. The cursor must be closed on the thread
+     * which created it once the caller has finished with it.</p>
+     *
+     * <p>The default implementation returns the result of
+     * {@link #rawQuery(String, String[])}, which is suitable for implementations whose cursors
+     * already load their rows in bounded windows.</p>
+     *
+     * @param sql the SQL query. The SQL string must not be ; terminated
+     * @param selectionArgs You may include ?s in where clause in the query,
+     *     which will be replaced by the values from selectionArgs. The
+     *     values will be bound as Strings.
+     * @return A {@link com.cloudant.sync.sqlite.Cursor} object, which is positioned before the
+     * first entry.
+     */
+    public Cursor rawQueryStreaming(String sql, String[] selectionArgs) throws SQLException {
+        return rawQuery(sql, selectionArgs);
+    }
+
     /**
      * Convenience method for deleting rows in the database.
      *
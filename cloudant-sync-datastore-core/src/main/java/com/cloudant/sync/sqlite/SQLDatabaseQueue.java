@@ -17,35 +17,166 @@ package com.cloudant.sync.sqlite;
 import com.cloudant.sync.datastore.encryption.KeyProvider;
 import com.cloudant.sync.datastore.encryption.NullKeyProvider;
 import com.cloudant.sync.datastore.migrations.Migration;
+import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.util.Misc;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * SQLDatabaseQuue provides the ability to ensure that the
  * only a single thread accesses the SQLDatabase. Tasks submitted to this
- * queue are guaranteed to be executed in the order they are received
+ * queue with the same {@link Priority} are guaranteed to be executed in the order they are
+ * received
+ *
+ * <p>Tasks of a higher priority are run ahead of waiting tasks of a lower priority. To stop
+ * lower priority tasks being starved, each task is ranked by the time it was submitted plus a
+ * delay for its priority, so a waiting task is eventually run ahead of higher priority tasks
+ * submitted after it.</p>
+ *
+ * <p>Optionally a pool of read-only connections can be created alongside the single writer
+ * connection. In this mode the database uses SQLite's write-ahead log journal mode and tasks
+ * submitted using {@link #submitReadOnly(SQLCallable)} run concurrently on the reader
+ * connections, seeing the last committed state of the database. Tasks submitted using
+ * {@link #submit(SQLCallable)} and {@link #submitTransaction(SQLCallable)} are still executed
+ * in order on the writer connection.</p>
+ *
+ * <p>Optionally consecutive tasks submitted using {@link #submitTransaction(SQLCallable)} can
+ * be grouped into a single SQLite transaction, see
+ * {@link #enableGroupCommit(int, long, TimeUnit)}.</p>
  *
  * @api_private
  */
 public class SQLDatabaseQueue {
 
+    /**
+     * Scheduling priority of a task submitted to the queue.
+     */
+    public enum Priority {
+        /**
+         * Work which a user is waiting on, run ahead of all other tasks submitted at the same
+         * time.
+         */
+        INTERACTIVE(0),
+        /**
+         * The default priority.
+         */
+        NORMAL(100),
+        /**
+         * Work which isn't time sensitive, such as replication, index updates and compaction.
+         * It is run after waiting tasks of higher priority unless it has waited for about a
+         * second longer than them.
+         */
+        BACKGROUND(1000);
+
+        private final long delayNanos;
+
+        Priority(long delayMillis) {
+            this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+    }
+
+    /**
+     * Rank for tasks which must run before any others, such as opening the database.
+     */
+    private static final long RANK_FIRST = Long.MIN_VALUE;
+
+    /**
+     * Rank for the task which closes the database after all other tasks.
+     */
+    private static final long RANK_LAST = Long.MAX_VALUE;
+
+    /**
+     * Orders queued tasks by rank, then by the order they were submitted in.
+     */
+    private static final Comparator<Runnable> TASK_ORDER = new Comparator<Runnable>() {
+        @Override
+        public int compare(Runnable lhs, Runnable rhs) {
+            SQLQueueFuture<?> left = (SQLQueueFuture<?>) lhs;
+            SQLQueueFuture<?> right = (SQLQueueFuture<?>) rhs;
+            if (left.rank != right.rank) {
+                return left.rank < right.rank ? -1 : 1;
+            }
+            return left.sequence < right.sequence ? -1 : (left.sequence == right.sequence ? 0 : 1);
+        }
+    };
+
     private final SQLDatabase db;
     private final ExecutorService queue;
+    private final BlockingQueue<Runnable> writeTasks =
+            new PriorityBlockingQueue<Runnable>(11, TASK_ORDER);
+    private final AtomicLong taskSequence = new AtomicLong();
+    private final SQLQueueMetricsRecorder metrics = new SQLQueueMetricsRecorder();
     private final Logger logger = Logger.getLogger(SQLDatabase.class.getCanonicalName());
     private AtomicBoolean acceptTasks = new AtomicBoolean(true);
     private String sqliteVersion = null;
+
+    private final String filename;
+    private final KeyProvider provider;
+
+    /**
+     * Pool of threads servicing read-only tasks, or null if reads are run on the writer queue.
+     */
+    private final ExecutorService readQueue;
+
+    /**
+     * Each reader thread owns its own connection, as connections may be confined to the thread
+     * which opened them.
+     */
+    private final ThreadLocal<SQLDatabase> readerDb = new ThreadLocal<SQLDatabase>();
+
+    /**
+     * The most recently submitted schema update, reader tasks must not run until it completes.
+     */
+    private volatile Future<?> pendingSchemaUpdate = null;
+
+    /**
+     * Maximum number of transactional tasks committed together, group commit is disabled if
+     * this is 1.
+     */
+    private volatile int groupCommitMaxTransactions = 1;
+
+    /**
+     * Maximum time in nanoseconds to wait for further transactional tasks to join a group.
+     */
+    private volatile long groupCommitMaxDelayNanos = 0;
+
+    private static final String GROUP_COMMIT_SAVEPOINT = "group_commit";
+
+    /**
+     * Run on the writer thread after each task, or null.
+     */
+    private volatile Runnable afterTaskListener = null;
+
+    private final Runnable runAfterTaskListener = new Runnable() {
+        @Override
+        public void run() {
+            Runnable listener = afterTaskListener;
+            if (listener != null) {
+                listener.run();
+            }
+        }
+    };
+
     /**
      * Creates an SQLQueue for the database specified.
      * @param filename The file where the database is located
@@ -65,19 +196,132 @@ public class SQLDatabaseQueue {
      * @throws SQLException If the database cannot be opened.
      */
     public SQLDatabaseQueue(final String filename, KeyProvider provider) throws IOException, SQLException {
-        queue = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        this(filename, provider, 0);
+    }
+
+    /**
+     * Creates an SQLQueue for the SQLCipher-based database specified, with a pool of read-only
+     * connections.
+     * @param filename The file where the database is located
+     * @param provider The key provider object that contains the user-defined SQLCipher key.
+     *                 Supply a NullKeyProvider to use a non-encrypted database.
+     * @param readerConnections The number of read-only connections to open. If greater than
+     *                          zero the database is switched to write-ahead log journal mode.
+     *                          Zero runs read-only tasks on the writer connection.
+     * @throws IOException If a problem occurs creating the database
+     * @throws SQLException If the database cannot be opened.
+     */
+    public SQLDatabaseQueue(final String filename, KeyProvider provider, int readerConnections)
+            throws IOException, SQLException {
+        this(filename, provider, readerConnections, null);
+    }
+
+    /**
+     * Creates an SQLQueue for the SQLCipher-based database specified, with a pool of read-only
+     * connections, which configures the database when it is opened.
+     * @param filename The file where the database is located
+     * @param provider The key provider object that contains the user-defined SQLCipher key.
+     *                 Supply a NullKeyProvider to use a non-encrypted database.
+     * @param readerConnections The number of read-only connections to open. If greater than
+     *                          zero the database is switched to write-ahead log journal mode.
+     *                          Zero runs read-only tasks on the writer connection.
+     * @param onOpen Run on the writer connection once it is opened, before the journal mode is
+     *               changed and before any other task, or null. Settings such as
+     *               {@code auto_vacuum} which must be made before the journal mode can be made
+     *               here. A failure is logged, but doesn't stop the database being used.
+     * @throws IOException If a problem occurs creating the database
+     * @throws SQLException If the database cannot be opened.
+     */
+    public SQLDatabaseQueue(final String filename, KeyProvider provider, int readerConnections,
+                            final SQLCallable<?> onOpen) throws IOException, SQLException {
+        this.filename = filename;
+        this.provider = provider;
+        // equivalent to Executors.newSingleThreadExecutor, but with a priority queue which
+        // group commit can also take transactional tasks from
+        queue = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, writeTasks,
+                new ThreadFactory() {
             @Override
             public Thread newThread(Runnable r) {
                 return new Thread(r, "SQLDatabaseQueue - "+ filename);
             }
         });
         this.db = SQLDatabaseFactory.createSQLDatabase(filename, provider);
-        queue.submit(new Runnable() {
+        final boolean useWal = readerConnections > 0;
+        schedule(queue, new Runnable() {
             @Override
             public void run() {
                 db.open();
+                if (onOpen != null) {
+                    try {
+                        onOpen.call(db);
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "Could not configure database " + filename,
+                                e);
+                    }
+                }
+                if (useWal) {
+                    enableWriteAheadLogging(db);
+                }
             }
-        });
+        }, RANK_FIRST);
+        if (useWal) {
+            readQueue = new ThreadPoolExecutor(readerConnections, readerConnections, 0L,
+                    TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(11, TASK_ORDER),
+                    new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                r.run();
+                            } finally {
+                                // the connection must be closed by the thread which opened it
+                                closeReaderDatabase();
+                            }
+                        }
+                    }, "SQLDatabaseQueue reader " + threadCount.incrementAndGet() + " - " +
+                            filename);
+                }
+            });
+        } else {
+            readQueue = null;
+        }
+    }
+
+    /**
+     * <p>Enables group commit for tasks submitted using {@link #submitTransaction(SQLCallable)}.
+     * </p>
+     *
+     * <p>When a transactional task reaches the front of the queue it is run inside a new
+     * transaction, and any transactional tasks queued directly behind it are run inside the same
+     * transaction until {@code maxTransactions} tasks have run, a task which isn't transactional
+     * is reached, or the queue is empty and no further transactional task arrives within
+     * {@code maxDelay}. The transaction is then committed, so the cost of committing is shared
+     * between the tasks.</p>
+     *
+     * <p>Each task runs inside its own savepoint. If a task throws, only its own changes are
+     * rolled back and the other tasks in the group are unaffected. The futures for the tasks are
+     * completed once the shared transaction has been committed.</p>
+     *
+     * <p>A non-zero {@code maxDelay} holds each group's transaction open waiting for more tasks,
+     * which increases the latency of each write. A delay of zero only groups tasks which are
+     * already queued.</p>
+     *
+     * <p>Group commit is not used if the database does not support savepoints, see
+     * {@link SQLDatabase#supportsSavepoints()}.</p>
+     *
+     * @param maxTransactions The maximum number of tasks to commit in one transaction, 1
+     *                        disables group commit
+     * @param maxDelay The maximum time to wait for further tasks to join a group
+     * @param unit The unit of {@code maxDelay}
+     */
+    public void enableGroupCommit(int maxTransactions, long maxDelay, TimeUnit unit) {
+        Misc.checkArgument(maxTransactions >= 1, "maxTransactions must be at least 1");
+        Misc.checkArgument(maxDelay >= 0, "maxDelay must not be negative");
+        this.groupCommitMaxDelayNanos = unit.toNanos(maxDelay);
+        this.groupCommitMaxTransactions = maxTransactions;
     }
 
     /**
@@ -86,7 +330,7 @@ public class SQLDatabaseQueue {
      * @param version The version of the schema
      */
     public void updateSchema(final Migration migration, final int version){
-        queue.execute(new Runnable() {
+        pendingSchemaUpdate = schedule(queue, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -95,7 +339,7 @@ public class SQLDatabaseQueue {
                     logger.log(Level.SEVERE, "Failed to update database schema",e);
                 }
             }
-        }); // Fire and forget
+        }, RANK_FIRST); // Fire and forget
     }
 
     /**
@@ -120,26 +364,112 @@ public class SQLDatabaseQueue {
         }
     }
 
+    /**
+     * Submits a database task for execution with {@link Priority#NORMAL} priority
+     * @param callable The task to be performed
+     * @param <T> The type of object that is returned from the task
+     * @throws RejectedExecutionException Thrown when the queue has been shutdown
+     * @return Future representing the task to be executed.
+     */
+    public <T> SQLQueueFuture<T> submit(SQLCallable<T> callable){
+        return this.submit(callable, Priority.NORMAL);
+    }
+
     /**
      * Submits a database task for execution
      * @param callable The task to be performed
+     * @param priority The priority of the task
+     * @param <T> The type of object that is returned from the task
+     * @throws RejectedExecutionException Thrown when the queue has been shutdown
+     * @return Future representing the task to be executed.
+     */
+    public <T> SQLQueueFuture<T> submit(SQLCallable<T> callable, Priority priority){
+        return this.submitTaskToQueue(new SQLQueueCallable<T>(db, callable, false, metrics,
+                System.nanoTime()), priority);
+    }
+
+    /**
+     * <p>Submits a database task which only reads from the database for execution with
+     * {@link Priority#NORMAL} priority.</p>
+     *
+     * @param callable The task to be performed
      * @param <T> The type of object that is returned from the task
      * @throws RejectedExecutionException Thrown when the queue has been shutdown
      * @return Future representing the task to be executed.
+     * @see #submitReadOnly(SQLCallable, Priority)
      */
-    public <T> Future<T> submit(SQLCallable<T> callable){
-        return this.submitTaskToQueue(new SQLQueueCallable<T>(db, callable));
+    public <T> SQLQueueFuture<T> submitReadOnly(SQLCallable<T> callable){
+        return this.submitReadOnly(callable, Priority.NORMAL);
+    }
+
+    /**
+     * <p>Submits a database task which only reads from the database for execution.</p>
+     *
+     * <p>If this queue has reader connections the task may run concurrently with other
+     * read-only tasks and with a task on the writer connection. It will see the database as of
+     * the last committed transaction. Otherwise it is queued as if by
+     * {@link #submit(SQLCallable, Priority)}.</p>
+     *
+     * <p>The task must not write to the database.</p>
+     *
+     * @param callable The task to be performed
+     * @param priority The priority of the task
+     * @param <T> The type of object that is returned from the task
+     * @throws RejectedExecutionException Thrown when the queue has been shutdown
+     * @return Future representing the task to be executed.
+     */
+    public <T> SQLQueueFuture<T> submitReadOnly(final SQLCallable<T> callable,
+                                                Priority priority){
+        if (readQueue == null) {
+            return this.submit(callable, priority);
+        }
+        if (!acceptTasks.get()) {
+            throw new RejectedExecutionException("Database is closed");
+        }
+        final long queued = System.nanoTime();
+        return schedule(readQueue, new SQLQueueFuture<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                // don't read until the schema is up to date
+                Future<?> schemaUpdate = pendingSchemaUpdate;
+                if (schemaUpdate != null) {
+                    schemaUpdate.get();
+                }
+                return new SQLQueueCallable<T>(getReaderDatabase(), callable, false, metrics,
+                        queued).call();
+            }
+        }), rank(priority));
+    }
+
+    /**
+     * Submits a database task for execution in a transaction with {@link Priority#NORMAL}
+     * priority
+     * @param callable The task to be performed
+     * @param <T> The type of object that is returned from the task
+     * @throws RejectedExecutionException thrown when the queue has been shutdown
+     * @return Future representing the task to be executed.
+     */
+    public <T> SQLQueueFuture<T> submitTransaction(SQLCallable<T> callable){
+        return this.submitTransaction(callable, Priority.NORMAL);
     }
 
     /**
      * Submits a database task for execution in a transaction
      * @param callable The task to be performed
+     * @param priority The priority of the task
      * @param <T> The type of object that is returned from the task
      * @throws RejectedExecutionException thrown when the queue has been shutdown
      * @return Future representing the task to be executed.
      */
-    public <T> Future<T> submitTransaction(SQLCallable<T> callable){
-        return this.submitTaskToQueue(new SQLQueueCallable<T>(db, callable, true));
+    public <T> SQLQueueFuture<T> submitTransaction(SQLCallable<T> callable, Priority priority){
+        if (groupCommitMaxTransactions > 1) {
+            if (!acceptTasks.get()) {
+                throw new RejectedExecutionException("Database is closed");
+            }
+            return schedule(queue, new GroupCommitTask<T>(callable), rank(priority));
+        }
+        return this.submitTaskToQueue(new SQLQueueCallable<T>(db, callable, true, metrics,
+                System.nanoTime()), priority);
     }
 
     /**
@@ -153,15 +483,22 @@ public class SQLDatabaseQueue {
         // If shutdown has already been called then we don't need to shutdown again
         if (acceptTasks.getAndSet(false)) {
             //pass straight to queue, tasks passed via submitTaskToQueue will now be blocked.
-            queue.submit(new Runnable() {
+            schedule(queue, new Runnable() {
                 @Override
                 public void run() {
                     db.close();
                 }
-            });
+            }, RANK_LAST);
             queue.shutdown();
+            if (readQueue != null) {
+                // reader threads close their own connections as they terminate
+                readQueue.shutdown();
+            }
             try {
                 queue.awaitTermination(5, TimeUnit.MINUTES);
+                if (readQueue != null) {
+                    readQueue.awaitTermination(5, TimeUnit.MINUTES);
+                }
             } catch (InterruptedException e) {
                 logger.log(Level.SEVERE, "Interrupted while waiting for queue to terminate", e);
             }
@@ -178,22 +515,304 @@ public class SQLDatabaseQueue {
         return queue.isShutdown();
     }
 
+    /**
+     * Returns a snapshot of the time tasks have spent waiting in this queue, running and
+     * committing, and of the number of tasks waiting for the writer connection.
+     * @return the metrics recorded since this queue was created
+     */
+    public SQLQueueMetrics getMetrics() {
+        return metrics.snapshot(writeTasks.size());
+    }
+
+    /**
+     * Sets a listener to be told the timings of each task as it completes. The listener is
+     * called on the thread which ran the task, so it must return quickly.
+     * @param listener The listener, or null to remove the current listener
+     */
+    public void setMetricsListener(SQLQueueMetricsListener listener) {
+        metrics.setListener(listener);
+    }
+
+    /**
+     * <p>Sets a listener to run on the writer thread after each task it runs, once any
+     * transaction the task ran in has been committed or rolled back, but before the task's
+     * future completes. The listener must not throw or block.</p>
+     *
+     * @param listener The listener, or null to remove the current listener
+     */
+    public void setAfterTaskListener(Runnable listener) {
+        this.afterTaskListener = listener;
+    }
+
     /**
      * Adds a task to the queue, checking if the queue is still open
      * to accepting tasks
      * @param callable The task to submit to the queue
+     * @param priority The priority of the task
      * @param <T> The type of object that the callable returns
      * @return Future representing the task to be executed.
      * @throws RejectedExecutionException If the queue has been shutdown.
      */
-    private <T> Future<T> submitTaskToQueue(SQLQueueCallable<T> callable){
+    private <T> SQLQueueFuture<T> submitTaskToQueue(SQLQueueCallable<T> callable,
+                                                    Priority priority){
         if(acceptTasks.get()){
-            return queue.submit(callable);
+            return schedule(queue, new SQLQueueFuture<T>(callable), rank(priority));
         } else {
             throw new RejectedExecutionException("Database is closed");
         }
     }
 
+    /**
+     * Queues a task on {@code executor} with the given rank.
+     * @param executor The executor to run the task
+     * @param task The task to run
+     * @param rank The rank of the task, tasks with a lower rank run first
+     * @param <T> The type of object that the task returns
+     * @return the task
+     */
+    private <T> SQLQueueFuture<T> schedule(ExecutorService executor, SQLQueueFuture<T> task,
+                                          long rank) {
+        // set before the task is queued, which publishes them to the thread that runs it
+        task.rank = rank;
+        task.sequence = taskSequence.getAndIncrement();
+        if (executor == queue) {
+            task.beforeCompletion = runAfterTaskListener;
+        }
+        executor.execute(task);
+        if (executor == queue) {
+            metrics.taskQueued(writeTasks.size());
+        }
+        return task;
+    }
+
+    private SQLQueueFuture<Void> schedule(ExecutorService executor, Runnable runnable,
+                                          long rank) {
+        return schedule(executor, new SQLQueueFuture<Void>(Executors.callable(runnable,
+                (Void) null)), rank);
+    }
+
+    /**
+     * @return the rank of a task with {@code priority} submitted now
+     */
+    private static long rank(Priority priority) {
+        return System.nanoTime() + priority.delayNanos;
+    }
+
+    /**
+     * Runs a group of transactional tasks in a single transaction, starting with {@code first}
+     * and continuing with the transactional tasks queued behind it. Called on the writer thread.
+     * @param first The task at the front of the queue
+     */
+    private void runGroup(GroupCommitTask<?> first) {
+        if (!db.supportsSavepoints()) {
+            first.runAlone();
+            return;
+        }
+
+        List<GroupCommitTask<?>> group = new ArrayList<GroupCommitTask<?>>();
+        // a task which was taken from the queue while waiting, but can't join the group
+        Runnable next = null;
+        Throwable failure = null;
+        db.beginTransaction();
+        try {
+            GroupCommitTask<?> member = first;
+            long deadline = System.nanoTime() + groupCommitMaxDelayNanos;
+            while (member != null) {
+                group.add(member);
+                member.runInGroup();
+                member = null;
+                if (group.size() >= groupCommitMaxTransactions) {
+                    break;
+                }
+                // take the next task rather than peeking at it, as a higher priority task
+                // could be queued in between
+                Runnable task = writeTasks.poll();
+                if (task == null && acceptTasks.get()) {
+                    long remaining = deadline - System.nanoTime();
+                    task = remaining > 0 ? writeTasks.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                }
+                if (task instanceof GroupCommitTask) {
+                    member = (GroupCommitTask<?>) task;
+                } else {
+                    next = task;
+                }
+            }
+            db.setTransactionSuccessful();
+        } catch (InterruptedException e) {
+            // stop waiting and commit the tasks run so far
+            Thread.currentThread().interrupt();
+            db.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            long committing = System.nanoTime();
+            try {
+                db.endTransaction();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            long commitNanos = System.nanoTime() - committing;
+            for (GroupCommitTask<?> member : group) {
+                // every task in the group waited for the same commit
+                member.record(commitNanos);
+                if (failure == null) {
+                    member.complete();
+                } else {
+                    member.fail(failure);
+                }
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * A transactional task which can be run as part of a group commit.
+     */
+    private class GroupCommitTask<T> extends SQLQueueFuture<T> {
+
+        private final SQLCallable<T> callable;
+        private final long queuedNanos;
+        private T result;
+        private Exception exception;
+        private long startedNanos;
+        private long executionNanos = -1;
+
+        GroupCommitTask(final SQLCallable<T> callable) {
+            this(callable, System.nanoTime());
+        }
+
+        private GroupCommitTask(final SQLCallable<T> callable, long queuedNanos) {
+            super(new SQLQueueCallable<T>(db, callable, true, metrics, queuedNanos));
+            this.callable = callable;
+            this.queuedNanos = queuedNanos;
+        }
+
+        @Override
+        public void run() {
+            runGroup(this);
+        }
+
+        /**
+         * Runs the task in its own transaction, as if group commit was disabled.
+         */
+        void runAlone() {
+            super.run();
+        }
+
+        /**
+         * Runs the task inside a savepoint in the current transaction, unless it has been
+         * cancelled. The outcome is held until {@link #complete()} is called.
+         * @throws IllegalStateException if the savepoint couldn't be used, in which case the
+         * group's transaction must be rolled back
+         */
+        void runInGroup() {
+            if (isDone()) {
+                return;
+            }
+            startedNanos = System.nanoTime();
+            try {
+                db.setSavepoint(GROUP_COMMIT_SAVEPOINT);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to set savepoint", e);
+            }
+            try {
+                result = callable.call(db);
+                // fails if the callable ended a nested transaction without marking it as
+                // successful, which would otherwise roll back the whole group
+                db.releaseSavepoint(GROUP_COMMIT_SAVEPOINT);
+            } catch (Exception e) {
+                exception = e;
+                try {
+                    db.rollbackToSavepoint(GROUP_COMMIT_SAVEPOINT);
+                } catch (SQLException rollbackException) {
+                    throw new IllegalStateException("Failed to roll back to savepoint",
+                            rollbackException);
+                }
+            } finally {
+                executionNanos = System.nanoTime() - startedNanos;
+            }
+        }
+
+        /**
+         * Records the timings of {@link #runInGroup()}, if the task was run.
+         * @param commitNanos The time taken to end the group's transaction
+         */
+        void record(long commitNanos) {
+            if (executionNanos >= 0) {
+                metrics.taskCompleted(callable.getClass().getName(), startedNanos - queuedNanos,
+                        executionNanos, commitNanos, true);
+            }
+        }
+
+        /**
+         * Completes the future with the outcome of {@link #runInGroup()}, once the group's
+         * transaction has been committed.
+         */
+        void complete() {
+            if (exception == null) {
+                set(result);
+            } else {
+                setException(exception);
+            }
+        }
+
+        void fail(Throwable t) {
+            setException(t);
+        }
+    }
+
+    /**
+     * Returns the reader connection for the calling reader thread, opening it if needed.
+     * @return The reader connection for this thread
+     * @throws IOException If the database file could not be opened
+     * @throws SQLException If the database could not be opened
+     */
+    private SQLDatabase getReaderDatabase() throws IOException, SQLException {
+        SQLDatabase reader = readerDb.get();
+        if (reader == null) {
+            reader = SQLDatabaseFactory.openSqlDatabase(filename, provider);
+            reader.open();
+            // guard against accidental writes from tasks submitted as read-only, this is
+            // ignored by versions of SQLite older than 3.8.0
+            reader.execSQL("PRAGMA query_only = 1;");
+            readerDb.set(reader);
+        }
+        return reader;
+    }
+
+    private void closeReaderDatabase() {
+        SQLDatabase reader = readerDb.get();
+        if (reader != null) {
+            reader.close();
+            readerDb.remove();
+        }
+    }
+
+    /**
+     * Switches the database to write-ahead log journal mode so that readers do not block the
+     * writer and vice versa.
+     * @param db The database to change
+     */
+    private void enableWriteAheadLogging(SQLDatabase db) {
+        Cursor cursor = null;
+        try {
+            // the pragma returns the new journal mode
+            cursor = db.rawQuery("PRAGMA journal_mode = WAL", null);
+            if (!cursor.moveToFirst() || !"wal".equalsIgnoreCase(cursor.getString(0))) {
+                logger.log(Level.WARNING, "Could not enable write-ahead logging for " + filename);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to enable write-ahead logging", e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+
     /**
      * Returns the SQLite Version.
      * @return The SQLite version or "Unknown" if the version could not be determined.
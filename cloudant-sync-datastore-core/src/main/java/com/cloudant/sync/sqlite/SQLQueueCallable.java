@@ -27,6 +27,8 @@ class SQLQueueCallable<T> implements Callable<T> {
     private SQLDatabase db;
     private boolean runInTransaction;
     private SQLCallable<T> sqlCallable;
+    private SQLQueueMetricsRecorder metrics;
+    private long queuedNanos;
 
     /**
      * <p>
@@ -39,8 +41,7 @@ class SQLQueueCallable<T> implements Callable<T> {
      * @param sqlCallable The SQLCallable to invoke
      */
     SQLQueueCallable(SQLDatabase db, SQLCallable<T> sqlCallable) {
-        this.db = db;
-        this.sqlCallable = sqlCallable;
+        this(db, sqlCallable, false);
     }
 
     /**
@@ -55,14 +56,34 @@ class SQLQueueCallable<T> implements Callable<T> {
      * @param runInTransaction Whether to invoke the SQLCallable in a new transaction
      */
     SQLQueueCallable(SQLDatabase db, SQLCallable<T> sqlCallable, boolean runInTransaction) {
+        this(db, sqlCallable, runInTransaction, null, System.nanoTime());
+    }
+
+    /**
+     * <p>
+     *     Create a SQLQueueCallable object which will invoke the SQLCallable on the SQLDatabase
+     *     and record its timings
+     * </p>
+     * @param db The SQLDatabase to use for invoking
+     * @param sqlCallable The SQLCallable to invoke
+     * @param runInTransaction Whether to invoke the SQLCallable in a new transaction
+     * @param metrics Where to record the timings, or null to not record them
+     * @param queuedNanos The {@link System#nanoTime()} the task was queued at
+     */
+    SQLQueueCallable(SQLDatabase db, SQLCallable<T> sqlCallable, boolean runInTransaction,
+                     SQLQueueMetricsRecorder metrics, long queuedNanos) {
         this.db = db;
         this.runInTransaction = runInTransaction;
         this.sqlCallable = sqlCallable;
+        this.metrics = metrics;
+        this.queuedNanos = queuedNanos;
     }
 
     @Override
     final public T call() throws Exception {
+        long started = System.nanoTime();
         if(runInTransaction){
+            long executed = started;
             try {
                 db.beginTransaction();
                 //call(db) throws an exception if the transaction should be rolled back
@@ -70,10 +91,26 @@ class SQLQueueCallable<T> implements Callable<T> {
                 db.setTransactionSuccessful();
                 return returned;
             } finally {
-                db.endTransaction();
+                executed = System.nanoTime();
+                try {
+                    db.endTransaction();
+                } finally {
+                    record(started, executed, System.nanoTime() - executed);
+                }
             }
         } else {
-            return sqlCallable.call(db);
+            try {
+                return sqlCallable.call(db);
+            } finally {
+                record(started, System.nanoTime(), 0);
+            }
+        }
+    }
+
+    private void record(long started, long executed, long commitNanos) {
+        if (metrics != null) {
+            metrics.taskCompleted(sqlCallable.getClass().getName(), started - queuedNanos,
+                    executed - started, commitNanos, runInTransaction);
         }
     }
 
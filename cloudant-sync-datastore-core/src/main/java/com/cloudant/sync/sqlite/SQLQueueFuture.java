@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>A task submitted to a {@link SQLDatabaseQueue}, which can run listeners once it has
+ * completed.</p>
+ *
+ * <p>Listeners run on the thread which completes the task, normally the queue's own thread,
+ * after any transaction the task ran in has been committed or rolled back. A listener must not
+ * block waiting for another task submitted to the same queue, as that task can't run until the
+ * listener returns.</p>
+ *
+ * @param <T> The type of object returned by the task
+ *
+ * @api_private
+ */
+public class SQLQueueFuture<T> extends FutureTask<T> {
+
+    private static final Logger logger = Logger.getLogger(SQLQueueFuture.class.getCanonicalName());
+
+    /**
+     * Listeners waiting for the task to complete, null once they have been run.
+     */
+    private List<Runnable> listeners = new ArrayList<Runnable>();
+
+    /**
+     * Position of this task in its queue, set by {@link SQLDatabaseQueue} before the task is
+     * queued. Tasks with a lower rank run first, then tasks with a lower sequence.
+     */
+    long rank;
+    long sequence;
+
+    /**
+     * Run on the thread which ran the task before its result is set, or null. Set by
+     * {@link SQLDatabaseQueue} before the task is queued.
+     */
+    Runnable beforeCompletion;
+
+    /**
+     * @param callable The task to run
+     */
+    public SQLQueueFuture(Callable<T> callable) {
+        super(callable);
+    }
+
+    /**
+     * Adds a listener to run when this task completes. If the task has already completed the
+     * listener is run immediately on the calling thread.
+     * @param listener The listener to run
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    @Override
+    protected void set(T t) {
+        runBeforeCompletion();
+        super.set(t);
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+        runBeforeCompletion();
+        super.setException(t);
+    }
+
+    private void runBeforeCompletion() {
+        if (beforeCompletion != null) {
+            beforeCompletion.run();
+        }
+    }
+
+    @Override
+    protected void done() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            toRun = listeners;
+            listeners = null;
+        }
+        for (Runnable listener : toRun) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                // don't let one listener stop the others running, or kill the queue's thread
+                logger.log(Level.SEVERE, "Listener for completed task failed", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * <p>A snapshot of the metrics recorded by a {@link SQLDatabaseQueue}.</p>
+ *
+ * <p>For each class of task the queue records how long tasks waited in the queue before
+ * starting, how long they took to run and how long their transactions took to commit. This
+ * shows whether slow datastore calls are spending their time in SQLite or waiting for other
+ * tasks to finish.</p>
+ *
+ * @see SQLQueueMetricsListener
+ *
+ * @api_public
+ */
+public class SQLQueueMetrics {
+
+    /**
+     * Timings for one class of task.
+     *
+     * @api_public
+     */
+    public static class TaskMetrics {
+
+        private final LatencyHistogram waitTime;
+        private final LatencyHistogram executionTime;
+        private final LatencyHistogram commitTime;
+
+        TaskMetrics(LatencyHistogram waitTime, LatencyHistogram executionTime,
+                    LatencyHistogram commitTime) {
+            this.waitTime = waitTime;
+            this.executionTime = executionTime;
+            this.commitTime = commitTime;
+        }
+
+        /**
+         * @return the times tasks waited in the queue before starting
+         */
+        public LatencyHistogram getWaitTime() {
+            return waitTime;
+        }
+
+        /**
+         * @return the times tasks took to run, excluding committing their transaction
+         */
+        public LatencyHistogram getExecutionTime() {
+            return executionTime;
+        }
+
+        /**
+         * @return the times taken to commit or roll back the tasks' transactions, for tasks
+         * which ran in a transaction
+         */
+        public LatencyHistogram getCommitTime() {
+            return commitTime;
+        }
+
+        @Override
+        public String toString() {
+            return "wait: " + waitTime + ", execution: " + executionTime + ", commit: " +
+                    commitTime;
+        }
+    }
+
+    private final int currentDepth;
+    private final int maxDepth;
+    private final Map<String, TaskMetrics> taskMetrics;
+
+    SQLQueueMetrics(int currentDepth, int maxDepth, Map<String, TaskMetrics> taskMetrics) {
+        this.currentDepth = currentDepth;
+        this.maxDepth = maxDepth;
+        this.taskMetrics = Collections.unmodifiableMap(taskMetrics);
+    }
+
+    /**
+     * @return the number of tasks waiting for the writer connection when the snapshot was
+     * taken
+     */
+    public int getCurrentDepth() {
+        return currentDepth;
+    }
+
+    /**
+     * @return the largest number of tasks that have been waiting for the writer connection
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the timings of each class of task that has run, keyed by class name
+     */
+    public Map<String, TaskMetrics> getTaskMetrics() {
+        return taskMetrics;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("depth=").append(currentDepth).append(" maxDepth=").append(maxDepth);
+        for (Map.Entry<String, TaskMetrics> entry : taskMetrics.entrySet()) {
+            sb.append('\n').append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+}
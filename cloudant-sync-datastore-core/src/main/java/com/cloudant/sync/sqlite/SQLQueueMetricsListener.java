@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+/**
+ * <p>Notified of the timings of each task run by a {@link SQLDatabaseQueue}.</p>
+ *
+ * <p>The listener is called on the thread which ran the task, before the task's result is
+ * returned to its caller, so it should be quick and must not submit tasks to the queue and
+ * wait for them.</p>
+ *
+ * @see SQLQueueMetrics
+ *
+ * @api_public
+ */
+public interface SQLQueueMetricsListener {
+
+    /**
+     * Called when a task has completed, successfully or not.
+     *
+     * @param taskName The class name of the task
+     * @param waitNanos The time the task waited in the queue before starting, in nanoseconds
+     * @param executionNanos The time the task took to run, in nanoseconds
+     * @param commitNanos The time taken to commit or roll back the task's transaction, in
+     *                    nanoseconds, or zero if the task didn't run in a transaction
+     */
+    void taskCompleted(String taskName, long waitNanos, long executionNanos, long commitNanos);
+
+}
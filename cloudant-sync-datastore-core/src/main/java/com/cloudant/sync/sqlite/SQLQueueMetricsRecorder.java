@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the metrics for a {@link SQLDatabaseQueue}, see {@link SQLQueueMetrics}.
+ *
+ * @api_private
+ */
+class SQLQueueMetricsRecorder {
+
+    private static final Logger logger =
+            Logger.getLogger(SQLQueueMetricsRecorder.class.getCanonicalName());
+
+    /**
+     * Histograms for one class of task.
+     */
+    private static class Timings {
+        final LatencyHistogram waitTime = new LatencyHistogram();
+        final LatencyHistogram executionTime = new LatencyHistogram();
+        final LatencyHistogram commitTime = new LatencyHistogram();
+    }
+
+    private final ConcurrentMap<String, Timings> timings =
+            new ConcurrentHashMap<String, Timings>();
+
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    private volatile SQLQueueMetricsListener listener;
+
+    void setListener(SQLQueueMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records the timings of a completed task.
+     * @param taskName The class name of the task
+     * @param waitNanos The time the task waited in the queue
+     * @param executionNanos The time the task took to run
+     * @param commitNanos The time taken to end the task's transaction, zero if it didn't run in
+     *                    a transaction
+     * @param transaction Whether the task ran in a transaction
+     */
+    void taskCompleted(String taskName, long waitNanos, long executionNanos, long commitNanos,
+                       boolean transaction) {
+        Timings t = timings.get(taskName);
+        if (t == null) {
+            Timings created = new Timings();
+            t = timings.putIfAbsent(taskName, created);
+            if (t == null) {
+                t = created;
+            }
+        }
+        t.waitTime.record(waitNanos);
+        t.executionTime.record(executionNanos);
+        if (transaction) {
+            t.commitTime.record(commitNanos);
+        }
+
+        SQLQueueMetricsListener l = listener;
+        if (l != null) {
+            try {
+                l.taskCompleted(taskName, waitNanos, executionNanos, commitNanos);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Queue metrics listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Records the depth of the queue after a task has been added to it.
+     * @param depth The number of tasks waiting in the queue
+     */
+    void taskQueued(int depth) {
+        int currentMax;
+        while (depth > (currentMax = maxDepth.get())) {
+            if (maxDepth.compareAndSet(currentMax, depth)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param currentDepth The number of tasks currently waiting in the queue
+     * @return a snapshot of the metrics recorded so far
+     */
+    SQLQueueMetrics snapshot(int currentDepth) {
+        Map<String, SQLQueueMetrics.TaskMetrics> taskMetrics =
+                new HashMap<String, SQLQueueMetrics.TaskMetrics>();
+        for (Map.Entry<String, Timings> entry : timings.entrySet()) {
+            Timings t = entry.getValue();
+            taskMetrics.put(entry.getKey(), new SQLQueueMetrics.TaskMetrics(t.waitTime.copy(),
+                    t.executionTime.copy(), t.commitTime.copy()));
+        }
+        return new SQLQueueMetrics(currentDepth, Math.max(maxDepth.get(), currentDepth),
+                taskMetrics);
+    }
+
+}
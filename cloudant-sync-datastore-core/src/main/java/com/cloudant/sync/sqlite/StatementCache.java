@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import com.cloudant.sync.util.Misc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Least recently used cache of compiled statements for a single connection, keyed by SQL
+ * text.</p>
+ *
+ * <p>A statement is taken out of the cache by {@link #acquire(String)} while it is in use, so
+ * nested use of the same SQL compiles a second statement rather than sharing one. Callers must
+ * reset the statement and clear its bindings before handing it back with
+ * {@link #release(String, Object)}. When the cache is full the least recently used statement is
+ * disposed.</p>
+ *
+ * <p>Like the connection it belongs to, the cache must only be used from a single thread at a
+ * time. The hit and miss counters may be read from any thread.</p>
+ *
+ * @param <S> the type of compiled statement
+ *
+ * @api_private
+ */
+public abstract class StatementCache<S> {
+
+    /**
+     * Default maximum number of statements held per connection.
+     */
+    public static final int DEFAULT_CAPACITY = 50;
+
+    private final int capacity;
+
+    private final LinkedHashMap<String, S> statements;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity the maximum number of statements to keep compiled
+     */
+    public StatementCache(final int capacity) {
+        Misc.checkArgument(capacity > 0, "Statement cache capacity must be positive");
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<String, S>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, S> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    dispose(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Takes the compiled statement for the given SQL out of the cache.
+     *
+     * @param sql the SQL text of the statement
+     * @return the cached statement, or {@code null} if the caller needs to compile one
+     */
+    public S acquire(String sql) {
+        S statement = statements.remove(sql);
+        if (statement == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return statement;
+    }
+
+    /**
+     * Returns a statement to the cache. The statement must already have been reset and had its
+     * bindings cleared. If a statement for the same SQL has been returned in the meantime, this
+     * statement is disposed instead.
+     *
+     * @param sql the SQL text of the statement
+     * @param statement the statement to cache
+     */
+    public void release(String sql, S statement) {
+        if (statements.containsKey(sql)) {
+            dispose(statement);
+        } else {
+            statements.put(sql, statement);
+        }
+    }
+
+    /**
+     * Disposes all cached statements.
+     */
+    public void clear() {
+        for (Iterator<S> it = statements.values().iterator(); it.hasNext(); ) {
+            dispose(it.next());
+            it.remove();
+        }
+    }
+
+    /**
+     * @return the number of statements currently cached
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * @return the maximum number of statements cached
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of times a compiled statement was reused
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of times a statement needed to be compiled
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Releases the resources held by a statement which is leaving the cache.
+     *
+     * @param statement the statement to dispose
+     */
+    protected abstract void dispose(S statement);
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import com.cloudant.sync.util.DatabaseUtils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>A set of keys of any size bound into a temporary table on one connection, so that a query
+ * can use {@code IN (} {@link #select()} {@code )} or join to the keys instead of binding one
+ * placeholder for each key. SQLite limits the number of placeholders in a statement, to 999 by
+ * default, so large IN lists otherwise have to be split into several queries.</p>
+ *
+ * <p>Every set on a connection shares one temporary table, with a column identifying the set,
+ * so sets can be nested or used together in one query. The table exists only for the life of the
+ * connection and is invisible to other connections. Writes to a temporary table are refused by
+ * {@code PRAGMA query_only}, so it is switched off for a reader connection while the set is
+ * written and removed.</p>
+ *
+ * <p>A set must be closed on the same connection, once the queries using it have finished, to
+ * remove its keys:</p>
+ *
+ * <pre>
+ * TempKeySet keys = TempKeySet.create(db, docIds);
+ * try {
+ *     cursor = db.rawQuery("SELECT ... WHERE docid IN (" + keys.select() + ")", null);
+ *     ...
+ * } finally {
+ *     TempKeySet.closeQuietly(keys);
+ * }
+ * </pre>
+ *
+ * @api_private
+ */
+public class TempKeySet {
+
+    private static final Logger logger = Logger.getLogger(TempKeySet.class.getCanonicalName());
+
+    private static final String TABLE = "temp.keyset";
+
+    /**
+     * Keys inserted by each statement. Full statements have the same SQL, so share a compiled
+     * statement.
+     */
+    private static final int KEYS_PER_INSERT = 250;
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final SQLDatabase db;
+
+    private final long id;
+
+    private TempKeySet(SQLDatabase db, long id) {
+        this.db = db;
+        this.id = id;
+    }
+
+    /**
+     * Binds a set of keys into the temporary table of a connection.
+     * @param db The connection the set will be queried on
+     * @param keys The keys, only String, Long and Double are supported; duplicates are ignored
+     * @return The bound set of keys, which must be closed after use
+     * @throws SQLException If the keys could not be written
+     */
+    public static TempKeySet create(SQLDatabase db, Collection<?> keys) throws SQLException {
+        TempKeySet set = new TempKeySet(db, NEXT_ID.incrementAndGet());
+        boolean queryOnly = enableWrites(db);
+        try {
+            db.execSQL("CREATE TEMP TABLE IF NOT EXISTS keyset (set_id INTEGER NOT NULL, key " +
+                    "NOT NULL, PRIMARY KEY (set_id, key));");
+            Iterator<?> iterator = keys.iterator();
+            List<Object> args = new ArrayList<Object>(KEYS_PER_INSERT + 1);
+            while (iterator.hasNext()) {
+                args.clear();
+                args.add(set.id);
+                while (iterator.hasNext() && args.size() <= KEYS_PER_INSERT) {
+                    args.add(iterator.next());
+                }
+                db.execSQL(insertSql(args.size() - 1), args.toArray());
+            }
+        } finally {
+            restoreQueryOnly(db, queryOnly);
+        }
+        return set;
+    }
+
+    /**
+     * @return A subquery selecting the keys in the set, for use in an {@code IN} expression
+     */
+    public String select() {
+        return "SELECT key FROM " + TABLE + " WHERE set_id = " + id;
+    }
+
+    /**
+     * Removes the keys of the set from the temporary table. The set can't be used afterwards.
+     * @throws SQLException If the keys could not be removed
+     */
+    public void close() throws SQLException {
+        boolean queryOnly = enableWrites(db);
+        try {
+            db.execSQL("DELETE FROM " + TABLE + " WHERE set_id = ?;", new Object[]{id});
+        } finally {
+            restoreQueryOnly(db, queryOnly);
+        }
+    }
+
+    /**
+     * Closes a set, logging rather than throwing any error.
+     * @param set The set to close, may be null
+     */
+    public static void closeQuietly(TempKeySet set) {
+        try {
+            if (set != null) {
+                set.close();
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error removing temporary key set", e);
+        }
+    }
+
+    private static String insertSql(int keyCount) {
+        // a compound SELECT rather than multiple VALUES rows, which need SQLite 3.7.11
+        StringBuilder sql = new StringBuilder("INSERT OR IGNORE INTO " + TABLE + " (set_id, key) " +
+                "SELECT ?1, ?2");
+        for (int i = 1; i < keyCount; i++) {
+            sql.append(" UNION ALL SELECT ?1, ?").append(i + 2);
+        }
+        return sql.append(';').toString();
+    }
+
+    /**
+     * @return Whether {@code query_only} was set and so has been switched off
+     */
+    private static boolean enableWrites(SQLDatabase db) throws SQLException {
+        Cursor cursor = null;
+        try {
+            // versions of SQLite older than 3.8.0 don't support query_only and return no rows
+            cursor = db.rawQuery("PRAGMA query_only;", null);
+            if (!cursor.moveToFirst() || cursor.getInt(0) == 0) {
+                return false;
+            }
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+        db.execSQL("PRAGMA query_only = 0;");
+        return true;
+    }
+
+    private static void restoreQueryOnly(SQLDatabase db, boolean queryOnly) throws SQLException {
+        if (queryOnly) {
+            db.execSQL("PRAGMA query_only = 1;");
+        }
+    }
+}
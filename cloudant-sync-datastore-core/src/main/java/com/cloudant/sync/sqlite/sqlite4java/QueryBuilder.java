@@ -28,6 +28,48 @@ public class QueryBuilder {
     private static final Pattern sLimitPattern =
             Pattern.compile("\\s*\\d+\\s*(,\\s*\\d+\\s*)?");
 
+    private static final String[] CONFLICT_VALUES = new String[]
+            {"", " OR ROLLBACK ", " OR ABORT ", " OR FAIL ", " OR IGNORE ", " OR REPLACE "};
+
+    /**
+     * Builds an INSERT statement for the columns in {@code values}. Bind arguments for the
+     * statement can be built with {@link #buildBindArguments(ContentValues, String[])}.
+     */
+    public static String buildInsertQuery(String table, ContentValues values,
+                                          int conflictAlgorithm) {
+        StringBuilder query = new StringBuilder(120);
+        query.append("INSERT ");
+        query.append(CONFLICT_VALUES[conflictAlgorithm]);
+        query.append(" INTO \"");
+        query.append(table);
+        query.append("\"");
+        query.append('(');
+
+        int i = 0;
+        for (String colName : values.keySet()) {
+            query.append((i > 0) ? "," : "");
+            query.append(colName);
+            i++;
+        }
+        query.append(')');
+        query.append(" VALUES (");
+        for (i = 0; i < values.size(); i++) {
+            query.append((i > 0) ? ",?" : "?");
+        }
+        query.append(')');
+
+        return query.toString();
+    }
+
+    public static String buildDeleteQuery(String table, String whereClause) {
+        return new StringBuilder("DELETE FROM \"")
+                .append(table)
+                .append("\"")
+                .append(!Misc.isStringNullOrEmpty(whereClause) ? " WHERE " +
+                        whereClause : "")
+                .toString();
+    }
+
     public static String buildUpdateQuery(String table, ContentValues values, String whereClause, String[] whereArgs) {
 
         StringBuilder query = new StringBuilder(120);
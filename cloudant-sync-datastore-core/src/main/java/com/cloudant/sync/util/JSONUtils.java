@@ -17,16 +17,25 @@ package com.cloudant.sync.util;
 import com.cloudant.common.CouchConstants;
 import com.cloudant.common.PropertyFilterMixIn;
 import com.cloudant.mazha.Document;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Internal utility class
@@ -152,6 +161,145 @@ public class JSONUtils {
         }
     }
 
+    /**
+     * <p>Returns the values of fields of a JSON object, without deserializing the rest of the
+     * object.</p>
+     *
+     * <p>Each field is named by a path of field names separated by {@code .}, for example
+     * {@code address.city}, and each field name but the last must name an object. The JSON is
+     * read with a streaming parser which skips objects and arrays that don't contain a
+     * requested field, and stops once every field has been found.</p>
+     *
+     * @param json JSON object
+     * @param fieldPaths paths of the fields to return
+     * @return map from each path found in {@code json} to its value, deserialized in the same
+     *         way as {@link #deserialize(byte[])}
+     */
+    public static Map<String, Object> extractFields(byte[] json,
+                                                    Collection<String> fieldPaths) {
+        FieldPaths paths = new FieldPaths(fieldPaths);
+        Map<String, Object> values = new HashMap<String, Object>();
+        JsonParser parser = null;
+        try {
+            parser = getsMapper().getFactory().createParser(json);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("JSON is not an object: " +
+                        bytesToString(json));
+            }
+            extractFields(parser, new ArrayList<String>(), paths, values);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error extracting fields from byte[]: " +
+                    bytesToString(json), e);
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    // nothing to do, the JSON is in memory
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * <p>Returns the values of fields of a deserialized JSON object.</p>
+     *
+     * @param object deserialized JSON object
+     * @param fieldPaths paths of the fields to return, as for
+     *                   {@link #extractFields(byte[], Collection)}
+     * @return map from each path found in {@code object} to its value
+     */
+    public static Map<String, Object> extractFields(Map<String, Object> object,
+                                                    Collection<String> fieldPaths) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (String path : fieldPaths) {
+            extractField(object, path, FieldPaths.split(path), values);
+        }
+        return values;
+    }
+
+    // Reads the fields of the object the parser is in, returning true once every field has
+    // been found so the rest of the JSON needn't be read.
+    private static boolean extractFields(JsonParser parser,
+                                         List<String> path,
+                                         FieldPaths paths,
+                                         Map<String, Object> values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            path.add(parser.getCurrentName());
+            JsonToken token = parser.nextToken();
+            String wanted = paths.wanted.get(path);
+            if (wanted != null) {
+                Object value = getsMapper().readValue(parser, Object.class);
+                values.put(wanted, value);
+                if (paths.parents.contains(path)) {
+                    // other paths are within this field, so find them in its value
+                    for (Map.Entry<List<String>, String> other : paths.wanted.entrySet()) {
+                        List<String> segments = other.getKey();
+                        if (segments.size() > path.size() &&
+                                segments.subList(0, path.size()).equals(path)) {
+                            extractField(value, other.getValue(),
+                                    segments.subList(path.size(), segments.size()), values);
+                        }
+                    }
+                }
+            } else if (token == JsonToken.START_OBJECT && paths.parents.contains(path)) {
+                if (extractFields(parser, path, paths, values)) {
+                    return true;
+                }
+            } else {
+                parser.skipChildren();
+            }
+            path.remove(path.size() - 1);
+            if (values.size() == paths.wanted.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void extractField(Object value,
+                                     String path,
+                                     List<String> segments,
+                                     Map<String, Object> values) {
+        for (String segment : segments) {
+            if (!(value instanceof Map)) {
+                return;
+            }
+            Map<String, Object> object = (Map<String, Object>) value;
+            if (!object.containsKey(segment)) {
+                return;
+            }
+            value = object.get(segment);
+        }
+        values.put(path, value);
+    }
+
+    /**
+     * Requested field paths, split into field names, and the paths of the objects containing
+     * them.
+     */
+    private static class FieldPaths {
+
+        final Map<List<String>, String> wanted = new HashMap<List<String>, String>();
+        final Set<List<String>> parents = new HashSet<List<String>>();
+
+        FieldPaths(Collection<String> fieldPaths) {
+            for (String path : fieldPaths) {
+                List<String> segments = split(path);
+                wanted.put(segments, path);
+                for (int i = 1; i < segments.size(); i++) {
+                    parents.add(new ArrayList<String>(segments.subList(0, i)));
+                }
+            }
+        }
+
+        static List<String> split(String path) {
+            return Arrays.asList(path.split("\\."));
+        }
+    }
+
     public static String toPrettyJson(Object rev) {
         try {
             return getsMapper().writerWithDefaultPrettyPrinter().writeValueAsString(rev);
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.event.Subscribe;
+import com.cloudant.sync.notifications.DocumentCreated;
+import com.cloudant.sync.notifications.DocumentDeleted;
+import com.cloudant.sync.notifications.DocumentUpdated;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AsyncDatastoreTest extends BasicDatastoreTestBase {
+
+    private AsyncDatastore async;
+
+    private final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+
+    @Before
+    public void setUpAsync() {
+        async = new AsyncDatastore(datastore);
+    }
+
+    /**
+     * Records the outcome of an operation.
+     */
+    private static class RecordingCallback<T> implements DatastoreCallback<T> {
+
+        final CountDownLatch called = new CountDownLatch(1);
+        final AtomicReference<T> result = new AtomicReference<T>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+
+        @Override
+        public void onSuccess(T t) {
+            result.set(t);
+            thread.set(Thread.currentThread());
+            called.countDown();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            failure.set(t);
+            thread.set(Thread.currentThread());
+            called.countDown();
+        }
+
+        void await() throws InterruptedException {
+            Assert.assertTrue(called.await(30, TimeUnit.SECONDS));
+        }
+    }
+
+    private DocumentRevision newRevision(String id, DocumentBody body) {
+        DocumentRevision rev = new DocumentRevision(id);
+        rev.setBody(body);
+        return rev;
+    }
+
+    @Test
+    public void createDocumentFromRevision_callbackOnDatabaseThread() throws Exception {
+        RecordingCallback<DocumentRevision> callback = new RecordingCallback<DocumentRevision>();
+        async.createDocumentFromRevision(newRevision("doc", bodyOne)).addCallback(callback);
+        callback.await();
+
+        Assert.assertNull(callback.failure.get());
+        validateNewlyCreatedDocument(callback.result.get());
+        Assert.assertNotSame(Thread.currentThread(), callback.thread.get());
+        Assert.assertEquals(callback.result.get(), datastore.getDocument("doc"));
+    }
+
+    @Test
+    public void createDocumentFromRevision_existingId_fails() throws Exception {
+        datastore.createDocumentFromRevision(newRevision("doc", bodyOne));
+
+        RecordingCallback<DocumentRevision> callback = new RecordingCallback<DocumentRevision>();
+        async.createDocumentFromRevision(newRevision("doc", bodyTwo)).addCallback(callback);
+        callback.await();
+
+        Assert.assertNull(callback.result.get());
+        Assert.assertTrue(callback.failure.get() instanceof DocumentException);
+    }
+
+    @Test
+    public void getDocument_afterCreate_seesCreatedDocument() throws Exception {
+        DatastoreFuture<DocumentRevision> created = async.createDocumentFromRevision(
+                newRevision("doc", bodyOne));
+        DatastoreFuture<DocumentRevision> read = async.getDocument("doc");
+        Assert.assertEquals(created.get(), read.get());
+    }
+
+    @Test
+    public void getDocument_missing_failsWithDocumentNotFoundException() throws Exception {
+        try {
+            async.getDocument("missing").get();
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof DocumentNotFoundException);
+        }
+    }
+
+    @Test
+    public void updateDocumentFromRevision_staleRevision_failsWithConflict() throws Exception {
+        DocumentRevision created = datastore.createDocumentFromRevision(
+                newRevision("doc", bodyOne));
+        created.setBody(bodyTwo);
+        DocumentRevision updated = async.updateDocumentFromRevision(created).get();
+        Assert.assertTrue(updated.getRevision().startsWith("2-"));
+
+        try {
+            async.updateDocumentFromRevision(created).get();
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ConflictException);
+        }
+    }
+
+    @Test
+    public void deleteDocumentFromRevision_deletesDocument() throws Exception {
+        DocumentRevision created = datastore.createDocumentFromRevision(
+                newRevision("doc", bodyOne));
+        DocumentRevision deleted = async.deleteDocumentFromRevision(created).get();
+        Assert.assertTrue(deleted.isDeleted());
+        Assert.assertEquals(0, datastore.getDocumentCount());
+    }
+
+    @Test
+    public void changes_returnsChanges() throws Exception {
+        createTwoDocuments();
+        Changes changes = async.changes(0, 10).get();
+        Assert.assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void addCallback_withExecutor_callbackOnExecutorThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final AtomicReference<Thread> executorThread = new AtomicReference<Thread>();
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    executorThread.set(Thread.currentThread());
+                }
+            }).get();
+
+            RecordingCallback<DocumentRevision> callback =
+                    new RecordingCallback<DocumentRevision>();
+            async.createDocumentFromRevision(newRevision("doc", bodyOne)).addCallback(callback,
+                    executor);
+            callback.await();
+            Assert.assertSame(executorThread.get(), callback.thread.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void writes_postNotificationsBeforeCompleting() throws Exception {
+        datastore.getEventBus().register(this);
+
+        DocumentRevision created = async.createDocumentFromRevision(
+                newRevision("doc", bodyOne)).get();
+        Assert.assertEquals(1, events.size());
+        created.setBody(bodyTwo);
+        DocumentRevision updated = async.updateDocumentFromRevision(created).get();
+        Assert.assertEquals(2, events.size());
+        async.deleteDocumentFromRevision(updated).get();
+        Assert.assertEquals(3, events.size());
+
+        Assert.assertEquals(created, ((DocumentCreated) events.get(0)).newDocument);
+        DocumentUpdated documentUpdated = (DocumentUpdated) events.get(1);
+        Assert.assertEquals(created.getRevision(), documentUpdated.prevDocument.getRevision());
+        Assert.assertEquals(updated, documentUpdated.newDocument);
+        Assert.assertTrue(((DocumentDeleted) events.get(2)).newDocument.isDeleted());
+    }
+
+    @Subscribe
+    public void onDocumentCreated(DocumentCreated dc) {
+        events.add(dc);
+    }
+
+    @Subscribe
+    public void onDocumentUpdated(DocumentUpdated du) {
+        events.add(du);
+    }
+
+    @Subscribe
+    public void onDocumentDeleted(DocumentDeleted dd) {
+        events.add(dd);
+    }
+
+}
@@ -31,6 +31,7 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -232,6 +233,45 @@ public class AttachmentTest extends BasicDatastoreTestBase {
         }
     }
 
+    @Test
+    public void getDocumentsWithIdsAttachmentsTest() throws Exception {
+        File file1 = TestUtils.loadFixture("fixture/attachment_1.txt");
+        File file2 = TestUtils.loadFixture("fixture/attachment_2.txt");
+
+        DocumentRevision doc1Mut = new DocumentRevision("doc1");
+        doc1Mut.setBody(bodyOne);
+        Attachment att1 = new UnsavedFileAttachment(file1, "text/plain");
+        Attachment att2 = new UnsavedFileAttachment(file2, "text/plain");
+        doc1Mut.getAttachments().put(att1.name, att1);
+        doc1Mut.getAttachments().put(att2.name, att2);
+        datastore.createDocumentFromRevision(doc1Mut);
+        DocumentRevision doc2Mut = new DocumentRevision("doc2");
+        doc2Mut.setBody(bodyTwo);
+        datastore.createDocumentFromRevision(doc2Mut);
+        DocumentRevision doc3Mut = new DocumentRevision("doc3");
+        doc3Mut.setBody(bodyTwo);
+        doc3Mut.getAttachments().put(att1.name, new UnsavedFileAttachment(file1, "text/plain"));
+        datastore.createDocumentFromRevision(doc3Mut);
+
+        List<DocumentRevision> docs = datastore.getDocumentsWithIds(Arrays.asList("doc1",
+                "doc2", "doc3"));
+        Assert.assertEquals(3, docs.size());
+        Assert.assertEquals(2, docs.get(0).getAttachments().size());
+        Assert.assertTrue(docs.get(1).getAttachments().isEmpty());
+        Assert.assertEquals(1, docs.get(2).getAttachments().size());
+
+        // the attachment content is read from the file mapped to the attachment's key
+        SavedAttachment c = (SavedAttachment) docs.get(2).getAttachments().get(att1.name);
+        FileInputStream fis = null;
+        try {
+            Assert.assertArrayEquals(Misc.getSha1((fis = new FileInputStream(file1))), c.key);
+            Assert.assertArrayEquals(IOUtils.toByteArray(new FileInputStream(file1)),
+                    IOUtils.toByteArray(c.getInputStream()));
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+    }
+
     @Test
     public void duplicateAttachmentTest() throws Exception {
 
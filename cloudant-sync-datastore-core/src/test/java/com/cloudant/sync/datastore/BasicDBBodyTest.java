@@ -24,6 +24,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -94,6 +95,80 @@ public class BasicDBBodyTest {
         Assert.assertTrue(m.get("IntegerValue").equals(2147483647)); // Integer.MAX_VALUE
     }
 
+    @Test
+    public void asBytes_returnsCopy() {
+        DocumentBody body = new DocumentBodyImpl(jsonData);
+        byte[] bytes = body.asBytes();
+        bytes[0] = 'x';
+        Assert.assertTrue(Arrays.equals(jsonData, body.asBytes()));
+    }
+
+    @Test
+    public void asMap_returnsCopy() {
+        DocumentBody body = new DocumentBodyImpl(jsonData);
+        body.asMap().put("Sunrise", false);
+        assertMapIsCorrect(body.asMap());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void asReadOnlyMap_cannotBeModified() {
+        DocumentBodyImpl body = new DocumentBodyImpl(jsonData);
+        assertMapIsCorrect(body.asReadOnlyMap());
+        Assert.assertSame(body.asReadOnlyMap(), body.asReadOnlyMap());
+        body.asReadOnlyMap().put("Sunrise", false);
+    }
+
+    // a caller's own implementation, which only has the interface's methods
+    private DocumentBody otherImplementation() {
+        final DocumentBody impl = new DocumentBodyImpl(jsonData);
+        return new DocumentBody() {
+            @Override
+            public Map<String, Object> asMap() {
+                return impl.asMap();
+            }
+
+            @Override
+            public byte[] asBytes() {
+                return impl.asBytes();
+            }
+        };
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnlyMap_otherImplementation_readsCopy() {
+        DocumentBody body = otherImplementation();
+        assertMapIsCorrect(DocumentBodyImpl.readOnlyMap(body));
+        DocumentBodyImpl.readOnlyMap(body).put("Sunrise", false);
+    }
+
+    @Test
+    public void extractFields_otherImplementation_readsFromMap() {
+        Map<String, Object> expected = new DocumentBodyImpl(jsonData).asMap();
+        String field = expected.keySet().iterator().next();
+        Map<String, Object> fields = DocumentBodyImpl.extractFields(otherImplementation(),
+                Arrays.asList(field, "noSuchField"));
+        Assert.assertEquals(Collections.singletonMap(field, expected.get(field)), fields);
+    }
+
+    @Test
+    public void bodyWithStored_notValidatedUntilRead() {
+        DocumentBody body = DocumentBodyImpl.bodyWithStored("[]".getBytes());
+        Assert.assertTrue(Arrays.equals("[]".getBytes(), body.asBytes()));
+        try {
+            body.asMap();
+            Assert.fail("Expected IllegalStateException reading a map from invalid JSON");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void bodyWithStored_nullInput_emptyBody() {
+        DocumentBody body = DocumentBodyImpl.bodyWithStored(null);
+        Assert.assertTrue(Arrays.equals("{}".getBytes(), body.asBytes()));
+        Assert.assertTrue(DocumentBodyImpl.readOnlyMap(body).isEmpty());
+    }
+
     private void assertMapIsCorrect(Map<String, Object> actualMap) {
         Assert.assertEquals(5, actualMap.size());
         Assert.assertTrue((Boolean) actualMap.get("Sunrise"));
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.sync.sqlite.Cursor;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures scans of the revision tree, which don't read bodies, with 1KB and 50KB documents.
+ * Each scan is run against the {@code revs} table and against a copy of it with the bodies
+ * stored inline, as they were before the {@code bodies} table was split out.
+ */
+@Category(PerformanceTest.class)
+public class BodiesTablePerformanceTest {
+
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final int SCANS = 10;
+
+    private static final String[][] SCAN_QUERIES = {
+            {"changes", "SELECT doc_id, max(sequence) FROM %s WHERE sequence > 0 " +
+                    "GROUP BY doc_id"},
+            {"conflicts", "SELECT doc_id FROM %s WHERE leaf = 1 AND deleted = 0 " +
+                    "GROUP BY doc_id HAVING COUNT(*) > 1"},
+            {"document count", "SELECT COUNT(DISTINCT doc_id) FROM %s WHERE current = 1 " +
+                    "AND deleted = 0"}
+    };
+
+    private String datastoreManagerDir;
+    private DatastoreImpl datastore;
+
+    @Before
+    public void setUp() throws Exception {
+        datastoreManagerDir = TestUtils.createTempTestingDir(this.getClass().getName());
+        datastore = (DatastoreImpl) DatastoreManager.getInstance(datastoreManagerDir)
+                .openDatastore("bodies");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        datastore.close();
+        TestUtils.deleteTempTestingDir(datastoreManagerDir);
+    }
+
+    @Test
+    public void scanRevisionTree_1KBDocuments() throws Exception {
+        runScans(20000, 1024);
+    }
+
+    @Test
+    public void scanRevisionTree_50KBDocuments() throws Exception {
+        runScans(2000, 50 * 1024);
+    }
+
+    private void runScans(int docs, int bodySize) throws Exception {
+        insertDocuments(docs, bodySize);
+        copyRevsWithInlineBodies();
+
+        for (String[] query : SCAN_QUERIES) {
+            long split = timeScans(String.format(query[1], "revs"));
+            long inline = timeScans(String.format(query[1], "revs_inline"));
+            System.out.println(String.format("%d docs of %d bytes, %s: %.2f ms per scan with " +
+                    "bodies table, %.2f ms with inline bodies", docs, bodySize,
+                    query[0], split / 1e6 / SCANS, inline / 1e6 / SCANS));
+        }
+
+        long start = System.nanoTime();
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < docs; i += docs / 100) {
+            ids.add(docId(i));
+        }
+        for (int i = 0; i < SCANS; i++) {
+            Assert.assertEquals(ids.size(), datastore.getDocumentsWithIds(ids).size());
+        }
+        System.out.println(String.format("%d docs of %d bytes: %.2f ms to read %d documents",
+                docs, bodySize, (System.nanoTime() - start) / 1e6 / SCANS, ids.size()));
+    }
+
+    /**
+     * Inserts two revisions of each document, so that half the revisions aren't leaves.
+     */
+    private void insertDocuments(int docs, int bodySize) throws Exception {
+        StringBuilder padding = new StringBuilder();
+        while (padding.length() < bodySize) {
+            padding.append("0123456789abcdef");
+        }
+        for (int batch = 0; batch < docs / INSERT_BATCH_SIZE; batch++) {
+            List<ForceInsertItem> items = new ArrayList<ForceInsertItem>(INSERT_BATCH_SIZE);
+            for (int i = 0; i < INSERT_BATCH_SIZE; i++) {
+                Map<String, Object> body = new HashMap<String, Object>();
+                body.put("padding", padding.toString());
+                DocumentRevision rev = new DocumentRevisionBuilder()
+                        .setDocId(docId(batch * INSERT_BATCH_SIZE + i))
+                        .setRevId("2-b")
+                        .setBody(DocumentBodyFactory.create(body))
+                        .build();
+                items.add(new ForceInsertItem(rev, Arrays.asList("1-a", "2-b"), null, null,
+                        false));
+            }
+            datastore.forceInsert(items);
+        }
+    }
+
+    private void copyRevsWithInlineBodies() throws Exception {
+        datastore.runOnDbQueue(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("CREATE TABLE revs_inline AS SELECT revs.sequence, revs.doc_id, " +
+                        "revs.parent, revs.current, revs.deleted, revs.available, revs.revid, " +
+                        "bodies.json, revs.leaf, revs.generation FROM revs LEFT OUTER JOIN " +
+                        "bodies ON bodies.sequence = revs.sequence ORDER BY revs.sequence");
+                db.execSQL("CREATE INDEX revs_inline_current ON revs_inline(doc_id, current)");
+                db.execSQL("CREATE INDEX revs_inline_leaf ON revs_inline(doc_id, leaf, " +
+                        "deleted)");
+                return null;
+            }
+        }).get();
+    }
+
+    private long timeScans(final String sql) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < SCANS; i++) {
+            datastore.runOnDbQueue(new SQLCallable<Integer>() {
+                @Override
+                public Integer call(SQLDatabase db) throws Exception {
+                    Cursor cursor = null;
+                    int rows = 0;
+                    try {
+                        cursor = db.rawQueryStreaming(sql, null);
+                        while (cursor.moveToNext()) {
+                            rows++;
+                        }
+                    } finally {
+                        DatabaseUtils.closeCursorQuietly(cursor);
+                    }
+                    return rows;
+                }
+            }).get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String docId(int i) {
+        return String.format("doc-%06d", i);
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.sync.datastore.encryption.NullKeyProvider;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares write throughput, read latency and database size of documents stored with each
+ * {@link DocumentBodyEncoding}, for 1KB and 50KB documents.
+ */
+@Category(PerformanceTest.class)
+public class BodyEncodingPerformanceTest {
+
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final int READS = 2000;
+
+    private static final String[] WORDS = {"order", "customer", "status", "shipped",
+            "pending", "address", "street", "city", "quantity", "price", "description",
+            "delivery", "warehouse", "invoice", "product", "category"};
+
+    private String datastoreManagerDir;
+    private DatastoreManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        datastoreManagerDir = TestUtils.createTempTestingDir(this.getClass().getName());
+        manager = DatastoreManager.getInstance(datastoreManagerDir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.deleteTempTestingDir(datastoreManagerDir);
+    }
+
+    @Test
+    public void encodings_1KBDocuments() throws Exception {
+        for (DocumentBodyEncoding encoding : DocumentBodyEncoding.values()) {
+            run(encoding, 20000, 1024);
+        }
+    }
+
+    @Test
+    public void encodings_50KBDocuments() throws Exception {
+        for (DocumentBodyEncoding encoding : DocumentBodyEncoding.values()) {
+            run(encoding, 2000, 50 * 1024);
+        }
+    }
+
+    private void run(DocumentBodyEncoding encoding, int docs, int bodySize) throws Exception {
+        String name = String.format("%s-%d", encoding, bodySize);
+        Datastore datastore = manager.openDatastore(name, new NullKeyProvider(),
+                new DatastoreOptions().bodyEncoding(encoding));
+        try {
+            // the same bodies for each encoding
+            Random random = new Random(bodySize);
+
+            long start = System.nanoTime();
+            for (int batch = 0; batch < docs / INSERT_BATCH_SIZE; batch++) {
+                List<DocumentRevision> revs = new ArrayList<DocumentRevision>();
+                for (int i = 0; i < INSERT_BATCH_SIZE; i++) {
+                    DocumentRevision rev = new DocumentRevision(docId(batch * INSERT_BATCH_SIZE
+                            + i));
+                    rev.setBody(DocumentBodyFactory.create(body(random, bodySize)));
+                    revs.add(rev);
+                }
+                datastore.createDocumentsFromRevisions(revs);
+            }
+            long writeNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                DocumentRevision rev = datastore.getDocument(docId(random.nextInt(docs)));
+                Assert.assertFalse(rev.getBody().asMap().isEmpty());
+            }
+            long readNanos = System.nanoTime() - start;
+
+            File db = new File(new File(datastoreManagerDir, name), "db.sync");
+            System.out.println(String.format("%s, %d docs of %d bytes: %.0f docs/s written, " +
+                    "%.1f us per read, %.1f MB on disk", encoding, docs, bodySize,
+                    docs / (writeNanos / 1e9), readNanos / 1e3 / READS,
+                    db.length() / (1024.0 * 1024.0)));
+        } finally {
+            datastore.close();
+        }
+    }
+
+    /**
+     * A document of roughly {@code size} bytes of JSON, with field names repeated within and
+     * between documents and varying values.
+     */
+    private static Map<String, Object> body(Random random, int size) {
+        Map<String, Object> body = new HashMap<String, Object>();
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        int length = 0;
+        while (length < size) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("product", WORDS[random.nextInt(WORDS.length)] + random.nextInt(1000));
+            item.put("quantity", random.nextInt(100));
+            item.put("price", random.nextInt(100000) / 100.0);
+            item.put("description", WORDS[random.nextInt(WORDS.length)] + " " +
+                    WORDS[random.nextInt(WORDS.length)] + " " + random.nextLong());
+            items.add(item);
+            length += 120;
+        }
+        body.put("type", "order");
+        body.put("items", items);
+        return body;
+    }
+
+    private static String docId(int i) {
+        return String.format("doc-%06d", i);
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares creating documents one at a time with {@code createDocumentFromRevision} against
+ * creating them with {@code createDocumentsFromRevisions}.
+ */
+@Category(PerformanceTest.class)
+public class BulkDocumentsPerformanceTest {
+
+    private static final int DOCUMENTS = 5000;
+
+    private String datastoreManagerDir;
+    private DatastoreManager datastoreManager;
+    private Datastore datastore;
+
+    @Before
+    public void setUp() throws Exception {
+        datastoreManagerDir = TestUtils.createTempTestingDir(this.getClass().getName());
+        datastoreManager = DatastoreManager.getInstance(datastoreManagerDir);
+        datastore = datastoreManager.openDatastore(getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        datastore.close();
+        TestUtils.deleteTempTestingDir(datastoreManagerDir);
+    }
+
+    @Test
+    public void createThroughput_singleDocuments() throws Exception {
+        long start = System.nanoTime();
+        for (DocumentRevision rev : newRevisions()) {
+            datastore.createDocumentFromRevision(rev);
+        }
+        report("single", start);
+    }
+
+    @Test
+    public void createThroughput_bulk() throws Exception {
+        long start = System.nanoTime();
+        datastore.createDocumentsFromRevisions(newRevisions());
+        report("bulk", start);
+    }
+
+    private List<DocumentRevision> newRevisions() {
+        List<DocumentRevision> revs = new ArrayList<DocumentRevision>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            DocumentRevision rev = new DocumentRevision(String.format("doc-%d", i));
+            rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("i", i)));
+            revs.add(rev);
+        }
+        return revs;
+    }
+
+    private void report(String name, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Assert.assertEquals(DOCUMENTS, datastore.getDocumentCount());
+        System.out.println(String.format("%s: %d documents created in %.2f s, %.0f docs/s",
+                name, DOCUMENTS, seconds, DOCUMENTS / seconds));
+    }
+
+}
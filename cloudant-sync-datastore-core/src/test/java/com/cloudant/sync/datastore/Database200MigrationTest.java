@@ -82,6 +82,7 @@ public class Database200MigrationTest {
                     db.execSQL("DROP TABLE localdocs;");
                     db.execSQL("DROP TABLE info;");
                     db.execSQL("DROP TABLE attachments_key_filename;");
+                    db.execSQL("DROP TABLE bodies;");
                     db.execSQL("PRAGMA foreign_keys = ON");
                     db.execSQL("PRAGMA user_version=0;");
                 } catch (Exception e) {
@@ -98,6 +99,29 @@ public class Database200MigrationTest {
         q.updateSchema(new SchemaOnlyMigration(DatastoreConstants.getSchemaVersion6()), 6);
         q.updateSchema(new MigrateDatabase6To100(), 100);
 
+        // The callables used to write documents maintain the leaf and generation columns added in
+        // versions 300 and 301, and write bodies to the tables added in versions 400 and 401, so
+        // add them here too. The columns are dropped when the 200 migration rebuilds the revs table, but
+        // the bodies table is kept.
+        ds.runOnDbQueue(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                for (String statement : DatastoreConstants.getSchemaVersion300()) {
+                    db.execSQL(statement);
+                }
+                for (String statement : DatastoreConstants.getSchemaVersion301()) {
+                    db.execSQL(statement);
+                }
+                for (String statement : DatastoreConstants.getSchemaVersion400()) {
+                    db.execSQL(statement);
+                }
+                for (String statement : DatastoreConstants.getSchemaVersion401()) {
+                    db.execSQL(statement);
+                }
+                return null;
+            }
+        }).get();
+
         Map<String, String> body = new HashMap<String, String>();
         body.put("hello", "world");
 
@@ -595,8 +619,12 @@ public class Database200MigrationTest {
                 ContentValues args = new ContentValues();
                 args.put("doc_id", doc_id);
                 args.put("revid", "1-x");
-                args.put("json", bodyTwo.asBytes());
-                return db.insert("revs", args);
+                long sequence = db.insert("revs", args);
+                ContentValues body = new ContentValues();
+                body.put("sequence", sequence);
+                body.put("json", bodyTwo.asBytes());
+                db.insert("bodies", body);
+                return sequence;
             }
         }).get();
 
@@ -618,6 +646,8 @@ public class Database200MigrationTest {
 
     private void runMigration() throws NoSuchFieldException, IllegalAccessException {
         getQueue().updateSchema(new MigrateDatabase100To200(DatastoreConstants.getSchemaVersion200()), 201);
+        getQueue().updateSchema(new SchemaOnlyMigration(DatastoreConstants.getSchemaVersion300()), 300);
+        getQueue().updateSchema(new SchemaOnlyMigration(DatastoreConstants.getSchemaVersion301()), 301);
     }
 
     private int revisionCount() throws InterruptedException, ExecutionException {
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.datastore.encryption.NullKeyProvider;
+import com.cloudant.sync.sqlite.Cursor;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.util.DatabaseUtils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class DatastoreImplBodyDeduplicationTest extends BasicDatastoreTestBase {
+
+    @Before
+    public void openDeduplicatingDatastore() throws Exception {
+        datastore.close();
+        datastore = (DatastoreImpl) datastoreManager.openDatastore("dedup",
+                new NullKeyProvider(), new DatastoreOptions().deduplicateBodies(true));
+    }
+
+    private DocumentRevision createDocument(String id, DocumentBody body) throws Exception {
+        DocumentRevision rev = new DocumentRevision(id);
+        rev.setBody(body);
+        return datastore.createDocumentFromRevision(rev);
+    }
+
+    private int countRows(final String sql) throws Exception {
+        return datastore.runOnDbQueue(new SQLCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase db) throws Exception {
+                Cursor c = null;
+                try {
+                    c = db.rawQuery(sql, null);
+                    c.moveToFirst();
+                    return c.getInt(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        }).get();
+    }
+
+    @Test
+    public void createDocument_identicalBodies_storedOnce() throws Exception {
+        createDocument("a", bodyOne);
+        createDocument("b", bodyOne);
+        createDocument("c", bodyTwo);
+
+        Assert.assertEquals(2, countRows("SELECT COUNT(*) FROM shared_bodies"));
+        Assert.assertEquals(0, countRows("SELECT COUNT(*) FROM bodies WHERE json NOT NULL"));
+        Assert.assertEquals(2, countRows("SELECT MAX(refs) FROM shared_bodies"));
+
+        Assert.assertEquals(bodyOne.asMap(), datastore.getDocument("a").getBody().asMap());
+        Assert.assertEquals(bodyOne.asMap(), datastore.getDocument("b").getBody().asMap());
+        Assert.assertEquals(bodyTwo.asMap(), datastore.getDocument("c").getBody().asMap());
+        Assert.assertEquals(3, datastore.getDocumentsWithIds(Arrays.asList("a", "b", "c"))
+                .size());
+    }
+
+    @Test
+    public void deleteDocument_tombstonesShareEmptyBody() throws Exception {
+        datastore.deleteDocumentFromRevision(createDocument("a", bodyOne));
+        datastore.deleteDocumentFromRevision(createDocument("b", bodyTwo));
+
+        Assert.assertEquals(1, countRows("SELECT COUNT(*) FROM shared_bodies WHERE refs = 2"));
+        Assert.assertTrue(datastore.getDocument("a").isDeleted());
+    }
+
+    @Test
+    public void compact_unreferencedBodiesReleased() throws Exception {
+        DocumentRevision a = createDocument("a", bodyOne);
+        createDocument("b", bodyOne);
+        a.setBody(bodyTwo);
+        datastore.updateDocumentFromRevision(a);
+        Assert.assertEquals(2, countRows("SELECT refs FROM shared_bodies ORDER BY refs DESC " +
+                "LIMIT 1"));
+
+        datastore.compact();
+
+        // bodyOne is still the body of b, so only loses the reference from a's first revision
+        Assert.assertEquals(2, countRows("SELECT COUNT(*) FROM shared_bodies"));
+        Assert.assertEquals(0, countRows("SELECT COUNT(*) FROM shared_bodies WHERE refs != 1"));
+        Assert.assertEquals(bodyTwo.asMap(), datastore.getDocument("a").getBody().asMap());
+        Assert.assertEquals(bodyOne.asMap(), datastore.getDocument("b").getBody().asMap());
+
+        DocumentRevision b = datastore.getDocument("b");
+        b.setBody(bodyTwo);
+        datastore.updateDocumentFromRevision(b);
+        datastore.compact();
+
+        Assert.assertEquals(1, countRows("SELECT COUNT(*) FROM shared_bodies"));
+        Assert.assertEquals(2, countRows("SELECT refs FROM shared_bodies"));
+    }
+
+    @Test
+    public void reopenWithoutDeduplication_sharedBodiesStillRead() throws Exception {
+        createDocument("a", bodyOne);
+        datastore.close();
+        datastore = (DatastoreImpl) datastoreManager.openDatastore("dedup");
+        createDocument("b", bodyOne);
+
+        Assert.assertEquals(1, countRows("SELECT COUNT(*) FROM bodies WHERE json NOT NULL"));
+        Assert.assertEquals(bodyOne.asMap(), datastore.getDocument("a").getBody().asMap());
+        Assert.assertEquals(bodyOne.asMap(), datastore.getDocument("b").getBody().asMap());
+    }
+
+}
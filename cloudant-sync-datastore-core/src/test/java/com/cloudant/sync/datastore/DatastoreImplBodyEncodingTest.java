@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.datastore.encryption.NullKeyProvider;
+import com.cloudant.sync.sqlite.Cursor;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.util.DatabaseUtils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DatastoreImplBodyEncodingTest extends BasicDatastoreTestBase {
+
+    private static final String COUNT_DEFLATED = "SELECT COUNT(*) FROM bodies WHERE " +
+            "hex(substr(json, 1, 2)) = '0001'";
+
+    private static final String COUNT_PLAIN = "SELECT COUNT(*) FROM bodies WHERE " +
+            "hex(substr(json, 1, 1)) = '7B'";
+
+    // bodies which deflate didn't make smaller
+    private static final String COUNT_TRIED = "SELECT COUNT(*) FROM bodies WHERE " +
+            "hex(substr(json, 1, 2)) = '0000'";
+
+    // counts the bodies it encodes
+    private static class CountingBodyStore extends RevisionBodyStore {
+
+        private int encoded;
+
+        CountingBodyStore(DocumentBodyEncoding encoding) {
+            super(false, encoding);
+        }
+
+        @Override
+        byte[] encode(byte[] json) {
+            encoded++;
+            return super.encode(json);
+        }
+    }
+
+    private void reopen(String name, DatastoreOptions options) throws Exception {
+        datastore.close();
+        datastore = (DatastoreImpl) datastoreManager.openDatastore(name, new NullKeyProvider(),
+                options);
+    }
+
+    private DocumentBody compressibleBody() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            text.append("compressible ");
+        }
+        map.put("text", text.toString());
+        map.put("number", 42);
+        return DocumentBodyFactory.create(map);
+    }
+
+    private DocumentRevision createDocument(String id, DocumentBody body) throws Exception {
+        DocumentRevision rev = new DocumentRevision(id);
+        rev.setBody(body);
+        return datastore.createDocumentFromRevision(rev);
+    }
+
+    private int countRows(final String sql) throws Exception {
+        return datastore.runOnDbQueue(new SQLCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase db) throws Exception {
+                Cursor c = null;
+                try {
+                    c = db.rawQuery(sql, null);
+                    c.moveToFirst();
+                    return c.getInt(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        }).get();
+    }
+
+    @Test
+    public void deflate_bodiesStoredCompressedAndReadBack() throws Exception {
+        reopen("deflate", new DatastoreOptions().bodyEncoding(DocumentBodyEncoding.Deflate));
+        DocumentBody body = compressibleBody();
+        createDocument("a", body);
+
+        Assert.assertEquals(1, countRows(COUNT_DEFLATED));
+        Assert.assertEquals(body.asMap(), datastore.getDocument("a").getBody().asMap());
+        Assert.assertEquals(body.asMap(), datastore.getDocumentsWithIds(Arrays.asList("a"))
+                .get(0).getBody().asMap());
+    }
+
+    @Test
+    public void deflate_bodyNotShrunk_storedPlain() throws Exception {
+        reopen("deflate", new DatastoreOptions().bodyEncoding(DocumentBodyEncoding.Deflate));
+        createDocument("a", DocumentBodyFactory.create("{\"a\":1}".getBytes("UTF-8")));
+
+        Assert.assertEquals(0, countRows(COUNT_DEFLATED));
+        Assert.assertEquals(1, countRows(COUNT_TRIED));
+        Assert.assertEquals(1, datastore.getDocument("a").getBody().asMap().get("a"));
+    }
+
+    @Test
+    public void encodeExisting_secondRun_rewritesNothing() throws Exception {
+        reopen("plain", new DatastoreOptions());
+        DocumentBody body = compressibleBody();
+        DocumentBody small = DocumentBodyFactory.create("{\"a\":1}".getBytes("UTF-8"));
+        createDocument("a", body);
+        createDocument("b", small);
+
+        final CountingBodyStore store = new CountingBodyStore(DocumentBodyEncoding.Deflate);
+        SQLCallable<Integer> encodeExisting = new SQLCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase db) throws Exception {
+                return store.encodeExisting(db);
+            }
+        };
+        Assert.assertEquals(Integer.valueOf(2), datastore.runOnDbQueue(encodeExisting).get());
+        Assert.assertEquals(2, store.encoded);
+        Assert.assertEquals(1, countRows(COUNT_DEFLATED));
+        Assert.assertEquals(1, countRows(COUNT_TRIED));
+
+        // neither the compressed body nor the one which didn't shrink is encoded again
+        Assert.assertEquals(Integer.valueOf(0), datastore.runOnDbQueue(encodeExisting).get());
+        Assert.assertEquals(2, store.encoded);
+        Assert.assertEquals(body.asMap(), datastore.getDocument("a").getBody().asMap());
+        Assert.assertEquals(small.asMap(), datastore.getDocument("b").getBody().asMap());
+    }
+
+    @Test
+    public void reopenPlain_deflatedBodiesStillRead() throws Exception {
+        reopen("deflate", new DatastoreOptions().bodyEncoding(DocumentBodyEncoding.Deflate));
+        DocumentBody body = compressibleBody();
+        createDocument("a", body);
+        reopen("deflate", new DatastoreOptions());
+        createDocument("b", body);
+
+        Assert.assertEquals(1, countRows(COUNT_DEFLATED));
+        Assert.assertEquals(body.asMap(), datastore.getDocument("a").getBody().asMap());
+        Assert.assertEquals(body.asMap(), datastore.getDocument("b").getBody().asMap());
+    }
+
+    @Test
+    public void compact_plainBodiesRewrittenInDatastoreEncoding() throws Exception {
+        reopen("plain", new DatastoreOptions());
+        DocumentBody body = compressibleBody();
+        DocumentBody small = DocumentBodyFactory.create("{\"a\":1}".getBytes("UTF-8"));
+        createDocument("a", body);
+        createDocument("b", small);
+        Assert.assertEquals(2, countRows(COUNT_PLAIN));
+
+        reopen("plain", new DatastoreOptions().bodyEncoding(DocumentBodyEncoding.Deflate));
+        datastore.compact();
+
+        Assert.assertEquals(1, countRows(COUNT_DEFLATED));
+        Assert.assertEquals(body.asMap(), datastore.getDocument("a").getBody().asMap());
+        Assert.assertEquals(small.asMap(), datastore.getDocument("b").getBody().asMap());
+    }
+
+    @Test
+    public void deflateAndDeduplicate_sharedBodiesCompressed() throws Exception {
+        reopen("both", new DatastoreOptions().bodyEncoding(DocumentBodyEncoding.Deflate)
+                .deduplicateBodies(true));
+        DocumentBody body = compressibleBody();
+        createDocument("a", body);
+        createDocument("b", body);
+
+        Assert.assertEquals(1, countRows("SELECT COUNT(*) FROM shared_bodies WHERE " +
+                "hex(substr(json, 1, 2)) = '0001' AND refs = 2"));
+        Assert.assertEquals(body.asMap(), datastore.getDocument("b").getBody().asMap());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void decode_unknownEncoding_throws() throws Exception {
+        RevisionBodyStore.decode(new byte[]{0, 99, 1, 2, 3});
+    }
+
+}
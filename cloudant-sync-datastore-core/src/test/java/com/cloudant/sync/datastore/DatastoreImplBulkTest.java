@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.event.Subscribe;
+import com.cloudant.sync.notifications.DocumentCreated;
+import com.cloudant.sync.notifications.DocumentDeleted;
+import com.cloudant.sync.notifications.DocumentUpdated;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DatastoreImplBulkTest extends BasicDatastoreTestBase {
+
+    private final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+
+    private List<DocumentRevision> newRevisions(int count) {
+        List<DocumentRevision> revs = new ArrayList<DocumentRevision>(count);
+        for (int i = 0; i < count; i++) {
+            DocumentRevision rev = new DocumentRevision(String.format("doc-%05d", i));
+            rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("i", i)));
+            revs.add(rev);
+        }
+        return revs;
+    }
+
+    private List<DocumentRevision> revisions(List<BulkDocumentResult> results) {
+        List<DocumentRevision> revs = new ArrayList<DocumentRevision>(results.size());
+        for (BulkDocumentResult result : results) {
+            Assert.assertTrue(result.isSuccessful());
+            revs.add(result.getRevision());
+        }
+        return revs;
+    }
+
+    @Test
+    public void createDocumentsFromRevisions_moreThanOneChunk_allCreated() throws Exception {
+        int count = DatastoreImpl.BULK_CHUNK_SIZE * 2 + 10;
+        List<BulkDocumentResult> results = datastore.createDocumentsFromRevisions(
+                newRevisions(count));
+
+        Assert.assertEquals(count, results.size());
+        for (int i = 0; i < count; i++) {
+            DocumentRevision created = results.get(i).getRevision();
+            Assert.assertEquals(String.format("doc-%05d", i), created.getId());
+            Assert.assertTrue(created.getRevision().startsWith("1-"));
+            Assert.assertEquals(i, created.getBody().asMap().get("i"));
+        }
+        Assert.assertEquals(count, datastore.getDocumentCount());
+    }
+
+    @Test
+    public void createDocumentsFromRevisions_nullId_idGenerated() throws Exception {
+        DocumentRevision rev = new DocumentRevision();
+        rev.setBody(bodyOne);
+        List<BulkDocumentResult> results = datastore.createDocumentsFromRevisions(
+                Collections.singletonList(rev));
+        Assert.assertNotNull(results.get(0).getRevision().getId());
+        Assert.assertNotNull(datastore.getDocument(results.get(0).getRevision().getId()));
+    }
+
+    @Test
+    public void createDocumentsFromRevisions_existingId_onlyThatDocumentFails() throws Exception {
+        datastore.createDocumentFromRevision(newRevisions(2).get(1));
+
+        List<BulkDocumentResult> results = datastore.createDocumentsFromRevisions(
+                newRevisions(3));
+
+        Assert.assertTrue(results.get(0).isSuccessful());
+        Assert.assertFalse(results.get(1).isSuccessful());
+        Assert.assertTrue(results.get(1).isConflict());
+        Assert.assertNull(results.get(1).getRevision());
+        Assert.assertTrue(results.get(2).isSuccessful());
+        Assert.assertEquals(3, datastore.getDocumentCount());
+        // the conflicting document wasn't changed
+        Assert.assertEquals(1, datastore.getAllRevisionsOfDocument("doc-00001")
+                .leafRevisions().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createDocumentsFromRevisions_revisionIdSet_exception() throws Exception {
+        DocumentRevision rev = new DocumentRevisionBuilder()
+                .setDocId("doc")
+                .setRevId("1-a")
+                .setBody(bodyOne)
+                .build();
+        datastore.createDocumentsFromRevisions(Collections.singletonList(rev));
+    }
+
+    @Test
+    public void updateDocumentsFromRevisions_staleRevision_conflict() throws Exception {
+        List<DocumentRevision> created = revisions(datastore.createDocumentsFromRevisions(
+                newRevisions(3)));
+        DocumentRevision stale = created.get(1);
+        DocumentRevision updatedOnce = datastore.updateDocumentFromRevision(stale);
+
+        for (DocumentRevision rev : created) {
+            rev.setBody(bodyTwo);
+        }
+        List<BulkDocumentResult> results = datastore.updateDocumentsFromRevisions(created);
+
+        Assert.assertTrue(results.get(0).getRevision().getRevision().startsWith("2-"));
+        Assert.assertTrue(results.get(1).isConflict());
+        Assert.assertTrue(results.get(2).getRevision().getRevision().startsWith("2-"));
+        Assert.assertEquals(bodyTwo.asMap(), datastore.getDocument("doc-00000").getBody().asMap());
+        Assert.assertEquals(updatedOnce.getRevision(),
+                datastore.getDocument("doc-00001").getRevision());
+    }
+
+    @Test
+    public void deleteDocumentsFromRevisions_alreadyDeleted_onlyThatDocumentFails()
+            throws Exception {
+        List<DocumentRevision> created = revisions(datastore.createDocumentsFromRevisions(
+                newRevisions(3)));
+        datastore.deleteDocumentFromRevision(created.get(2));
+
+        List<BulkDocumentResult> results = datastore.deleteDocumentsFromRevisions(created);
+
+        Assert.assertTrue(results.get(0).getRevision().isDeleted());
+        Assert.assertTrue(results.get(1).getRevision().isDeleted());
+        Assert.assertFalse(results.get(2).isSuccessful());
+        Assert.assertEquals(0, datastore.getDocumentCount());
+    }
+
+    @Test
+    public void bulkOperations_eventsPostedAfterCommit() throws Exception {
+        datastore.getEventBus().register(this);
+
+        List<DocumentRevision> created = revisions(datastore.createDocumentsFromRevisions(
+                newRevisions(2)));
+        created.get(0).setBody(bodyTwo);
+        List<DocumentRevision> updated = revisions(datastore.updateDocumentsFromRevisions(
+                Arrays.asList(created.get(0))));
+        datastore.deleteDocumentsFromRevisions(Arrays.asList(created.get(1)));
+
+        Assert.assertEquals(4, events.size());
+        Assert.assertEquals(created.get(0), ((DocumentCreated) events.get(0)).newDocument);
+        Assert.assertEquals(created.get(1), ((DocumentCreated) events.get(1)).newDocument);
+        DocumentUpdated documentUpdated = (DocumentUpdated) events.get(2);
+        Assert.assertEquals(created.get(0).getRevision(),
+                documentUpdated.prevDocument.getRevision());
+        Assert.assertEquals(updated.get(0), documentUpdated.newDocument);
+        Assert.assertTrue(((DocumentDeleted) events.get(3)).newDocument.isDeleted());
+    }
+
+    @Subscribe
+    public void onDocumentCreated(DocumentCreated dc) throws Exception {
+        // the transaction has committed, so the document can be read
+        Assert.assertNotNull(datastore.getDocument(dc.newDocument.getId()));
+        events.add(dc);
+    }
+
+    @Subscribe
+    public void onDocumentUpdated(DocumentUpdated du) {
+        events.add(du);
+    }
+
+    @Subscribe
+    public void onDocumentDeleted(DocumentDeleted dd) {
+        events.add(dd);
+    }
+
+}
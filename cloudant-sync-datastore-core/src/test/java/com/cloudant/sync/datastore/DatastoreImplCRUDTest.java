@@ -30,8 +30,10 @@ import org.junit.Test;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -435,6 +437,70 @@ public class DatastoreImplCRUDTest extends BasicDatastoreTestBase {
         }
     }
 
+    @Test
+    public void getDocumentsWithIds_moreIdsThanPlaceholderLimit_allDocumentsReturned()
+            throws Exception {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 1200; i++) {
+            DocumentRevision rev = new DocumentRevision(String.format("doc-%04d", i));
+            rev.setBody(bodyOne);
+            ids.add(datastore.createDocumentFromRevision(rev).getId());
+        }
+        Collections.reverse(ids);
+
+        List<DocumentRevision> docs = datastore.getDocumentsWithIds(ids);
+        Assert.assertEquals(ids.size(), docs.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Assert.assertEquals(ids.get(i), docs.get(i).getId());
+        }
+    }
+
+    @Test
+    public void getDocumentMetadata_currentRevisionsInOrderWithoutBodies() throws Exception {
+        DocumentRevision rev_1Mut = new DocumentRevision("document-one");
+        rev_1Mut.setBody(bodyOne);
+        DocumentRevision rev_1 = datastore.createDocumentFromRevision(rev_1Mut);
+        rev_1.setBody(bodyTwo);
+        DocumentRevision rev_1_2 = datastore.updateDocumentFromRevision(rev_1);
+        DocumentRevision rev_2Mut = new DocumentRevision("document-two");
+        rev_2Mut.setBody(bodyTwo);
+        DocumentRevision rev_2 = datastore.createDocumentFromRevision(rev_2Mut);
+        DocumentRevision rev_2_2 = datastore.deleteDocumentFromRevision(rev_2);
+
+        List<DocumentRevision> docs = datastore.getDocumentMetadata(Arrays.asList(
+                "document-two", "missing", "document-one"));
+        Assert.assertEquals(2, docs.size());
+
+        DocumentRevision deleted = docs.get(0);
+        Assert.assertEquals(rev_2_2.getId(), deleted.getId());
+        Assert.assertEquals(rev_2_2.getRevision(), deleted.getRevision());
+        Assert.assertEquals(rev_2_2.getSequence(), deleted.getSequence());
+        Assert.assertTrue(deleted.isDeleted());
+
+        DocumentRevision current = docs.get(1);
+        Assert.assertEquals(rev_1_2.getRevision(), current.getRevision());
+        Assert.assertEquals(rev_1_2.getSequence(), current.getSequence());
+        Assert.assertFalse(current.isDeleted());
+        Assert.assertFalse(current.isFullRevision());
+        Assert.assertTrue(current.getBody().asMap().isEmpty());
+        Assert.assertEquals(bodyTwo.asMap(), current.toFullRevision().getBody().asMap());
+    }
+
+    @Test
+    public void getDocumentMetadata_noIds_emptyList() throws Exception {
+        Assert.assertTrue(datastore.getDocumentMetadata(new ArrayList<String>()).isEmpty());
+    }
+
+    @Test
+    public void containsDocument_deletedDocument_true() throws Exception {
+        DocumentRevision rev = new DocumentRevision();
+        rev.setBody(bodyOne);
+        DocumentRevision deleted = datastore.deleteDocumentFromRevision(
+                datastore.createDocumentFromRevision(rev));
+        Assert.assertTrue(datastore.containsDocument(deleted.getId()));
+        Assert.assertTrue(datastore.containsDocument(deleted.getId(), deleted.getRevision()));
+    }
+
     private DocumentRevision[] createTwoDocumentsForGetDocumentsWithInternalIdsTest() throws Exception {
         DocumentRevision rev_1Mut = new DocumentRevision();
         rev_1Mut.setBody(bodyOne);
@@ -577,6 +643,172 @@ public class DatastoreImplCRUDTest extends BasicDatastoreTestBase {
                                                                             "document-two"));
     }
 
+    @Test
+    public void iterateAllDocuments_byDocumentId_allDocumentsInIdOrder() throws Exception {
+        List<String> ids = createDocumentsWithIds("c", "a", "e", "b", "d");
+        Collections.sort(ids);
+        // a batch size which doesn't divide the number of documents
+        DocumentIterator documents = datastore.iterateAllDocuments(DocumentOrder.DocumentId,
+                false, 2, false);
+        List<String> actual = new ArrayList<String>();
+        while (documents.hasNext()) {
+            DocumentRevision rev = documents.next();
+            Assert.assertEquals(bodyOne.asMap(), rev.getBody().asMap());
+            actual.add(rev.getId());
+        }
+        Assert.assertEquals(ids, actual);
+
+        Collections.reverse(ids);
+        documents = datastore.iterateAllDocuments(DocumentOrder.DocumentId, true, 2, false);
+        actual.clear();
+        while (documents.hasNext()) {
+            actual.add(documents.next().getId());
+        }
+        Assert.assertEquals(ids, actual);
+    }
+
+    @Test
+    public void iterateAllDocuments_bySequence_latestUpdateLast() throws Exception {
+        createDocumentsWithIds("a", "b", "c", "d");
+        DocumentRevision a = datastore.getDocument("a");
+        a.setBody(bodyTwo);
+        datastore.updateDocumentFromRevision(a);
+
+        DocumentIterator documents = datastore.iterateAllDocuments(DocumentOrder.Sequence,
+                false, 2, false);
+        List<String> actual = new ArrayList<String>();
+        while (documents.hasNext()) {
+            actual.add(documents.next().getId());
+        }
+        Assert.assertEquals(Arrays.asList("b", "c", "d", "a"), actual);
+    }
+
+    @Test
+    public void iterateAllDocuments_deletedDocument_notReturned() throws Exception {
+        createDocumentsWithIds("a", "b", "c");
+        datastore.deleteDocumentFromRevision(datastore.getDocument("b"));
+
+        DocumentIterator documents = datastore.iterateAllDocuments(DocumentOrder.DocumentId,
+                false, 1, false);
+        Assert.assertEquals("a", documents.next().getId());
+        Assert.assertEquals("c", documents.next().getId());
+        Assert.assertFalse(documents.hasNext());
+    }
+
+    @Test
+    public void iterateAllDocuments_metadataOnly_noBodies() throws Exception {
+        createDocumentsWithIds("a", "b");
+        DocumentIterator documents = datastore.iterateAllDocuments(DocumentOrder.DocumentId,
+                false, 10, true);
+        int count = 0;
+        while (documents.hasNext()) {
+            DocumentRevision rev = documents.next();
+            Assert.assertFalse(rev.isFullRevision());
+            Assert.assertTrue(rev.getBody().asMap().isEmpty());
+            Assert.assertEquals(bodyOne.asMap(), rev.toFullRevision().getBody().asMap());
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+
+    @Test
+    public void iterateAllDocuments_noDocuments_empty() throws Exception {
+        DocumentIterator documents = datastore.iterateAllDocuments(DocumentOrder.Sequence,
+                true, 10, false);
+        Assert.assertFalse(documents.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void iterateAllDocuments_batchSizeZero_exception() throws Exception {
+        datastore.iterateAllDocuments(DocumentOrder.DocumentId, false, 0, false);
+    }
+
+    @Test
+    public void iterateAllDocumentIds() throws Exception {
+        Assert.assertFalse(datastore.iterateAllDocumentIds(DocumentOrder.DocumentId, 10)
+                .hasNext());
+        createDocumentsWithIds("b", "a", "c");
+        Iterator<String> ids = datastore.iterateAllDocumentIds(DocumentOrder.DocumentId, 2);
+        Assert.assertEquals("a", ids.next());
+        Assert.assertEquals("b", ids.next());
+        Assert.assertEquals("c", ids.next());
+        Assert.assertFalse(ids.hasNext());
+    }
+
+    @Test
+    public void getDocumentsInIdRange_prefix_onlyDocumentsWithPrefix() throws Exception {
+        createDocumentsWithIds("order:2016-09:1", "order:2016-10:2", "order:2016-10:1",
+                "order:2016-11:1", "order:2016-10", "customer:1");
+        DocumentIterator documents = datastore.getDocumentsInIdRange("order:2016-10:",
+                "order:2016-10:\uffff", 100, false);
+        Assert.assertEquals("order:2016-10:1", documents.next().getId());
+        DocumentRevision rev = documents.next();
+        Assert.assertEquals("order:2016-10:2", rev.getId());
+        Assert.assertEquals(bodyOne.asMap(), rev.getBody().asMap());
+        Assert.assertFalse(documents.hasNext());
+
+        documents = datastore.getDocumentsInIdRange("order:2016-10:", "order:2016-10:\uffff",
+                100, true);
+        Assert.assertEquals("order:2016-10:2", documents.next().getId());
+        Assert.assertEquals("order:2016-10:1", documents.next().getId());
+        Assert.assertFalse(documents.hasNext());
+    }
+
+    @Test
+    public void getDocumentsInIdRange_boundsAreInclusive() throws Exception {
+        createDocumentsWithIds("a", "b", "c", "d");
+        List<String> actual = new ArrayList<String>();
+        DocumentIterator documents = datastore.getDocumentsInIdRange("b", "c", 100, false);
+        while (documents.hasNext()) {
+            actual.add(documents.next().getId());
+        }
+        Assert.assertEquals(Arrays.asList("b", "c"), actual);
+    }
+
+    @Test
+    public void getDocumentsInIdRange_noBounds_allDocuments() throws Exception {
+        createDocumentsWithIds("b", "a", "c");
+        List<String> actual = new ArrayList<String>();
+        DocumentIterator documents = datastore.getDocumentsInIdRange(null, null, 100, true);
+        while (documents.hasNext()) {
+            actual.add(documents.next().getId());
+        }
+        Assert.assertEquals(Arrays.asList("c", "b", "a"), actual);
+    }
+
+    @Test
+    public void getDocumentsInIdRange_limit_stopsAtLimit() throws Exception {
+        // more documents than are read in one batch
+        String[] ids = new String[250];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = String.format("doc-%03d", i);
+        }
+        createDocumentsWithIds(ids);
+        DocumentIterator documents = datastore.getDocumentsInIdRange("doc-010", null, 150,
+                false);
+        int count = 0;
+        while (documents.hasNext()) {
+            Assert.assertEquals(ids[10 + count], documents.next().getId());
+            count++;
+        }
+        Assert.assertEquals(150, count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getDocumentsInIdRange_limitZero_exception() throws Exception {
+        datastore.getDocumentsInIdRange("a", "b", 0, false);
+    }
+
+    private List<String> createDocumentsWithIds(String... ids) throws Exception {
+        List<String> created = new ArrayList<String>();
+        for (String id : ids) {
+            DocumentRevision rev = new DocumentRevision(id);
+            rev.setBody(bodyOne);
+            created.add(datastore.createDocumentFromRevision(rev).getId());
+        }
+        return created;
+    }
+
     @Test
     public void createDbWithSlashAndCreateDocument() throws Exception {
         Datastore datastore = datastoreManager.openDatastore("dbwith/aslash");
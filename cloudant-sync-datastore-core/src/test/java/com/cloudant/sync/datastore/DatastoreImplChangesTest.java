@@ -102,4 +102,75 @@ public class DatastoreImplChangesTest extends BasicDatastoreTestBase {
         Assert.assertThat(changes.getIds(), hasItems(docs[0].getId(), docs[1].getId(), docs[2].getId()));
         Assert.assertEquals(4, changes.getLastSequence());
     }
+
+    @Test
+    public void changes_documentUpdatedManyTimes_listedOnceAtLatestSequence() throws Exception {
+        DocumentRevision[] docs = createThreeDocuments();
+        DocumentRevision rev = docs[0];
+        for (int i = 0; i < 5; i++) {
+            rev.setBody(i % 2 == 0 ? bodyTwo : bodyOne);
+            rev = datastore.updateDocumentFromRevision(rev);
+        }
+
+        // the first document is listed once, at its latest change after the others
+        Changes changes = datastore.changes(0, 2);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(docs[1].getId(), changes.getResults().get(0).getId());
+        Assert.assertEquals(docs[2].getId(), changes.getResults().get(1).getId());
+        Assert.assertEquals(4, changes.getLastSequence());
+
+        changes = datastore.changes(4, 2);
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(rev.getRevision(), changes.getResults().get(0).getRevision());
+        Assert.assertEquals(9, changes.getLastSequence());
+    }
+
+    @Test
+    public void changesIterator_batchesSmallerThanChanges_allChangesInOrder() throws Exception {
+        DocumentRevision[] docs = createThreeDocuments();
+        ChangesIterator changes = datastore.changesIterator(0, 2, false);
+        Assert.assertEquals(0, changes.getLastSequence());
+
+        Assert.assertTrue(changes.hasNext());
+        Assert.assertEquals(docs[0].getId(), changes.next().getId());
+        Assert.assertEquals(0, changes.getLastSequence());
+        Assert.assertEquals(docs[1].getId(), changes.next().getId());
+        Assert.assertEquals(2, changes.getLastSequence());
+        DocumentRevision last = changes.next();
+        Assert.assertEquals(docs[2].getRevision(), last.getRevision());
+        Assert.assertEquals(bodyOne.asMap(), last.getBody().asMap());
+        Assert.assertFalse(changes.hasNext());
+        Assert.assertEquals(4, changes.getLastSequence());
+    }
+
+    @Test
+    public void changesIterator_noChanges_empty() throws Exception {
+        createTwoDocuments();
+        ChangesIterator changes = datastore.changesIterator(2, 10, false);
+        Assert.assertFalse(changes.hasNext());
+        Assert.assertEquals(2, changes.getLastSequence());
+    }
+
+    @Test
+    public void changesIterator_metadataOnly_noBodies() throws Exception {
+        DocumentRevision[] docs = createThreeDocuments();
+        ChangesIterator changes = datastore.changesIterator(0, 10, true);
+        int count = 0;
+        while (changes.hasNext()) {
+            DocumentRevision rev = changes.next();
+            Assert.assertEquals(docs[count].getRevision(), rev.getRevision());
+            Assert.assertEquals(docs[count].getSequence(), rev.getSequence());
+            Assert.assertFalse(rev.isFullRevision());
+            Assert.assertTrue(rev.getBody().asMap().isEmpty());
+            Assert.assertEquals(docs[count].getBody().asMap(),
+                    rev.toFullRevision().getBody().asMap());
+            count++;
+        }
+        Assert.assertEquals(3, count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void changesIterator_batchSizeZero_exception() throws Exception {
+        datastore.changesIterator(0, 0, false);
+    }
 }
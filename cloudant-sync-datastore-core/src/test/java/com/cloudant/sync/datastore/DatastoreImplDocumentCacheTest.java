@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.datastore.encryption.NullKeyProvider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class DatastoreImplDocumentCacheTest extends BasicDatastoreTestBase {
+
+    @Before
+    public void openCachedDatastore() throws Exception {
+        Assert.assertNull(datastore.getDocumentCacheStats());
+        datastore.close();
+        datastore = (DatastoreImpl) datastoreManager.openDatastore("cached",
+                new NullKeyProvider(), new DatastoreOptions().documentCache(2, 1024 * 1024)
+                        .readerConnections(1));
+    }
+
+    private DocumentRevision createDocument(String id, DocumentBody body) throws Exception {
+        DocumentRevision rev = new DocumentRevision(id);
+        rev.setBody(body);
+        return datastore.createDocumentFromRevision(rev);
+    }
+
+    @Test
+    public void getDocument_repeatedRead_servedFromCache() throws Exception {
+        DocumentRevision created = createDocument("doc", bodyOne);
+        DocumentRevision first = datastore.getDocument("doc");
+        DocumentRevision second = datastore.getDocument("doc");
+        Assert.assertEquals(created, first);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(first.getBody().toString(), second.getBody().toString());
+
+        DocumentCacheStats stats = datastore.getDocumentCacheStats();
+        Assert.assertEquals(1, stats.getMissCount());
+        Assert.assertEquals(1, stats.getHitCount());
+        Assert.assertEquals(1, stats.getDocumentCount());
+        Assert.assertEquals(bodyOne.asBytes().length, stats.getBodyBytes());
+    }
+
+    @Test
+    public void getDocument_cachedRevisionModified_cacheUnchanged() throws Exception {
+        createDocument("doc", bodyOne);
+        DocumentRevision read = datastore.getDocument("doc");
+        read.setBody(bodyTwo);
+        Assert.assertEquals(bodyOne.toString(), datastore.getDocument("doc").getBody()
+                .toString());
+    }
+
+    @Test
+    public void getDocument_givenRevision_servedFromCacheIfCurrent() throws Exception {
+        DocumentRevision created = createDocument("doc", bodyOne);
+        datastore.getDocument("doc");
+        datastore.getDocument("doc", created.getRevision());
+        Assert.assertEquals(1, datastore.getDocumentCacheStats().getHitCount());
+    }
+
+    @Test
+    public void updateDocumentFromRevision_invalidatesCachedRevision() throws Exception {
+        DocumentRevision created = createDocument("doc", bodyOne);
+        datastore.getDocument("doc");
+        created.setBody(bodyTwo);
+        DocumentRevision updated = datastore.updateDocumentFromRevision(created);
+        Assert.assertEquals(updated.getRevision(), datastore.getDocument("doc").getRevision());
+        Assert.assertEquals(bodyTwo.toString(), datastore.getDocument("doc").getBody()
+                .toString());
+    }
+
+    @Test
+    public void deleteDocumentFromRevision_invalidatesCachedRevision() throws Exception {
+        DocumentRevision created = createDocument("doc", bodyOne);
+        datastore.getDocument("doc");
+        DocumentRevision deleted = datastore.deleteDocumentFromRevision(created);
+        DocumentRevision read = datastore.getDocument("doc");
+        Assert.assertEquals(deleted.getRevision(), read.getRevision());
+        Assert.assertTrue(read.isDeleted());
+    }
+
+    @Test
+    public void createDocumentFromRevision_afterDelete_invalidatesCachedRevision()
+            throws Exception {
+        DocumentRevision created = createDocument("doc", bodyOne);
+        datastore.deleteDocumentFromRevision(created);
+        Assert.assertTrue(datastore.getDocument("doc").isDeleted());
+        DocumentRevision recreated = createDocument("doc", bodyTwo);
+        Assert.assertEquals(recreated.getRevision(), datastore.getDocument("doc")
+                .getRevision());
+    }
+
+    @Test
+    public void deleteDocument_invalidatesCachedRevision() throws Exception {
+        createDocument("doc", bodyOne);
+        datastore.getDocument("doc");
+        List<DocumentRevision> deleted = datastore.deleteDocument("doc");
+        Assert.assertEquals(deleted.get(0).getRevision(), datastore.getDocument("doc")
+                .getRevision());
+    }
+
+    @Test
+    public void forceInsert_invalidatesCachedRevision() throws Exception {
+        DocumentRevision created = createDocument("doc", bodyOne);
+        datastore.getDocument("doc");
+        DocumentRevision rev = new DocumentRevision("doc", "2-x");
+        rev.setBody(bodyTwo);
+        datastore.forceInsert(rev, created.getRevision(), "2-x");
+        Assert.assertEquals("2-x", datastore.getDocument("doc").getRevision());
+    }
+
+    @Test
+    public void resolveConflictsForDocument_invalidatesCachedRevision() throws Exception {
+        createDocument("doc", bodyOne);
+        DocumentRevision rev = new DocumentRevision("doc", "2-x");
+        rev.setBody(bodyTwo);
+        datastore.forceInsert(rev, "1-x", "2-x");
+        Assert.assertEquals("2-x", datastore.getDocument("doc").getRevision());
+
+        datastore.resolveConflictsForDocument("doc", new ConflictResolver() {
+            @Override
+            public DocumentRevision resolve(String docId, List<DocumentRevision> conflicts) {
+                for (DocumentRevision conflict : conflicts) {
+                    if (conflict.getRevision().startsWith("1-")) {
+                        return conflict;
+                    }
+                }
+                return null;
+            }
+        });
+        Assert.assertTrue(datastore.getDocument("doc").getRevision().startsWith("1-"));
+    }
+
+    @Test
+    public void compact_leavesCurrentRevisionsReadable() throws Exception {
+        DocumentRevision created = createDocument("doc", bodyOne);
+        created.setBody(bodyTwo);
+        datastore.updateDocumentFromRevision(created);
+        datastore.getDocument("doc");
+        datastore.compact();
+        Assert.assertEquals(0, datastore.getDocumentCacheStats().getDocumentCount());
+        Assert.assertEquals(bodyTwo.toString(), datastore.getDocument("doc").getBody()
+                .toString());
+    }
+
+    @Test
+    public void getDocument_moreThanMaxDocuments_evictsLeastRecentlyUsed() throws Exception {
+        createDocument("a", bodyOne);
+        createDocument("b", bodyOne);
+        createDocument("c", bodyOne);
+        datastore.getDocument("a");
+        datastore.getDocument("b");
+        datastore.getDocument("a");
+        datastore.getDocument("c");
+
+        DocumentCacheStats stats = datastore.getDocumentCacheStats();
+        Assert.assertEquals(1, stats.getEvictionCount());
+        Assert.assertEquals(2, stats.getDocumentCount());
+        datastore.getDocument("a");
+        Assert.assertEquals(2, datastore.getDocumentCacheStats().getHitCount());
+    }
+
+    @Test
+    public void getDocument_largerThanMaxBodyBytes_notCached() throws Exception {
+        datastore.close();
+        datastore = (DatastoreImpl) datastoreManager.openDatastore("small",
+                new NullKeyProvider(), new DatastoreOptions().documentCache(100, 16));
+        createDocument("small", DocumentBodyFactory.create(Collections.singletonMap("a", 1)));
+        createDocument("large", bodyOne);
+        datastore.getDocument("small");
+        datastore.getDocument("large");
+        Assert.assertEquals(1, datastore.getDocumentCacheStats().getDocumentCount());
+    }
+
+}
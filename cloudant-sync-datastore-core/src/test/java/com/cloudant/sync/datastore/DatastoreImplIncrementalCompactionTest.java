@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package com.cloudant.sync.datastore;
+
+import com.cloudant.sync.event.Subscribe;
+import com.cloudant.sync.notifications.CompactionCompleted;
+import com.cloudant.sync.notifications.CompactionProgress;
+import com.cloudant.sync.sqlite.Cursor;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.util.DatabaseUtils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DatastoreImplIncrementalCompactionTest extends BasicDatastoreTestBase {
+
+    private static final int DOCUMENTS = 5;
+
+    private final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+
+    // the compaction under test, and an action for the first progress event to run on it
+    private final AtomicReference<IncrementalCompaction> compaction =
+            new AtomicReference<IncrementalCompaction>();
+    private final CountDownLatch compactionStarted = new CountDownLatch(1);
+    private volatile CompactionAction onFirstProgress;
+
+    private interface CompactionAction {
+        void run(IncrementalCompaction compaction);
+    }
+
+    @Before
+    public void registerForEvents() {
+        datastore.getEventBus().register(this);
+    }
+
+    @Subscribe
+    public void onProgress(CompactionProgress progress) throws InterruptedException {
+        events.add(progress);
+        CompactionAction action = onFirstProgress;
+        if (action != null) {
+            onFirstProgress = null;
+            compactionStarted.await(5, TimeUnit.SECONDS);
+            action.run(compaction.get());
+        }
+    }
+
+    @Subscribe
+    public void onCompleted(CompactionCompleted completed) {
+        events.add(completed);
+    }
+
+    private IncrementalCompaction start(int itemsPerStep) {
+        IncrementalCompaction started = datastore.compactIncrementally(itemsPerStep, 1000);
+        compaction.set(started);
+        compactionStarted.countDown();
+        return started;
+    }
+
+    // creates documents with two revisions each, leaving DOCUMENTS non-leaf bodies
+    private void createUpdatedDocuments() throws Exception {
+        for (int i = 0; i < DOCUMENTS; i++) {
+            DocumentRevision rev = new DocumentRevision("doc-" + i);
+            rev.setBody(bodyOne);
+            rev = datastore.createDocumentFromRevision(rev);
+            rev.setBody(bodyTwo);
+            datastore.updateDocumentFromRevision(rev);
+        }
+    }
+
+    private long queryLong(final String sql) throws Exception {
+        return datastore.runOnDbQueue(new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                Cursor c = null;
+                try {
+                    c = db.rawQuery(sql, null);
+                    c.moveToFirst();
+                    return c.getLong(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        }).get();
+    }
+
+    private long nonLeafBodies() throws Exception {
+        return queryLong("SELECT COUNT(*) FROM bodies, revs WHERE revs.sequence = " +
+                "bodies.sequence AND revs.leaf = 0");
+    }
+
+    @Test
+    public void compactIncrementally_nonLeafBodiesDeletedInSteps() throws Exception {
+        createUpdatedDocuments();
+        Assert.assertEquals(DOCUMENTS, nonLeafBodies());
+
+        Assert.assertTrue(start(2).getCompletion().get(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(0, nonLeafBodies());
+        Assert.assertEquals(DOCUMENTS, queryLong("SELECT COUNT(*) FROM bodies"));
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Assert.assertEquals(bodyTwo.asMap(), datastore.getDocument("doc-" + i).getBody()
+                    .asMap());
+        }
+
+        // two revisions at a time, so the bodies phase reports 2, 4 and 5 revisions
+        List<Integer> bodiesProgress = new ArrayList<Integer>();
+        for (Object event : events) {
+            if (event instanceof CompactionProgress && ((CompactionProgress) event).phase ==
+                    IncrementalCompaction.Phase.Bodies) {
+                bodiesProgress.add(((CompactionProgress) event).processed);
+            }
+        }
+        Assert.assertEquals(Arrays.asList(2, 4, 5), bodiesProgress);
+        CompactionCompleted completed = (CompactionCompleted) events.get(events.size() - 1);
+        Assert.assertFalse(completed.cancelled);
+        Assert.assertNull(completed.error);
+    }
+
+    @Test
+    public void compactIncrementally_cancelled_stopsAfterStep() throws Exception {
+        createUpdatedDocuments();
+        onFirstProgress = new CompactionAction() {
+            @Override
+            public void run(IncrementalCompaction compaction) {
+                compaction.cancel();
+            }
+        };
+
+        IncrementalCompaction compaction = start(1);
+        Assert.assertFalse(compaction.getCompletion().get(10, TimeUnit.SECONDS));
+        Assert.assertTrue(compaction.isCancelled());
+
+        // only the first step ran
+        Assert.assertEquals(DOCUMENTS - 1, nonLeafBodies());
+        CompactionCompleted completed = (CompactionCompleted) events.get(events.size() - 1);
+        Assert.assertTrue(completed.cancelled);
+    }
+
+    @Test
+    public void compactIncrementally_paused_resumesWhereItStopped() throws Exception {
+        createUpdatedDocuments();
+        final CountDownLatch paused = new CountDownLatch(1);
+        onFirstProgress = new CompactionAction() {
+            @Override
+            public void run(IncrementalCompaction compaction) {
+                compaction.pause();
+                paused.countDown();
+            }
+        };
+
+        IncrementalCompaction compaction = start(1);
+        Assert.assertTrue(paused.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(compaction.isPaused());
+        // give a step which wasn't paused the chance to run
+        Thread.sleep(200);
+        Assert.assertFalse(compaction.getCompletion().isDone());
+        Assert.assertEquals(DOCUMENTS - 1, nonLeafBodies());
+
+        compaction.resume();
+        Assert.assertTrue(compaction.getCompletion().get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, nonLeafBodies());
+    }
+
+    @Test
+    public void compactIncrementally_paused_cancelledWhenDatastoreClosed() throws Exception {
+        createUpdatedDocuments();
+        final CountDownLatch paused = new CountDownLatch(1);
+        onFirstProgress = new CompactionAction() {
+            @Override
+            public void run(IncrementalCompaction compaction) {
+                compaction.pause();
+                paused.countDown();
+            }
+        };
+
+        IncrementalCompaction compaction = start(1);
+        Assert.assertTrue(paused.await(10, TimeUnit.SECONDS));
+        datastore.close();
+
+        Assert.assertFalse(compaction.getCompletion().get(10, TimeUnit.SECONDS));
+        Assert.assertTrue(compaction.isCancelled());
+        CompactionCompleted completed = (CompactionCompleted) events.get(events.size() - 1);
+        Assert.assertTrue(completed.cancelled);
+        Assert.assertNull(completed.error);
+    }
+
+    @Test
+    public void compactIncrementally_freePagesReturnedToFileSystem() throws Exception {
+        // a new database can be vacuumed incrementally
+        Assert.assertEquals(2, queryLong("PRAGMA auto_vacuum"));
+
+        Map<String, Object> large = new HashMap<String, Object>();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append(i);
+        }
+        large.put("value", value.toString());
+        for (int i = 0; i < DOCUMENTS; i++) {
+            DocumentRevision rev = new DocumentRevision("doc-" + i);
+            rev.setBody(DocumentBodyFactory.create(large));
+            rev = datastore.createDocumentFromRevision(rev);
+            rev.setBody(bodyTwo);
+            datastore.updateDocumentFromRevision(rev);
+        }
+        long pages = queryLong("PRAGMA page_count");
+
+        Assert.assertTrue(start(1000).getCompletion().get(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(0, queryLong("PRAGMA freelist_count"));
+        Assert.assertTrue(queryLong("PRAGMA page_count") < pages);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compactIncrementally_noItemsPerStep_exception() throws Exception {
+        datastore.compactIncrementally(0, 1000);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class DatastoreImplPossibleAncestorsTest extends BasicDatastoreTestBase {
+
+    @Before
+    public void createTrees() throws Exception {
+        // a: 1-a -> 2-a -> 3-a, and a conflicting 2-b
+        insert("a", "1-a");
+        insert("a", "1-a", "2-a");
+        insert("a", "1-a", "2-a", "3-a");
+        insert("a", "1-a", "2-b");
+        // b: 1-a -> 2-a
+        insert("b", "1-a");
+        insert("b", "1-a", "2-a");
+    }
+
+    private void insert(String docId, String... history) throws Exception {
+        DocumentRevision rev = new DocumentRevision(docId, history[history.length - 1]);
+        rev.setBody(bodyOne);
+        datastore.forceInsert(rev, history);
+    }
+
+    @Test
+    public void getPossibleAncestorRevisionIDs_lowerGenerationsReturned() {
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("3-a", "2-b", "2-a", "1-a")),
+                new HashSet<String>(datastore.getPossibleAncestorRevisionIDs("a", "4-x", 50)));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("2-b", "2-a", "1-a")),
+                new HashSet<String>(datastore.getPossibleAncestorRevisionIDs("a", "3-x", 50)));
+        Assert.assertEquals(Collections.singletonList("1-a"),
+                datastore.getPossibleAncestorRevisionIDs("a", "2-x", 50));
+        Assert.assertNull(datastore.getPossibleAncestorRevisionIDs("a", "1-x", 50));
+    }
+
+    @Test
+    public void getPossibleAncestorRevisionIDs_limited() {
+        Assert.assertEquals(2, datastore.getPossibleAncestorRevisionIDs("a", "4-x", 2).size());
+    }
+
+    @Test
+    public void getPossibleAncestorRevisionIDs_batch_matchesSingleDocument() {
+        Map<String, Collection<String>> revisions = new HashMap<String, Collection<String>>();
+        revisions.put("a", Arrays.asList("3-x", "2-x"));
+        revisions.put("b", Collections.singletonList("3-x"));
+        revisions.put("c", Collections.singletonList("2-x"));
+        revisions.put("d", Collections.singletonList("1-x"));
+
+        Map<String, List<String>> ancestors = datastore.getPossibleAncestorRevisionIDs(revisions,
+                50);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("2-b", "2-a", "1-a")),
+                new HashSet<String>(ancestors.get("a")));
+        Assert.assertEquals(new HashSet<String>(datastore.getPossibleAncestorRevisionIDs("b",
+                "3-x", 50)), new HashSet<String>(ancestors.get("b")));
+        Assert.assertFalse(ancestors.containsKey("c"));
+        Assert.assertFalse(ancestors.containsKey("d"));
+    }
+
+    @Test
+    public void getPossibleAncestorRevisionIDs_batch_limitedForEachRevision() {
+        Map<String, Collection<String>> revisions = new HashMap<String, Collection<String>>();
+        revisions.put("a", Arrays.asList("4-x", "2-x"));
+        // the most recently inserted of 3-a, 2-b and 2-a, and 1-a
+        Assert.assertEquals(2, datastore.getPossibleAncestorRevisionIDs(revisions, 1).get("a")
+                .size());
+    }
+
+}
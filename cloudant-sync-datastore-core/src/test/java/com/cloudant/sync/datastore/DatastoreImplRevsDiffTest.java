@@ -19,6 +19,8 @@ import com.cloudant.common.ValueListMap;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -135,4 +137,27 @@ public class DatastoreImplRevsDiffTest extends BasicDatastoreTestBase{
         Assert.assertFalse(missing.get(rev1.getId()).contains(rev1.getRevision()));
     }
 
+    @Test
+    public void revsDiff_manyDocs_missingRevisionsOfEachDocReturned() throws Exception {
+        DocumentRevision revMut = new DocumentRevision();
+        revMut.setBody(bodyOne);
+        DocumentRevision rev = datastore.createDocumentFromRevision(revMut);
+
+        ValueListMap<String, String> revs = new ValueListMap<String, String>();
+        revs.addValueToKey(rev.getId(), rev.getRevision());
+        revs.addValueToKey(rev.getId(), "2-a");
+        // more documents than fit in one query, with a duplicated revision
+        for (int i = 0; i < 1000; i++) {
+            revs.addValueToKey("doc" + i, "1-a");
+            revs.addValueToKey("doc" + i, "2-a");
+            revs.addValueToKey("doc" + i, "2-a");
+        }
+        Map<String, List<String>> missing = datastore.revsDiff(revs);
+        Assert.assertEquals(1001, missing.size());
+        Assert.assertEquals(Collections.singletonList("2-a"), missing.get(rev.getId()));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(Arrays.asList("1-a", "2-a"), missing.get("doc" + i));
+        }
+    }
+
 }
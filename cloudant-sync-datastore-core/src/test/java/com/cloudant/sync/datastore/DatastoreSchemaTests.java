@@ -25,6 +25,7 @@ import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.sqlite.SQLDatabaseQueue;
 import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.util.CouchUtils;
 import com.cloudant.sync.util.DatabaseUtils;
 import com.cloudant.sync.util.TestUtils;
 
@@ -39,6 +40,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Set;
@@ -593,7 +595,151 @@ public class DatastoreSchemaTests {
         }
     }
 
+    /**
+     * Test that the 300 and 301 migrations set the leaf flags and generations of revisions,
+     * using the auto-generated complex database. Exactly the revisions which aren't the parent
+     * of another revision should be marked as leaf revisions.
+     */
+    @Test
+    public void migrationTo301SetsLeafFlagsAndGenerations() throws Exception {
+        File temp_folder = new File(TestUtils.createTempTestingDir(this.getClass().getName()));
+        File zippedComplexDatabase = f("fixture/v100ComplexWithoutDuplicates.zip");
+        Assert.assertTrue(unzipToDirectory(zippedComplexDatabase, temp_folder));
+
+        DatastoreImpl datastore = (DatastoreImpl) DatastoreManager.getInstance(
+                new File(temp_folder, "datastores").getAbsolutePath())
+                .openDatastore("v100ComplexWithoutDuplicates");
+
+        try {
+            Integer version = datastore.runOnDbQueue(new SQLCallable<Integer>() {
+                @Override
+                public Integer call(SQLDatabase db) throws Exception {
+                    return db.getVersion();
+                }
+            }).get();
+            Assert.assertTrue("DB version should be 301 or more", version >= 301);
+
+            assertLeafFlagsMatchParents(datastore);
+            assertGenerationsMatchRevisionIds(datastore);
+
+            // inserting a child clears the leaf flag of its parent
+            DocumentRevision rev = new DocumentRevision("Document0", "2-child");
+            rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("a", "b")));
+            datastore.forceInsert(rev, "1-root", "2-child");
+            assertLeafFlagsMatchParents(datastore);
+            assertGenerationsMatchRevisionIds(datastore);
+            assertLeafCount(datastore, "Document0", 1);
+            assertWinner(datastore, "Document0", "2-child");
+        } finally {
+            datastore.close();
+            TestUtils.deleteTempTestingDir(temp_folder.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Test that the 400 migration moves the JSON bodies of revisions out of the revs table,
+     * using the auto-generated complex database.
+     */
+    @Test
+    public void migrationTo400MovesBodies() throws Exception {
+        File temp_folder = new File(TestUtils.createTempTestingDir(this.getClass().getName()));
+        File zippedComplexDatabase = f("fixture/v100ComplexWithoutDuplicates.zip");
+        Assert.assertTrue(unzipToDirectory(zippedComplexDatabase, temp_folder));
+
+        DatastoreImpl datastore = (DatastoreImpl) DatastoreManager.getInstance(
+                new File(temp_folder, "datastores").getAbsolutePath())
+                .openDatastore("v100ComplexWithoutDuplicates");
+
+        try {
+            Assert.assertEquals("No bodies should be left in the revs table", 0,
+                    countRows(datastore, "SELECT COUNT(*) FROM revs WHERE json NOT NULL"));
+            Assert.assertEquals("Every current revision should have a body", 0,
+                    countRows(datastore, "SELECT COUNT(*) FROM revs WHERE current = 1 AND " +
+                            "sequence NOT IN (SELECT sequence FROM bodies)"));
+            Assert.assertTrue("Bodies should have been moved",
+                    countRows(datastore, "SELECT COUNT(*) FROM bodies") > 0);
+
+            DocumentRevision doc = datastore.getDocument("Document0");
+            Assert.assertFalse("Body should be read from the bodies table",
+                    doc.getBody().asMap().isEmpty());
+
+            // compaction deletes the bodies of non-leaf revisions
+            String rootBodies = "SELECT COUNT(*) FROM bodies, revs, docs WHERE " +
+                    "bodies.sequence = revs.sequence AND revs.doc_id = docs.doc_id AND " +
+                    "docs.docid = 'Document0' AND revs.revid = '1-root'";
+            Assert.assertEquals(1, countRows(datastore, rootBodies));
+            DocumentRevision rev = new DocumentRevision("Document0", "2-child");
+            rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("a", "b")));
+            datastore.forceInsert(rev, "1-root", "2-child");
+            datastore.compact();
+            Assert.assertEquals(0, countRows(datastore, rootBodies));
+            Assert.assertEquals("b", datastore.getDocument("Document0").getBody().asMap()
+                    .get("a"));
+        } finally {
+            datastore.close();
+            TestUtils.deleteTempTestingDir(temp_folder.getAbsolutePath());
+        }
+    }
+
     // utility methods used by tests
+    private int countRows(DatastoreImpl datastore, final String sql) throws Exception {
+        return datastore.runOnDbQueue(new SQLCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase db) throws Exception {
+                Cursor c = null;
+                try {
+                    c = db.rawQuery(sql, null);
+                    c.moveToFirst();
+                    return c.getInt(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        }).get();
+    }
+
+    private void assertLeafFlagsMatchParents(DatastoreImpl datastore) throws Exception {
+        Integer wrong = datastore.runOnDbQueue(new SQLCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase db) throws Exception {
+                Cursor c = null;
+                try {
+                    c = db.rawQuery("SELECT COUNT(*) FROM revs WHERE leaf != (sequence NOT IN " +
+                            "(SELECT parent FROM revs WHERE parent NOT NULL))", null);
+                    c.moveToFirst();
+                    return c.getInt(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        }).get();
+        Assert.assertEquals("Leaf flags should match the parents of revisions", 0,
+                wrong.intValue());
+    }
+
+    private void assertGenerationsMatchRevisionIds(DatastoreImpl datastore) throws Exception {
+        List<String> wrong = datastore.runOnDbQueue(new SQLCallable<List<String>>() {
+            @Override
+            public List<String> call(SQLDatabase db) throws Exception {
+                List<String> wrong = new ArrayList<String>();
+                Cursor c = null;
+                try {
+                    c = db.rawQuery("SELECT revid, generation FROM revs", null);
+                    while (c.moveToNext()) {
+                        if (CouchUtils.generationFromRevId(c.getString(0)) != c.getInt(1)) {
+                            wrong.add(c.getString(0));
+                        }
+                    }
+                    return wrong;
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        }).get();
+        Assert.assertEquals("Generations should match revision IDs", Collections.emptyList(),
+                wrong);
+    }
+
     private void assertLeafCount(Datastore datastore, String docId, int expectedLeafCount) {
         int actualLeafCount = ((DatastoreImpl)datastore).getAllRevisionsOfDocument(docId).
                 leafRevisions().size();
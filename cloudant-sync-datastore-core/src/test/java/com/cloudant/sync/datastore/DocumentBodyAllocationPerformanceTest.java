@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.sync.query.IndexManager;
+import com.cloudant.sync.query.QueryResult;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the bytes allocated by reading the changes feed and by running a query which
+ * matches documents without an index, the two paths which load the most document bodies.
+ */
+@Category(PerformanceTest.class)
+public class DocumentBodyAllocationPerformanceTest {
+
+    private static final int DOCS = 5000;
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final int CHANGES_BATCH_SIZE = 500;
+
+    private String datastoreManagerDir;
+    private DatastoreManager manager;
+    private Datastore datastore;
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        datastoreManagerDir = TestUtils.createTempTestingDir(this.getClass().getName());
+        manager = DatastoreManager.getInstance(datastoreManagerDir);
+        datastore = manager.openDatastore("allocation");
+        for (int batch = 0; batch < DOCS / INSERT_BATCH_SIZE; batch++) {
+            List<DocumentRevision> revs = new ArrayList<DocumentRevision>();
+            for (int i = 0; i < INSERT_BATCH_SIZE; i++) {
+                DocumentRevision rev = new DocumentRevision();
+                rev.setBody(DocumentBodyFactory.create(body(batch * INSERT_BATCH_SIZE + i)));
+                revs.add(rev);
+            }
+            datastore.createDocumentsFromRevisions(revs);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (datastore != null) {
+            datastore.close();
+        }
+        TestUtils.deleteTempTestingDir(datastoreManagerDir);
+    }
+
+    @Test
+    public void changes() throws Exception {
+        // the first pass warms up the code being measured
+        for (int pass = 0; pass < 2; pass++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            int seen = 0;
+            long since = 0;
+            while (true) {
+                Changes changes = datastore.changes(since, CHANGES_BATCH_SIZE);
+                if (changes.size() == 0) {
+                    break;
+                }
+                for (DocumentRevision rev : changes.getResults()) {
+                    // read a field, as a consumer of the feed would
+                    Assert.assertNotNull(DocumentBodyImpl.readOnlyMap(rev.getBody()).get("type"));
+                    seen++;
+                }
+                since = changes.getLastSequence();
+            }
+            report("changes", seen, allocatedBytes() - allocated, System.nanoTime() - start);
+            Assert.assertEquals(DOCS, seen);
+        }
+    }
+
+    @Test
+    public void unindexedQuery() throws Exception {
+        IndexManager im = new IndexManager(datastore);
+        try {
+            Assert.assertNotNull(im.ensureIndexed(Collections.<Object>singletonList("type"),
+                    "type"));
+            Map<String, Object> query = new HashMap<String, Object>();
+            query.put("type", "order");
+            query.put("quantity", Collections.<String, Object>singletonMap("$lt", 50));
+            for (int pass = 0; pass < 2; pass++) {
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                QueryResult result = im.find(query);
+                int seen = 0;
+                for (DocumentRevision rev : result) {
+                    seen++;
+                }
+                report("unindexed query", seen, allocatedBytes() - allocated,
+                        System.nanoTime() - start);
+                Assert.assertEquals(DOCS / 2, seen);
+            }
+        } finally {
+            im.close();
+        }
+    }
+
+    // Bytes allocated by all threads, as the datastore reads on its queue's threads. Other
+    // threads should be idle while the test runs.
+    private long allocatedBytes() {
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    private static void report(String path, int docs, long bytes, long nanos) {
+        System.out.println(String.format("%s: %d docs, %.1f KB allocated per doc, %.1f us per " +
+                "doc", path, docs, bytes / 1024.0 / docs, nanos / 1e3 / docs));
+    }
+
+    private static Map<String, Object> body(int i) {
+        Map<String, Object> body = new HashMap<String, Object>();
+        body.put("type", "order");
+        body.put("quantity", i % 100);
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        for (int j = 0; j < 10; j++) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("product", "product-" + j);
+            item.put("price", (i + j) / 100.0);
+            item.put("description", "an item in order " + i);
+            items.add(item);
+        }
+        body.put("items", items);
+        return body;
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DocumentIdCacheTest {
+
+    private final DocumentIdCache cache = new DocumentIdCache(4);
+
+    @Test
+    public void get_notCached_returnsMinusOne() {
+        Assert.assertEquals(-1L, cache.get("doc"));
+    }
+
+    @Test
+    public void put_thenGet_returnsNumericId() {
+        cache.put("doc", 42);
+        Assert.assertEquals(42L, cache.get("doc"));
+        Assert.assertEquals(-1L, cache.get("other"));
+    }
+
+    @Test
+    public void put_sameSlot_replacesPreviousDocument() {
+        // "Aa" and "BB" have the same hash code, so share a slot
+        cache.put("Aa", 1);
+        cache.put("BB", 2);
+        Assert.assertEquals(-1L, cache.get("Aa"));
+        Assert.assertEquals(2L, cache.get("BB"));
+    }
+
+    @Test
+    public void put_insertedBeforeWriteFinished_ignored() {
+        cache.inserted("doc");
+        cache.put("doc", 1);
+        Assert.assertEquals(-1L, cache.get("doc"));
+
+        // other documents can still be cached
+        cache.put("other", 2);
+        Assert.assertEquals(2L, cache.get("other"));
+
+        cache.writeFinished();
+        cache.put("doc", 1);
+        Assert.assertEquals(1L, cache.get("doc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_zeroCapacity_throws() {
+        new DocumentIdCache(0);
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class DocumentRevisionCacheTest {
+
+    private final DocumentRevisionCache cache = new DocumentRevisionCache(10, 1024);
+
+    private static DocumentRevision revision(String id, String rev) {
+        return new DocumentRevisionBuilder()
+                .setDocId(id)
+                .setRevId(rev)
+                .setBody(DocumentBodyFactory.create(Collections.singletonMap("rev", rev)))
+                .setCurrent(true)
+                .build();
+    }
+
+    @Test
+    public void put_thenGet_returnsCopy() {
+        DocumentRevision rev = revision("doc", "1-a");
+        cache.put(rev, cache.version());
+        DocumentRevision cached = cache.get("doc", null);
+        Assert.assertEquals(rev, cached);
+        Assert.assertNotSame(rev, cached);
+        Assert.assertNull(cache.get("doc", "2-b"));
+    }
+
+    @Test
+    public void put_nonCurrentRevision_ignored() {
+        DocumentRevision rev = new DocumentRevisionBuilder().setDocId("doc").setRevId("1-a")
+                .setBody(DocumentBodyFactory.EMPTY).setCurrent(false).build();
+        cache.put(rev, cache.version());
+        Assert.assertNull(cache.get("doc", null));
+    }
+
+    @Test
+    public void put_readBeforeInvalidation_ignored() {
+        long version = cache.version();
+        cache.invalidate("doc");
+        cache.writeFinished();
+        cache.put(revision("doc", "1-a"), version);
+        Assert.assertNull(cache.get("doc", null));
+    }
+
+    @Test
+    public void put_beforeWriteFinished_ignored() {
+        cache.invalidate("doc");
+        // a reader connection may not see the write until its transaction has committed
+        cache.put(revision("doc", "1-a"), cache.version());
+        Assert.assertNull(cache.get("doc", null));
+
+        // other documents can still be cached
+        cache.put(revision("other", "1-a"), cache.version());
+        Assert.assertNotNull(cache.get("other", null));
+
+        cache.writeFinished();
+        cache.put(revision("doc", "2-b"), cache.version());
+        Assert.assertEquals("2-b", cache.get("doc", null).getRevision());
+    }
+
+    @Test
+    public void invalidateAll_removesEveryDocument() {
+        cache.put(revision("a", "1-a"), cache.version());
+        cache.put(revision("b", "1-a"), cache.version());
+        cache.invalidateAll();
+        cache.put(revision("c", "1-a"), cache.version());
+        Assert.assertEquals(0, cache.getStats().getDocumentCount());
+        Assert.assertEquals(0, cache.getStats().getBodyBytes());
+        cache.writeFinished();
+        cache.put(revision("c", "1-a"), cache.version());
+        Assert.assertEquals(1, cache.getStats().getDocumentCount());
+    }
+
+    @Test
+    public void disabled_cachesNothing() {
+        DocumentRevisionCache disabled = new DocumentRevisionCache(0, 0);
+        Assert.assertFalse(disabled.isEnabled());
+        disabled.put(revision("doc", "1-a"), disabled.version());
+        Assert.assertNull(disabled.get("doc", null));
+    }
+
+}
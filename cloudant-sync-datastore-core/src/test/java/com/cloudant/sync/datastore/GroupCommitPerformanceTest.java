@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.sync.datastore.encryption.NullKeyProvider;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures {@code createDocumentFromRevision} throughput from several threads, with and
+ * without group commit.
+ */
+@Category(PerformanceTest.class)
+public class GroupCommitPerformanceTest {
+
+    private static final int WRITER_THREADS = 8;
+    private static final int DOCS_PER_THREAD = 250;
+
+    private String datastoreManagerDir;
+    private DatastoreManager datastoreManager;
+
+    @Before
+    public void setUp() throws Exception {
+        datastoreManagerDir = TestUtils.createTempTestingDir(this.getClass().getName());
+        datastoreManager = DatastoreManager.getInstance(datastoreManagerDir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.deleteTempTestingDir(datastoreManagerDir);
+    }
+
+    @Test
+    public void createThroughput_individualCommits() throws Exception {
+        runBenchmark("individualcommits", new DatastoreOptions());
+    }
+
+    @Test
+    public void createThroughput_groupCommit() throws Exception {
+        runBenchmark("groupcommit", new DatastoreOptions().groupCommit(WRITER_THREADS, 0));
+    }
+
+    private void runBenchmark(String name, DatastoreOptions options) throws Exception {
+        final Datastore datastore = datastoreManager.openDatastore(name, new NullKeyProvider(),
+                options);
+        ExecutorService writers = Executors.newFixedThreadPool(WRITER_THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            long start = System.nanoTime();
+            for (int t = 0; t < WRITER_THREADS; t++) {
+                final int thread = t;
+                results.add(writers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < DOCS_PER_THREAD; i++) {
+                            DocumentRevision rev = new DocumentRevision(
+                                    String.format("doc-%d-%d", thread, i));
+                            rev.setBody(DocumentBodyFactory.create(
+                                    Collections.singletonMap("i", i)));
+                            datastore.createDocumentFromRevision(rev);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            int total = WRITER_THREADS * DOCS_PER_THREAD;
+            Assert.assertEquals(total, datastore.getDocumentCount());
+            System.out.println(String.format("%s: %d documents created by %d threads in %.2f s, " +
+                    "%.0f docs/s", name, total, WRITER_THREADS, seconds, total / seconds));
+        } finally {
+            writers.shutdown();
+            datastore.close();
+        }
+    }
+
+}
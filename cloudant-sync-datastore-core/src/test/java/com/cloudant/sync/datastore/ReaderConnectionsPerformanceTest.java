@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.sync.datastore.encryption.NullKeyProvider;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures {@code getDocument} latency whilst pull replication style {@code forceInsert}
+ * batches are being written, with and without reader connections.
+ */
+@Category(PerformanceTest.class)
+public class ReaderConnectionsPerformanceTest {
+
+    private static final int READ_DOCS = 100;
+    private static final int INSERT_BATCHES = 20;
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private String datastoreManagerDir;
+    private DatastoreManager datastoreManager;
+
+    @Before
+    public void setUp() throws Exception {
+        datastoreManagerDir = TestUtils.createTempTestingDir(this.getClass().getName());
+        datastoreManager = DatastoreManager.getInstance(datastoreManagerDir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.deleteTempTestingDir(datastoreManagerDir);
+    }
+
+    @Test
+    public void readLatencyDuringForceInsert_singleConnection() throws Exception {
+        runBenchmark("singleconnection", new DatastoreOptions());
+    }
+
+    @Test
+    public void readLatencyDuringForceInsert_readerConnections() throws Exception {
+        runBenchmark("readerconnections", new DatastoreOptions().readerConnections(2));
+    }
+
+    private void runBenchmark(String name, DatastoreOptions options) throws Exception {
+        final DatastoreImpl datastore = (DatastoreImpl) datastoreManager.openDatastore(name,
+                new NullKeyProvider(), options);
+        try {
+            List<String> ids = new ArrayList<String>();
+            for (int i = 0; i < READ_DOCS; i++) {
+                DocumentRevision rev = new DocumentRevision("read-" + i);
+                rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("i", i)));
+                ids.add(datastore.createDocumentFromRevision(rev).getId());
+            }
+
+            final AtomicBoolean writing = new AtomicBoolean(true);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int batch = 0; batch < INSERT_BATCHES; batch++) {
+                            datastore.forceInsert(createBatch(batch));
+                        }
+                    } catch (DocumentException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        writing.set(false);
+                    }
+                }
+            });
+            writer.start();
+
+            List<Long> latencies = new ArrayList<Long>();
+            int i = 0;
+            while (writing.get()) {
+                long start = System.nanoTime();
+                datastore.getDocument(ids.get(i++ % ids.size()));
+                latencies.add(System.nanoTime() - start);
+            }
+            writer.join();
+
+            Assert.assertFalse("No reads completed during the insert", latencies.isEmpty());
+            Collections.sort(latencies);
+            System.out.println(String.format("%s: %d reads during forceInsert, median %.2f ms, " +
+                            "p99 %.2f ms, max %.2f ms", name, latencies.size(),
+                    latencies.get(latencies.size() / 2) / 1e6,
+                    latencies.get((int) (latencies.size() * 0.99)) / 1e6,
+                    latencies.get(latencies.size() - 1) / 1e6));
+        } finally {
+            datastore.close();
+        }
+    }
+
+    private static List<ForceInsertItem> createBatch(int batch) {
+        List<ForceInsertItem> items = new ArrayList<ForceInsertItem>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < INSERT_BATCH_SIZE; i++) {
+            Map<String, Object> body = new HashMap<String, Object>();
+            body.put("batch", batch);
+            body.put("i", i);
+            DocumentRevision rev = new DocumentRevisionBuilder()
+                    .setDocId(String.format("insert-%d-%d", batch, i))
+                    .setRevId("2-b")
+                    .setBody(DocumentBodyFactory.create(body))
+                    .build();
+            items.add(new ForceInsertItem(rev, Arrays.asList("1-a", "2-b"), null, null, false));
+        }
+        return items;
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.sync.datastore.callables.RevsDiffBatchCallable;
+import com.cloudant.sync.sqlite.SQLCallable;
+import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures {@code revsDiff} of pull replication sized batches against a 100,000 document
+ * datastore, comparing the set-based query with one query per document.
+ */
+@Category(PerformanceTest.class)
+public class RevsDiffPerformanceTest {
+
+    private static final int DOCS = 100000;
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final int DIFF_BATCH_SIZE = 1000;
+    private static final int DIFF_BATCHES = 20;
+
+    private String datastoreManagerDir;
+    private DatastoreImpl datastore;
+
+    @Before
+    public void setUp() throws Exception {
+        datastoreManagerDir = TestUtils.createTempTestingDir(this.getClass().getName());
+        datastore = (DatastoreImpl) DatastoreManager.getInstance(datastoreManagerDir)
+                .openDatastore("revsdiff");
+        for (int batch = 0; batch < DOCS / INSERT_BATCH_SIZE; batch++) {
+            List<ForceInsertItem> items = new ArrayList<ForceInsertItem>(INSERT_BATCH_SIZE);
+            for (int i = 0; i < INSERT_BATCH_SIZE; i++) {
+                DocumentRevision rev = new DocumentRevisionBuilder()
+                        .setDocId(docId(batch * INSERT_BATCH_SIZE + i))
+                        .setRevId("2-b")
+                        .setBody(DocumentBodyFactory.create(Collections.singletonMap("i", i)))
+                        .build();
+                items.add(new ForceInsertItem(rev, Arrays.asList("1-a", "2-b"), null, null,
+                        false));
+            }
+            datastore.forceInsert(items);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        datastore.close();
+        TestUtils.deleteTempTestingDir(datastoreManagerDir);
+    }
+
+    @Test
+    public void revsDiff_setBased() throws Exception {
+        long start = System.nanoTime();
+        for (int batch = 0; batch < DIFF_BATCHES; batch++) {
+            Map<String, List<String>> missing = datastore.revsDiff(diffBatch(batch));
+            Assert.assertEquals(DIFF_BATCH_SIZE, missing.size());
+        }
+        report("set-based", System.nanoTime() - start);
+    }
+
+    @Test
+    public void revsDiff_queryPerDocument() throws Exception {
+        long start = System.nanoTime();
+        for (int batch = 0; batch < DIFF_BATCHES; batch++) {
+            final Map<String, List<String>> revisions = diffBatch(batch);
+            int missing = datastore.runOnDbQueue(new SQLCallable<Integer>() {
+                @Override
+                public Integer call(SQLDatabase db) throws Exception {
+                    int missing = 0;
+                    for (Map.Entry<String, List<String>> entry : revisions.entrySet()) {
+                        missing += new RevsDiffBatchCallable(Collections.singletonMap(entry
+                                .getKey(), entry.getValue())).call(db).size();
+                    }
+                    return missing;
+                }
+            }).get();
+            Assert.assertEquals(DIFF_BATCH_SIZE, missing);
+        }
+        report("query per document", System.nanoTime() - start);
+    }
+
+    /**
+     * @return revisions of documents spread across the datastore, as a pull replication would
+     * diff them: each document's existing revision and a new revision which is missing
+     */
+    private static Map<String, List<String>> diffBatch(int batch) {
+        Map<String, List<String>> revisions = new HashMap<String, List<String>>();
+        for (int i = 0; i < DIFF_BATCH_SIZE; i++) {
+            int doc = (int) (((long) batch * DIFF_BATCH_SIZE + i) * 7919 % DOCS);
+            revisions.put(docId(doc), Arrays.asList("2-b", "3-c"));
+        }
+        return revisions;
+    }
+
+    private static String docId(int i) {
+        return String.format("doc-%06d", i);
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.println(String.format("%s: %d revsDiff batches of %d documents in %.2f s, " +
+                "%.2f ms per batch", name, DIFF_BATCHES, DIFF_BATCH_SIZE, nanos / 1e9,
+                nanos / 1e6 / DIFF_BATCHES));
+    }
+
+}
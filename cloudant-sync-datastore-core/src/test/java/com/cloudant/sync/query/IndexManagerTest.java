@@ -26,6 +26,9 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class IndexManagerTest extends AbstractIndexTestBase {
 
@@ -179,4 +182,27 @@ public class IndexManagerTest extends AbstractIndexTestBase {
         assertThat(im.isTextSearchEnabled(), is(true));
     }
 
+    @Test
+    public void findAsyncRunsQueryOnExecutor() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            DocumentRevision rev = new DocumentRevision();
+            Map<String, Object> bodyMap = new HashMap<String, Object>();
+            bodyMap.put("name", i == 0 ? "mike" : "fred");
+            rev.setBody(DocumentBodyFactory.create(bodyMap));
+            ds.createDocumentFromRevision(rev);
+        }
+        im.ensureIndexed(Arrays.<Object>asList("name"), "basic");
+
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "fred");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            QueryResult result = im.findAsync(query, 0, 0, null, null, executor)
+                    .get(30, TimeUnit.SECONDS);
+            assertThat(result.size(), is(2));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
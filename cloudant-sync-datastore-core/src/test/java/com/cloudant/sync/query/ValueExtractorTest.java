@@ -25,6 +25,7 @@ import com.cloudant.sync.datastore.DocumentRevisionBuilder;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -115,6 +116,16 @@ public class ValueExtractorTest {
         assertThat(v, hasEntry("ccc", "mike"));
     }
 
+    @Test
+    public void extractSeveralFieldsFromRevision() {
+        Map<String, Object> values = ValueExtractor.extractValuesForFieldNames(
+                Arrays.asList("_id", "_rev", "name", "age"), revision);
+        assertThat(values.size(), is(3));
+        assertThat(values, hasEntry("_id", (Object) "dsfsdfdfs"));
+        assertThat(values, hasEntry("_rev", (Object) "1-qweqeqwewqe"));
+        assertThat(values, hasEntry("name", (Object) "mike"));
+    }
+
     private DocumentBody getTwoLevelBody() {
         // body content: { "name" : { "first" : "mike" } }
         Map<String, String> levelTwo = new HashMap<String, String>();
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty_returnsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMeanNanos());
+        Assert.assertEquals(0, histogram.getMaxNanos());
+        Assert.assertEquals(0, histogram.getPercentileNanos(99));
+    }
+
+    @Test
+    public void record_tracksCountTotalAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(300);
+        histogram.record(-5);
+        Assert.assertEquals(3, histogram.getCount());
+        Assert.assertEquals(400, histogram.getTotalNanos());
+        Assert.assertEquals(133, histogram.getMeanNanos());
+        Assert.assertEquals(300, histogram.getMaxNanos());
+        Assert.assertEquals(0, histogram.getPercentileNanos(0));
+    }
+
+    @Test
+    public void getPercentileNanos_withinBucketAccuracy() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        long p50 = histogram.getPercentileNanos(50);
+        Assert.assertTrue(String.valueOf(p50), p50 >= 500000 && p50 <= 625000);
+        long p99 = histogram.getPercentileNanos(99);
+        Assert.assertTrue(String.valueOf(p99), p99 >= 990000 && p99 <= 1000000);
+        Assert.assertEquals(1000000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void getPercentileNanos_largeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getPercentileNanos_outOfRange_throws() {
+        new LatencyHistogram().getPercentileNanos(101);
+    }
+
+    @Test
+    public void copy_notAffectedByLaterRecords() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        LatencyHistogram copy = histogram.copy();
+        histogram.record(20);
+        Assert.assertEquals(1, copy.getCount());
+        Assert.assertEquals(10, copy.getMaxNanos());
+        Assert.assertEquals(2, histogram.getCount());
+    }
+
+}
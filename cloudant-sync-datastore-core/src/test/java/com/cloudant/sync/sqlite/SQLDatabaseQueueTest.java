@@ -0,0 +1,535 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import com.cloudant.sync.datastore.encryption.NullKeyProvider;
+import com.cloudant.sync.datastore.migrations.SchemaOnlyMigration;
+import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.util.TestUtils;
+
+import org.apache.commons.io.FilenameUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SQLDatabaseQueueTest {
+
+    private String databaseDir;
+    private String databaseFile;
+    private SQLDatabaseQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        databaseDir = TestUtils.createTempTestingDir(SQLDatabaseQueueTest.class.getName());
+        databaseFile = FilenameUtils.concat(databaseDir, "queue.sqlite4java");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (queue != null && !queue.isShutdown()) {
+            queue.shutdown();
+        }
+        TestUtils.deleteTempTestingDir(databaseDir);
+    }
+
+    private void createQueue(int readerConnections) throws Exception {
+        queue = new SQLDatabaseQueue(databaseFile, new NullKeyProvider(), readerConnections);
+        queue.updateSchema(new SchemaOnlyMigration(new String[]{
+                "CREATE TABLE things (id INTEGER PRIMARY KEY, name TEXT NOT NULL);"}), 1);
+    }
+
+    private static SQLCallable<String> currentThreadName() {
+        return new SQLCallable<String>() {
+            @Override
+            public String call(SQLDatabase db) throws Exception {
+                return Thread.currentThread().getName();
+            }
+        };
+    }
+
+    private static SQLCallable<Long> countThings() {
+        return new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                Cursor c = null;
+                try {
+                    c = db.rawQuery("SELECT COUNT(*) FROM things", null);
+                    c.moveToFirst();
+                    return c.getLong(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        };
+    }
+
+    private static SQLCallable<Long> pragma(final String name) {
+        return new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                Cursor c = null;
+                try {
+                    c = db.rawQuery("PRAGMA " + name, null);
+                    c.moveToFirst();
+                    return c.getLong(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        };
+    }
+
+    private static SQLCallable<String> journalMode() {
+        return new SQLCallable<String>() {
+            @Override
+            public String call(SQLDatabase db) throws Exception {
+                Cursor c = null;
+                try {
+                    c = db.rawQuery("PRAGMA journal_mode", null);
+                    c.moveToFirst();
+                    return c.getString(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(c);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void submitReadOnly_noReaders_runsOnWriterThread() throws Exception {
+        createQueue(0);
+        Assert.assertEquals(queue.submit(currentThreadName()).get(),
+                queue.submitReadOnly(currentThreadName()).get());
+        Assert.assertNotEquals("wal", queue.submit(journalMode()).get().toLowerCase());
+    }
+
+    @Test
+    public void submitReadOnly_withReaders_runsOnReaderThreadInWalMode() throws Exception {
+        createQueue(2);
+        Assert.assertEquals("wal", queue.submit(journalMode()).get().toLowerCase());
+        Assert.assertNotEquals(queue.submit(currentThreadName()).get(),
+                queue.submitReadOnly(currentThreadName()).get());
+    }
+
+    @Test
+    public void constructor_onOpen_runsBeforeJournalModeIsChanged() throws Exception {
+        queue = new SQLDatabaseQueue(databaseFile, new NullKeyProvider(), 1,
+                new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                // can only be changed on a new database before it is switched to WAL mode
+                db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+                return null;
+            }
+        });
+        queue.updateSchema(new SchemaOnlyMigration(new String[]{
+                "CREATE TABLE things (id INTEGER PRIMARY KEY, name TEXT NOT NULL);"}), 1);
+        Assert.assertEquals("wal", queue.submit(journalMode()).get().toLowerCase());
+        Assert.assertEquals(Long.valueOf(2), queue.submit(pragma("auto_vacuum")).get());
+    }
+
+    @Test
+    public void constructor_noOnOpen_autoVacuumUnchanged() throws Exception {
+        createQueue(1);
+        Assert.assertEquals(Long.valueOf(0), queue.submit(pragma("auto_vacuum")).get());
+    }
+
+    @Test
+    public void submitReadOnly_withReaders_seesCommittedWrites() throws Exception {
+        createQueue(2);
+        queue.submitTransaction(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("INSERT INTO things (name) VALUES ('a');");
+                db.execSQL("INSERT INTO things (name) VALUES ('b');");
+                return null;
+            }
+        }).get();
+        Assert.assertEquals(Long.valueOf(2), queue.submitReadOnly(countThings()).get());
+    }
+
+    @Test
+    public void submitReadOnly_withReaders_notBlockedByOpenTransaction() throws Exception {
+        createQueue(1);
+        final CountDownLatch inTransaction = new CountDownLatch(1);
+        final CountDownLatch finishTransaction = new CountDownLatch(1);
+        Future<Void> write = queue.submitTransaction(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("INSERT INTO things (name) VALUES ('a');");
+                inTransaction.countDown();
+                finishTransaction.await(30, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+        Assert.assertTrue(inTransaction.await(30, TimeUnit.SECONDS));
+        // the uncommitted insert isn't visible, and the read doesn't wait for the commit
+        Assert.assertEquals(Long.valueOf(0), queue.submitReadOnly(countThings()).get(30,
+                TimeUnit.SECONDS));
+        finishTransaction.countDown();
+        write.get();
+        Assert.assertEquals(Long.valueOf(1), queue.submitReadOnly(countThings()).get());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void submitReadOnly_withReaders_writeFails() throws Exception {
+        createQueue(1);
+        queue.submitReadOnly(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("INSERT INTO things (name) VALUES ('a');");
+                return null;
+            }
+        }).get();
+    }
+
+    private static SQLCallable<Void> insertThing(final String name) {
+        return new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("INSERT INTO things (name) VALUES (?);", new Object[]{name});
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Blocks the writer thread until the returned latch is counted down, so that tasks can be
+     * queued up behind it.
+     */
+    private CountDownLatch blockWriter() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        queue.submit(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                running.countDown();
+                release.await(30, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+        Assert.assertTrue(running.await(30, TimeUnit.SECONDS));
+        return release;
+    }
+
+    @Test
+    public void submitTransaction_groupCommit_queuedTransactionsShareCommit() throws Exception {
+        createQueue(1);
+        queue.enableGroupCommit(10, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch release = blockWriter();
+        Future<Void> first = queue.submitTransaction(insertThing("a"));
+        Future<Void> second = queue.submitTransaction(insertThing("b"));
+        // the reader only sees committed data, so finds nothing if the inserts are still in the
+        // same transaction
+        Future<Long> committedCount = queue.submitTransaction(new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                return queue.submitReadOnly(countThings()).get(30, TimeUnit.SECONDS);
+            }
+        });
+        release.countDown();
+        first.get();
+        second.get();
+        Assert.assertEquals(Long.valueOf(0), committedCount.get());
+        Assert.assertEquals(Long.valueOf(2), queue.submitReadOnly(countThings()).get());
+    }
+
+    @Test
+    public void submitTransaction_groupCommit_failedTaskOnlyRollsBackItself() throws Exception {
+        createQueue(0);
+        queue.enableGroupCommit(10, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch release = blockWriter();
+        Future<Void> first = queue.submitTransaction(insertThing("a"));
+        Future<Void> failing = queue.submitTransaction(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("INSERT INTO things (name) VALUES ('failed');");
+                throw new IllegalStateException("test failure");
+            }
+        });
+        Future<Void> third = queue.submitTransaction(insertThing("c"));
+        release.countDown();
+        first.get();
+        third.get();
+        try {
+            failing.get();
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(Long.valueOf(2), queue.submit(countThings()).get());
+    }
+
+    @Test
+    public void submitTransaction_groupCommit_failedNestedTransactionOnlyFailsItsTask()
+            throws Exception {
+        createQueue(0);
+        queue.enableGroupCommit(10, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch release = blockWriter();
+        Future<Void> first = queue.submitTransaction(insertThing("a"));
+        // returns normally, but leaves a nested transaction which wasn't marked as successful
+        Future<Void> failing = queue.submitTransaction(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.beginTransaction();
+                try {
+                    db.execSQL("INSERT INTO things (name) VALUES ('failed');");
+                } finally {
+                    db.endTransaction();
+                }
+                return null;
+            }
+        });
+        Future<Void> third = queue.submitTransaction(insertThing("c"));
+        release.countDown();
+        first.get();
+        third.get();
+        try {
+            failing.get();
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLException);
+        }
+        Assert.assertEquals(Long.valueOf(2), queue.submit(countThings()).get());
+    }
+
+    @Test
+    public void submitTransaction_groupCommit_waitsForFurtherTransactions() throws Exception {
+        createQueue(1);
+        queue.enableGroupCommit(2, 30, TimeUnit.SECONDS);
+        final CountDownLatch firstRun = new CountDownLatch(1);
+        Future<Void> first = queue.submitTransaction(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("INSERT INTO things (name) VALUES ('a');");
+                firstRun.countDown();
+                return null;
+            }
+        });
+        Assert.assertTrue(firstRun.await(30, TimeUnit.SECONDS));
+        // the first transaction is held open until the second joins it
+        Assert.assertFalse(first.isDone());
+        Assert.assertEquals(Long.valueOf(0), queue.submitReadOnly(countThings()).get());
+        queue.submitTransaction(insertThing("b")).get(30, TimeUnit.SECONDS);
+        Assert.assertTrue(first.isDone());
+        Assert.assertEquals(Long.valueOf(2), queue.submitReadOnly(countThings()).get());
+    }
+
+    @Test
+    public void addListener_runsOnWriterThreadAfterCommit() throws Exception {
+        createQueue(1);
+        final String writerThread = queue.submit(currentThreadName()).get();
+        final AtomicReference<String> listenerThread = new AtomicReference<String>();
+        final AtomicLong committedCount = new AtomicLong(-1);
+        final CountDownLatch listenerRun = new CountDownLatch(1);
+        // hold up the insert until the listener has been added
+        CountDownLatch release = blockWriter();
+        final SQLQueueFuture<Void> insert = queue.submitTransaction(insertThing("a"));
+        insert.addListener(new Runnable() {
+            @Override
+            public void run() {
+                listenerThread.set(Thread.currentThread().getName());
+                try {
+                    // readers only see committed data
+                    committedCount.set(queue.submitReadOnly(countThings()).get());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                listenerRun.countDown();
+            }
+        });
+        release.countDown();
+        Assert.assertTrue(listenerRun.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(writerThread, listenerThread.get());
+        Assert.assertEquals(1, committedCount.get());
+
+        // once complete, listeners run straight away on the calling thread
+        final AtomicReference<String> lateListenerThread = new AtomicReference<String>();
+        insert.addListener(new Runnable() {
+            @Override
+            public void run() {
+                lateListenerThread.set(Thread.currentThread().getName());
+            }
+        });
+        Assert.assertEquals(Thread.currentThread().getName(), lateListenerThread.get());
+    }
+
+    /**
+     * @return a task which adds {@code name} to {@code order} when it runs
+     */
+    private static SQLCallable<Void> recordOrder(final List<String> order, final String name) {
+        return new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                order.add(name);
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void submit_priorities_higherPriorityTasksRunFirst() throws Exception {
+        createQueue(0);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch release = blockWriter();
+        queue.submitTransaction(recordOrder(order, "background1"),
+                SQLDatabaseQueue.Priority.BACKGROUND);
+        queue.submit(recordOrder(order, "normal1"));
+        queue.submit(recordOrder(order, "background2"), SQLDatabaseQueue.Priority.BACKGROUND);
+        queue.submitTransaction(recordOrder(order, "normal2"));
+        Future<Void> last = queue.submit(recordOrder(order, "interactive"),
+                SQLDatabaseQueue.Priority.INTERACTIVE);
+        release.countDown();
+        last.get();
+        queue.submit(recordOrder(order, "end"), SQLDatabaseQueue.Priority.BACKGROUND).get();
+        Assert.assertEquals(Arrays.asList("interactive", "normal1", "normal2", "background1",
+                "background2", "end"), order);
+    }
+
+    @Test
+    public void submit_priorities_waitingBackgroundTaskNotStarved() throws Exception {
+        createQueue(0);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch release = blockWriter();
+        queue.submit(recordOrder(order, "background"), SQLDatabaseQueue.Priority.BACKGROUND);
+        // once it has waited long enough the background task is ranked ahead of new tasks
+        Thread.sleep(1200);
+        queue.submit(recordOrder(order, "normal"));
+        release.countDown();
+        queue.submit(recordOrder(order, "end"), SQLDatabaseQueue.Priority.BACKGROUND).get();
+        Assert.assertEquals(Arrays.asList("background", "normal", "end"), order);
+    }
+
+    @Test
+    public void submitReadOnly_withReaders_usesPriority() throws Exception {
+        createQueue(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        queue.submitReadOnly(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                running.countDown();
+                release.await(30, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+        Assert.assertTrue(running.await(30, TimeUnit.SECONDS));
+        queue.submitReadOnly(recordOrder(order, "background"),
+                SQLDatabaseQueue.Priority.BACKGROUND);
+        Future<Void> interactive = queue.submitReadOnly(recordOrder(order, "interactive"),
+                SQLDatabaseQueue.Priority.INTERACTIVE);
+        release.countDown();
+        interactive.get();
+        queue.submitReadOnly(recordOrder(order, "end"), SQLDatabaseQueue.Priority.BACKGROUND)
+                .get();
+        Assert.assertEquals(Arrays.asList("interactive", "background", "end"), order);
+    }
+
+    @Test
+    public void getMetrics_recordsTimingsForEachTaskClass() throws Exception {
+        createQueue(1);
+        SQLCallable<Void> insert = insertThing("a");
+        queue.submitTransaction(insert).get();
+        queue.submitTransaction(insertThing("b")).get();
+        SQLCallable<Long> count = countThings();
+        queue.submitReadOnly(count).get();
+
+        Map<String, SQLQueueMetrics.TaskMetrics> taskMetrics =
+                queue.getMetrics().getTaskMetrics();
+        SQLQueueMetrics.TaskMetrics inserts = taskMetrics.get(insert.getClass().getName());
+        Assert.assertEquals(2, inserts.getWaitTime().getCount());
+        Assert.assertEquals(2, inserts.getExecutionTime().getCount());
+        Assert.assertEquals(2, inserts.getCommitTime().getCount());
+        SQLQueueMetrics.TaskMetrics counts = taskMetrics.get(count.getClass().getName());
+        Assert.assertEquals(1, counts.getExecutionTime().getCount());
+        Assert.assertEquals(0, counts.getCommitTime().getCount());
+    }
+
+    @Test
+    public void getMetrics_recordsQueueDepthAndWaitTime() throws Exception {
+        createQueue(0);
+        CountDownLatch release = blockWriter();
+        SQLCallable<Long> count = countThings();
+        queue.submit(count);
+        queue.submit(count);
+        Future<Long> last = queue.submit(count);
+        Thread.sleep(50);
+        Assert.assertEquals(3, queue.getMetrics().getCurrentDepth());
+        release.countDown();
+        last.get();
+
+        SQLQueueMetrics metrics = queue.getMetrics();
+        Assert.assertEquals(0, metrics.getCurrentDepth());
+        Assert.assertTrue(metrics.getMaxDepth() >= 3);
+        LatencyHistogram waitTime = metrics.getTaskMetrics().get(count.getClass().getName())
+                .getWaitTime();
+        Assert.assertEquals(3, waitTime.getCount());
+        Assert.assertTrue(waitTime.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void setMetricsListener_calledForGroupCommitTasks() throws Exception {
+        createQueue(0);
+        final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+        queue.setMetricsListener(new SQLQueueMetricsListener() {
+            @Override
+            public void taskCompleted(String taskName, long waitNanos, long executionNanos,
+                                      long commitNanos) {
+                completed.add(taskName);
+            }
+        });
+        queue.enableGroupCommit(10, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch release = blockWriter();
+        SQLCallable<Void> insert = insertThing("a");
+        Future<Void> first = queue.submitTransaction(insert);
+        Future<Void> second = queue.submitTransaction(insertThing("b"));
+        release.countDown();
+        first.get();
+        second.get();
+        Assert.assertEquals(2, Collections.frequency(completed, insert.getClass().getName()));
+        Assert.assertEquals(2, queue.getMetrics().getTaskMetrics().get(insert.getClass()
+                .getName()).getCommitTime().getCount());
+    }
+
+    @Test
+    public void setMetricsListener_failingListenerDoesNotFailTask() throws Exception {
+        createQueue(0);
+        queue.setMetricsListener(new SQLQueueMetricsListener() {
+            @Override
+            public void taskCompleted(String taskName, long waitNanos, long executionNanos,
+                                      long commitNanos) {
+                throw new IllegalStateException("test failure");
+            }
+        });
+        queue.submitTransaction(insertThing("a")).get();
+        Assert.assertEquals(Long.valueOf(1), queue.submit(countThings()).get());
+    }
+
+}
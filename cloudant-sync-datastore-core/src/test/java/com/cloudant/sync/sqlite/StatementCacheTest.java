@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StatementCacheTest {
+
+    private List<String> disposed;
+    private StatementCache<String> cache;
+
+    @Before
+    public void setUp() {
+        disposed = new ArrayList<String>();
+        cache = new StatementCache<String>(2) {
+            @Override
+            protected void dispose(String statement) {
+                disposed.add(statement);
+            }
+        };
+    }
+
+    @Test
+    public void acquire_emptyCache_miss() {
+        Assert.assertNull(cache.acquire("a"));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void acquire_afterRelease_hit() {
+        cache.release("a", "stmt-a");
+        Assert.assertEquals("stmt-a", cache.acquire("a"));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void acquire_statementInUse_miss() {
+        cache.release("a", "stmt-a");
+        Assert.assertEquals("stmt-a", cache.acquire("a"));
+        // the statement is checked out so nested use must compile another one
+        Assert.assertNull(cache.acquire("a"));
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void release_duplicate_disposesExtraStatement() {
+        cache.release("a", "stmt-a1");
+        cache.release("a", "stmt-a2");
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(Arrays.asList("stmt-a2"), disposed);
+        Assert.assertEquals("stmt-a1", cache.acquire("a"));
+    }
+
+    @Test
+    public void release_overCapacity_disposesLeastRecentlyUsed() {
+        cache.release("a", "stmt-a");
+        cache.release("b", "stmt-b");
+        // use a so that b becomes the least recently used
+        cache.release("a", cache.acquire("a"));
+        cache.release("c", "stmt-c");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(Arrays.asList("stmt-b"), disposed);
+        Assert.assertNull(cache.acquire("b"));
+    }
+
+    @Test
+    public void clear_disposesAll() {
+        cache.release("a", "stmt-a");
+        cache.release("b", "stmt-b");
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(2, disposed.size());
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import com.cloudant.sync.datastore.encryption.NullKeyProvider;
+import com.cloudant.sync.datastore.migrations.SchemaOnlyMigration;
+import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.util.TestUtils;
+
+import org.apache.commons.io.FilenameUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TempKeySetTest {
+
+    private static final int THING_COUNT = 2000;
+
+    private String databaseDir;
+    private SQLDatabaseQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        databaseDir = TestUtils.createTempTestingDir(TempKeySetTest.class.getName());
+        queue = new SQLDatabaseQueue(FilenameUtils.concat(databaseDir, "keyset.sqlite4java"),
+                new NullKeyProvider(), 1);
+        queue.updateSchema(new SchemaOnlyMigration(new String[]{
+                "CREATE TABLE things (id INTEGER PRIMARY KEY, name TEXT NOT NULL);"}), 1);
+        queue.submitTransaction(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                for (int i = 0; i < THING_COUNT; i++) {
+                    db.execSQL("INSERT INTO things (id, name) VALUES (?, ?);",
+                            new Object[]{i, "thing-" + i});
+                }
+                return null;
+            }
+        }).get();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.shutdown();
+        TestUtils.deleteTempTestingDir(databaseDir);
+    }
+
+    private static List<String> names(int from, int to) {
+        List<String> names = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            names.add("thing-" + i);
+        }
+        return names;
+    }
+
+    private static long count(SQLDatabase db, String sql) throws Exception {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+
+    @Test
+    public void select_moreKeysThanPlaceholderLimit_matchesEveryKey() throws Exception {
+        long matched = queue.submit(new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                TempKeySet keys = TempKeySet.create(db, names(0, 1500));
+                try {
+                    return count(db, "SELECT COUNT(*) FROM things WHERE name IN (" +
+                            keys.select() + ")");
+                } finally {
+                    keys.close();
+                }
+            }
+        }).get();
+        Assert.assertEquals(1500, matched);
+    }
+
+    @Test
+    public void select_numericKeysAndDuplicates_matchesEachRowOnce() throws Exception {
+        long matched = queue.submit(new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                TempKeySet keys = TempKeySet.create(db, Arrays.asList(1L, 2L, 2L, 3L, 5000L));
+                try {
+                    return count(db, "SELECT COUNT(*) FROM things WHERE id IN (" +
+                            keys.select() + ")");
+                } finally {
+                    keys.close();
+                }
+            }
+        }).get();
+        Assert.assertEquals(3, matched);
+    }
+
+    @Test
+    public void select_nestedSets_keptSeparate() throws Exception {
+        long matched = queue.submit(new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                TempKeySet first = TempKeySet.create(db, names(0, 100));
+                try {
+                    TempKeySet second = TempKeySet.create(db, names(50, 150));
+                    try {
+                        return count(db, "SELECT COUNT(*) FROM things WHERE name IN (" +
+                                first.select() + ") AND name IN (" + second.select() + ")");
+                    } finally {
+                        second.close();
+                    }
+                } finally {
+                    first.close();
+                }
+            }
+        }).get();
+        Assert.assertEquals(50, matched);
+    }
+
+    @Test
+    public void close_removesKeys() throws Exception {
+        long remaining = queue.submit(new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                TempKeySet keys = TempKeySet.create(db, names(0, 10));
+                keys.close();
+                return count(db, "SELECT COUNT(*) FROM temp.keyset");
+            }
+        }).get();
+        Assert.assertEquals(0, remaining);
+    }
+
+    @Test
+    public void create_readerConnection_queryOnlyRestored() throws Exception {
+        long matched = queue.submitReadOnly(new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                TempKeySet keys = TempKeySet.create(db, names(0, 1200));
+                try {
+                    return count(db, "SELECT COUNT(*) FROM things WHERE name IN (" +
+                            keys.select() + ")");
+                } finally {
+                    keys.close();
+                }
+            }
+        }).get();
+        Assert.assertEquals(1200, matched);
+
+        long queryOnly = queue.submitReadOnly(new SQLCallable<Long>() {
+            @Override
+            public Long call(SQLDatabase db) throws Exception {
+                return count(db, "PRAGMA query_only");
+            }
+        }).get();
+        Assert.assertEquals(1, queryOnly);
+    }
+
+}
@@ -147,6 +147,48 @@ public class JSONUtilsTest {
         Assert.assertEquals(Integer.valueOf(40), breakfast.get("Duration"));
     }
 
+    @Test
+    public void extractFields_nestedFields_onlyRequestedFieldsReturned() throws Exception {
+        byte[] jsonData = readJsonDataFromFile("fixture/json_utils_test.json");
+        Map<String, Object> fields = JSONUtils.extractFields(jsonData,
+                Arrays.asList("Organizer.Name", "FullHours", "Organizer.Age", "Missing.Field"));
+        Assert.assertEquals(2, fields.size());
+        Assert.assertEquals("Tom", fields.get("Organizer.Name"));
+        Assert.assertEquals(10, ((List) fields.get("FullHours")).size());
+    }
+
+    @Test
+    public void extractFields_fieldAndFieldWithin_bothReturned() throws Exception {
+        byte[] jsonData = readJsonDataFromFile("fixture/json_utils_test.json");
+        Map<String, Object> fields = JSONUtils.extractFields(jsonData,
+                Arrays.asList("Organizer", "Organizer.Sex"));
+        Assert.assertEquals(2, ((Map) fields.get("Organizer")).size());
+        Assert.assertEquals("Male", fields.get("Organizer.Sex"));
+    }
+
+    @Test
+    public void extractFields_sameAsDeserializedMap() throws Exception {
+        byte[] jsonData = readJsonDataFromFile("fixture/json_utils_test.json");
+        List<String> paths = Arrays.asList("Organizer.Name", "Activities", "FullHours.1",
+                "Organizer.Name.First", "");
+        Assert.assertEquals(JSONUtils.extractFields(JSONUtils.deserialize(jsonData), paths),
+                JSONUtils.extractFields(jsonData, paths));
+    }
+
+    @Test
+    public void extractFields_numbers_sameTypesAsDeserialize() throws Exception {
+        byte[] data = readJsonDataFromFile("fixture/json_utils_test_number.json");
+        Map<String, Object> m = JSONUtils.extractFields(data,
+                Arrays.asList("number", "number1"));
+        Assert.assertEquals(Integer.valueOf(1), m.get("number"));
+        Assert.assertEquals(Long.valueOf(30000000000000000L), m.get("number1"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void extractFields_notAnObject_exception() {
+        JSONUtils.extractFields("[1, 2]".getBytes(), Arrays.asList("a"));
+    }
+
     private byte[] readJsonDataFromFile(String filename) throws IOException {
         byte[] data = FileUtils.readFileToByteArray(TestUtils.loadFixture(filename));
         return data;
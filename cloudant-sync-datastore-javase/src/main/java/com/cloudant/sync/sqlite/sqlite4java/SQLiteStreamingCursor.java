@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2016 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite.sqlite4java;
+
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import com.cloudant.sync.sqlite.Cursor;
+
+import java.util.List;
+
+/**
+ * <p>Forward-only {@link Cursor} which steps a sqlite4java statement as it is advanced and
+ * reads column values straight from the current row, so only one row is held in memory at a
+ * time.</p>
+ *
+ * <p>The statement is handed back to the {@link SQLiteWrapper} it came from when the cursor is
+ * closed. Like the statement, the cursor must only be used on the thread which created it.</p>
+ *
+ * @see com.cloudant.sync.sqlite.SQLDatabase#rawQueryStreaming(String, String[])
+ *
+ * @api_private
+ */
+public class SQLiteStreamingCursor implements Cursor {
+
+    private final SQLiteWrapper db;
+    private final String sql;
+    private SQLiteStatement stmt;
+
+    private List<String> names;
+    private int position = -1;
+    private boolean afterLast = false;
+
+    SQLiteStreamingCursor(SQLiteWrapper db, String sql, SQLiteStatement stmt) {
+        this.db = db;
+        this.sql = sql;
+        this.stmt = stmt;
+    }
+
+    /**
+     * Not supported, as the number of rows isn't known until the cursor has been stepped past
+     * the last row.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public int getCount() {
+        throw new UnsupportedOperationException("SQLiteStreamingCursor does not support getCount");
+    }
+
+    @Override
+    public int getColumnCount() {
+        return getColumnNames().size();
+    }
+
+    @Override
+    public int columnType(int index) {
+        try {
+            return SQLiteWrapperUtils.mapColumnType(statement().columnType(index));
+        } catch (SQLiteException e) {
+            throw new IllegalStateException("Could not read column type " + index, e);
+        }
+    }
+
+    @Override
+    public String columnName(int index) {
+        return getColumnNames().get(index);
+    }
+
+    /**
+     * Moves to the first row. As the cursor is forward-only this is only possible until it has
+     * moved past the first row.
+     *
+     * @throws UnsupportedOperationException if the cursor has moved past the first row
+     */
+    @Override
+    public boolean moveToFirst() {
+        if (position < 0) {
+            return moveToNext();
+        } else if (position == 0) {
+            return !afterLast;
+        }
+        throw new UnsupportedOperationException("SQLiteStreamingCursor is forward-only");
+    }
+
+    @Override
+    public String getString(int index) {
+        try {
+            return statement().columnString(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException("Could not read column " + index, e);
+        }
+    }
+
+    @Override
+    public int getInt(int index) {
+        try {
+            return statement().columnInt(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException("Could not read column " + index, e);
+        }
+    }
+
+    @Override
+    public long getLong(int index) {
+        try {
+            return statement().columnLong(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException("Could not read column " + index, e);
+        }
+    }
+
+    @Override
+    public float getFloat(int index) {
+        try {
+            return (float) statement().columnDouble(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException("Could not read column " + index, e);
+        }
+    }
+
+    @Override
+    public byte[] getBlob(int index) {
+        try {
+            return statement().columnBlob(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException("Could not read column " + index, e);
+        }
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return afterLast;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (afterLast) {
+            return false;
+        }
+        try {
+            position++;
+            if (!statement().step()) {
+                afterLast = true;
+            }
+            return !afterLast;
+        } catch (SQLiteException e) {
+            throw new IllegalStateException("Could not step cursor to row " + position, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (stmt != null) {
+            db.releaseStatement(sql, stmt);
+            stmt = null;
+        }
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return getColumnNames().indexOf(columnName);
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException {
+        int i = getColumnIndex(columnName);
+        if (i < 0) {
+            throw new IllegalArgumentException("Can not find column: " + columnName);
+        }
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return "SQLiteStreamingCursor: position " + position + ", names " + names;
+    }
+
+    private SQLiteStatement statement() {
+        if (stmt == null) {
+            throw new IllegalStateException("Cursor has been closed");
+        }
+        return stmt;
+    }
+
+    private List<String> getColumnNames() {
+        if (names == null) {
+            try {
+                names = SQLiteWrapperUtils.getColumnNames(statement());
+            } catch (SQLiteException e) {
+                throw new IllegalStateException("Could not read column names", e);
+            }
+        }
+        return names;
+    }
+
+}
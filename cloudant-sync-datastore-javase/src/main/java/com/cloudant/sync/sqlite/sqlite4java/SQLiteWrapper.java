@@ -19,6 +19,7 @@ import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.cloudant.android.ContentValues;
 import com.cloudant.sync.sqlite.SQLDatabase;
+import com.cloudant.sync.sqlite.StatementCache;
 import com.cloudant.sync.util.Misc;
 
 import java.io.File;
@@ -39,13 +40,15 @@ public class SQLiteWrapper extends SQLDatabase {
     private final static String LOG_TAG = "SQLiteWrapper";
     private static final Logger logger = Logger.getLogger(SQLiteWrapper.class.getCanonicalName());
 
-    private static final String[] CONFLICT_VALUES = new String[]
-            {"", " OR ROLLBACK ", " OR ABORT ", " OR FAIL ", " OR IGNORE ", " OR REPLACE "};
-
     private final String databaseFilePath;
 
     private SQLiteConnection localConnection;
 
+    /**
+     * Compiled statements for {@link #localConnection}, created along with the connection.
+     */
+    private StatementCache<SQLiteStatement> statementCache;
+
     /**
      * Tracks whether the current nested set of transactions has had any
      * failed transactions so far.
@@ -60,6 +63,12 @@ public class SQLiteWrapper extends SQLDatabase {
      */
     private Stack<Boolean> transactionStack = new Stack<Boolean>();
 
+    /**
+     * Savepoints set in the current transaction, along with the transaction state to restore if
+     * the database is rolled back to them.
+     */
+    private Stack<Savepoint> savepointStack = new Stack<Savepoint>();
+
     public SQLiteWrapper(String databaseFilePath) {
         this.databaseFilePath = databaseFilePath;
     }
@@ -77,11 +86,57 @@ public class SQLiteWrapper extends SQLDatabase {
     SQLiteConnection getConnection() {
         if (localConnection == null) {
             localConnection = createNewConnection();
+            statementCache = new StatementCache<SQLiteStatement>(StatementCache.DEFAULT_CAPACITY) {
+                @Override
+                protected void dispose(SQLiteStatement statement) {
+                    SQLiteWrapperUtils.disposeQuietly(statement);
+                }
+            };
         }
 
         return localConnection;
     }
 
+    /**
+     * Returns the cache of compiled statements for this database's connection.
+     *
+     * @return the statement cache
+     */
+    public StatementCache<SQLiteStatement> getStatementCache() {
+        getConnection();
+        return statementCache;
+    }
+
+    /**
+     * Gets a compiled statement for the SQL, from the statement cache if possible. The statement
+     * must be handed back using {@link #releaseStatement(String, SQLiteStatement)}.
+     */
+    SQLiteStatement acquireStatement(String sql) throws SQLiteException {
+        SQLiteStatement stmt = getStatementCache().acquire(sql);
+        if (stmt == null) {
+            // we manage the lifecycle of cached statements ourselves
+            stmt = getConnection().prepare(sql, false);
+        }
+        return stmt;
+    }
+
+    /**
+     * Resets a statement and returns it to the statement cache, or disposes it if it cannot be
+     * reused.
+     */
+    void releaseStatement(String sql, SQLiteStatement stmt) {
+        if (stmt == null || stmt.isDisposed()) {
+            return;
+        }
+        try {
+            stmt.reset(true);
+            statementCache.release(sql, stmt);
+        } catch (SQLiteException e) {
+            logger.log(Level.FINE, "Could not reset statement, disposing it", e);
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+        }
+    }
+
     SQLiteConnection createNewConnection() {
         try {
             SQLiteConnection conn = new SQLiteConnection(new File(this.databaseFilePath));
@@ -109,10 +164,15 @@ public class SQLiteWrapper extends SQLDatabase {
 
     @Override
     public int getVersion() {
+        String sql = "PRAGMA user_version;";
+        SQLiteStatement stmt = null;
         try {
-            return SQLiteWrapperUtils.longForQuery(getConnection(), "PRAGMA user_version;").intValue();
+            stmt = acquireStatement(sql);
+            return SQLiteWrapperUtils.longForQuery(stmt, null).intValue();
         } catch (SQLiteException e) {
             throw new IllegalStateException("Can not query for the user_version?");
+        } finally {
+            releaseStatement(sql, stmt);
         }
     }
 
@@ -164,6 +224,7 @@ public class SQLiteWrapper extends SQLDatabase {
         }
 
         if(this.transactionStack.size() == 0) {
+            savepointStack.clear();
             // We've reached the top of the stack, and need to commit or
             // rollback. At this point transactionNestedSetSuccess will be true
             // iff no transactions in the set failed.
@@ -195,6 +256,67 @@ public class SQLiteWrapper extends SQLDatabase {
         this.transactionStack.push(true);
     }
 
+    @Override
+    public boolean supportsSavepoints() {
+        return true;
+    }
+
+    @Override
+    public void setSavepoint(String name) throws SQLException {
+        Misc.checkState(this.transactionStack.size() >= 1,
+                "Savepoints can only be set inside a transaction");
+        this.execSQL("SAVEPOINT " + name + ";");
+        savepointStack.push(new Savepoint(name, transactionStack.size(),
+                transactionNestedSetSuccess));
+    }
+
+    @Override
+    public void releaseSavepoint(String name) throws SQLException {
+        Savepoint savepoint = findSavepoint(name);
+        if (savepoint.nestedSetSuccess && !transactionNestedSetSuccess) {
+            // releasing would silently doom the enclosing transaction to be rolled back, leave
+            // the savepoint in place so the caller can roll back to it instead
+            throw new SQLException("A nested transaction failed after savepoint " + name +
+                    " was set");
+        }
+        popSavepoint(name);
+        this.execSQL("RELEASE SAVEPOINT " + name + ";");
+    }
+
+    @Override
+    public void rollbackToSavepoint(String name) throws SQLException {
+        Savepoint savepoint = popSavepoint(name);
+        this.execSQL("ROLLBACK TO SAVEPOINT " + name + ";");
+        this.execSQL("RELEASE SAVEPOINT " + name + ";");
+        // forget about any nested transactions which failed after the savepoint was set, their
+        // work has been rolled back
+        transactionNestedSetSuccess = savepoint.nestedSetSuccess;
+        while (transactionStack.size() > savepoint.transactionDepth) {
+            transactionStack.pop();
+        }
+    }
+
+    private Savepoint findSavepoint(String name) {
+        return savepointStack.get(savepointIndex(name));
+    }
+
+    private Savepoint popSavepoint(String name) {
+        int i = savepointIndex(name);
+        Savepoint savepoint = savepointStack.get(i);
+        // savepoints set after this one are released or rolled back along with it
+        savepointStack.setSize(i);
+        return savepoint;
+    }
+
+    private int savepointIndex(String name) {
+        for (int i = savepointStack.size() - 1; i >= 0; i--) {
+            if (savepointStack.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No savepoint named " + name);
+    }
+
     @Override
     public void close() {
         // it's not possible to call dispose from other threads
@@ -202,6 +324,7 @@ public class SQLiteWrapper extends SQLDatabase {
         // for the same thread as us
         SQLiteConnection conn = localConnection;
         if (conn != null && !conn.isDisposed()) {
+            statementCache.clear();
             conn.dispose();
         }
     }
@@ -219,16 +342,10 @@ public class SQLiteWrapper extends SQLDatabase {
     @Override
     public void execSQL(String sql, Object[] bindArgs) throws SQLException {
         Misc.checkNotNullOrEmpty(sql.trim(), "Input SQL");
-        SQLiteStatement stmt = null;
         try {
-            stmt = this.getConnection().prepare(sql);
-            stmt = SQLiteWrapperUtils.bindArguments(stmt, bindArgs);
-            while (stmt.step()) {
-            }
+            this.executeSQLStatement(sql, bindArgs);
         } catch (SQLiteException e) {
             throw new SQLException(e);
-        } finally {
-            SQLiteWrapperUtils.disposeQuietly(stmt);
         }
     }
 
@@ -252,22 +369,38 @@ public class SQLiteWrapper extends SQLDatabase {
 
     @Override
     public SQLiteCursor rawQuery(String sql, String[] bindArgs) throws SQLException {
+        SQLiteStatement stmt = null;
         try {
-            return SQLiteWrapperUtils.buildSQLiteCursor(getConnection(), sql, bindArgs);
+            stmt = acquireStatement(sql);
+            return SQLiteWrapperUtils.buildSQLiteCursor(stmt, bindArgs);
         } catch (SQLiteException e) {
             throw new SQLException(e);
+        } finally {
+            releaseStatement(sql, stmt);
+        }
+    }
+
+    @Override
+    public SQLiteStreamingCursor rawQueryStreaming(String sql, String[] bindArgs)
+            throws SQLException {
+        SQLiteStatement stmt = null;
+        try {
+            stmt = acquireStatement(sql);
+            SQLiteWrapperUtils.bindArguments(stmt, bindArgs);
+            return new SQLiteStreamingCursor(this, sql, stmt);
+        } catch (SQLiteException e) {
+            releaseStatement(sql, stmt);
+            throw new SQLException(e);
+        } catch (RuntimeException e) {
+            releaseStatement(sql, stmt);
+            throw e;
         }
     }
 
     @Override
     public int delete(String table, String whereClause, String[] whereArgs) {
         try {
-            String sql = new StringBuilder("DELETE FROM \"")
-                    .append(table)
-                    .append("\"")
-                    .append(!Misc.isStringNullOrEmpty(whereClause) ? " WHERE " +
-                            whereClause : "")
-                    .toString();
+            String sql = QueryBuilder.buildDeleteQuery(table, whereClause);
             this.executeSQLStatement(sql, whereArgs);
             return getConnection().getChanges();
         } catch (SQLiteException e) {
@@ -284,35 +417,14 @@ public class SQLiteWrapper extends SQLDatabase {
             throw new IllegalArgumentException("SQLite does not support to insert an all null row");
         }
 
+        String sql = QueryBuilder.buildInsertQuery(table, initialValues, conflictAlgorithm);
         try {
-            StringBuilder sql = new StringBuilder();
-            sql.append("INSERT ");
-            sql.append(CONFLICT_VALUES[conflictAlgorithm]);
-            sql.append(" INTO \"");
-            sql.append(table);
-            sql.append("\"");
-            sql.append('(');
-
-
-            Object[] bindArgs  = new Object[size];
-            int i = 0;
-            for (String colName : initialValues.keySet()) {
-                sql.append((i > 0) ? "," : "");
-                sql.append(colName);
-                bindArgs[i++] = initialValues.get(colName);
-            }
-            sql.append(')');
-            sql.append(" VALUES (");
-            for (i = 0; i < size; i++) {
-                sql.append((i > 0) ? ",?" : "?");
-            }
-
-            sql.append(')');
-            this.executeSQLStatement(sql.toString(), bindArgs);
+            Object[] bindArgs = QueryBuilder.buildBindArguments(initialValues, null);
+            this.executeSQLStatement(sql, bindArgs);
             return getConnection().getLastInsertId();
         } catch (SQLiteException e) {
             logger.log(Level.SEVERE, String.format("Error inserting to: %s, %s, %s", table,
-                    initialValues, CONFLICT_VALUES[conflictAlgorithm]), e);
+                    initialValues, sql), e);
             return -1;
         }
     }
@@ -323,9 +435,26 @@ public class SQLiteWrapper extends SQLDatabase {
     }
 
     private void executeSQLStatement(String sql, Object[] values) throws SQLiteException{
-        SQLiteStatement stmt = getConnection().prepare(sql);
-        stmt = SQLiteWrapperUtils.bindArguments(stmt, values);
-        while (stmt.step()) {
+        SQLiteStatement stmt = null;
+        try {
+            stmt = acquireStatement(sql);
+            stmt = SQLiteWrapperUtils.bindArguments(stmt, values);
+            while (stmt.step()) {
+            }
+        } finally {
+            releaseStatement(sql, stmt);
+        }
+    }
+
+    private static class Savepoint {
+        private final String name;
+        private final int transactionDepth;
+        private final boolean nestedSetSuccess;
+
+        private Savepoint(String name, int transactionDepth, boolean nestedSetSuccess) {
+            this.name = name;
+            this.transactionDepth = transactionDepth;
+            this.nestedSetSuccess = nestedSetSuccess;
         }
     }
 }
@@ -46,19 +46,29 @@ public class SQLiteWrapperUtils {
         SQLiteStatement stmt = null;
         try {
             stmt = conn.prepare(query);
-            if (bindArgs != null && bindArgs.length > 0) {
-                stmt = SQLiteWrapperUtils.bindArguments(stmt, bindArgs);
-            }
-            if (stmt.step()) {
-                return stmt.columnLong(0);
-            } else {
-                throw new IllegalStateException("Query failed to return any result: " + query);
-            }
+            return longForQuery(stmt, bindArgs);
         } finally {
             SQLiteWrapperUtils.disposeQuietly(stmt);
         }
     }
 
+    /**
+     * Utility method to run an already prepared statement and return the value in the
+     * first column of the first row. The statement is not disposed.
+     */
+    public static Long longForQuery(SQLiteStatement stmt, Object[] bindArgs)
+            throws SQLiteException {
+        if (bindArgs != null && bindArgs.length > 0) {
+            stmt = SQLiteWrapperUtils.bindArguments(stmt, bindArgs);
+        }
+        if (stmt.step()) {
+            return stmt.columnLong(0);
+        } else {
+            throw new IllegalStateException("Query failed to return any result: " + stmt
+                    .getSqlParts());
+        }
+    }
+
     /**
      * Utility method to run the query on the db and return the value in the
      * first column of the first row.
@@ -137,27 +147,37 @@ public class SQLiteWrapperUtils {
             throws SQLiteException {
         SQLiteStatement stmt = null;
         try {
-            stmt = bindArguments(conn.prepare(sql), bindArgs);
-            List<String> columnNames = null;
-            List<Tuple> resultSet = new ArrayList<Tuple>();
-            while (!stmt.hasStepped() || stmt.hasRow()) {
-                if (!stmt.step()) {
-                    break;
-                }
-                if (columnNames == null) {
-                    columnNames = getColumnNames(stmt);
-                }
-
-                Tuple t = getDataRow(stmt);
-                logger.finest("Tuple: "+ t.toString());
-                resultSet.add(t);
-            }
-            return new SQLiteCursor(columnNames, resultSet);
+            stmt = conn.prepare(sql);
+            return buildSQLiteCursor(stmt, bindArgs);
         } finally {
             SQLiteWrapperUtils.disposeQuietly(stmt);
         }
     }
 
+    /**
+     * Binds the arguments to an already prepared statement and reads all of its rows into a
+     * {@link SQLiteCursor}. The statement is not disposed.
+     */
+    public static SQLiteCursor buildSQLiteCursor(SQLiteStatement stmt, Object[] bindArgs)
+            throws SQLiteException {
+        stmt = bindArguments(stmt, bindArgs);
+        List<String> columnNames = null;
+        List<Tuple> resultSet = new ArrayList<Tuple>();
+        while (!stmt.hasStepped() || stmt.hasRow()) {
+            if (!stmt.step()) {
+                break;
+            }
+            if (columnNames == null) {
+                columnNames = getColumnNames(stmt);
+            }
+
+            Tuple t = getDataRow(stmt);
+            logger.finest("Tuple: "+ t.toString());
+            resultSet.add(t);
+        }
+        return new SQLiteCursor(columnNames, resultSet);
+    }
+
     static Tuple getDataRow(SQLiteStatement stmt) throws SQLiteException {
         logger.entering("com.cloudant.sync.sqlite.sqlite4java.SQLiteWrapperUtils","getDataRow",stmt);
         Tuple result = new Tuple(getColumnTypes(stmt));
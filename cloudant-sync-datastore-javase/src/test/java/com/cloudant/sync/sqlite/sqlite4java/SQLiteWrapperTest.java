@@ -507,6 +507,212 @@ public class SQLiteWrapperTest {
         Assert.assertEquals(4, cursor.getCount());
     }
 
+    @Test
+    public void rawQuery_repeatedQuery_statementCacheHit() throws Exception {
+        prepareDatabaseForTesting();
+        String sql = "SELECT * FROM docs WHERE doc_name = ?";
+        long misses = database.getStatementCache().getMisses();
+        long hits = database.getStatementCache().getHits();
+
+        Assert.assertEquals(2, database.rawQuery(sql, new String[]{"haha"}).getCount());
+        // the cached statement is reset and rebound with the new arguments
+        Assert.assertEquals(1, database.rawQuery(sql, new String[]{"hihi"}).getCount());
+
+        Assert.assertEquals(misses + 1, database.getStatementCache().getMisses());
+        Assert.assertEquals(hits + 1, database.getStatementCache().getHits());
+    }
+
+    @Test
+    public void insert_repeatedInsert_statementCacheHit() throws Exception {
+        prepareDatabaseForTesting();
+        long hits = database.getStatementCache().getHits();
+        for (int i = 10; i < 15; i++) {
+            ContentValues cv = new ContentValues();
+            cv.put("doc_name", "name" + i);
+            cv.put("balance", 1.0);
+            Assert.assertTrue(database.insert(doc_table_name, cv) > 0);
+        }
+        Assert.assertEquals(hits + 4, database.getStatementCache().getHits());
+        Assert.assertEquals(9, database.rawQuery("SELECT * FROM docs", null).getCount());
+    }
+
+    @Test
+    public void execSQL_failedStatement_cachedStatementStillUsable() throws Exception {
+        prepareDatabaseForTesting();
+        try {
+            // duplicate primary key
+            database.execSQL(insert_into_docs, new Object[]{1, "dup", "", "1.0", null});
+            Assert.fail("Expected SQLException");
+        } catch (SQLException e) {
+            // expected
+        }
+        database.execSQL(insert_into_docs, new Object[]{5, "new", "", "1.0", null});
+        Assert.assertEquals(5, database.rawQuery("SELECT * FROM docs", null).getCount());
+    }
+
+    @Test
+    public void rawQueryStreaming_readsRowsInOrder() throws Exception {
+        prepareDatabaseForTesting();
+        Cursor cursor = database.rawQueryStreaming("SELECT * FROM docs WHERE doc_name = ? " +
+                "ORDER BY doc_id", new String[]{"haha"});
+        try {
+            Assert.assertEquals(5, cursor.getColumnCount());
+            Assert.assertEquals("doc_name", cursor.columnName(1));
+            Assert.assertEquals(3, cursor.getColumnIndexOrThrow("balance"));
+
+            Assert.assertTrue(cursor.moveToFirst());
+            Assert.assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.columnType(0));
+            Assert.assertEquals(1, cursor.getInt(0));
+            Assert.assertEquals("this is great!", cursor.getString(2));
+            Assert.assertEquals(1990.001f, cursor.getFloat(3), 0.000001f);
+            Assert.assertTrue(Arrays.equals("this is a blob".getBytes(), cursor.getBlob(4)));
+
+            Assert.assertTrue(cursor.moveToNext());
+            Assert.assertEquals(2L, cursor.getLong(0));
+
+            Assert.assertFalse(cursor.moveToNext());
+            Assert.assertTrue(cursor.isAfterLast());
+            Assert.assertFalse(cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rawQueryStreaming_nestedQueries() throws Exception {
+        prepareDatabaseForTesting();
+        String sql = "SELECT doc_id FROM docs ORDER BY doc_id";
+        Cursor outer = database.rawQueryStreaming(sql, null);
+        try {
+            int rows = 0;
+            while (outer.moveToNext()) {
+                rows++;
+                // the outer statement is in use, so the same SQL gets a separate statement
+                Cursor inner = database.rawQueryStreaming(sql, null);
+                try {
+                    Assert.assertTrue(inner.moveToNext());
+                    Assert.assertEquals(1, inner.getInt(0));
+                } finally {
+                    inner.close();
+                }
+                ContentValues cv = new ContentValues();
+                cv.put("desc", "visited");
+                database.update(doc_table_name, cv, "doc_id = ?",
+                        new String[]{outer.getString(0)});
+            }
+            Assert.assertEquals(4, rows);
+        } finally {
+            outer.close();
+        }
+        Assert.assertEquals(4, database.rawQuery("SELECT * FROM docs WHERE desc = 'visited'",
+                null).getCount());
+    }
+
+    @Test
+    public void rawQueryStreaming_close_statementReturnedToCache() throws Exception {
+        prepareDatabaseForTesting();
+        String sql = "SELECT * FROM docs";
+        database.rawQueryStreaming(sql, null).close();
+        long hits = database.getStatementCache().getHits();
+        Cursor cursor = database.rawQueryStreaming(sql, null);
+        try {
+            Assert.assertEquals(hits + 1, database.getStatementCache().getHits());
+            // the reused statement starts again from the first row
+            Assert.assertTrue(cursor.moveToNext());
+            Assert.assertEquals(1, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void rawQueryStreaming_moveToFirstAfterSecondRow() throws Exception {
+        prepareDatabaseForTesting();
+        Cursor cursor = database.rawQueryStreaming("SELECT * FROM docs", null);
+        try {
+            cursor.moveToNext();
+            cursor.moveToNext();
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rollbackToSavepoint_discardsChangesAndNestedFailure() throws Exception {
+        prepareDatabaseForTesting();
+        database.beginTransaction();
+        try {
+            database.execSQL(insert_into_docs, new Object[]{5, "kept", "", "1.0", null});
+            database.setSavepoint("sp");
+            database.execSQL(insert_into_docs, new Object[]{6, "discarded", "", "1.0", null});
+            // a failed nested transaction would normally roll back the whole transaction
+            database.beginTransaction();
+            database.endTransaction();
+            database.rollbackToSavepoint("sp");
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Assert.assertEquals(1, database.rawQuery("SELECT * FROM docs WHERE doc_id = 5",
+                null).getCount());
+        Assert.assertEquals(0, database.rawQuery("SELECT * FROM docs WHERE doc_id = 6",
+                null).getCount());
+    }
+
+    @Test
+    public void releaseSavepoint_keepsChanges() throws Exception {
+        prepareDatabaseForTesting();
+        database.beginTransaction();
+        try {
+            database.setSavepoint("sp");
+            database.execSQL(insert_into_docs, new Object[]{5, "kept", "", "1.0", null});
+            database.releaseSavepoint("sp");
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Assert.assertEquals(5, database.rawQuery("SELECT * FROM docs", null).getCount());
+    }
+
+    @Test
+    public void releaseSavepoint_afterNestedFailure_throwsAndKeepsSavepoint() throws Exception {
+        prepareDatabaseForTesting();
+        database.beginTransaction();
+        try {
+            database.execSQL(insert_into_docs, new Object[]{5, "kept", "", "1.0", null});
+            database.setSavepoint("sp");
+            database.execSQL(insert_into_docs, new Object[]{6, "discarded", "", "1.0", null});
+            database.beginTransaction();
+            database.endTransaction();
+            try {
+                database.releaseSavepoint("sp");
+                Assert.fail("Expected SQLException releasing savepoint after nested failure");
+            } catch (SQLException e) {
+                // the savepoint is still set, so the work since it can be discarded
+                database.rollbackToSavepoint("sp");
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Assert.assertEquals(1, database.rawQuery("SELECT * FROM docs WHERE doc_id = 5",
+                null).getCount());
+        Assert.assertEquals(0, database.rawQuery("SELECT * FROM docs WHERE doc_id = 6",
+                null).getCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void setSavepoint_outsideTransaction() throws Exception {
+        database.setSavepoint("sp");
+    }
+
+    @Test(expected = SQLException.class)
+    public void rawQueryStreaming_invalidSql() throws Exception {
+        prepareDatabaseForTesting();
+        database.rawQueryStreaming("SELECT * FROM no_such_table", null);
+    }
+
     @Test
     public void delete() {
         prepareDatabaseForTesting();